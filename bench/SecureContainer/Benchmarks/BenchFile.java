@@ -0,0 +1,21 @@
+package SecureContainer.Benchmarks;
+
+import SecureContainer.SecureFile;
+
+public class BenchFile extends SecureFile {
+    /*
+     * Overview:
+     * Dato utilizzato dai benchmark: un SecureFile con un contenuto di dimensione fissa, in modo che i costi di
+     * serializzazione e di lettura/scrittura su disco non siano trascurabili.
+     */
+
+    static final int PAYLOAD_SIZE = 256;
+
+    public int version; //modificato dai benchmark che scrivono il dato
+    public byte[] payload; //contenuto del dato
+
+    public BenchFile(String p_filePath) throws NullPointerException, IllegalArgumentException {
+        super(p_filePath);
+        payload = new byte[PAYLOAD_SIZE];
+    }
+}
@@ -0,0 +1,297 @@
+package SecureContainer.Benchmarks;
+
+import SecureContainer.ConcurrentSecureDataContainer;
+import SecureContainer.ISecureFileContainer;
+import SecureContainer.ListSecureDataContainer;
+import SecureContainer.LoadPolicy;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.PasswordUtils;
+import SecureContainer.Session;
+import SecureContainer.ShardedSecureFileContainer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Benchmark JMH delle operazioni di ISecureFileContainer.
+ * Ogni benchmark viene eseguito su tutte le implementazioni (impl) e per ogni numero di dati (files) e di utenti (users)
+ * presenti nel container. Le operazioni sui dati utilizzano le sessioni, così da misurare l'operazione e non la verifica
+ * della password; createUser, userAuth, removeUser e il salvataggio/caricamento del container includono invece il
+ * calcolo dell'hash della password, come nell'utilizzo reale.
+ * Gli utenti proprietari dei dati, tranne il primo, vengono creati con hash ad una sola iterazione (vedi
+ * PasswordUtils.setIterations): altrimenti la preparazione di 10^6 utenti richiederebbe ore di calcolo di PBKDF2.
+ * Gli utenti misurati da createUser, userAuth e removeUser utilizzano il numero di iterazioni predefinito.
+ *
+ * Esecuzione: mvn -B -Pbenchmarks package -DskipTests && java -jar target/benchmarks.jar [regex] [-p files=100,1000]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContainerBenchmark {
+
+    static final String PASSWORD = "pwd";
+    static final String ADMIN_ID = "Luca";
+    static final String ADMIN_PASSWORD = "Diavolo!";
+    static final String READER_ID = "reader";
+
+    @State(Scope.Benchmark)
+    public static class ContainerState {
+        @Param({"map", "list", "concurrent", "sharded"})
+        public String impl; //implementazione di ISecureFileContainer misurata
+
+        @Param({"100", "1000", "10000", "100000", "1000000"})
+        public int files; //numero di dati presenti nel container
+
+        @Param({"100", "1000", "10000", "100000", "1000000"})
+        public int users; //numero di utenti proprietari dei dati
+
+        @Param({"ALWAYS"})
+        public LoadPolicy loadPolicy; //quando get rilegge i dati da disco (-p loadPolicy=ALWAYS,LAZY,VALIDATE)
+
+        ISecureFileContainer<BenchFile> container;
+        Path folder; //cartella nella quale vengono scritti i dati e il container
+        String[] userIds; //userIds[i % users] è il proprietario di data[i]
+        Session[] sessions; //sessions[i] è una sessione di userIds[i]
+        Session reader; //sessione di un utente con cui sono condivisi tutti i dati: in lettura i pari, in scrittura i dispari
+        BenchFile[] data; //dati presenti nel container
+        int next; //indice dell'ultimo dato scelto da nextIndex
+        long unique; //contatore utilizzato per generare nomi univoci
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            folder = Files.createTempDirectory("securecontainer-bench");
+            container = newContainer(impl, folder.resolve("container.ser").toString(), loadPolicy);
+
+            userIds = new String[users];
+            sessions = new Session[users];
+            for (int i = 0; i < users; i++) userIds[i] = "user" + i;
+            //userAuth misura userIds[0] e reader: solo i loro hash utilizzano il numero di iterazioni predefinito
+            container.createUser(userIds[0], PASSWORD);
+            container.createUser(READER_ID, PASSWORD);
+            int iterations = PasswordUtils.getIterations();
+            PasswordUtils.setIterations(1);
+            try {
+                for (int i = 1; i < users; i++) container.createUser(userIds[i], PASSWORD);
+                for (int i = 0; i < users; i++) sessions[i] = container.login(userIds[i], PASSWORD);
+            } finally {
+                PasswordUtils.setIterations(iterations);
+            }
+            reader = container.login(READER_ID, PASSWORD);
+
+            data = new BenchFile[files];
+            for (int i = 0; i < files; i++) {
+                data[i] = new BenchFile(newPath());
+                container.put(ownerOf(i), data[i]);
+                if (i % 2 == 0) container.shareR(ownerOf(i), READER_ID, data[i]);
+                else container.shareW(ownerOf(i), READER_ID, data[i]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            deleteFolder(folder.toFile());
+        }
+
+        //Restituisce la sessione del proprietario di data[i]
+        Session ownerOf(int i) {
+            return sessions[i % users];
+        }
+
+        //Restituisce l'indice del prossimo dato da utilizzare, visitando tutti i dati a rotazione
+        int nextIndex() {
+            next = (next + 1) % files;
+            return next;
+        }
+
+        //Restituisce un path non ancora utilizzato
+        String newPath() {
+            return folder.resolve("file" + (unique++) + ".ser").toString();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PutState {
+        BenchFile file; //dato da inserire
+        int owner; //indice del proprietario di file
+
+        @Setup(Level.Invocation)
+        public void prepare(ContainerState s) {
+            file = new BenchFile(s.newPath());
+            owner = s.nextIndex();
+        }
+
+        @TearDown(Level.Invocation)
+        public void cleanup(ContainerState s) {
+            s.container.remove(s.ownerOf(owner), file);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CopyState {
+        int source; //indice del dato da copiare
+        String path; //path della copia
+
+        @Setup(Level.Invocation)
+        public void prepare(ContainerState s) {
+            source = s.nextIndex();
+            path = s.newPath();
+        }
+
+        @TearDown(Level.Invocation)
+        public void cleanup(ContainerState s) {
+            s.container.remove(s.ownerOf(source), new BenchFile(path));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RemoveUserState {
+        static final int VICTIM_FILES = 10;
+        String victim; //utente da rimuovere: possiede VICTIM_FILES dati condivisi con reader e ha accesso ad un dato altrui
+
+        @Setup(Level.Invocation)
+        public void prepare(ContainerState s) throws IOException {
+            victim = "victim" + (s.unique++);
+            s.container.createUser(victim, PASSWORD);
+            Session session = s.container.login(victim, PASSWORD);
+            for (int i = 0; i < VICTIM_FILES; i++) {
+                BenchFile file = new BenchFile(s.newPath());
+                s.container.put(session, file);
+                s.container.shareR(session, READER_ID, file);
+            }
+            int shared = s.nextIndex();
+            s.container.shareR(s.ownerOf(shared), victim, s.data[shared]);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SavedContainerState {
+        @Setup(Level.Trial)
+        public void save(ContainerState s) {
+            if (!s.container.writeContainerOnDisk(ADMIN_ID, ADMIN_PASSWORD)) throw new IllegalStateException("container not saved");
+        }
+    }
+
+    @Benchmark
+    public void createUser(ContainerState s) {
+        s.container.createUser("new" + (s.unique++), PASSWORD);
+    }
+
+    @Benchmark
+    public boolean userAuth(ContainerState s) {
+        return s.container.userAuth(s.userIds[0], PASSWORD);
+    }
+
+    @Benchmark
+    public boolean put(ContainerState s, PutState p) throws IOException {
+        return s.container.put(s.ownerOf(p.owner), p.file);
+    }
+
+    @Benchmark
+    public BenchFile getW(ContainerState s) throws IOException, ClassNotFoundException {
+        int i = s.nextIndex();
+        return s.container.get(s.ownerOf(i), s.data[i]);
+    }
+
+    @Benchmark
+    public BenchFile getR(ContainerState s) throws IOException, ClassNotFoundException {
+        int i = s.nextIndex() & ~1; //i dati di indice pari sono condivisi in lettura con reader
+        return s.container.get(s.reader, s.data[i]);
+    }
+
+    @Benchmark
+    public BenchFile getSnapshot(ContainerState s) {
+        int i = s.nextIndex() & ~1;
+        return s.container.getSnapshot(s.reader, s.data[i]);
+    }
+
+    @Benchmark
+    public void copy(ContainerState s, CopyState c) throws IOException {
+        s.container.copy(s.ownerOf(c.source), s.data[c.source], c.path);
+    }
+
+    @Benchmark
+    public void shareR(ContainerState s) {
+        int i = s.nextIndex();
+        s.container.shareR(s.ownerOf(i), READER_ID, s.data[i]);
+    }
+
+    @Benchmark
+    public void shareW(ContainerState s) {
+        int i = s.nextIndex();
+        s.container.shareW(s.ownerOf(i), READER_ID, s.data[i]);
+    }
+
+    @Benchmark
+    public void getIterator(ContainerState s, Blackhole bh) {
+        Iterator<BenchFile> iter = s.container.getIterator(s.ownerOf(s.nextIndex()));
+        while (iter.hasNext()) bh.consume(iter.next());
+    }
+
+    @Benchmark
+    public void removeUser(ContainerState s, RemoveUserState r) {
+        s.container.removeUser(r.victim, PASSWORD);
+    }
+
+    @Benchmark
+    public boolean writeContainerOnDisk(ContainerState s) {
+        return s.container.writeContainerOnDisk(ADMIN_ID, ADMIN_PASSWORD);
+    }
+
+    @Benchmark
+    public boolean readContainerFromDisk(ContainerState s, SavedContainerState saved) {
+        return s.container.readContainerFromDisk(ADMIN_ID, ADMIN_PASSWORD);
+    }
+
+    /*
+    Crea un container vuoto dell'implementazione impl che utilizza la politica di caricamento policy
+    @throws IllegalArgumentException se impl non identifica un'implementazione
+     */
+    static ISecureFileContainer<BenchFile> newContainer(String impl, String path, LoadPolicy policy) throws IllegalArgumentException {
+        switch (impl) {
+            case "map":
+                MapSecureDataContainer<BenchFile> map = new MapSecureDataContainer<>(path);
+                map.setLoadPolicy(policy);
+                return map;
+            case "list":
+                ListSecureDataContainer<BenchFile> list = new ListSecureDataContainer<>(path);
+                list.setLoadPolicy(policy);
+                return list;
+            case "concurrent":
+                ConcurrentSecureDataContainer<BenchFile> concurrent = new ConcurrentSecureDataContainer<>(path);
+                concurrent.setLoadPolicy(policy);
+                return concurrent;
+            case "sharded":
+                //4 shard concorrenti: le operazioni su tutti gli shard vengono eseguite dall'executor comune della JVM
+                return new ShardedSecureFileContainer<>(path, 4, shardPath -> {
+                    ConcurrentSecureDataContainer<BenchFile> shard = new ConcurrentSecureDataContainer<>(shardPath);
+                    shard.setLoadPolicy(policy);
+                    return shard;
+                }, ForkJoinPool.commonPool());
+            default:
+                throw new IllegalArgumentException(impl + " doesn't identify an implementation");
+        }
+    }
+
+    /*
+    Elimina cartella folder e il suo contenuto
+     */
+    static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) deleteFolder(f);
+                else f.delete();
+            }
+        }
+        folder.delete();
+    }
+}
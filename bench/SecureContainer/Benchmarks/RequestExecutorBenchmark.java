@@ -0,0 +1,91 @@
+package SecureContainer.Benchmarks;
+
+import SecureContainer.AsyncSecureFileContainer;
+import SecureContainer.ISecureFileContainer;
+import SecureContainer.LoadPolicy;
+import SecureContainer.RequestExecutors;
+import SecureContainer.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Benchmark delle chiamate concorrenti ad un container eseguite con AsyncSecureFileContainer, con un thread di
+ * piattaforma (executor = platform) o un virtual thread (executor = virtual) per chiamata.
+ * Ogni invocazione esegue contemporaneamente requests letture da disco (get con LoadPolicy ALWAYS) e attende che siano
+ * tutte completate: al crescere di requests si misura quanto il tempo complessivo cresce con il numero di chiamate
+ * contemporanee. Le chiamate a map vengono serializzate (vedi AsyncSecureFileContainer.onVirtualThreads).
+ * executor = virtual richiede Java 21: con un runtime precedente il setup fallisce e JMH segnala l'errore.
+ *
+ * Esecuzione: java -jar target/benchmarks.jar RequestExecutorBenchmark [-p executor=platform]
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestExecutorBenchmark {
+
+    static final int FILES = 1000;
+    static final int USERS = 10;
+
+    @State(Scope.Benchmark)
+    public static class RequestState {
+        @Param({"platform", "virtual"})
+        public String executor; //thread che eseguono le chiamate
+
+        @Param({"map", "concurrent"})
+        public String impl; //implementazione di ISecureFileContainer misurata
+
+        @Param({"1", "16", "256"})
+        public int requests; //chiamate contemporanee per invocazione
+
+        ISecureFileContainer<BenchFile> container;
+        ExecutorService pool; //executor delle chiamate
+        AsyncSecureFileContainer<BenchFile> async;
+        Path folder; //cartella nella quale vengono scritti i dati
+        Session[] sessions; //sessions[i % USERS] è una sessione del proprietario di data[i]
+        BenchFile[] data; //dati presenti nel container
+        int next; //indice dell'ultimo dato letto
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            pool = "virtual".equals(executor) ? RequestExecutors.newVirtualThreadExecutor() : RequestExecutors.newPlatformThreadExecutor();
+            folder = Files.createTempDirectory("securecontainer-bench");
+            container = ContainerBenchmark.newContainer(impl, folder.resolve("container.ser").toString(), LoadPolicy.ALWAYS);
+            async = new AsyncSecureFileContainer<>(container, pool, pool, !container.isThreadSafe());
+
+            sessions = new Session[USERS];
+            for (int i = 0; i < USERS; i++) {
+                container.createUser("user" + i, ContainerBenchmark.PASSWORD);
+                sessions[i] = container.login("user" + i, ContainerBenchmark.PASSWORD);
+            }
+            data = new BenchFile[FILES];
+            for (int i = 0; i < FILES; i++) {
+                data[i] = new BenchFile(folder.resolve("file" + i + ".ser").toString());
+                container.put(sessions[i % USERS], data[i]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdownNow();
+            ContainerBenchmark.deleteFolder(folder.toFile());
+        }
+    }
+
+    @Benchmark
+    public void concurrentGet(RequestState s) {
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[s.requests];
+        for (int i = 0; i < s.requests; i++) {
+            s.next = (s.next + 1) % FILES;
+            calls[i] = s.async.get(s.sessions[s.next % USERS], s.data[s.next]);
+        }
+        CompletableFuture.allOf(calls).join();
+    }
+}
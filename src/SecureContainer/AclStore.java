@@ -0,0 +1,403 @@
+package SecureContainer;
+
+import java.io.Serializable;
+import java.util.*;
+
+final class AclStore<K> implements Serializable {
+    /*
+     * Overview:
+     * AclStore memorizza i livelli di accesso assegnati dai proprietari dei dati di un container ad altri utenti:
+     * un insieme di triple (dato, id utente, livello di accesso) con al più una tripla per ogni coppia (dato, id utente).
+     * Dati e utenti vengono internati in interi: ogni accesso è memorizzato come long ((id dato << 32) | id utente) in
+     * una tabella ad indirizzamento aperto con il livello di accesso in un array di byte parallelo, e per ogni dato e
+     * ogni utente un array di interi elenca, in ordine di assegnazione, gli id degli utenti e dei dati dei relativi
+     * accessi. Un accesso occupa quindi una ventina di byte, invece di una entry di HashMap (con chiave e valore) per
+     * ciascuna direzione. Un dato o un utente viene internato solo finché ha almeno un accesso.
+     * AclStore non può essere utilizzato da più thread contemporaneamente senza sincronizzazione esterna.
+     *
+     * AF:
+     *    {(files.key(f), users.key(u), LEVELS[levels[i]]) | table[i] = (f << 32) | u}
+     *
+     * IR:
+     *    files != null && users != null && table != null && levels != null && table.length = levels.length &&
+     *    table.length potenza di 2 && 2 * size < table.length && size = |{i | table[i] != EMPTY}| &&
+     *    For all i. table[i] != EMPTY => (u in files.row(f) && f in users.row(u)) con f = table[i] >>> 32, u = (int) table[i] &&
+     *    sum files.degree(f) = sum users.degree(u) = size &&
+     *    For all f internato in files. files.degree(f) > 0 && For all u internato in users. users.degree(u) > 0
+     */
+
+    private static final long serialversionUID = 16L;
+    private static final long EMPTY = -1L; //slot libero di table (gli accessi sono sempre >= 0)
+    private static final AccessLevel[] LEVELS = AccessLevel.values();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Side<K> files = new Side<>(); //Dati internati con, per ciascuno, gli id degli utenti a cui è condiviso
+    private final Side<String> users = new Side<>(); //Utenti internati con, per ciascuno, gli id dei dati condivisi
+    private long[] table = newTable(INITIAL_CAPACITY); //Accessi ((id dato << 32) | id utente), EMPTY se slot libero
+    private byte[] levels = new byte[INITIAL_CAPACITY]; //levels[i] = ordinale del livello di accesso table[i]
+    private int size; //numero di accessi
+
+    private static final class Side<T> implements Serializable {
+        /*
+         * Chiavi (dati o id utente) internate in interi; per ogni chiave rows[id][0..degrees[id]) contiene, in ordine di
+         * assegnazione, gli id dell'altro lato degli accessi della chiave. Gli id liberati vengono riutilizzati.
+         */
+        private static final long serialversionUID = 17L;
+
+        private final Map<T,Integer> ids = new HashMap<>(); //id assegnato a ciascuna chiave internata
+        private Object[] keys = new Object[8]; //keys[id] = chiave internata in id; null se id è libero
+        private int[][] rows = new int[8][]; //rows[id] = id dell'altro lato degli accessi della chiave id
+        private int[] degrees = new int[8]; //degrees[id] = numero di elementi validi di rows[id]
+        private int[] free = new int[8]; //id liberati e non ancora riutilizzati
+        private int freeCount; //numero di elementi validi di free
+        private int next; //primo id mai assegnato
+
+        //Restituisce l'id di key; -1 se key non è internata
+        int id(T key) {
+            Integer id = ids.get(key);
+            return id == null ? -1 : id;
+        }
+
+        //Restituisce l'id di key, internandola se necessario
+        int intern(T key) {
+            Integer id = ids.get(key);
+            if(id != null) return id;
+            int res;
+            if(freeCount > 0) res = free[--freeCount];
+            else {
+                if(next == keys.length) {
+                    int capacity = keys.length * 2;
+                    keys = Arrays.copyOf(keys, capacity);
+                    rows = Arrays.copyOf(rows, capacity);
+                    degrees = Arrays.copyOf(degrees, capacity);
+                }
+                res = next++;
+            }
+            keys[res] = key;
+            rows[res] = new int[2];
+            degrees[res] = 0;
+            ids.put(key, res);
+            return res;
+        }
+
+        //Libera l'id della chiave id, che potrà essere assegnato ad un'altra chiave
+        void release(int id) {
+            ids.remove(keys[id]);
+            keys[id] = null;
+            rows[id] = null;
+            degrees[id] = 0;
+            if(freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+            free[freeCount++] = id;
+        }
+
+        //Aggiunge other in fondo alla riga della chiave id
+        void add(int id, int other) {
+            int[] row = rows[id];
+            if(degrees[id] == row.length) rows[id] = row = Arrays.copyOf(row, row.length * 2);
+            row[degrees[id]++] = other;
+        }
+
+        //Rimuove other dalla riga della chiave id, mantenendo l'ordine degli altri elementi
+        void remove(int id, int other) {
+            int[] row = rows[id];
+            int degree = degrees[id];
+            int i = 0;
+            while(row[i] != other) i++;
+            System.arraycopy(row, i + 1, row, i, degree - i - 1);
+            degrees[id] = degree - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        T key(int id) {
+            return (T) keys[id];
+        }
+
+        int degree(int id) {
+            return degrees[id];
+        }
+
+        int[] row(int id) {
+            return rows[id];
+        }
+
+        Set<T> keySet() {
+            return ids.keySet();
+        }
+    }
+
+    /*
+    Restituisce il livello di accesso assegnato all'utente id per file
+    @requires file != null && id != null
+    @return il livello di accesso di (file, id); null se non è stato assegnato alcun accesso
+     */
+    AccessLevel get(K file, String id) {
+        int f = files.id(file);
+        if(f == -1) return null;
+        int u = users.id(id);
+        if(u == -1) return null;
+        int i = find(pack(f, u));
+        return table[i] == EMPTY ? null : LEVELS[levels[i]];
+    }
+
+    /*
+    Assegna all'utente id il livello di accesso acc per file, sostituendo quello eventualmente già assegnato
+    @requires file != null && id != null && acc != null
+    @modifies this
+    @effects this_post contiene (file, id, acc)
+     */
+    void grant(K file, String id, AccessLevel acc) {
+        int f = files.intern(file);
+        int u = users.intern(id);
+        long key = pack(f, u);
+        int i = find(key);
+        if(table[i] == EMPTY) {
+            if(2 * (size + 1) >= table.length) {
+                rehash(table.length * 2);
+                i = find(key);
+            }
+            table[i] = key;
+            size++;
+            files.add(f, u);
+            users.add(u, f);
+        }
+        levels[i] = (byte) acc.ordinal();
+    }
+
+    /*
+    Rimuove tutti gli accessi a file
+    @requires file != null
+    @modifies this
+    @effects this_post = this_pre - {(file, id, acc) in this_pre}
+     */
+    void removeFile(K file) {
+        int f = files.id(file);
+        if(f == -1) return;
+        int[] row = files.row(f);
+        for (int k = files.degree(f) - 1; k >= 0; k--) {
+            int u = row[k];
+            delete(find(pack(f, u)));
+            users.remove(u, f);
+            if(users.degree(u) == 0) users.release(u);
+        }
+        files.release(f);
+    }
+
+    /*
+    Rimuove tutti gli accessi assegnati all'utente id
+    @requires id != null
+    @modifies this
+    @effects this_post = this_pre - {(file, id, acc) in this_pre}
+     */
+    void removeUser(String id) {
+        int u = users.id(id);
+        if(u == -1) return;
+        int[] row = users.row(u);
+        for (int k = users.degree(u) - 1; k >= 0; k--) {
+            int f = row[k];
+            delete(find(pack(f, u)));
+            files.remove(f, u);
+            if(files.degree(f) == 0) files.release(f);
+        }
+        users.release(u);
+    }
+
+    /*
+    Restituisce i dati per cui è stato assegnato un accesso all'utente id, in ordine di assegnazione
+    @requires id != null
+    @return {file -> acc | (file, id, acc) in this}
+     */
+    Map<K,AccessLevel> getShared(String id) {
+        Map<K,AccessLevel> res = new LinkedHashMap<>();
+        int u = users.id(id);
+        if(u == -1) return res;
+        int[] row = users.row(u);
+        for (int k = 0; k < users.degree(u); k++) {
+            int f = row[k];
+            res.put(files.key(f), LEVELS[levels[find(pack(f, u))]]);
+        }
+        return res;
+    }
+
+    /*
+    Restituisce gli utenti a cui è stato assegnato un accesso a file, in ordine di assegnazione
+    @requires file != null
+    @return {id -> acc | (file, id, acc) in this}
+     */
+    Map<String,AccessLevel> getAccesses(K file) {
+        Map<String,AccessLevel> res = new LinkedHashMap<>();
+        int f = files.id(file);
+        if(f == -1) return res;
+        int[] row = files.row(f);
+        for (int k = 0; k < files.degree(f); k++) {
+            int u = row[k];
+            res.put(users.key(u), LEVELS[levels[find(pack(f, u))]]);
+        }
+        return res;
+    }
+
+    /*
+    Restituisce il numero di dati per cui è stato assegnato un accesso all'utente id
+    @requires id != null
+    @return |{(file, id, acc) in this}|
+     */
+    int countShared(String id) {
+        int u = users.id(id);
+        return u == -1 ? 0 : users.degree(u);
+    }
+
+    /*
+    Restituisce i dati per cui è stato assegnato almeno un accesso
+    @return {file | Exist (file, id, acc) in this}
+     */
+    Set<K> getFiles() {
+        return Collections.unmodifiableSet(files.keySet());
+    }
+
+    /*
+    Restituisce gli utenti a cui è stato assegnato almeno un accesso
+    @return {id | Exist (file, id, acc) in this}
+     */
+    Set<String> getUsers() {
+        return Collections.unmodifiableSet(users.keySet());
+    }
+
+    /*
+    Restituisce il numero di accessi
+    @return |this|
+     */
+    int size() {
+        return size;
+    }
+
+    /*
+    Verifica la condizione di IR per i soli accessi a file, in tempo proporzionale al loro numero
+    @requires file != null
+    @return true se IR = true per gli accessi a file; false altrimenti
+     */
+    boolean repInv(K file) {
+        int f = files.id(file);
+        if(f == -1) return true;
+        if(files.degree(f) == 0) return false;
+        int[] row = files.row(f);
+        for (int k = 0; k < files.degree(f); k++) {
+            int u = row[k];
+            if(table[find(pack(f, u))] == EMPTY || !contains(users, u, f)) return false;
+        }
+        return true;
+    }
+
+    /*
+    Verifica la condizione di IR per i soli accessi assegnati all'utente id, in tempo proporzionale al loro numero
+    @requires id != null
+    @return true se IR = true per gli accessi assegnati all'utente id; false altrimenti
+     */
+    boolean repInv(String id) {
+        int u = users.id(id);
+        if(u == -1) return true;
+        if(users.degree(u) == 0) return false;
+        int[] row = users.row(u);
+        for (int k = 0; k < users.degree(u); k++) {
+            int f = row[k];
+            if(table[find(pack(f, u))] == EMPTY || !contains(files, f, u)) return false;
+        }
+        return true;
+    }
+
+    /*
+    Verifica la condizione di IR, in tempo proporzionale alla dimensione di this: viene invocato dai container solo
+    durante le verifiche complete del proprio IR
+    @return true se IR = true; false altrimenti
+     */
+    boolean repInv() {
+        if(table == null || levels == null || table.length != levels.length || Integer.bitCount(table.length) != 1 ||
+           2 * size >= table.length) return false;
+        int count = 0;
+        for (long key : table) {
+            if(key == EMPTY) continue;
+            count++;
+            int f = (int) (key >>> 32), u = (int) key;
+            if(!contains(files, f, u) || !contains(users, u, f)) return false;
+        }
+        int fileDegrees = 0;
+        for (int f : files.ids.values()) {
+            if(files.degree(f) == 0) return false;
+            fileDegrees += files.degree(f);
+        }
+        int userDegrees = 0;
+        for (int u : users.ids.values()) {
+            if(users.degree(u) == 0) return false;
+            userDegrees += users.degree(u);
+        }
+        return count == size && fileDegrees == size && userDegrees == size;
+    }
+
+    //Verifica se la riga della chiave id di side contiene other
+    private static boolean contains(Side<?> side, int id, int other) {
+        if(id >= side.keys.length || side.keys[id] == null) return false;
+        int[] row = side.row(id);
+        for (int k = 0; k < side.degree(id); k++) {
+            if(row[k] == other) return true;
+        }
+        return false;
+    }
+
+    private static long pack(int f, int u) {
+        return ((long) f << 32) | u;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long[] newTable(int capacity) {
+        long[] res = new long[capacity];
+        Arrays.fill(res, EMPTY);
+        return res;
+    }
+
+    /*
+    Restituisce la posizione di key in table; se key non è presente la posizione libera in cui inserirla
+     */
+    private int find(long key) {
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        while(table[i] != EMPTY && table[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    /*
+    Libera la posizione i di table spostando indietro gli accessi successivi della stessa sequenza di probing
+    @requires table[i] != EMPTY
+     */
+    private void delete(int i) {
+        int mask = table.length - 1;
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(table[j] == EMPTY) break;
+            int k = hash(table[j]) & mask;
+            //table[j] resta al suo posto se la sua posizione naturale k è compresa (ciclicamente) in (i, j]
+            if(i <= j ? (i < k && k <= j) : (i < k || k <= j)) continue;
+            table[i] = table[j];
+            levels[i] = levels[j];
+            i = j;
+        }
+        table[i] = EMPTY;
+        size--;
+    }
+
+    //Ridimensiona table a capacity posizioni
+    private void rehash(int capacity) {
+        long[] oldTable = table;
+        byte[] oldLevels = levels;
+        table = newTable(capacity);
+        levels = new byte[capacity];
+        for (int i = 0; i < oldTable.length; i++) {
+            if(oldTable[i] == EMPTY) continue;
+            int j = find(oldTable[i]);
+            table[j] = oldTable[i];
+            levels[j] = oldLevels[i];
+        }
+    }
+}
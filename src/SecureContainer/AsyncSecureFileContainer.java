@@ -0,0 +1,287 @@
+package SecureContainer;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+public class AsyncSecureFileContainer<E extends SecureFile> implements Closeable {
+    /*
+     * Overview:
+     * AsyncSecureFileContainer è una facciata asincrona di un ISecureFileContainer<E>: ogni metodo restituisce subito un
+     * CompletableFuture che viene completato con il risultato della chiamata sincrona corrispondente del container, o
+     * eccezionalmente con l'eccezione che questa solleverebbe (avvolta in CompletionException da join).
+     * Il lavoro viene eseguito su due executor distinti:
+     *    - authExecutor: verifica delle credenziali (login, userAuth), che richiede il calcolo dell'hash della password;
+     *    - ioExecutor: operazioni sui dati, che leggono e scrivono i documenti su disco.
+     * I metodi con credenziali aprono una sessione su authExecutor, eseguono l'operazione con la sessione su ioExecutor
+     * e chiudono la sessione; i metodi con sessione utilizzano solo ioExecutor.
+     * NOTA BENE: le chiamate al container vengono eseguite da più thread contemporaneamente. Il container deve poterlo
+     *            consentire (container.isThreadSafe()), altrimenti la facciata deve essere creata con serialize =
+     *            true: le chiamate vengono allora eseguite una alla volta, in mutua esclusione su un ReentrantLock (che,
+     *            a differenza di synchronized, non lega un virtual thread in attesa al thread di piattaforma).
+     * onVirtualThreads crea una facciata che esegue ogni chiamata su un nuovo virtual thread (vedi RequestExecutors)
+     * con un executor proprio, terminato da close; gli executor forniti dal cliente non vengono terminati.
+     *
+     * IR:
+     *    container != null && authExecutor != null && ioExecutor != null
+     */
+
+    private final ISecureFileContainer<E> container; //container a cui vengono inoltrate le chiamate
+    private final Executor authExecutor; //Executor delle verifiche delle credenziali
+    private final Executor ioExecutor; //Executor delle operazioni sui dati
+    private final ReentrantLock serial; //serializza le chiamate al container (null se il container consente chiamate concorrenti)
+    private final ExecutorService ownExecutor; //executor creato da this e terminato da close (null se forniti dal cliente)
+
+    /*
+    Operazione sul container con una sessione aperta
+     */
+    @FunctionalInterface
+    private interface SessionCall<R> {
+        R apply(Session s) throws Exception;
+    }
+
+    /*
+    Crea una facciata asincrona di p_container
+    @requires p_container != null && p_authExecutor != null && p_ioExecutor != null
+    @throws NullPointerException se p_container = null || p_authExecutor = null || p_ioExecutor = null
+     */
+    public AsyncSecureFileContainer(ISecureFileContainer<E> p_container, Executor p_authExecutor, Executor p_ioExecutor) throws NullPointerException {
+        this(p_container, p_authExecutor, p_ioExecutor, false);
+    }
+
+    /*
+    Crea una facciata asincrona di p_container; se p_serialize le chiamate al container vengono eseguite una alla volta
+    @requires p_container != null && p_authExecutor != null && p_ioExecutor != null
+    @throws NullPointerException se p_container = null || p_authExecutor = null || p_ioExecutor = null
+     */
+    public AsyncSecureFileContainer(ISecureFileContainer<E> p_container, Executor p_authExecutor, Executor p_ioExecutor, boolean p_serialize) throws NullPointerException {
+        this(p_container, p_authExecutor, p_ioExecutor, p_serialize, null);
+    }
+
+    private AsyncSecureFileContainer(ISecureFileContainer<E> p_container, Executor p_authExecutor, Executor p_ioExecutor, boolean p_serialize,
+                                     ExecutorService p_ownExecutor) throws NullPointerException {
+        if(p_container == null) throw new NullPointerException("p_container must be != null !");
+        if(p_authExecutor == null) throw new NullPointerException("p_authExecutor must be != null !");
+        if(p_ioExecutor == null) throw new NullPointerException("p_ioExecutor must be != null !");
+        container = p_container;
+        authExecutor = p_authExecutor;
+        ioExecutor = p_ioExecutor;
+        serial = p_serialize ? new ReentrantLock() : null;
+        ownExecutor = p_ownExecutor;
+    }
+
+    /*
+    Crea una facciata asincrona di p_container che esegue ogni chiamata su un nuovo virtual thread (su un thread di
+    piattaforma se il runtime non supporta i virtual thread, vedi RequestExecutors). Le chiamate vengono serializzate
+    se !p_container.isThreadSafe(). L'executor viene terminato da close.
+    @requires p_container != null
+    @throws NullPointerException se p_container = null
+     */
+    public static <E extends SecureFile> AsyncSecureFileContainer<E> onVirtualThreads(ISecureFileContainer<E> p_container) throws NullPointerException {
+        if(p_container == null) throw new NullPointerException("p_container must be != null !");
+        ExecutorService executor = RequestExecutors.newRequestExecutor();
+        return new AsyncSecureFileContainer<>(p_container, executor, executor, !p_container.isThreadSafe(), executor);
+    }
+
+    /*
+    Termina l'executor creato da this (vedi onVirtualThreads) dopo le chiamate già avviate; non ha effetto se gli
+    executor sono stati forniti dal cliente. Le chiamate successive a close sollevano RejectedExecutionException.
+    Il container non viene chiuso.
+    @modifies this
+     */
+    @Override
+    public void close() {
+        if(ownExecutor != null) ownExecutor.shutdown();
+    }
+
+    /*
+    Restituisce il container a cui vengono inoltrate le chiamate
+     */
+    public ISecureFileContainer<E> getContainer() {
+        return container;
+    }
+
+    /*
+    Restituisce true se le chiamate al container vengono eseguite una alla volta
+     */
+    public boolean isSerialized() {
+        return serial != null;
+    }
+
+    /*
+    Come userAuth(Id, passw) del container, eseguito su authExecutor
+     */
+    public CompletableFuture<Boolean> userAuth(String Id, String passw) {
+        return CompletableFuture.supplyAsync(() -> exclusive(() -> container.userAuth(Id, passw)), authExecutor);
+    }
+
+    /*
+    Come login(Id, passw) del container, eseguito su authExecutor
+     */
+    public CompletableFuture<Session> login(String Id, String passw) {
+        return CompletableFuture.supplyAsync(() -> exclusive(() -> container.login(Id, passw)), authExecutor);
+    }
+
+    /*
+    Come put(Owner, passw, file) del container
+     */
+    public CompletableFuture<Boolean> put(String Owner, String passw, E file) {
+        return withSession(Owner, passw, s -> container.put(s, file));
+    }
+
+    /*
+    Come put(s, file) del container, eseguito su ioExecutor
+     */
+    public CompletableFuture<Boolean> put(Session s, E file) {
+        return onIo(s, session -> container.put(session, file));
+    }
+
+    /*
+    Come get(Owner, passw, file) del container
+     */
+    public CompletableFuture<E> get(String Owner, String passw, E file) {
+        return withSession(Owner, passw, s -> container.get(s, file));
+    }
+
+    /*
+    Come get(s, file) del container, eseguito su ioExecutor
+     */
+    public CompletableFuture<E> get(Session s, E file) {
+        return onIo(s, session -> container.get(session, file));
+    }
+
+    /*
+    Come remove(Owner, passw, file) del container
+     */
+    public CompletableFuture<E> remove(String Owner, String passw, E file) {
+        return withSession(Owner, passw, s -> container.remove(s, file));
+    }
+
+    /*
+    Come remove(s, file) del container, eseguito su ioExecutor
+     */
+    public CompletableFuture<E> remove(Session s, E file) {
+        return onIo(s, session -> container.remove(session, file));
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) del container
+     */
+    public CompletableFuture<Void> copy(String Owner, String passw, E file, String newFilePath) {
+        return withSession(Owner, passw, s -> {
+            container.copy(s, file, newFilePath);
+            return null;
+        });
+    }
+
+    /*
+    Come copy(s, file, newFilePath) del container, eseguito su ioExecutor
+     */
+    public CompletableFuture<Void> copy(Session s, E file, String newFilePath) {
+        return onIo(s, session -> {
+            container.copy(session, file, newFilePath);
+            return null;
+        });
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) del container
+     */
+    public CompletableFuture<Void> writeFileOnDisk(String Id, String passw, E file) {
+        return withSession(Id, passw, s -> {
+            container.writeFileOnDisk(s, file);
+            return null;
+        });
+    }
+
+    /*
+    Come writeFileOnDisk(s, file) del container, eseguito su ioExecutor
+     */
+    public CompletableFuture<Void> writeFileOnDisk(Session s, E file) {
+        return onIo(s, session -> {
+            container.writeFileOnDisk(session, file);
+            return null;
+        });
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) del container
+     */
+    public CompletableFuture<Void> readFileFromDisk(String Id, String passw, E file) {
+        return withSession(Id, passw, s -> {
+            container.readFileFromDisk(s, file);
+            return null;
+        });
+    }
+
+    /*
+    Come readFileFromDisk(s, file) del container, eseguito su ioExecutor
+     */
+    public CompletableFuture<Void> readFileFromDisk(Session s, E file) {
+        return onIo(s, session -> {
+            container.readFileFromDisk(session, file);
+            return null;
+        });
+    }
+
+    /*
+    Apre una sessione per (Id, passw) su authExecutor, esegue call su ioExecutor e chiude la sessione
+    @return un future completato con il risultato di call; eccezionalmente se l'autenticazione o call non riescono
+     */
+    private <R> CompletableFuture<R> withSession(String Id, String passw, SessionCall<R> call) {
+        return login(Id, passw).thenApplyAsync(s -> {
+            try {
+                return invoke(call, s);
+            } finally {
+                exclusive(() -> {
+                    container.logout(s);
+                    return null;
+                });
+            }
+        }, ioExecutor);
+    }
+
+    /*
+    Esegue call con la sessione s su ioExecutor
+    @return un future completato con il risultato di call; eccezionalmente se call non riesce
+     */
+    private <R> CompletableFuture<R> onIo(Session s, SessionCall<R> call) {
+        return CompletableFuture.supplyAsync(() -> invoke(call, s), ioExecutor);
+    }
+
+    /*
+    Esegue call con la sessione s nel thread corrente (in mutua esclusione se isSerialized())
+    @throws CompletionException che avvolge l'eccezione controllata sollevata da call
+    @throws RuntimeException se call solleva RuntimeException
+    @return il risultato di call
+     */
+    private <R> R invoke(SessionCall<R> call, Session s) throws CompletionException {
+        return exclusive(() -> {
+            try {
+                return call.apply(s);
+            } catch(RuntimeException e) {
+                throw e;
+            } catch(Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /*
+    Esegue action nel thread corrente, in mutua esclusione con le altre chiamate al container se isSerialized()
+    @return il risultato di action
+     */
+    private <R> R exclusive(Supplier<R> action) {
+        if(serial == null) return action.get();
+        serial.lock();
+        try {
+            return action.get();
+        } finally {
+            serial.unlock();
+        }
+    }
+}
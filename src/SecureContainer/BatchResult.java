@@ -0,0 +1,151 @@
+package SecureContainer;
+
+import SecureContainer.Exceptions.CredentialException;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class BatchResult<R> {
+    /*
+     * Overview:
+     * BatchResult contiene l'esito di ciascuna operazione di una chiamata batch di ISecureFileContainer (putAll,
+     * getAll, removeAll, shareAll): l'i-esimo esito si riferisce all'i-esimo elemento passato alla chiamata ed è un
+     * valore (operazione riuscita) oppure l'eccezione che la chiamata singola corrispondente avrebbe sollevato.
+     *
+     * Typical Element:
+     *    [(v_0, e_0), ..., (v_n-1, e_n-1)] dove e_i = null se l'operazione i è riuscita, v_i = null altrimenti
+     *
+     * IR:
+     *    values != null && errors != null && values.length = errors.length &&
+     *    For all 0 <= i < errors.length. errors[i] != null ==> values[i] = null &&
+     *    failures = |{i | errors[i] != null}|
+     */
+
+    private final Object[] values; //valore di ciascuna operazione riuscita
+    private final Exception[] errors; //eccezione di ciascuna operazione non riuscita (null se riuscita)
+    private int failures; //numero di operazioni non riuscite
+
+    /*
+    Operazione su un elemento di una chiamata batch
+     */
+    interface Operation<T,R> {
+        R apply(T item) throws Exception;
+    }
+
+    /*
+    Esegue op su ciascun elemento di items, nell'ordine, registrando l'esito di ciascuna operazione. Una
+    CredentialException interrompe l'esecuzione (le credenziali non sono più valide per nessuna operazione).
+    @requires items != null && op != null
+    @throws NullPointerException se items = null || op = null
+    @throws CredentialException se op solleva CredentialException
+    @return res tale che res.size() = items.size() e res(i) è l'esito di op(items.get(i))
+     */
+    static <T,R> BatchResult<R> run(List<T> items, Operation<T,R> op) throws NullPointerException, CredentialException {
+        if(items == null) throw new NullPointerException("items must be != null !");
+        if(op == null) throw new NullPointerException("op must be != null !");
+        BatchResult<R> res = new BatchResult<>(items.size());
+        for(int i = 0; i < items.size(); i++) {
+            try {
+                res.succeed(i, op.apply(items.get(i)));
+            } catch(CredentialException e) {
+                throw e;
+            } catch(Exception e) {
+                res.fail(i, e);
+            }
+        }
+        return res;
+    }
+
+    /*
+    Crea il risultato di p_size operazioni, inizialmente tutte riuscite con valore null
+    @requires p_size >= 0
+    @throws IllegalArgumentException se p_size < 0
+     */
+    BatchResult(int p_size) throws IllegalArgumentException {
+        if(p_size < 0) throw new IllegalArgumentException("p_size must be >= 0 !");
+        values = new Object[p_size];
+        errors = new Exception[p_size];
+    }
+
+    /*
+    Registra il successo dell'operazione i con valore p_value
+    @requires 0 <= i < size() && l'esito dell'operazione i non è ancora stato registrato
+    @modifies this
+    @effects isSuccess(i) && get(i) = p_value
+     */
+    void succeed(int i, R p_value) {
+        assert errors[i] == null;
+        values[i] = p_value;
+    }
+
+    /*
+    Registra il fallimento dell'operazione i con eccezione e
+    @requires 0 <= i < size() && e != null && l'esito dell'operazione i non è ancora stato registrato
+    @modifies this
+    @effects !isSuccess(i) && getError(i) = e
+     */
+    void fail(int i, Exception e) {
+        values[i] = null;
+        if(errors[i] == null) failures++;
+        errors[i] = e;
+    }
+
+    /*
+    Restituisce il numero di operazioni
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /*
+    Verifica se l'operazione i è riuscita
+    @requires 0 <= i < size()
+    @throws IndexOutOfBoundsException se i < 0 || i >= size()
+    @return true se l'operazione i è riuscita; false altrimenti
+     */
+    public boolean isSuccess(int i) throws IndexOutOfBoundsException {
+        return errors[i] == null;
+    }
+
+    /*
+    Restituisce il valore dell'operazione i
+    @requires 0 <= i < size() && isSuccess(i)
+    @throws IndexOutOfBoundsException se i < 0 || i >= size()
+    @throws IllegalStateException se !isSuccess(i); la causa è getError(i)
+    @return il valore dell'operazione i
+     */
+    @SuppressWarnings("unchecked")
+    public R get(int i) throws IndexOutOfBoundsException, IllegalStateException {
+        if(errors[i] != null) throw new IllegalStateException("operation " + i + " failed", errors[i]);
+        return (R) values[i];
+    }
+
+    /*
+    Restituisce l'eccezione dell'operazione i
+    @requires 0 <= i < size()
+    @throws IndexOutOfBoundsException se i < 0 || i >= size()
+    @return l'eccezione sollevata dall'operazione i; null se isSuccess(i)
+     */
+    public Exception getError(int i) throws IndexOutOfBoundsException {
+        return errors[i];
+    }
+
+    /*
+    Restituisce il numero di operazioni non riuscite
+     */
+    public int getFailureCount() {
+        return failures;
+    }
+
+    /*
+    Verifica se tutte le operazioni sono riuscite
+     */
+    public boolean allSucceeded() {
+        return failures == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{size=" + values.length + ", failures=" + failures + ", errors=" + Arrays.toString(errors) + "}";
+    }
+}
@@ -0,0 +1,183 @@
+package SecureContainer;
+
+import java.io.*;
+import java.util.*;
+
+public class CompactSecureFileCodec implements SecureFileCodec {
+    /*
+     * Overview:
+     * CompactSecureFileCodec è il formato predefinito dei documenti su disco dei dati di un container.
+     * Il contenuto del dato viene scritto con la serializzazione Java, ma al posto del descrittore completo di ogni
+     * classe (nome, serialVersionUID, nome e tipo di ogni campo) viene scritto solo l'identificativo della classe nella
+     * tabella delle classi del codec, oppure il suo nome se la classe non è presente nella tabella. Anche l'intestazione
+     * dello stream di serializzazione viene sostituita da un'intestazione di 3 byte.
+     * La tabella delle classi è costituita da BASE_CLASSES seguite dalle classi indicate alla creazione del codec: per
+     * leggere un documento è necessario un codec con la stessa tabella di quello che lo ha scritto.
+     * Poiché il descrittore non viene memorizzato, la struttura delle classi dei dati non deve cambiare tra la scrittura
+     * e la lettura di un documento.
+     * Per compatibilità, decode legge anche i documenti scritti con la serializzazione Java standard (SerializationCodec).
+     *
+     * Typical Element:
+     *    classes = [c_0, ..., c_n-1]: tabella delle classi, l'identificativo di c_i è i + 1
+     *
+     * IR:
+     *    classes != null && ids != null && For all i. 0 <= i < classes.size => ids.get(classes.get(i)) = i + 1 &&
+     *    ids.size = classes.size && classes.size <= MAX_CLASSES
+     */
+
+    private static final int MAGIC = 0x5346; //"SF": intestazione dei documenti scritti da CompactSecureFileCodec
+    private static final int JAVA_MAGIC = 0xACED; //intestazione dei documenti scritti con la serializzazione Java standard
+    private static final int VERSION = 1; //versione del formato
+    private static final int UNREGISTERED = 0; //identificativo di una classe non presente nella tabella: segue il nome
+    private static final int MAX_CLASSES = 0xFFFF; //gli identificativi sono memorizzati su 2 byte
+
+    //Classi presenti nella tabella di ogni codec (il loro ordine fa parte del formato)
+    private static final List<Class<?>> BASE_CLASSES = Collections.unmodifiableList(Arrays.asList(
+            SecureFile.class, Number.class, Integer.class, Long.class, Double.class, Boolean.class,
+            byte[].class, char[].class, int[].class, long[].class, Object[].class, String[].class,
+            ArrayList.class, LinkedList.class, HashMap.class, HashSet.class));
+
+    private final List<Class<?>> classes; //tabella delle classi
+    private final Map<Class<?>,Integer> ids; //identificativo di ciascuna classe della tabella
+
+    /*
+    Crea un codec la cui tabella è costituita da BASE_CLASSES seguite da p_classes
+    @requires p_classes != null && For all c in p_classes. c != null && |BASE_CLASSES| + |p_classes| <= MAX_CLASSES
+    @throws NullPointerException se p_classes = null || Exist c in p_classes. c = null
+    @throws IllegalArgumentException se |BASE_CLASSES| + |p_classes| > MAX_CLASSES
+     */
+    public CompactSecureFileCodec(Class<?>... p_classes) throws NullPointerException, IllegalArgumentException {
+        if(p_classes == null) throw new NullPointerException("p_classes must be != null !");
+        if(BASE_CLASSES.size() + p_classes.length > MAX_CLASSES) throw new IllegalArgumentException("at most " + MAX_CLASSES + " classes can be registered!");
+        List<Class<?>> table = new ArrayList<>(BASE_CLASSES);
+        for (Class<?> c : p_classes) {
+            if(c == null) throw new NullPointerException("registered classes must be != null !");
+            if(!table.contains(c)) table.add(c);
+        }
+        classes = Collections.unmodifiableList(table);
+        Map<Class<?>,Integer> table_ids = new HashMap<>();
+        for (int i = 0; i < classes.size(); i++) table_ids.put(classes.get(i), i + 1);
+        ids = table_ids;
+        assert repInv();
+    }
+
+    /*
+    Verifica la condizione di IR
+    @return true se IR = true; false altrimenti
+     */
+    private boolean repInv(){
+        if(classes == null || ids == null || ids.size() != classes.size() || classes.size() > MAX_CLASSES) return false;
+        for (int i = 0; i < classes.size(); i++) {
+            if(!Integer.valueOf(i + 1).equals(ids.get(classes.get(i)))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void encode(SecureFile file, OutputStream out) throws NullPointerException, IOException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        if(out == null) throw new NullPointerException("out must be != null !");
+        out.write(MAGIC >>> 8);
+        out.write(MAGIC & 0xFF);
+        out.write(VERSION);
+        ObjectOutputStream objOut = new CompactOutputStream(out);
+        objOut.writeObject(file);
+        objOut.flush(); //out non viene chiuso: è compito del chiamante
+    }
+
+    @Override
+    public SecureFile decode(InputStream in) throws NullPointerException, IOException, ClassNotFoundException {
+        if(in == null) throw new NullPointerException("in must be != null !");
+        if(!in.markSupported()) in = new BufferedInputStream(in);
+        in.mark(2);
+        int magic = (in.read() << 8) | in.read();
+        Object obj;
+        if(magic == JAVA_MAGIC) {
+            //Documento scritto con la serializzazione Java standard: l'intestazione viene letta da ObjectInputStream
+            in.reset();
+            obj = new ObjectInputStream(in).readObject();
+        }
+        else if(magic == MAGIC) {
+            int version = in.read();
+            if(version != VERSION) throw new StreamCorruptedException("unsupported format version: " + version);
+            obj = new CompactInputStream(in).readObject();
+        }
+        else throw new StreamCorruptedException("invalid header: " + Integer.toHexString(magic));
+
+        if(!(obj instanceof SecureFile)) throw new InvalidObjectException("the stream doesn't contain a SecureFile");
+        return (SecureFile) obj;
+    }
+
+    /*
+    Restituisce la classe con identificativo id nella tabella
+    @throws InvalidClassException se id non identifica una classe della tabella
+     */
+    private Class<?> classOf(int id) throws InvalidClassException {
+        if(id < 1 || id > classes.size()) throw new InvalidClassException("unknown class id: " + id);
+        return classes.get(id - 1);
+    }
+
+    /*
+    Restituisce la classe con nome name, cercandola nel class loader del thread corrente e poi in quello del codec
+    @throws ClassNotFoundException se la classe non è disponibile
+     */
+    private static Class<?> classForName(String name) throws ClassNotFoundException {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if(loader != null) {
+            try {
+                return Class.forName(name, false, loader);
+            } catch (ClassNotFoundException e) {
+                //la classe potrebbe essere visibile dal class loader del codec
+            }
+        }
+        return Class.forName(name, false, CompactSecureFileCodec.class.getClassLoader());
+    }
+
+    //ObjectOutputStream che scrive l'identificativo (o il nome) della classe al posto del descrittore completo
+    private final class CompactOutputStream extends ObjectOutputStream {
+        CompactOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeStreamHeader() {
+            //l'intestazione è scritta da encode
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            Integer id = ids.get(desc.forClass());
+            if(id != null) writeShort(id);
+            else {
+                writeShort(UNREGISTERED);
+                writeUTF(desc.getName());
+            }
+        }
+    }
+
+    //ObjectInputStream che ricostruisce il descrittore di ogni classe a partire dalla classe locale
+    private final class CompactInputStream extends ObjectInputStream {
+        CompactInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected void readStreamHeader() {
+            //l'intestazione è letta da decode
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            int id = readUnsignedShort();
+            Class<?> c = id == UNREGISTERED ? classForName(readUTF()) : classOf(id);
+            ObjectStreamClass desc = ObjectStreamClass.lookupAny(c);
+            if(desc == null) throw new InvalidClassException(c.getName(), "class can't be deserialized");
+            return desc;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) {
+            return desc.forClass();
+        }
+    }
+}
@@ -0,0 +1,1936 @@
+package SecureContainer;
+
+import SecureContainer.Exceptions.CredentialException;
+import SecureContainer.Exceptions.DuplicatedUserException;
+import SecureContainer.Exceptions.NoAccessException;
+import SecureContainer.Exceptions.UnknownUserException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class ConcurrentSecureDataContainer<E extends SecureFile> extends SecureFile implements ISecureFileContainer<E> {
+    /*
+     * Overview:
+     * ConcurrentSecureDataContainer è un'implementazione di ISecureFileContainer che può essere utilizzata da più thread
+     * contemporaneamente senza sincronizzazione esterna.
+     * Le strutture dati sono mappe concorrenti. Le operazioni su un singolo dato acquisiscono il lock (in lettura o in
+     * scrittura) della partizione (stripe) a cui appartiene il dato:
+     *   - get, getSnapshot, readFileFromDisk: lock in lettura, quindi letture concorrenti dello stesso dato o di dati
+     *     diversi non si bloccano a vicenda;
+     *   - put, remove, copy, shareR, shareW, writeFileOnDisk: lock in scrittura della sola partizione del dato.
+     * Tutte le operazioni acquisiscono inoltre in lettura structureLock; le operazioni che modificano la struttura del
+     * container nel suo complesso (createUser, removeUser, readContainerFromDisk, writeContainerOnDisk) lo acquisiscono
+     * in scrittura. I lock vengono sempre acquisiti nell'ordine structureLock, stripe.
+     * La verifica delle password avviene prima di acquisire qualunque lock.
+     * Se il journal è abilitato le modifiche vengono registrate mentre si possiede il lock del dato, quindi le
+     * operazioni sullo stesso dato compaiono nel journal nell'ordine in cui sono state eseguite; la riscrittura di
+     * this su disco quando il journal supera la dimensione massima avviene dopo aver rilasciato i lock, acquisendo
+     * structureLock in scrittura.
+     */
+
+    /*
+     AF(c):
+        U = c.users.values
+        D = c.files.keySet
+        A = c.AccessLevel
+
+        Owner(d) = c.files.get(d).owner
+        OwnedData(u) = c.ownedFiles.get(u.id)
+        Access(u,d) = c.files.get(d).accesses.get(u)
+        SharedData(u) = c.sharedFiles.get(u.id)
+
+     IR:
+        users != null && files != null && ownedFiles != null && sharedFiles != null &&
+        admin != null && admin.hasPassword() && users.get(admin.id) = admin &&
+        For all (id,u) in users. u.id = id &&
+        ownedFiles.keySet = users.keySet && sharedFiles.keySet = users.keySet &&
+        For all (d,e) in files. e.data.equals(d) && e.owner in users.values && e.accesses.get(e.owner) = W &&
+                                ownedFiles.get(e.owner.id) contiene d &&
+                                For all (u,acc) in e.accesses. u in users.values && (u = e.owner || sharedFiles.get(u.id).get(d) = acc) &&
+        sum |files| per files in ownedFiles.values = |files| &&
+        sum |m| per m in sharedFiles.values = sum (|e.accesses| - 1) per e in files.values
+
+     NOTA BENE: IR viene verificato solo mentre si possiede structureLock in scrittura, perché solo in quel caso
+                nessun altro thread può modificare this.
+     */
+
+    //Perché è opportuno definire serialversionUID ?
+    // -> https://stackoverflow.com/questions/285793/what-is-a-serialversionuid-and-why-should-i-use-it
+    private static final long serialversionUID = 12L;
+    private static final int STRIPES = 64; //numero di partizioni dei lock sui dati (potenza di 2)
+
+    private User admin; //admin del container
+    private long generation; //Generazione dello snapshot di this scritto su disco (vedi ContainerJournal)
+    private Map<String,User> users; //Utenti presenti nel container indicizzati per id
+    private Map<E,FileEntry<E>> files; //Dati presenti nel container con il relativo proprietario e livelli di accesso
+    private Map<String,Set<E>> ownedFiles; //Dati posseduti da ciascun utente del container indicizzati per id
+    private Map<String,Map<E,AccessLevel>> sharedFiles; //Dati condivisi con ciascun utente da altri utenti e relativo livello di accesso, indicizzati per id
+    private transient ReentrantReadWriteLock structureLock = new ReentrantReadWriteLock(); //Lock sulla struttura del container
+    private transient ReentrantReadWriteLock[] stripes = newStripes(); //Lock sui dati del container, partizionati per hash del dato
+    private transient SessionManager sessions = new SessionManager(); //Sessioni aperte sul container
+    private transient CredentialCache credentialCache; //Cache delle verifiche di password (null se disabilitata)
+    private transient volatile SecureFileCodec codec = new CompactSecureFileCodec(); //Formato dei documenti su disco dei dati
+    private transient volatile boolean logging; //Se true le letture/scritture dei dati su disco vengono segnalate su System.out
+    private transient volatile LoadPolicy loadPolicy = LoadPolicy.ALWAYS; //Quando get rilegge il contenuto dei dati da disco
+    private transient volatile ContainerJournal journal; //Journal delle modifiche successive allo snapshot su disco (null se disabilitato)
+    private transient volatile long journalLimit; //Dimensione in byte del journal oltre la quale this viene riscritto su disco
+    private transient volatile boolean synced; //true se lo snapshot su disco e il journal contengono tutte le modifiche di this
+    private transient volatile IOException journalFailure; //Ultimo errore che ha impedito di rendere persistente una modifica di this (null se this è stato riscritto su disco dopo l'errore)
+
+    private static final class FileEntry<E> implements Serializable {
+        private static final long serialversionUID = 13L;
+        private volatile E data; //contenuto del dato, sostituito ad ogni lettura da disco
+        private transient volatile E snapshot; //copia in sola lettura di data restituita da getSnapshot (null se non ancora creata)
+        private transient volatile Long diskVersion; //versione del documento su disco corrispondente a data (null se non caricato)
+        private final User owner; //proprietario del dato
+        private final Map<User,AccessLevel> accesses; //livello di accesso al dato di ciascun utente
+
+        FileEntry(E p_data, User p_owner) {
+            data = p_data;
+            owner = p_owner;
+            accesses = new ConcurrentHashMap<>();
+            accesses.put(p_owner, AccessLevel.W);
+        }
+    }
+
+    /*
+    Inizializza container vuoto.
+    p_filePath rappresenta il path assoluto nel quale l'intero container può essere memorizzato
+    */
+    public ConcurrentSecureDataContainer(String path) {
+        super(path);
+        users = new ConcurrentHashMap<>();
+        files = new ConcurrentHashMap<>();
+        ownedFiles = new ConcurrentHashMap<>();
+        sharedFiles = new ConcurrentHashMap<>();
+
+        admin = new User("Luca", "Diavolo!");
+        users.put(admin.getId(), admin);
+        ownedFiles.put(admin.getId(), ConcurrentHashMap.newKeySet());
+        sharedFiles.put(admin.getId(), new ConcurrentHashMap<>());
+        assert repInv();
+    }
+
+    /*
+    Verifica la condizione di IR
+    @requires chiamato mentre si possiede structureLock in scrittura
+    @return true se IR = true; false altrimenti
+     */
+    private boolean repInv() {
+        boolean ir = users != null && files != null && ownedFiles != null && sharedFiles != null && admin != null &&
+                admin.hasPassword() && admin.equals(users.get(admin.getId())) &&
+                ownedFiles.keySet().equals(users.keySet()) && sharedFiles.keySet().equals(users.keySet());
+        if(ir) {
+            //For all (id,u) in users. u.id = id
+            for (Map.Entry<String, User> entry : users.entrySet()) {
+                if (!entry.getKey().equals(entry.getValue().getId())) {
+                    ir = false;
+                    break;
+                }
+            }
+        }
+        if(ir) {
+            int granted = 0;
+            for (Map.Entry<E, FileEntry<E>> entry : files.entrySet()) {
+                E d = entry.getKey();
+                FileEntry<E> e = entry.getValue();
+                if (!d.equals(e.data) || !isRegistered(e.owner) || e.accesses.get(e.owner) != AccessLevel.W ||
+                        !ownedFiles.get(e.owner.getId()).contains(d)) {
+                    ir = false;
+                    break;
+                }
+                for (Map.Entry<User, AccessLevel> acc : e.accesses.entrySet()) {
+                    User u = acc.getKey();
+                    if (!isRegistered(u) || (!u.equals(e.owner) && sharedFiles.get(u.getId()).get(d) != acc.getValue())) {
+                        ir = false;
+                        break;
+                    }
+                }
+                if (!ir) break;
+                granted += e.accesses.size() - 1;
+            }
+            int owned = 0;
+            for (Set<E> set : ownedFiles.values()) owned += set.size();
+            int shared = 0;
+            for (Map<E, AccessLevel> map : sharedFiles.values()) shared += map.size();
+            ir = ir && owned == files.size() && shared == granted;
+        }
+        return ir;
+    }
+
+    /*
+    Crea l’identità di un nuovo utente della collezione
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              Not (Exist u appartenente a U tale che u.id = Id)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws DuplicatedUserException se (Exist u appartenente a U tale che u.id = Id)
+    @modifies this
+    @effects u = {Id,passw} && this_post.U = this_pre.U + u
+    */
+    @Override
+    public void createUser(String Id, String passw) throws NullPointerException, IllegalArgumentException, DuplicatedUserException {
+        if(passw == null) throw new NullPointerException("passw must be != null !");
+        if(passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
+        if(userExist(Id)) throw new DuplicatedUserException("users id must be unique !");
+        doCreateUser(new User(Id,passw)); //hash della password calcolato senza possedere lock
+    }
+
+    /*
+    Aggiunge u agli utenti di this e registra la creazione nel journal
+    @requires u != null && u.hasPassword()
+    @throws DuplicatedUserException se (Exist v appartenente a U tale che v.id = u.id), ad esempio perché creato da un
+            altro thread dopo la verifica del chiamante
+    @modifies this
+    @effects this_post.U = this_pre.U + u
+     */
+    private void doCreateUser(User u) throws DuplicatedUserException {
+        structureLock.writeLock().lock();
+        try {
+            assert repInv();
+            if(users.containsKey(u.getId())) throw new DuplicatedUserException("users id must be unique !");
+            addUser(u);
+            journal(j -> j.appendCreateUser(u.getId(), u.getPasswordHash()));
+            compactIfNeeded();
+            assert repInv();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Aggiunge u agli utenti di this
+    @requires u != null && Not (Exist v appartenente a U tale che v.id = u.id) &&
+              chiamato mentre si possiede structureLock in scrittura (o su un container non ancora condiviso)
+    @modifies this
+    @effects this_post.U = this_pre.U + u && OwnedData(u) = {} && SharedData(u) = {}
+     */
+    private void addUser(User u) {
+        ownedFiles.put(u.getId(), ConcurrentHashMap.newKeySet());
+        sharedFiles.put(u.getId(), new ConcurrentHashMap<>());
+        users.put(u.getId(), u);
+    }
+
+    /*
+     Rimuove l’utente dalla collezione
+     @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && !Id.equals(admin.id)
+               (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+     @throws NullPointerException se Id = null || passw = null
+     @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || Id.equals(admin.id)
+     @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+     @modifies this
+     @effects u = {Id,passw} && this_post.U = this_pre.U - u &&
+              this_post.D = this_pre.D - OwnedData(u)
+     */
+    @Override
+    public void removeUser(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doRemoveUser(Id);
+    }
+
+    /*
+    Come removeUser(Id, passw) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato
+    @throws IllegalArgumentException se Id.equals(admin.id)
+    @throws CredentialException se l'utente è stato rimosso da un altro thread
+    @modifies this
+    @effects vedi removeUser(Id, passw)
+     */
+    private void doRemoveUser(String Id) throws IllegalArgumentException, CredentialException {
+        if (Id.equals(admin.getId())) throw new IllegalArgumentException("admin user can't be removed !");
+
+        structureLock.writeLock().lock();
+        try {
+            assert repInv();
+            requireUser(Id); //l'utente potrebbe essere stato rimosso da un altro thread
+            //credenziali valide
+            sessions.closeAll(Id); //le sessioni aperte dall'utente non sono più valide
+            if(credentialCache != null) credentialCache.invalidate(Id); //la verifica della password non è più valida
+            dropUser(Id);
+            journal(j -> j.appendRemoveUser(Id));
+            compactIfNeeded();
+            assert repInv();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Rimuove l'utente u con u.id = Id e i dati di cui è proprietario
+    @requires Exist u appartenente a U tale che u.id = Id && u != admin &&
+              chiamato mentre si possiede structureLock in scrittura (o su un container non ancora condiviso)
+    @modifies this
+    @effects this_post.U = this_pre.U - u && this_post.D = this_pre.D - OwnedData(u) &&
+             For all d in this_post.D. Access(u,d) non definito
+     */
+    private void dropUser(String Id) {
+        //L'insieme dei dati che prima appartenevano all'utente u con u.id = Id devono essere rimossi
+        for (E file : ownedFiles.remove(Id)) unshareAll(file, files.remove(file));
+        //Rimuovere eventuali accessi asseganti all'utente rimosso
+        User toRemove = users.get(Id);
+        for (E file : sharedFiles.remove(Id).keySet()) files.get(file).accesses.remove(toRemove);
+        users.remove(Id); //rimuovo utente da insime degli utenti presenti
+    }
+
+    /*
+    Restituisce il numero dei file di un utente presenti nella
+    collezione
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @return Dato u = {Owner,passw} restituisce |OwnedData(u)|
+     */
+    @Override
+    public int getSize(String Owner, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetSize(Owner);
+    }
+
+    /*
+    Come getSize(Owner, passw) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato
+    @throws CredentialException se l'utente Owner è stato rimosso
+    @return Dato u con u.id = Owner restituisce |OwnedData(u)|
+     */
+    private int doGetSize(String Owner) throws CredentialException {
+        structureLock.readLock().lock();
+        try {
+            requireUser(Owner);
+            return ownedFiles.get(Owner).size();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /*
+    Inserisce il file nella collezione
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw )
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects Dato u = {Id,passw} se OwnedData(u) non contiene elementi uguali a file allora file viene inserito in
+             OwnedData(u); altrimenti file non viene inserito
+    @return Dato u = {Id,passw} restituisce true se file viene inserito in OwnedData(u), false altrimenti.
+    */
+    @Override
+    public boolean put(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, IOException {
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doPut(Owner, file);
+    }
+
+    /*
+    Come put(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null
+    @throws NullPointerException se file = null
+    @throws CredentialException se l'utente Owner è stato rimosso
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects vedi put(Owner, passw, file)
+    @return vedi put(Owner, passw, file)
+     */
+    private boolean doPut(String Owner, E file) throws NullPointerException, CredentialException, IOException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        boolean res;
+        structureLock.readLock().lock();
+        try {
+            res = insert(requireUser(Owner), file);
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return res;
+    }
+
+    /*
+    Inserisce file in D con proprietario usr e lo scrive su disco
+    @requires file != null && usr appartiene a U && chiamato mentre si possiede structureLock in lettura
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects se file non è in D, this_post.D = this_pre.D + file && Owner(file) = usr
+    @return true se file viene inserito; false altrimenti
+     */
+    private boolean insert(User usr, E file) throws IOException {
+        Lock lock = stripeFor(file).writeLock();
+        lock.lock();
+        try {
+            if(files.containsKey(file)) return false;
+            //Decommentando la riga seguente si ottiene il seguente risultato: i dati inseriti in this non sono manipolabili dall'esterno.
+            //NOTA BENE: se il dato viene modificato e si vogliono rendere effettive le modifiche occorre utilizzare il metodo writeFileOnDisk
+            //file = (E) deepCopy(file);
+            FileEntry<E> entry = link(usr, file);
+            try {
+                writeData(entry); //scrivo oggetto su disco
+            } catch (IOException | RuntimeException e) {
+                files.remove(file);
+                ownedFiles.get(usr.getId()).remove(file);
+                File doc = new File(file.getFilePath());
+                if(!doc.delete() && doc.exists()) e.addSuppressed(new IOException("Failed to remove file: " + file.getFilePath()));
+                throw e;
+            }
+            journal(j -> j.appendPut(usr.getId(), encode(file)));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Ottiene una copia del file nella collezione
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw &&
+              (Access((u,d)) = w || Access((u,d)) = r) )
+    @throws NullPointerException se Id = null || passw = null || file = null || file non in D
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Owner && u.password = passw) &&
+                                 Not (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw &&
+                                      (Access((u,d)) = w || Access((u,d)) = r) )
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return restituisce una copia del file se Access(u,d) = R; altrimenti se  Access(u,d) = W restituisce il dato stesso
+    */
+    @Override
+    public E get(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGet(Owner, file);
+    }
+
+    /*
+    Come get(Owner, passw, file) ma per un utente già autenticato.
+    Acquisisce il lock del dato in lettura: più get dello stesso dato possono essere eseguite contemporaneamente.
+    @requires Owner identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se l'utente Owner è stato rimosso
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return vedi get(Owner, passw, file)
+     */
+    private E doGet(String Owner, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        structureLock.readLock().lock();
+        try {
+            User u = requireUser(Owner);
+            Lock lock = stripeFor(file).readLock();
+            lock.lock();
+            try {
+                FileEntry<E> entry = getEntry(file);
+                AccessLevel acc = entry.accesses.get(u); //recupero livello di accesso associato all'utente
+                if(acc == null) throw new NoAccessException("user " + Owner + " has no access to file");
+
+                E res = mustLoad(entry) ? readData(entry) : entry.data; //aggiorno file con contenuto del doc relativo
+                //NOTA BENE: se l'utente ha accesso in scrittura al dato ottiene un riferimento diretto all'oggetto contenuto
+                //           in this. In questo modo le eventuali modfiche fatte dall'esterno si ripercuoteranno anche sul dato all'interno
+                //           di this. Sarà compito dell cliente decidere se salvare eventuali modifiche su disco utilizzando il metodo writeFileOnDisk
+                return acc == AccessLevel.W ? res : copyOf(res);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /*
+    Ottiene una copia in sola lettura del file nella collezione, condivisa tra tutte le chiamate a getSnapshot
+    se vengono rispettati i controlli di identità.
+    A differenza di get il contenuto non viene riletto da disco e la copia viene creata solo alla prima lettura di
+    ciascuna versione del dato: le chiamate successive restituiscono lo stesso oggetto finché il dato non viene
+    riletto da disco (get, readFileFromDisk) o scritto su disco (writeFileOnDisk).
+    NOTA BENE: l'oggetto restituito è condiviso e non deve essere modificato dal chiamante; le modifiche fatte ad un
+               dato ottenuto con get e accesso W sono visibili con getSnapshot solo dopo writeFileOnDisk.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw && d = file &&
+              (Access((u,d)) = w || Access((u,d)) = r) )
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+                                 Not (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw &&
+                                      d = file && (Access((u,d)) = w || Access((u,d)) = r) )
+    @return una copia in sola lettura di file, condivisa tra le chiamate a getSnapshot
+    */
+    @Override
+    public E getSnapshot(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetSnapshot(Id, file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws CredentialException se l'utente Id è stato rimosso
+    @modifies this
+    @effects se la voce di file non contiene una copia in sola lettura, ne crea una e la memorizza nella voce
+    @return vedi getSnapshot(Id, passw, file)
+     */
+    private E doGetSnapshot(String Id, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        structureLock.readLock().lock();
+        try {
+            User u = requireUser(Id);
+            Lock lock = stripeFor(file).readLock();
+            lock.lock();
+            try {
+                FileEntry<E> entry = getEntry(file);
+                if(!entry.accesses.containsKey(u)) throw new NoAccessException("user " + Id + " has no access to file");
+                E res = entry.snapshot;
+                if(res == null) { //prima lettura della versione corrente del dato
+                    //Più lettori concorrenti possono creare copie equivalenti: ne viene conservata l'ultima
+                    res = copyOf(entry.data);
+                    entry.snapshot = res;
+                }
+                return res;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /*
+    Rimuove il file nella collezione
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && file != null
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file)
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Owner && u.password = passw) &&
+            Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    @Override
+    public E remove(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doRemove(Owner, file);
+    }
+
+    /*
+    Come remove(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se l'utente Owner è stato rimosso
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    private E doRemove(String Owner, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        E res;
+        structureLock.readLock().lock();
+        try {
+            User u = requireUser(Owner);
+            Lock lock = stripeFor(file).writeLock();
+            lock.lock();
+            try {
+                res = removeOwned(u, Owner, file);
+                journal(j -> j.appendRemove(Owner, file.getFilePath()));
+                deleteDocument(res);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return res;
+    }
+
+    /*
+    Rimuove file da D senza registrare la rimozione nel journal né eliminare il documento su disco
+    @requires chiamato mentre si possiede structureLock.readLock() e il lock in scrittura della partizione di file &&
+              u != null && u.id = Owner && file != null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return il dato rimosso da D
+     */
+    private E removeOwned(User u, String Owner, E file) throws IllegalArgumentException, NoAccessException {
+        FileEntry<E> entry = getEntry(file);
+        if(entry.owner != u) throw new NoAccessException("user " + Owner + " must be the Owner to remove file!");
+        unlink(file);
+        return entry.data;
+    }
+
+    /*
+    Elimina il documento su disco di un dato rimosso da D
+    @requires chiamato mentre si possiede il lock in scrittura della partizione di data
+     */
+    private void deleteDocument(E data) {
+        if(!new File(data.getFilePath()).delete() && logging) System.out.println("Failed to remove file: " + data.getFilePath());
+    }
+
+    /*
+    Inserisce file in D con proprietario usr
+    @requires file != null && usr appartiene a U && file non in D &&
+              chiamato mentre si possiede il lock di file in scrittura (o su un container non ancora condiviso)
+    @modifies this
+    @effects this_post.D = this_pre.D + file && Owner(file) = usr && Access(usr,file) = w
+    @return la voce di file in files
+     */
+    private FileEntry<E> link(User usr, E file) {
+        FileEntry<E> entry = new FileEntry<>(file, usr);
+        files.put(file, entry);
+        ownedFiles.get(usr.getId()).add(file);
+        return entry;
+    }
+
+    /*
+    Rimuove file da D
+    @requires file in D && chiamato mentre si possiede il lock di file in scrittura (o su un container non ancora condiviso)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+     */
+    private void unlink(E file) {
+        FileEntry<E> entry = files.remove(file);
+        ownedFiles.get(entry.owner.getId()).remove(file);
+        unshareAll(file, entry);
+    }
+
+    /*
+    Assegna ad other il livello di accesso acc a file
+    @requires file in D && other appartiene a U && other != Owner(file) && acc != null &&
+              chiamato mentre si possiede il lock di file in scrittura (o su un container non ancora condiviso)
+    @modifies this
+    @effects Access(other,file) = acc
+     */
+    private void grant(E file, User other, AccessLevel acc) {
+        files.get(file).accesses.put(other, acc);
+        sharedFiles.get(other.getId()).put(file, acc);
+    }
+
+    /*
+    Crea una copia del file nella collezione
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && file != null &&
+              Not (Exist d in D. d.path = newFilePath) &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file)
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || Exist d in D. d.path = newFilePath
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Owner && u.password = passw) &&
+            Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects effettua una copia di file
+     */
+    @Override
+    public void copy(String Owner, String passw, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        doCopy(Owner, file, newFilePath);
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) ma per un utente già autenticato.
+    Il lock del dato originale viene rilasciato prima di acquisire quello della copia.
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file &&
+              Not (Exist d in D. d.path = newFilePath)
+    @throws NullPointerException se file = null || newFilePath = null
+    @throws IllegalArgumentException se file non in D || newFilePath.isEmpty() || Exist d in D. d.path = newFilePath
+    @throws CredentialException se l'utente Owner è stato rimosso
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects effettua una copia di file
+     */
+    private void doCopy(String Owner, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        structureLock.readLock().lock();
+        try {
+            User usr = requireUser(Owner);
+            E copyFile = copyOwned(usr, Owner, file);
+            if(files.containsKey(new SecureFile(newFilePath))) throw new IllegalArgumentException("newfilePath must be unique inside data collection!");
+            copyFile.setFilePath(newFilePath);
+            //Un altro thread potrebbe aver inserito un dato con lo stesso path dopo il controllo precedente
+            if(!insert(usr, copyFile)) throw new IllegalArgumentException("newfilePath must be unique inside data collection!");
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    /*
+    Restituisce una deep copy del contenuto corrente di file, di cui l'utente usr deve essere il proprietario
+    @requires chiamato mentre si possiede structureLock.readLock() && usr != null && usr.id = Owner && file != null
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (OwnedData(usr) contiene file)
+     */
+    private E copyOwned(User usr, String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        Lock lock = stripeFor(file).readLock();
+        lock.lock();
+        try {
+            FileEntry<E> entry = getEntry(file);
+            if(entry.owner != usr) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
+            return copyOf(entry.data);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Condivide in lettura il file nella collezione con un altro utente
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && Other!=null && Owner != Other && !Owner.isEmpty() && !passw.isEmpty() && !Other.isEmpty()
+              && file != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file) &&
+              (Exist u appartenente a U tale che u.id = Other)
+    @throws NullPointerException se Owner = null || passw = null || Other = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || Other.isEmpty() || Owner = Other
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Owner && u.password = passw) &&
+            Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file)
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = r
+     */
+    @Override
+    public void shareR(String Owner, String passw, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        doSetAccesses(Owner, Other, file, AccessLevel.R);
+    }
+
+    /*
+    Condivide in lettura e scrittura il file nella collezione con un altro utente
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && Other!=null && Owner != Other && !Owner.isEmpty() && !passw.isEmpty() && !Other.isEmpty()
+              && file != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file) &&
+              (Exist u appartenente a U tale che u.id = Other)
+    @throws NullPointerException se Owner = null || passw = null || Other = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || Other.isEmpty() || Owner = Other
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Owner && u.password = passw) &&
+            Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file)
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = w
+     */
+    @Override
+    public void shareW(String Owner, String passw, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        doSetAccesses(Owner, Other, file, AccessLevel.W);
+    }
+
+    /*
+    Assegna il livello di accesso acc a Other per file, se Owner è il proprietario di file
+    @requires Owner identifica un utente autenticato && Other != null && Owner != Other && !Other.isEmpty() &&
+              file != null && acc != null && OwnedData(u) contiene file con u.id = Owner &&
+              (Exist u appartenente a U tale che u.id = Other)
+    @throws NullPointerException se Other = null || file = null
+    @throws IllegalArgumentException se Other.isEmpty() || Owner = Other || acc = null || file non in D
+    @throws CredentialException se l'utente Owner è stato rimosso
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se Not (OwnedData(u) contiene file) con u.id = Owner
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = acc
+     */
+    private void doSetAccesses(String Owner, String Other, E file, AccessLevel acc) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException{
+        checkShare(Owner, Other, file, acc);
+        structureLock.readLock().lock();
+        try {
+            User u = requireUser(Owner);
+            Lock lock = stripeFor(file).writeLock();
+            lock.lock();
+            try {
+                grantOwned(u, Owner, Other, file, acc);
+                journal(j -> j.appendShare(Owner, Other, file.getFilePath(), acc));
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    /*
+    Verifica gli argomenti della condivisione di file da parte di Owner con Other
+    @throws NullPointerException se Other = null || file = null
+    @throws IllegalArgumentException se acc = null || Other.isEmpty() || Owner = Other
+     */
+    private static void checkShare(String Owner, String Other, SecureFile file, AccessLevel acc) throws NullPointerException, IllegalArgumentException {
+        if(Other == null) throw new NullPointerException("Other must be != null !");
+        if(acc == null) throw new IllegalArgumentException("acc can't be null !");
+        if(Other.isEmpty()) throw new IllegalArgumentException("Other can't be empty!");
+        if(Owner.equals(Other)) throw new IllegalArgumentException("You can't share data with yourself!");
+        if(file == null) throw new NullPointerException("file must be != null !");
+    }
+
+    /*
+    Assegna il livello di accesso acc a file all'utente Other senza registrare la condivisione nel journal
+    @requires chiamato mentre si possiede structureLock.readLock() e il lock in scrittura della partizione di file &&
+              u != null && u.id = Owner && gli argomenti soddisfano checkShare
+    @throws IllegalArgumentException se file non in D
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects Access(u,file) = acc con u.id = Other
+     */
+    private void grantOwned(User u, String Owner, String Other, E file, AccessLevel acc) throws IllegalArgumentException, UnknownUserException, NoAccessException {
+        FileEntry<E> entry = getEntry(file);
+        if(entry.owner != u) throw new NoAccessException("user " + Owner + " must be the Owner to share file!");
+        User otherUser = users.get(Other);
+        if(otherUser == null) throw new UnknownUserException("you are trying to share a file with unknown user: " + Other );
+
+        grant(file, otherUser, acc);
+    }
+
+    /*
+    Rimuove file dai dati condivisi con gli utenti a cui il proprietario ne aveva concesso l'accesso
+    @requires file != null && entry != null && entry è la voce di file appena rimossa da files
+    @modifies this
+    @effects For all u in entry.accesses.keySet. this_post.SharedData(u) = this_pre.SharedData(u) - file
+     */
+    private void unshareAll(E file, FileEntry<E> entry) {
+        for (User u : entry.accesses.keySet()) {
+            Map<E,AccessLevel> shared = sharedFiles.get(u.getId());
+            if(shared != null) shared.remove(file); //il proprietario non ha voce in sharedFiles per file
+        }
+    }
+
+    /*
+    Restituisce un iteratore (senza remove) che genera tutti i file
+    dell’utente in ordine arbitrario
+    se vengono rispettati i controlli di identità.
+    L'iteratore visita un'istantanea dei dati dell'utente presa al momento della chiamata.
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @return Restituisce un iteratore (senza remove) che genera tutti i file dell’utente in ordine arbitrario
+    */
+    @Override
+    public Iterator<E> getIterator(String Owner, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetIterator(Owner);
+    }
+
+    /*
+    Come getIterator(Owner, passw) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato
+    @throws CredentialException se l'utente Owner è stato rimosso
+    @return vedi getIterator(Owner, passw)
+     */
+    private Iterator<E> doGetIterator(String Owner) throws CredentialException {
+        structureLock.readLock().lock();
+        try {
+            requireUser(Owner);
+            List<E> snapshot = new ArrayList<>();
+            for (E file : ownedFiles.get(Owner)) {
+                FileEntry<E> entry = files.get(file);
+                if(entry != null) snapshot.add(entry.data);
+            }
+            //Restituisco Iteratore senza remove dei file di cui Owner è proprietario
+            return Collections.unmodifiableList(snapshot).iterator();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /*
+    Restituisce un iteratore (senza remove) che genera tutti i file condivisi con l'utente da altri utenti,
+    in ordine arbitrario, se vengono rispettati i controlli di identità.
+    I file condivisi in sola lettura sono restituiti come copia, quelli condivisi in scrittura per riferimento (come get).
+    L'iteratore visita un'istantanea dei dati condivisi presa al momento della chiamata.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @return Dato u = {Id,passw} restituisce un iteratore (senza remove) che genera tutti i d in D tali che
+            Access(u,d) è definito && Not (OwnedData(u) contiene d)
+    */
+    @Override
+    public Iterator<E> getSharedWithMe(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetSharedWithMe(Id);
+    }
+
+    /*
+    Come getSharedWithMe(Id, passw) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato
+    @throws CredentialException se l'utente Id è stato rimosso
+    @return vedi getSharedWithMe(Id, passw)
+     */
+    private Iterator<E> doGetSharedWithMe(String Id) throws CredentialException {
+        structureLock.readLock().lock();
+        try {
+            requireUser(Id);
+            List<E> snapshot = new ArrayList<>();
+            for (Map.Entry<E,AccessLevel> shared : sharedFiles.get(Id).entrySet()) {
+                FileEntry<E> entry = files.get(shared.getKey());
+                if(entry == null) continue;
+                snapshot.add(shared.getValue() == AccessLevel.W ? entry.data : copyOf(entry.data));
+            }
+            return Collections.unmodifiableList(snapshot).iterator();
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /*
+    Memorizza file nel documento su disco relativo
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+            Not (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+     */
+    @Override
+    public void writeFileOnDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doWriteFileOnDisk(Id, file);
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && Access(u,file) = w
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se l'utente Id è stato rimosso
+    @throws NoAccessException se Access(u,file) != w
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+     */
+    private void doWriteFileOnDisk(String Id, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        structureLock.readLock().lock();
+        try {
+            User u = requireUser(Id);
+            Lock lock = stripeFor(file).writeLock();
+            lock.lock();
+            try {
+                FileEntry<E> entry = getEntry(file);
+                AccessLevel acc = entry.accesses.get(u);
+                if(acc == null) throw new NoAccessException("user " + Id + " has no access to file");
+                if(acc != AccessLevel.W) throw new NoAccessException("user " + Id + " must have write access to file!");
+                writeData(entry); //memorizzo contenuto del dato presente nel container su disco
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /*
+    Leggi file dal documento su disco relativo
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+            Not (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws IOException se si verifica un errore durante la lettura su disco
+    @modifies this
+    @effects recupera contenuto di file da documento su disco relativo
+    */
+    @Override
+    public void readFileFromDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doReadFileFromDisk(Id, file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se l'utente Id è stato rimosso
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura su disco
+    @modifies this
+    @effects recupera contenuto di file da documento su disco relativo
+     */
+    private void doReadFileFromDisk(String Id, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        structureLock.readLock().lock();
+        try {
+            User u = requireUser(Id);
+            Lock lock = stripeFor(file).readLock();
+            lock.lock();
+            try {
+                FileEntry<E> entry = getEntry(file);
+                if(!entry.accesses.containsKey(u)) throw new NoAccessException("user " + Id + " has no access to file");
+                readData(entry);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    /*
+    Verifica se esiste un utente u con u.id = id
+    @requires Id != null && !Id.isEmpty()
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty()
+    @return true se esiste un utente u tale che u.id = Id; false altrimenti
+    */
+    @Override
+    public boolean userExist(String Id) throws NullPointerException, IllegalArgumentException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        if(Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
+        return users.containsKey(Id);
+    }
+
+    /*
+    Verifica se esiste un utente u con u.id = id e u.password = passw
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty()
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @return true se esiste un utente u tale che u.id = Id && u.password = passw; false altrimenti
+    */
+    @Override
+    public boolean userAuth(String Id, String passw) throws NullPointerException, IllegalArgumentException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        if(Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
+        if(passw == null) throw new NullPointerException("passw must be != null !");
+        if(passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
+        User u = users.get(Id);
+        return u != null && checkPassword(u, passw);
+    }
+
+    /*
+    Verifica se passw è la password di u, utilizzando la cache delle credenziali se abilitata
+    @requires u != null && passw != null && !passw.isEmpty() && u.hasPassword()
+    @return true se passw è la password di u; false altrimenti
+    */
+    private boolean checkPassword(User u, String passw) {
+        CredentialCache cache = credentialCache;
+        return cache == null ? u.auth(passw) : cache.auth(u, passw);
+    }
+
+    /*
+    Abilita la cache delle credenziali verificate utilizzando p_cache; se p_cache = null la cache viene disabilitata
+    @modifies this
+    @effects userAuth utilizza p_cache per evitare di ricalcolare l'hash di password già verificate
+    */
+    public void setCredentialCache(CredentialCache p_cache) {
+        credentialCache = p_cache;
+    }
+
+    /*
+    Restituisce la cache delle credenziali utilizzata da this; null se disabilitata
+    */
+    public CredentialCache getCredentialCache() {
+        return credentialCache;
+    }
+
+    /*
+    Utilizza p_codec per scrivere e leggere i dati dai documenti su disco relativi.
+    p_codec può essere utilizzato da più thread contemporaneamente.
+    @requires p_codec != null
+    @throws NullPointerException se p_codec = null
+    @modifies this
+    @effects writeFileOnDisk e readFileFromDisk utilizzano il formato definito da p_codec
+    */
+    public void setCodec(SecureFileCodec p_codec) throws NullPointerException {
+        if(p_codec == null) throw new NullPointerException("p_codec must be != null !");
+        codec = p_codec;
+    }
+
+    /*
+    Restituisce il codec utilizzato per scrivere e leggere i dati dai documenti su disco relativi
+    */
+    public SecureFileCodec getCodec() {
+        return codec;
+    }
+
+    /*
+    Abilita (p_logging = true) o disabilita la segnalazione su System.out delle letture/scritture dei dati su disco
+    @modifies this
+    */
+    public void setLogging(boolean p_logging) {
+        logging = p_logging;
+    }
+
+    /*
+    Stabilisce quando get rilegge il contenuto dei dati da disco (vedi LoadPolicy).
+    Con p_policy = EAGER i dati non ancora caricati vengono caricati subito.
+    @requires p_policy != null
+    @throws NullPointerException se p_policy = null
+    @modifies this
+    */
+    public void setLoadPolicy(LoadPolicy p_policy) throws NullPointerException {
+        if(p_policy == null) throw new NullPointerException("p_policy must be != null !");
+        structureLock.writeLock().lock();
+        try {
+            loadPolicy = p_policy;
+            if(loadPolicy == LoadPolicy.EAGER) loadAll();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Restituisce la politica con la quale get rilegge il contenuto dei dati da disco
+    */
+    public LoadPolicy getLoadPolicy() {
+        return loadPolicy;
+    }
+
+    /*
+    Restituisce true: i metodi di this possono essere invocati da più thread contemporaneamente
+    */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /*
+    Abilita il journal delle modifiche di this (vedi ContainerJournal), memorizzato nel documento getFilePath() + ".journal".
+    Da questo momento createUser, removeUser, put, copy, remove, shareR e shareW vengono rese persistenti aggiungendo un
+    record al journal; quando il journal supera p_maxSize byte this viene riscritto su disco e il journal svuotato.
+    readContainerFromDisk riapplica allo snapshot letto le modifiche registrate nel journal.
+    Se this contiene modifiche non presenti su disco (ad esempio se non è mai stato letto o scritto su disco) viene
+    riscritto su disco immediatamente.
+    @requires p_maxSize > 0
+    @throws IllegalArgumentException se p_maxSize <= 0
+    @throws IOException se si verifica un errore durante l'accesso al disco; in tal caso il journal resta disabilitato
+    @modifies this
+    */
+    public void enableJournal(long p_maxSize) throws IllegalArgumentException, IOException {
+        if(p_maxSize <= 0) throw new IllegalArgumentException("p_maxSize must be > 0 !");
+        structureLock.writeLock().lock();
+        try {
+            if(journal == null) journal = new ContainerJournal(journalPath());
+            journalLimit = p_maxSize;
+            try {
+                if(synced) journal.open(generation);
+                else compact();
+            } catch(IOException ex) {
+                journal.close();
+                journal = null;
+                throw ex;
+            }
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Disabilita il journal delle modifiche di this: le modifiche successive vengono rese persistenti solo da writeContainerOnDisk
+    @throws IOException se si verifica un errore durante la chiusura del journal
+    @modifies this
+    */
+    public void disableJournal() throws IOException {
+        structureLock.writeLock().lock();
+        try {
+            if(journal == null) return;
+            journal.close();
+        } finally {
+            journal = null;
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Restituisce il journal delle modifiche di this; null se disabilitato
+    */
+    public ContainerJournal getJournal() {
+        return journal;
+    }
+
+    /*
+    Restituisce true se lo snapshot su disco e il journal contengono tutte le modifiche di this; false se this è stato
+    modificato dall'ultima scrittura su disco a journal disabilitato, o se né il journal né la riscrittura di this su disco
+    sono riusciti a registrare una modifica (vedi getJournalFailure)
+    */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /*
+    Restituisce l'ultimo errore di scrittura del journal o di riscrittura di this su disco che ha impedito di rendere
+    persistente una modifica di this; null se non si è verificato alcun errore dall'ultima scrittura di this su disco
+    */
+    public IOException getJournalFailure() {
+        return journalFailure;
+    }
+
+    /*
+    Memorizza this nel documento su disco relativo.
+    Durante la scrittura nessun'altra operazione può modificare this.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @effects scrivi contenuto di this nel documento su disco relativo
+    @return restituisce true se this viene scritto correttamente su disco; false atrimenti
+     */
+    @Override
+    public boolean writeContainerOnDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        if(!admin.getId().equals(Id)) throw new CredentialException("user " + Id + " is not an admin");
+        structureLock.writeLock().lock();
+        try {
+            assert repInv();
+            try {
+                compact();
+            } catch(IOException ex) {
+                ex.printStackTrace();
+                return false;
+            }
+            return true;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Inizializza this con ciò che viene letto dal documento su disco relativo.
+    Durante la lettura nessun'altra operazione può accedere a this.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @modifies this
+    @effects inizializza this con ciò che viene letto dal documento su disco relativo
+    @return restituisce true se la lettura ha successo; false altrimenti
+     */
+    @Override
+    public boolean readContainerFromDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        if(!admin.getId().equals(Id)) throw new CredentialException("user " + Id + " is not an admin");
+        structureLock.writeLock().lock();
+        try {
+            assert repInv();
+            // Deserialization
+            try {
+                @SuppressWarnings("unchecked")
+                ConcurrentSecureDataContainer<E> newContainer = (ConcurrentSecureDataContainer<E>) ContainerSnapshot.read(getFilePath());
+                //Riapplico allo snapshot le modifiche successive registrate nel journal
+                newContainer.replayJournal(codec);
+                //Aggiorno variabili di istanza
+                this.generation = newContainer.generation;
+                this.admin = newContainer.admin;
+                this.users = newContainer.users;
+                this.files = newContainer.files;
+                this.ownedFiles = newContainer.ownedFiles;
+                this.sharedFiles = newContainer.sharedFiles;
+                //gli utenti sono stati sostituiti: le sessioni e le verifiche di password precedenti potrebbero non essere più valide
+                sessions.retainUsers(users::containsKey);
+                if(credentialCache != null) credentialCache.clear();
+                synced = true;
+                journalFailure = null;
+                if(journal != null) journal.open(generation);
+            } catch(IOException | ClassNotFoundException ex) {
+                ex.printStackTrace();
+                return false;
+            }
+            if(loadPolicy == LoadPolicy.EAGER) loadAll();
+            assert repInv();
+            return true;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Apre una sessione per l'utente u con u.id = Id
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @modifies this
+    @return una nuova sessione valida s tale che Id(s) = Id
+    */
+    @Override
+    public Session login(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        return sessions.open(Id);
+    }
+
+    /*
+    Chiude la sessione s. Dopo la chiusura s non è più valida.
+    @requires s != null
+    @throws NullPointerException se s = null
+    @modifies this
+    @effects s non è più valida
+    */
+    @Override
+    public void logout(Session s) throws NullPointerException {
+        sessions.close(s);
+    }
+
+    /*
+    Verifica che la sessione s sia valida
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void checkSession(Session s) throws NullPointerException, CredentialException {
+        sessions.resolve(s);
+    }
+
+    /*
+    Restituisce le operazioni sugli utenti di this che ShardedSecureFileContainer esegue dopo aver verificato le
+    credenziali sullo shard di riferimento (vedi ShardAccess)
+     */
+    ShardAccess<E> shardAccess() {
+        return new ShardAccess<E>() {
+            @Override
+            public void createUser(String Id, String passwordHash) throws NullPointerException, IllegalArgumentException, DuplicatedUserException {
+                if(passwordHash == null) throw new NullPointerException("passwordHash must be != null !");
+                if(passwordHash.isEmpty()) throw new IllegalArgumentException("passwordHash can't be empty!");
+                if(userExist(Id)) throw new DuplicatedUserException("users id must be unique !");
+                doCreateUser(User.withPasswordHash(Id, passwordHash));
+            }
+
+            @Override
+            public Session login(String Id) throws NullPointerException, CredentialException {
+                if(Id == null) throw new NullPointerException("Id must be != null !");
+                if(!users.containsKey(Id)) throw new CredentialException("valid users' credentials are required !");
+                return sessions.open(Id);
+            }
+
+            @Override
+            public void removeUser(String Id) throws NullPointerException, IllegalArgumentException, CredentialException {
+                if(Id == null) throw new NullPointerException("Id must be != null !");
+                doRemoveUser(Id);
+            }
+
+            @Override
+            public E ownedCopy(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+                String Owner = sessions.resolve(s);
+                structureLock.readLock().lock();
+                try {
+                    return copyOwned(requireUser(Owner), Owner, file);
+                } finally {
+                    structureLock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    /*
+    Come getSize(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public int getSize(Session s) throws NullPointerException, CredentialException {
+        return doGetSize(sessions.resolve(s));
+    }
+
+    /*
+    Come put(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public boolean put(Session s, E file) throws NullPointerException, CredentialException, IOException {
+        return doPut(sessions.resolve(s), file);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) con u.id = Id(s). Vengono acquisiti una sola volta i lock delle partizioni dei dati
+    di files e i dati vengono scritti su disco in parallelo (vedi SecureFileCodec.writeAll).
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<Boolean> putAll(Session s, List<E> p_files) throws NullPointerException, CredentialException {
+        return doPutAll(sessions.resolve(s), p_files);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && p_files != null
+    @throws NullPointerException se p_files = null
+    @throws CredentialException se l'utente Owner è stato rimosso
+    @modifies this
+    @effects vedi putAll(Owner, passw, files)
+    @return vedi putAll(Owner, passw, files)
+     */
+    private BatchResult<Boolean> doPutAll(String Owner, List<E> p_files) throws NullPointerException, CredentialException {
+        if(p_files == null) throw new NullPointerException("files must be != null !");
+        BatchResult<Boolean> res = new BatchResult<>(p_files.size());
+        structureLock.readLock().lock();
+        try {
+            User usr = requireUser(Owner);
+            List<Lock> locks = lockStripes(p_files);
+            try {
+                List<FileEntry<E>> linked = new ArrayList<>(); //dati inseriti in D, da scrivere su disco
+                List<E> linkedData = new ArrayList<>();
+                List<Integer> linkedPos = new ArrayList<>(); //posizione in p_files di ciascun dato di linked
+                for(int i = 0; i < p_files.size(); i++) {
+                    E file = p_files.get(i);
+                    if(file == null) res.fail(i, new NullPointerException("file must be != null !"));
+                    else if(files.containsKey(file)) res.succeed(i, false); //anche se compare più volte in p_files
+                    else {
+                        linked.add(link(usr, file));
+                        linkedData.add(file);
+                        linkedPos.add(i);
+                    }
+                }
+
+                Exception[] errors = codec.writeAll(linkedData); //scrivo i dati su disco
+                for(int k = 0; k < linked.size(); k++) {
+                    FileEntry<E> entry = linked.get(k);
+                    E file = entry.data;
+                    try {
+                        if(errors[k] != null) throw errors[k];
+                        entry.diskVersion = diskVersion(file);
+                    } catch(Exception e) {
+                        //come insert: il dato non scritto su disco viene rimosso
+                        files.remove(file);
+                        ownedFiles.get(usr.getId()).remove(file);
+                        File doc = new File(file.getFilePath());
+                        if(!doc.delete() && doc.exists()) e.addSuppressed(new IOException("Failed to remove file: " + file.getFilePath()));
+                        res.fail(linkedPos.get(k), e);
+                        continue;
+                    }
+                    journal(j -> j.appendPut(usr.getId(), encode(file)));
+                    if(logging) System.out.println("Object has been serialized");
+                    res.succeed(linkedPos.get(k), true);
+                }
+            } finally {
+                unlockAll(locks);
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return res;
+    }
+
+    /*
+    Come get(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E get(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        return doGet(sessions.resolve(s), file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E getSnapshot(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return doGetSnapshot(sessions.resolve(s), file);
+    }
+
+    /*
+    Come remove(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E remove(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return doRemove(sessions.resolve(s), file);
+    }
+
+    /*
+    Come removeAll(Owner, passw, files) con u.id = Id(s). Vengono acquisiti una sola volta i lock delle partizioni dei
+    dati di files e le rimozioni vengono registrate nel journal con un'unica scrittura.
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<E> removeAll(Session s, List<E> files) throws NullPointerException, CredentialException {
+        String Owner = sessions.resolve(s);
+        if(files == null) throw new NullPointerException("files must be != null !");
+        BatchResult<E> res = new BatchResult<>(files.size());
+        structureLock.readLock().lock();
+        try {
+            User u = requireUser(Owner);
+            List<Lock> locks = lockStripes(files);
+            try {
+                List<E> removed = new ArrayList<>(); //dati rimossi da D, di cui eliminare il documento su disco
+                List<String> removedPaths = new ArrayList<>();
+                for(int i = 0; i < files.size(); i++) {
+                    try {
+                        E file = files.get(i);
+                        if(file == null) throw new NullPointerException("file must be != null !");
+                        E data = removeOwned(u, Owner, file);
+                        res.succeed(i, data);
+                        removed.add(data);
+                        removedPaths.add(file.getFilePath());
+                    } catch(RuntimeException e) {
+                        res.fail(i, e);
+                    }
+                }
+                if(!removed.isEmpty()) journal(j -> j.appendRemoveAll(Owner, removedPaths));
+                for(E data : removed) deleteDocument(data);
+            } finally {
+                unlockAll(locks);
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return res;
+    }
+
+    /*
+    Come shareAll(Owner, passw, Other, files, acc) con Owner = Id(s). Vengono acquisiti una sola volta i lock delle
+    partizioni dei dati di files e le condivisioni vengono registrate nel journal con un'unica scrittura.
+    @throws NullPointerException se s = null || files = null || acc = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<Void> shareAll(Session s, String Other, List<E> files, AccessLevel acc) throws NullPointerException, CredentialException {
+        String Owner = sessions.resolve(s);
+        if(files == null) throw new NullPointerException("files must be != null !");
+        if(acc == null) throw new NullPointerException("acc must be != null !");
+        BatchResult<Void> res = new BatchResult<>(files.size());
+        structureLock.readLock().lock();
+        try {
+            User u = requireUser(Owner);
+            List<Lock> locks = lockStripes(files);
+            try {
+                List<String> shared = new ArrayList<>(); //path dei dati condivisi
+                for(int i = 0; i < files.size(); i++) {
+                    try {
+                        E file = files.get(i);
+                        checkShare(Owner, Other, file, acc);
+                        grantOwned(u, Owner, Other, file, acc);
+                        shared.add(file.getFilePath());
+                    } catch(RuntimeException e) {
+                        res.fail(i, e);
+                    }
+                }
+                if(!shared.isEmpty()) journal(j -> j.appendShareAll(Owner, Other, shared, acc));
+            } finally {
+                unlockAll(locks);
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        compactIfNeeded();
+        return res;
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null || newFilePath = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void copy(Session s, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        doCopy(sessions.resolve(s), file, newFilePath);
+    }
+
+    /*
+    Come shareR(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareR(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        doSetAccesses(sessions.resolve(s), Other, file, AccessLevel.R);
+    }
+
+    /*
+    Come shareW(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareW(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        doSetAccesses(sessions.resolve(s), Other, file, AccessLevel.W);
+    }
+
+    /*
+    Come getIterator(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getIterator(Session s) throws NullPointerException, CredentialException {
+        return doGetIterator(sessions.resolve(s));
+    }
+
+    /*
+    Come getSharedWithMe(Id, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getSharedWithMe(Session s) throws NullPointerException, CredentialException {
+        return doGetSharedWithMe(sessions.resolve(s));
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void writeFileOnDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        doWriteFileOnDisk(sessions.resolve(s), file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void readFileFromDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        doReadFileFromDisk(sessions.resolve(s), file);
+    }
+
+    /*
+    Restituisce l'utente u con u.id = Id
+    @requires chiamato mentre si possiede structureLock
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id), ad esempio perché rimosso
+            da un altro thread dopo l'autenticazione
+    @return u appartenente a U tale che u.id = Id
+     */
+    private User requireUser(String Id) throws CredentialException {
+        User u = users.get(Id);
+        if(u == null) throw new CredentialException("valid users' credentials are required !");
+        return u;
+    }
+
+    /*
+    Restituisce la voce di files relativa a file
+    @requires chiamato mentre si possiede il lock di file
+    @throws IllegalArgumentException se file non in D
+     */
+    private FileEntry<E> getEntry(E file) throws IllegalArgumentException {
+        FileEntry<E> entry = files.get(file);
+        if(entry == null) throw new IllegalArgumentException("file must be inside data collection!");
+        return entry;
+    }
+
+    /*
+    Verifica se u è un utente registrato in this
+    @return true se u != null && u appartiene a U; false altrimenti
+     */
+    private boolean isRegistered(User u){
+        return u != null && u == users.get(u.getId());
+    }
+
+    /*
+    Scrive il contenuto del dato di entry nel documento su disco relativo
+    @requires entry != null && chiamato mentre si possiede il lock del dato in scrittura
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies entry
+     */
+    private void writeData(FileEntry<E> entry) throws IOException {
+        codec.write(entry.data);
+        if(logging) System.out.println("Object has been serialized");
+        entry.snapshot = null; //il contenuto memorizzato potrebbe essere cambiato: la copia precedente non è più valida
+        entry.diskVersion = diskVersion(entry.data);
+    }
+
+    /*
+    Legge dal documento su disco il contenuto del dato di entry e lo sostituisce a quello presente in entry
+    @requires entry != null && chiamato mentre si possiede il lock del dato (anche solo in lettura)
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @modifies entry
+    @return il dato appena letto
+     */
+    private E readData(FileEntry<E> entry) throws IOException, ClassNotFoundException {
+        long version = diskVersion(entry.data); //letta prima del contenuto: una scrittura successiva verrà rilevata da VALIDATE
+        @SuppressWarnings("unchecked")
+        E newfile = (E) codec.read(entry.data.getFilePath());
+        if(logging) System.out.println("Object has been deserialized");
+        //Letture concorrenti dello stesso dato sostituiscono entry.data con contenuti equivalenti
+        entry.data = newfile;
+        entry.snapshot = null; //la copia in sola lettura si riferisce alla versione precedente del dato
+        entry.diskVersion = version;
+        return newfile;
+    }
+
+    /*
+    Verifica se get deve rileggere da disco il dato di entry secondo loadPolicy
+    @requires entry != null && chiamato mentre si possiede il lock del dato (anche solo in lettura)
+    @throws IOException se loadPolicy = VALIDATE e non è possibile leggere la versione del documento su disco
+    @return true se il dato deve essere letto da disco; false se può essere utilizzato il contenuto in memoria
+     */
+    private boolean mustLoad(FileEntry<E> entry) throws IOException {
+        Long version = entry.diskVersion;
+        switch (loadPolicy) {
+            case ALWAYS:
+                return true;
+            case VALIDATE:
+                return version == null || version != diskVersion(entry.data);
+            default:
+                return version == null;
+        }
+    }
+
+    /*
+    Carica da disco tutti i dati non ancora caricati. I dati il cui documento non può essere letto restano non caricati
+    e verranno letti da get.
+    @requires chiamato mentre si possiede structureLock in scrittura
+    @modifies this
+     */
+    private void loadAll() {
+        for (FileEntry<E> entry : files.values()) {
+            if(entry.diskVersion != null) continue;
+            try {
+                readData(entry);
+            } catch(IOException | ClassNotFoundException ex) {
+                //l'errore viene sollevato da get, che rilegge il dato
+                if(logging) System.out.println("Failed to load file: " + entry.data.getFilePath());
+            }
+        }
+    }
+
+    /*
+    Scrive this nel documento su disco relativo (snapshot) e svuota il journal, che da questo momento si riferisce al
+    nuovo snapshot; se il journal è disabilitato elimina l'eventuale journal di uno snapshot precedente
+    @requires chiamato mentre si possiede structureLock in scrittura
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+     */
+    private void compact() throws IOException {
+        generation++; //il journal dello snapshot precedente non è più valido
+        // Serialization
+        ContainerSnapshot.write(getFilePath(), this); //memorizzo contenuto del container su disco
+        ContainerJournal j = journal;
+        if(j == null) Files.deleteIfExists(Paths.get(journalPath()));
+        else if(j.isOpen()) j.reset(generation);
+        else j.open(generation);
+        synced = true;
+        journalFailure = null;
+    }
+
+    /*
+    Registra l'operazione append nel journal, se abilitato. Se la scrittura sul journal non va a buon fine this non è
+    più sincronizzato con il disco e verrà riscritto da compactIfNeeded; se anche la riscrittura non va a buon fine isSynced()
+    restituisce false e l'errore è restituito da getJournalFailure.
+    @requires chiamato mentre si possiede il lock in scrittura del dato modificato o structureLock in scrittura
+    @modifies this
+     */
+    private void journal(ContainerJournal.Append append) {
+        ContainerJournal j = journal;
+        if(j == null) {
+            synced = false; //la modifica non viene registrata su disco
+            return;
+        }
+        if(!synced) return; //la modifica verrà resa persistente dalla prossima riscrittura di this
+        try {
+            append.to(j);
+        } catch(IOException ex) {
+            journalFailure = ex; //vedi getJournalFailure
+            synced = false;
+        }
+    }
+
+    /*
+    Riscrive this su disco e svuota il journal se il journal è abilitato e non contiene tutte le modifiche di this o
+    supera journalLimit byte
+    @requires non chiamato mentre si possiede structureLock in lettura
+    @modifies this
+     */
+    private void compactIfNeeded() {
+        ContainerJournal j = journal;
+        if(j == null || (synced && j.size() < journalLimit)) return;
+        structureLock.writeLock().lock();
+        try {
+            j = journal; //un altro thread potrebbe aver già riscritto this
+            if(j == null || (synced && j.size() < journalLimit)) return;
+            compact();
+        } catch(IOException ex) {
+            journalFailure = ex; //vedi getJournalFailure
+            synced = false;
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Riapplica a this le modifiche registrate nel journal dello snapshot di generazione generation.
+    Utilizza solo le variabili di istanza memorizzate nello snapshot: può essere chiamato su un container appena letto da
+    disco e non ancora condiviso con altri thread.
+    @throws IOException se si verifica un errore durante la lettura del journal
+    @throws ClassNotFoundException se non è possibile deserializzare un dato registrato nel journal
+    @modifies this
+    @return true se esiste il journal dello snapshot di generazione generation; false altrimenti
+     */
+    private boolean replayJournal(SecureFileCodec p_codec) throws IOException, ClassNotFoundException {
+        //Le operazioni sono state verificate prima di essere registrate: vengono ignorate solo quelle non più applicabili
+        return new ContainerJournal(journalPath()).replay(generation, new ContainerJournal.Visitor() {
+            @Override
+            public void createUser(String id, String passwordHash) {
+                if(!users.containsKey(id)) addUser(User.withPasswordHash(id, passwordHash));
+            }
+
+            @Override
+            public void removeUser(String id) {
+                if(users.containsKey(id) && !admin.getId().equals(id)) dropUser(id);
+            }
+
+            @Override
+            public void put(String owner, byte[] file) throws IOException, ClassNotFoundException {
+                @SuppressWarnings("unchecked")
+                E d = (E) p_codec.decode(new ByteArrayInputStream(file));
+                if(users.containsKey(owner) && !files.containsKey(d)) link(users.get(owner), d);
+            }
+
+            @Override
+            public void remove(String owner, String filePath) {
+                FileEntry<E> entry = files.get(new SecureFile(filePath));
+                if(entry != null && entry.owner.getId().equals(owner)) unlink(entry.data);
+            }
+
+            @Override
+            public void share(String owner, String other, String filePath, AccessLevel acc) {
+                FileEntry<E> entry = files.get(new SecureFile(filePath));
+                if(entry == null || !entry.owner.getId().equals(owner) || owner.equals(other) || !users.containsKey(other)) return;
+                grant(entry.data, users.get(other), acc);
+            }
+        });
+    }
+
+    /*
+    Restituisce il path del documento su disco del journal di this
+     */
+    private String journalPath() {
+        return getFilePath() + ".journal";
+    }
+
+    /*
+    Restituisce il contenuto di file codificato con codec
+    @throws IOException se si verifica un errore durante la codifica
+     */
+    private byte[] encode(E file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.encode(file, bytes);
+        return bytes.toByteArray();
+    }
+
+    /*
+    Restituisce la versione del documento su disco di file, ovvero l'istante della sua ultima modifica
+    @throws IOException se non è possibile leggere gli attributi del documento
+     */
+    private static long diskVersion(SecureFile file) throws IOException {
+        return Files.getLastModifiedTime(Paths.get(file.getFilePath())).to(TimeUnit.NANOSECONDS);
+    }
+
+    /*
+    Restituisce il lock della partizione a cui appartiene file
+     */
+    private ReentrantReadWriteLock stripeFor(Object file) {
+        return stripes[stripeIndex(file)];
+    }
+
+    /*
+    Restituisce l'indice in stripes della partizione dei lock a cui appartiene file
+     */
+    private static int stripeIndex(Object file) {
+        int h = file.hashCode();
+        h ^= (h >>> 16);
+        return h & (STRIPES - 1);
+    }
+
+    /*
+    Acquisisce in scrittura i lock delle partizioni dei dati != null di files, in ordine di indice, in modo che due
+    chiamate batch concorrenti non possano attendersi a vicenda
+    @return i lock acquisiti (vedi unlockAll)
+     */
+    private List<Lock> lockStripes(List<E> files) {
+        boolean[] used = new boolean[STRIPES];
+        for(E file : files) if(file != null) used[stripeIndex(file)] = true;
+        List<Lock> locks = new ArrayList<>();
+        for(int i = 0; i < STRIPES; i++) {
+            if(!used[i]) continue;
+            Lock lock = stripes[i].writeLock();
+            lock.lock();
+            locks.add(lock);
+        }
+        return locks;
+    }
+
+    /*
+    Rilascia i lock acquisiti da lockStripes, in ordine inverso
+     */
+    private static void unlockAll(List<Lock> locks) {
+        for(int i = locks.size() - 1; i >= 0; i--) locks.get(i).unlock();
+    }
+
+    private static ReentrantReadWriteLock[] newStripes() {
+        ReentrantReadWriteLock[] res = new ReentrantReadWriteLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) res[i] = new ReentrantReadWriteLock();
+        return res;
+    }
+
+    /*
+    Restituisce una deep copy di d (vedi deepCopy)
+    @requires d != null
+     */
+    @SuppressWarnings("unchecked")
+    private E copyOf(E d) {
+        return (E) deepCopy(d);
+    }
+
+    /* Restituisce una deep copy di orig, o null se l'oggetto non può essere serializzato.
+     * @requires orig != null
+     * @throws NullPointerException se orig = null
+     * @return null se si è verificato
+     */
+    private Object deepCopy(Object orig) throws NullPointerException{
+        if(orig == null) throw new NullPointerException("orig ucan't be null!");
+
+        Object obj = null;
+        try {
+            // Conversione dell'oggetto in un array di byte
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bos);
+            out.writeObject(orig);
+            out.flush();
+            out.close();
+
+            // Crea un input stream dall'array di byte e leggi
+            // una copia dell'oggetto
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bos.toByteArray()));
+            obj = in.readObject();
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+        }
+        catch(ClassNotFoundException cnfe) {
+            cnfe.printStackTrace();
+        }
+        return obj;
+    }
+}
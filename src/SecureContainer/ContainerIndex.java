@@ -0,0 +1,607 @@
+package SecureContainer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+public final class ContainerIndex implements Closeable {
+    /*
+     * Overview:
+     * ContainerIndex è la rappresentazione su disco di un container che può essere mappata in memoria (mmap) e
+     * interrogata senza deserializzarla: aprire un indice richiede tempo costante, indipendentemente dal numero di
+     * utenti e di dati, e le interrogazioni leggono direttamente le pagine del documento mappato.
+     * Un indice è immutabile: viene scritto da ContainerIndex.Writer e sostituito atomicamente da un nuovo indice.
+     * Le interrogazioni possono essere eseguite da più thread contemporaneamente.
+     * open verifica solo l'intestazione e le tabelle: un record danneggiato viene rilevato dall'interrogazione che lo
+     * legge, che solleva UncheckedIOException con causa StreamCorruptedException.
+     *
+     * Formato (interi big-endian, stringhe UTF-8 precedute dalla lunghezza in byte):
+     *   intestazione: MAGIC, VERSION, offset record admin, n. utenti, n. slot e offset tabella utenti,
+     *                 n. dati, n. slot e offset tabella dati
+     *   record utente: id, hash password, n. dati posseduti + offset dei record dato,
+     *                  n. dati condivisi + (offset record dato, livello di accesso)
+     *   record dato: path, offset record proprietario, n. accessi + (offset record utente, livello di accesso),
+     *                contenuto del dato codificato (vedi SecureFileCodec)
+     *   tabelle utenti e dati: hash table ad indirizzamento aperto (scansione lineare) con chiave id/path; ogni slot
+     *                contiene l'offset del record (0 se vuoto)
+     * Gli accessi dei record dato non comprendono il proprietario, che ha sempre accesso W.
+     *
+     * Typical Element:
+     *    <admin, {<id_0, hash_0>, ..., <id_n-1, hash_n-1>}, {<path_0, owner_0, acc_0, data_0>, ..., <path_m-1, owner_m-1, acc_m-1, data_m-1>}>
+     *
+     * IR:
+     *    buffer = null || (buffer.getInt(0) = MAGIC && buffer.getInt(4) = VERSION &&
+     *                      le tabelle utenti e dati sono contenute in buffer && userSlots e fileSlots sono potenze di 2)
+     */
+
+    private static final int MAGIC = 0x53464958; //"SFIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 9 * Integer.BYTES;
+
+    //Livelli di accesso memorizzati nei record
+    private static final byte READ = 'R';
+    private static final byte WRITE = 'W';
+
+    private final String path; //path del documento su disco dell'indice
+    private volatile ByteBuffer buffer; //contenuto del documento mappato in memoria (null se chiuso)
+    private final int admin; //offset del record dell'admin
+    private final int userCount; //numero di utenti
+    private final int userSlots; //numero di slot della tabella utenti
+    private final int userTable; //offset della tabella utenti
+    private final int fileCount; //numero di dati
+    private final int fileSlots; //numero di slot della tabella dati
+    private final int fileTable; //offset della tabella dati
+
+    private ContainerIndex(String p_path, ByteBuffer p_buffer) throws StreamCorruptedException {
+        path = p_path;
+        buffer = p_buffer;
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new StreamCorruptedException("not a container index: " + path);
+        if(buffer.getInt(4) != VERSION) throw new StreamCorruptedException("unsupported container index version: " + buffer.getInt(4));
+        admin = buffer.getInt(8);
+        userCount = buffer.getInt(12);
+        userSlots = buffer.getInt(16);
+        userTable = buffer.getInt(20);
+        fileCount = buffer.getInt(24);
+        fileSlots = buffer.getInt(28);
+        fileTable = buffer.getInt(32);
+        if(!validTable(userSlots, userTable, userCount) || !validTable(fileSlots, fileTable, fileCount) ||
+           admin < HEADER_SIZE || admin >= buffer.capacity()) throw new StreamCorruptedException("corrupted container index: " + path);
+    }
+
+    private boolean validTable(int slots, int table, int count) {
+        return slots > 0 && Integer.bitCount(slots) == 1 && count >= 0 && count < slots &&
+               table >= HEADER_SIZE && (long) table + (long) slots * Integer.BYTES <= buffer.capacity();
+    }
+
+    /*
+    Mappa in memoria in sola lettura l'indice memorizzato nel documento su disco p_path
+    @requires p_path != null && !p_path.isEmpty()
+    @throws NullPointerException se p_path = null
+    @throws IllegalArgumentException se p_path.isEmpty()
+    @throws StreamCorruptedException se il documento non contiene un indice valido
+    @throws IOException se si verifica un errore durante l'accesso al disco o il documento supera 2GB
+    @return l'indice memorizzato in p_path
+    */
+    public static ContainerIndex open(String p_path) throws NullPointerException, IllegalArgumentException, IOException {
+        if(p_path == null) throw new NullPointerException("p_path must be != null !");
+        if(p_path.isEmpty()) throw new IllegalArgumentException("p_path can't be an empty string!");
+        try (FileChannel channel = FileChannel.open(Paths.get(p_path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE) throw new IOException("container index too large to be mapped: " + p_path);
+            //La mappatura resta valida dopo la chiusura del canale
+            return new ContainerIndex(p_path, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /*
+    Restituisce il path del documento su disco dell'indice
+    */
+    public String getPath() {
+        return path;
+    }
+
+    /*
+    Restituisce l'id dell'admin
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    */
+    public String getAdminId() throws IllegalStateException {
+        return readString(buffer(), admin);
+    }
+
+    /*
+    Restituisce il numero di utenti presenti nell'indice
+    */
+    public int getUserCount() {
+        return userCount;
+    }
+
+    /*
+    Restituisce il numero di dati presenti nell'indice
+    */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /*
+    Verifica se l'indice contiene l'utente u con u.id = id
+    @requires id != null
+    @throws NullPointerException se id = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    */
+    public boolean containsUser(String id) throws NullPointerException, IllegalStateException {
+        return findUser(buffer(), id) != 0;
+    }
+
+    /*
+    Restituisce l'hash della password dell'utente u con u.id = id
+    @requires id != null
+    @throws NullPointerException se id = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    @return l'hash della password di u; null se l'indice non contiene u
+    */
+    public String getPasswordHash(String id) throws NullPointerException, IllegalStateException {
+        ByteBuffer buf = buffer();
+        int rec = findUser(buf, id);
+        return rec == 0 ? null : readString(buf, skipString(buf, rec));
+    }
+
+    /*
+    Restituisce i path dei dati di cui è proprietario l'utente u con u.id = id
+    @requires id != null
+    @throws NullPointerException se id = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    @return i path dei dati posseduti da u; lista vuota se l'indice non contiene u
+    */
+    public List<String> getOwnedFiles(String id) throws NullPointerException, IllegalStateException {
+        ByteBuffer buf = buffer();
+        int rec = findUser(buf, id);
+        if(rec == 0) return Collections.emptyList();
+        int pos = skipString(buf, skipString(buf, rec));
+        int n = readCount(buf, pos, Integer.BYTES);
+        List<String> res = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) res.add(readString(buf, buf.getInt(pos + Integer.BYTES * (i + 1))));
+        return res;
+    }
+
+    /*
+    Restituisce i path dei dati condivisi con l'utente u con u.id = id e il relativo livello di accesso
+    @requires id != null
+    @throws NullPointerException se id = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    @return mappa path -> livello di accesso dei dati condivisi con u; mappa vuota se l'indice non contiene u
+    */
+    public Map<String,AccessLevel> getSharedFiles(String id) throws NullPointerException, IllegalStateException {
+        ByteBuffer buf = buffer();
+        int rec = findUser(buf, id);
+        if(rec == 0) return Collections.emptyMap();
+        int pos = skipString(buf, skipString(buf, rec));
+        pos += Integer.BYTES * (readCount(buf, pos, Integer.BYTES) + 1); //salto i dati posseduti
+        return readGrants(buf, pos);
+    }
+
+    /*
+    Verifica se l'indice contiene il dato con path filePath
+    @requires filePath != null
+    @throws NullPointerException se filePath = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    */
+    public boolean containsFile(String filePath) throws NullPointerException, IllegalStateException {
+        return findFile(buffer(), filePath) != 0;
+    }
+
+    /*
+    Restituisce l'id del proprietario del dato con path filePath
+    @requires filePath != null
+    @throws NullPointerException se filePath = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    @return l'id del proprietario; null se l'indice non contiene il dato
+    */
+    public String getOwner(String filePath) throws NullPointerException, IllegalStateException {
+        ByteBuffer buf = buffer();
+        int rec = findFile(buf, filePath);
+        return rec == 0 ? null : readString(buf, readInt(buf, skipString(buf, rec)));
+    }
+
+    /*
+    Restituisce il livello di accesso dell'utente u con u.id = id al dato con path filePath, senza creare oggetti per
+    gli altri utenti che vi hanno accesso
+    @requires filePath != null && id != null
+    @throws NullPointerException se filePath = null || id = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    @return W se u è il proprietario; il livello di accesso assegnato ad u; null se u non ha accesso o l'indice non
+            contiene il dato o u
+    */
+    public AccessLevel getAccess(String filePath, String id) throws NullPointerException, IllegalStateException {
+        ByteBuffer buf = buffer();
+        int rec = findFile(buf, filePath);
+        int usr = findUser(buf, id);
+        if(rec == 0 || usr == 0) return null;
+        int pos = skipString(buf, rec);
+        if(readInt(buf, pos) == usr) return AccessLevel.W;
+        pos += Integer.BYTES;
+        int n = readCount(buf, pos, Integer.BYTES + 1);
+        pos += Integer.BYTES;
+        for (int i = 0; i < n; i++, pos += Integer.BYTES + 1) {
+            if(buf.getInt(pos) == usr) return toAccessLevel(buf.get(pos + Integer.BYTES));
+        }
+        return null;
+    }
+
+    /*
+    Restituisce gli utenti diversi dal proprietario che hanno accesso al dato con path filePath
+    @requires filePath != null
+    @throws NullPointerException se filePath = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    @return mappa id -> livello di accesso; mappa vuota se l'indice non contiene il dato
+    */
+    public Map<String,AccessLevel> getAccesses(String filePath) throws NullPointerException, IllegalStateException {
+        ByteBuffer buf = buffer();
+        int rec = findFile(buf, filePath);
+        if(rec == 0) return Collections.emptyMap();
+        return readGrants(buf, skipString(buf, rec) + Integer.BYTES);
+    }
+
+    /*
+    Restituisce il contenuto codificato (vedi SecureFileCodec) del dato con path filePath
+    @requires filePath != null
+    @throws NullPointerException se filePath = null
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    @return il contenuto codificato del dato; null se l'indice non contiene il dato
+    */
+    public byte[] getData(String filePath) throws NullPointerException, IllegalStateException {
+        ByteBuffer buf = buffer();
+        int rec = findFile(buf, filePath);
+        if(rec == 0) return null;
+        int pos = skipString(buf, rec) + Integer.BYTES;
+        pos += Integer.BYTES + (Integer.BYTES + 1) * readCount(buf, pos, Integer.BYTES + 1); //salto gli accessi
+        byte[] res = new byte[readCount(buf, pos, 1)];
+        buf.duplicate().position(pos + Integer.BYTES).get(res);
+        return res;
+    }
+
+    /*
+    Restituisce gli id di tutti gli utenti presenti nell'indice
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    */
+    public List<String> getUserIds() throws IllegalStateException {
+        return readKeys(buffer(), userTable, userSlots, userCount);
+    }
+
+    /*
+    Restituisce i path di tutti i dati presenti nell'indice
+    @throws IllegalStateException se l'indice è stato chiuso
+    @throws UncheckedIOException se l'indice è danneggiato
+    */
+    public List<String> getFilePaths() throws IllegalStateException {
+        return readKeys(buffer(), fileTable, fileSlots, fileCount);
+    }
+
+    /*
+    Chiude l'indice: le interrogazioni successive sollevano IllegalStateException.
+    La memoria mappata viene rilasciata dal garbage collector.
+    */
+    @Override
+    public void close() {
+        buffer = null;
+    }
+
+    private ByteBuffer buffer() throws IllegalStateException {
+        ByteBuffer buf = buffer;
+        if(buf == null) throw new IllegalStateException("container index is closed!");
+        return buf;
+    }
+
+    private int findUser(ByteBuffer buf, String id) {
+        if(id == null) throw new NullPointerException("id must be != null !");
+        return find(buf, userTable, userSlots, id);
+    }
+
+    private int findFile(ByteBuffer buf, String filePath) {
+        if(filePath == null) throw new NullPointerException("filePath must be != null !");
+        return find(buf, fileTable, fileSlots, filePath);
+    }
+
+    /*
+    Cerca nella tabella table il record con chiave key
+    @return offset del record; 0 se la tabella non contiene key
+     */
+    private int find(ByteBuffer buf, int table, int slots, String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        int mask = slots - 1;
+        int slot = hash(key) & mask;
+        for (int i = 0; i < slots; i++, slot = (slot + 1) & mask) {
+            int rec = buf.getInt(table + slot * Integer.BYTES);
+            if(rec == 0 || keyEquals(buf, rec, k)) return rec;
+        }
+        return 0;
+    }
+
+    private boolean keyEquals(ByteBuffer buf, int rec, byte[] key) {
+        if(readCount(buf, rec, 1) != key.length) return false;
+        for (int i = 0; i < key.length; i++) {
+            if(buf.get(rec + Integer.BYTES + i) != key[i]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private List<String> readKeys(ByteBuffer buf, int table, int slots, int count) {
+        List<String> res = new ArrayList<>(count);
+        for (int slot = 0; slot < slots; slot++) {
+            int rec = buf.getInt(table + slot * Integer.BYTES);
+            if(rec != 0) res.add(readString(buf, rec));
+        }
+        return res;
+    }
+
+    //Legge la lista (n, (offset record, livello di accesso)*) in posizione pos come mappa chiave del record -> livello
+    private Map<String,AccessLevel> readGrants(ByteBuffer buf, int pos) {
+        int n = readCount(buf, pos, Integer.BYTES + 1);
+        pos += Integer.BYTES;
+        Map<String,AccessLevel> res = new HashMap<>();
+        for (int i = 0; i < n; i++, pos += Integer.BYTES + 1) {
+            res.put(readString(buf, buf.getInt(pos)), toAccessLevel(buf.get(pos + Integer.BYTES)));
+        }
+        return res;
+    }
+
+    private String readString(ByteBuffer buf, int pos) {
+        byte[] bytes = new byte[readCount(buf, pos, 1)];
+        buf.duplicate().position(pos + Integer.BYTES).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int skipString(ByteBuffer buf, int pos) {
+        return pos + Integer.BYTES + readCount(buf, pos, 1);
+    }
+
+    //Legge l'intero in posizione pos, che deve essere contenuto in un record
+    private int readInt(ByteBuffer buf, int pos) {
+        checkRange(buf, pos, Integer.BYTES);
+        return buf.getInt(pos);
+    }
+
+    //Legge il numero n di elementi di size byte della lista in posizione pos, che deve essere contenuta in un record
+    private int readCount(ByteBuffer buf, int pos, int size) {
+        int n = readInt(buf, pos);
+        if(n < 0) throw corrupted();
+        checkRange(buf, (long) pos + Integer.BYTES, (long) n * size);
+        return n;
+    }
+
+    private void checkRange(ByteBuffer buf, long pos, long length) {
+        if(pos < HEADER_SIZE || pos + length > buf.capacity()) throw corrupted();
+    }
+
+    private UncheckedIOException corrupted() {
+        return new UncheckedIOException(new StreamCorruptedException("corrupted container index: " + path));
+    }
+
+    private static AccessLevel toAccessLevel(byte b) {
+        return b == WRITE ? AccessLevel.W : AccessLevel.R;
+    }
+
+    public static final class Writer {
+        /*
+         * Overview:
+         * Writer raccoglie utenti, dati e accessi di un container e li scrive su disco nel formato di ContainerIndex.
+         */
+
+        private static final class UserRecord {
+            private final byte[] id;
+            private final byte[] hash;
+            private final List<FileRecord> owned = new ArrayList<>(); //dati posseduti
+            private final Map<FileRecord,AccessLevel> shared = new LinkedHashMap<>(); //dati condivisi con l'utente
+            private int offset;
+
+            UserRecord(String p_id, String p_hash) {
+                id = p_id.getBytes(StandardCharsets.UTF_8);
+                hash = p_hash.getBytes(StandardCharsets.UTF_8);
+            }
+
+            int size() {
+                return 4 * Integer.BYTES + id.length + hash.length + owned.size() * Integer.BYTES + shared.size() * (Integer.BYTES + 1);
+            }
+        }
+
+        private static final class FileRecord {
+            private final byte[] path;
+            private final UserRecord owner;
+            private final byte[] data;
+            private final Map<UserRecord,AccessLevel> accesses = new LinkedHashMap<>(); //accessi degli altri utenti
+            private int offset;
+
+            FileRecord(String p_path, UserRecord p_owner, byte[] p_data) {
+                path = p_path.getBytes(StandardCharsets.UTF_8);
+                owner = p_owner;
+                data = p_data;
+            }
+
+            int size() {
+                return 4 * Integer.BYTES + path.length + data.length + accesses.size() * (Integer.BYTES + 1);
+            }
+        }
+
+        private final String adminId; //id dell'admin
+        private final Map<String,UserRecord> users = new LinkedHashMap<>(); //utenti indicizzati per id
+        private final Map<String,FileRecord> files = new LinkedHashMap<>(); //dati indicizzati per path
+
+        /*
+        Inizializza un indice vuoto il cui admin è l'utente u con u.id = p_adminId.
+        @requires p_adminId != null && !p_adminId.isEmpty()
+        @throws NullPointerException se p_adminId = null
+        @throws IllegalArgumentException se p_adminId.isEmpty()
+        */
+        public Writer(String p_adminId) throws NullPointerException, IllegalArgumentException {
+            if(p_adminId == null) throw new NullPointerException("p_adminId must be != null !");
+            if(p_adminId.isEmpty()) throw new IllegalArgumentException("p_adminId can't be an empty string!");
+            adminId = p_adminId;
+        }
+
+        /*
+        Aggiunge all'indice l'utente con id id e hash della password passwordHash
+        @requires id != null && passwordHash != null && l'indice non contiene id
+        @throws NullPointerException se id = null || passwordHash = null
+        @throws IllegalArgumentException se l'indice contiene già id
+        */
+        public void addUser(String id, String passwordHash) throws NullPointerException, IllegalArgumentException {
+            if(id == null) throw new NullPointerException("id must be != null !");
+            if(passwordHash == null) throw new NullPointerException("passwordHash must be != null !");
+            if(users.containsKey(id)) throw new IllegalArgumentException("duplicated user: " + id);
+            users.put(id, new UserRecord(id, passwordHash));
+        }
+
+        /*
+        Aggiunge all'indice il dato con path filePath, proprietario owner e contenuto codificato data
+        @requires filePath != null && owner != null && data != null && l'indice contiene owner e non contiene filePath
+        @throws NullPointerException se filePath = null || owner = null || data = null
+        @throws IllegalArgumentException se l'indice non contiene owner o contiene già filePath
+        */
+        public void addFile(String filePath, String owner, byte[] data) throws NullPointerException, IllegalArgumentException {
+            if(filePath == null) throw new NullPointerException("filePath must be != null !");
+            if(data == null) throw new NullPointerException("data must be != null !");
+            UserRecord usr = requireUser(owner);
+            if(files.containsKey(filePath)) throw new IllegalArgumentException("duplicated file: " + filePath);
+            FileRecord rec = new FileRecord(filePath, usr, data);
+            files.put(filePath, rec);
+            usr.owned.add(rec);
+        }
+
+        /*
+        Assegna all'utente id il livello di accesso acc al dato con path filePath
+        @requires filePath != null && id != null && acc != null && l'indice contiene filePath e id &&
+                  id non è il proprietario del dato
+        @throws NullPointerException se filePath = null || id = null || acc = null
+        @throws IllegalArgumentException se l'indice non contiene filePath o id o id è il proprietario del dato
+        */
+        public void grant(String filePath, String id, AccessLevel acc) throws NullPointerException, IllegalArgumentException {
+            if(filePath == null) throw new NullPointerException("filePath must be != null !");
+            if(acc == null) throw new NullPointerException("acc must be != null !");
+            FileRecord rec = files.get(filePath);
+            if(rec == null) throw new IllegalArgumentException("unknown file: " + filePath);
+            UserRecord usr = requireUser(id);
+            if(rec.owner == usr) throw new IllegalArgumentException("the owner always has write access to " + filePath);
+            rec.accesses.put(usr, acc);
+            usr.shared.put(rec, acc);
+        }
+
+        private UserRecord requireUser(String id) {
+            if(id == null) throw new NullPointerException("id must be != null !");
+            UserRecord usr = users.get(id);
+            if(usr == null) throw new IllegalArgumentException("unknown user: " + id);
+            return usr;
+        }
+
+        /*
+        Scrive l'indice nel documento su disco p_path, sostituendo atomicamente il contenuto precedente
+        @requires p_path != null && !p_path.isEmpty() && l'indice contiene l'admin
+        @throws NullPointerException se p_path = null
+        @throws IllegalArgumentException se p_path.isEmpty()
+        @throws IllegalStateException se l'indice non contiene l'admin
+        @throws IOException se si verifica un errore durante la scrittura o l'indice supera 2GB; in tal caso il
+                documento p_path non viene modificato
+        */
+        public void write(String p_path) throws NullPointerException, IllegalArgumentException, IllegalStateException, IOException {
+            if(p_path == null) throw new NullPointerException("p_path must be != null !");
+            if(p_path.isEmpty()) throw new IllegalArgumentException("p_path can't be an empty string!");
+            UserRecord adminRecord = users.get(adminId);
+            if(adminRecord == null) throw new IllegalStateException("the index must contain the admin " + adminId);
+
+            //Assegno gli offset dei record, poi delle tabelle
+            long pos = HEADER_SIZE;
+            for (UserRecord usr : users.values()) {
+                usr.offset = (int) pos;
+                pos += usr.size();
+                if(pos > Integer.MAX_VALUE) throw new IOException("container index too large: " + p_path);
+            }
+            for (FileRecord rec : files.values()) {
+                rec.offset = (int) pos;
+                pos += rec.size();
+                if(pos > Integer.MAX_VALUE) throw new IOException("container index too large: " + p_path);
+            }
+            int userSlots = slots(users.size());
+            int fileSlots = slots(files.size());
+            long userTable = pos;
+            long fileTable = userTable + (long) userSlots * Integer.BYTES;
+            if(fileTable + (long) fileSlots * Integer.BYTES > Integer.MAX_VALUE) throw new IOException("container index too large: " + p_path);
+
+            ContainerSnapshot.writeAtomically(p_path, f -> {
+                DataOutputStream out = new DataOutputStream(f);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(adminRecord.offset);
+                out.writeInt(users.size());
+                out.writeInt(userSlots);
+                out.writeInt((int) userTable);
+                out.writeInt(files.size());
+                out.writeInt(fileSlots);
+                out.writeInt((int) fileTable);
+                for (UserRecord usr : users.values()) {
+                    writeBytes(out, usr.id);
+                    writeBytes(out, usr.hash);
+                    out.writeInt(usr.owned.size());
+                    for (FileRecord rec : usr.owned) out.writeInt(rec.offset);
+                    out.writeInt(usr.shared.size());
+                    for (Map.Entry<FileRecord,AccessLevel> grant : usr.shared.entrySet()) {
+                        out.writeInt(grant.getKey().offset);
+                        out.writeByte(grant.getValue() == AccessLevel.W ? WRITE : READ);
+                    }
+                }
+                for (FileRecord rec : files.values()) {
+                    writeBytes(out, rec.path);
+                    out.writeInt(rec.owner.offset);
+                    out.writeInt(rec.accesses.size());
+                    for (Map.Entry<UserRecord,AccessLevel> grant : rec.accesses.entrySet()) {
+                        out.writeInt(grant.getKey().offset);
+                        out.writeByte(grant.getValue() == AccessLevel.W ? WRITE : READ);
+                    }
+                    writeBytes(out, rec.data);
+                }
+                writeTable(out, userSlots, users.keySet(), id -> users.get(id).offset);
+                writeTable(out, fileSlots, files.keySet(), p -> files.get(p).offset);
+                out.flush();
+            });
+        }
+
+        //Numero di slot di una tabella con n chiavi: potenza di 2 con fattore di carico <= 0.5
+        private static int slots(int n) {
+            return Integer.highestOneBit(Math.max(1, n) * 2 + 1) << 1;
+        }
+
+        private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static void writeTable(DataOutputStream out, int slots, Set<String> keys, ToIntFunction<String> offset) throws IOException {
+            int[] table = new int[slots];
+            int mask = slots - 1;
+            for (String key : keys) {
+                int slot = hash(key) & mask;
+                while (table[slot] != 0) slot = (slot + 1) & mask;
+                table[slot] = offset.applyAsInt(key);
+            }
+            for (int rec : table) out.writeInt(rec);
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package SecureContainer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+public class ContainerJournal implements Closeable {
+    /*
+     * Overview:
+     * ContainerJournal è un registro append-only, memorizzato su disco, delle operazioni che modificano la struttura di
+     * un container (createUser, removeUser, put, remove, shareR/shareW) dopo l'ultima scrittura del container su disco
+     * (snapshot). Lo stato del container si ottiene leggendo lo snapshot e riapplicando in ordine le operazioni del journal.
+     * Il journal appartiene ad uno snapshot: la sua intestazione contiene la generazione dello snapshot e le operazioni
+     * vengono riapplicate solo se coincide con quella dello snapshot letto.
+     * Formato: intestazione (MAGIC: int, generazione: long) seguita dai record (lunghezza: int, CRC32 del contenuto: int,
+     * contenuto). Il contenuto di un record è il tipo dell'operazione seguito dai suoi argomenti.
+     * Un record incompleto o con CRC errato (ad esempio dopo un'interruzione durante la scrittura) termina il journal:
+     * open lo elimina insieme ai record successivi.
+     * Durabilità: di default un record è persistente solo quando il sistema operativo lo scrive su disco, quindi dopo
+     * un'interruzione dell'alimentazione possono andare persi gli ultimi record registrati (il journal resta comunque
+     * leggibile fino all'ultimo record valido). Con setForceOnAppend(true) ogni append ritorna solo dopo che il record è
+     * stato reso persistente con FileChannel.force: gli append concorrenti condividono la stessa force (group sync),
+     * perché una force rende persistenti tutti i record scritti fino a quel momento.
+     * Può essere utilizzato da più thread contemporaneamente: i record vengono scritti nell'ordine delle chiamate.
+     * L'accesso al canale è protetto da un ReentrantLock e non da synchronized, in modo che un virtual thread in attesa
+     * della scrittura su disco non blocchi il thread di piattaforma che lo esegue.
+     *
+     * Typical Element:
+     *    <generation, [r_0, ..., r_n-1]>
+     *
+     * IR:
+     *    path != null && (channel = null || (channel.isOpen() && size = channel.size())) && 0 <= forced <= size
+     */
+
+    private static final int MAGIC = 0x53464A31; //"SFJ1"
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES; //MAGIC + generazione
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES; //lunghezza + CRC32
+
+    //Tipi di record
+    private static final byte CREATE_USER = 1;
+    private static final byte REMOVE_USER = 2;
+    private static final byte PUT = 3;
+    private static final byte REMOVE = 4;
+    private static final byte SHARE = 5;
+
+    private final Path path; //documento su disco del journal
+    private FileChannel channel; //canale aperto in scrittura sul journal (null se il journal non è aperto)
+    private long size; //dimensione in byte del journal aperto
+    private final ReentrantLock lock = new ReentrantLock(); //protegge channel, size, epoch e forced
+    private final ReentrantLock forceLock = new ReentrantLock(); //serializza le force del canale (acquisito prima di lock)
+    private long epoch; //incrementato quando il contenuto del journal viene sostituito (open, reset, close)
+    private long forced; //dimensione del journal già resa persistente con force nell'epoca corrente
+    private volatile boolean forceOnAppend; //true se ogni append attende che il record sia persistente
+
+    /*
+    Operazioni registrate nel journal, riapplicate da replay
+     */
+    public interface Visitor {
+        void createUser(String id, String passwordHash);
+        void removeUser(String id);
+        void put(String owner, byte[] file) throws IOException, ClassNotFoundException;
+        void remove(String owner, String filePath);
+        void share(String owner, String other, String filePath, AccessLevel acc);
+    }
+
+    /*
+    Operazione di scrittura sul journal
+     */
+    public interface Append {
+        void to(ContainerJournal journal) throws IOException;
+    }
+
+    /*
+    Crea il journal memorizzato nel documento su disco p_path, senza aprirlo
+    @requires p_path != null && !p_path.isEmpty()
+    @throws NullPointerException se p_path = null
+    @throws IllegalArgumentException se p_path.isEmpty()
+     */
+    public ContainerJournal(String p_path) throws NullPointerException, IllegalArgumentException {
+        if(p_path == null) throw new NullPointerException("p_path must be != null !");
+        if(p_path.isEmpty()) throw new IllegalArgumentException("p_path can't be an empty string!");
+        path = Paths.get(p_path);
+    }
+
+    /*
+    Restituisce il path del documento su disco del journal
+     */
+    public String getPath() {
+        return path.toString();
+    }
+
+    /*
+    Se p_force ogni append ritorna solo dopo che il record è stato reso persistente su disco (FileChannel.force); altrimenti
+    la persistenza dei record è affidata al sistema operativo
+    @modifies this
+     */
+    public void setForceOnAppend(boolean p_force) {
+        forceOnAppend = p_force;
+    }
+
+    /*
+    Restituisce true se ogni append attende che il record sia persistente su disco
+     */
+    public boolean isForceOnAppend() {
+        return forceOnAppend;
+    }
+
+    /*
+    Restituisce true se il journal è aperto in scrittura
+     */
+    public boolean isOpen() {
+        lock.lock();
+        try {
+            return channel != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Restituisce la dimensione in byte del journal aperto; 0 se il journal non è aperto
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Apre il journal in scrittura per lo snapshot di generazione generation.
+    Se il documento su disco contiene un journal della stessa generazione, i nuovi record vengono aggiunti dopo l'ultimo
+    record valido (gli eventuali record non validi vengono eliminati); altrimenti il journal viene svuotato.
+    @throws IOException se si verifica un errore durante l'accesso al documento su disco
+    @modifies this
+    @effects il journal è aperto in scrittura per generation
+     */
+    public void open(long generation) throws IOException {
+        lock.lock();
+        try {
+            close();
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long end = validEnd(ch, generation);
+                if(end < 0) {
+                    ch.truncate(0);
+                    ch.position(0);
+                    writeFully(ch, header(generation));
+                    end = HEADER_SIZE;
+                }
+                else {
+                    ch.truncate(end);
+                    ch.position(end);
+                }
+                if(forceOnAppend) ch.force(false);
+                channel = ch;
+                size = end;
+                epoch++;
+                forced = end;
+            } catch(IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Svuota il journal aperto e lo associa allo snapshot di generazione generation
+    @requires isOpen()
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+     */
+    public void reset(long generation) throws IllegalStateException, IOException {
+        lock.lock();
+        try {
+            if(channel == null) throw new IllegalStateException("journal is not open!");
+            channel.truncate(0);
+            channel.position(0);
+            writeFully(channel, header(generation));
+            if(forceOnAppend) channel.force(false);
+            size = HEADER_SIZE;
+            epoch++;
+            forced = size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Riapplica, nell'ordine in cui sono state registrate, le operazioni del journal su disco relativo allo snapshot di
+    generazione generation. Il journal su disco non viene modificato.
+    @requires visitor != null
+    @throws NullPointerException se visitor = null
+    @throws IOException se si verifica un errore durante la lettura da disco o visitor non riesce ad applicare un record
+    @throws ClassNotFoundException se visitor non riesce a deserializzare un dato
+    @return true se il documento su disco contiene un journal della generazione generation (anche vuoto); false altrimenti
+     */
+    public boolean replay(long generation, Visitor visitor) throws NullPointerException, IOException, ClassNotFoundException {
+        if(visitor == null) throw new NullPointerException("visitor must be != null !");
+        if(!Files.exists(path)) return false;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            return scan(ch, generation, visitor) >= 0;
+        }
+    }
+
+    /*
+    Registra la creazione dell'utente id con hash della password passwordHash
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    public void appendCreateUser(String id, String passwordHash) throws IllegalStateException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(CREATE_USER);
+        out.writeUTF(id);
+        out.writeUTF(passwordHash);
+        append(bytes.toByteArray());
+    }
+
+    /*
+    Registra la rimozione dell'utente id
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    public void appendRemoveUser(String id) throws IllegalStateException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REMOVE_USER);
+        out.writeUTF(id);
+        append(bytes.toByteArray());
+    }
+
+    /*
+    Registra l'inserimento del dato file (codificato con il codec del container) con proprietario owner
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    public void appendPut(String owner, byte[] file) throws IllegalStateException, IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(file.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(PUT);
+        out.writeUTF(owner);
+        out.writeInt(file.length);
+        out.write(file);
+        append(bytes.toByteArray());
+    }
+
+    /*
+    Registra la rimozione da parte di owner del dato memorizzato in filePath
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    public void appendRemove(String owner, String filePath) throws IllegalStateException, IOException {
+        append(removeRecord(owner, filePath));
+    }
+
+    /*
+    Registra la rimozione da parte di owner dei dati memorizzati in filePaths, un record per dato, con una sola
+    scrittura su disco (e una sola force se forceOnAppend)
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco: in tal caso nessun record viene registrato
+     */
+    public void appendRemoveAll(String owner, List<String> filePaths) throws IllegalStateException, IOException {
+        List<byte[]> payloads = new ArrayList<>(filePaths.size());
+        for(String filePath : filePaths) payloads.add(removeRecord(owner, filePath));
+        append(payloads);
+    }
+
+    /*
+    Registra la condivisione da parte di owner del dato memorizzato in filePath con other e livello di accesso acc
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    public void appendShare(String owner, String other, String filePath, AccessLevel acc) throws IllegalStateException, IOException {
+        append(shareRecord(owner, other, filePath, acc));
+    }
+
+    /*
+    Registra la condivisione da parte di owner dei dati memorizzati in filePaths con other e livello di accesso acc, un
+    record per dato, con una sola scrittura su disco (e una sola force se forceOnAppend)
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco: in tal caso nessun record viene registrato
+     */
+    public void appendShareAll(String owner, String other, List<String> filePaths, AccessLevel acc) throws IllegalStateException, IOException {
+        List<byte[]> payloads = new ArrayList<>(filePaths.size());
+        for(String filePath : filePaths) payloads.add(shareRecord(owner, other, filePath, acc));
+        append(payloads);
+    }
+
+    /*
+    Restituisce il contenuto del record di rimozione da parte di owner del dato memorizzato in filePath
+     */
+    private static byte[] removeRecord(String owner, String filePath) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REMOVE);
+        out.writeUTF(owner);
+        out.writeUTF(filePath);
+        return bytes.toByteArray();
+    }
+
+    /*
+    Restituisce il contenuto del record di condivisione da parte di owner del dato memorizzato in filePath con other
+     */
+    private static byte[] shareRecord(String owner, String other, String filePath, AccessLevel acc) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(SHARE);
+        out.writeUTF(owner);
+        out.writeUTF(other);
+        out.writeUTF(filePath);
+        out.writeByte(acc.ordinal());
+        return bytes.toByteArray();
+    }
+
+    /*
+    Chiude il journal; se il journal non è aperto non ha effetto
+    @throws IOException se si verifica un errore durante la chiusura
+    @modifies this
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if(channel == null) return;
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+                size = 0;
+                epoch++;
+                forced = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Aggiunge al journal aperto un record con contenuto payload, con una sola scrittura su disco; se forceOnAppend
+    attende che il record sia persistente
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    private void append(byte[] payload) throws IllegalStateException, IOException {
+        append(Collections.singletonList(payload));
+    }
+
+    /*
+    Aggiunge al journal aperto un record per ciascun contenuto di payloads, nell'ordine, con una sola scrittura su
+    disco; se forceOnAppend attende che i record siano persistenti. Se la scrittura non riesce nessun record viene aggiunto.
+    @throws IllegalStateException se !isOpen()
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    private void append(List<byte[]> payloads) throws IllegalStateException, IOException {
+        if(payloads.isEmpty()) return;
+        long recordEpoch;
+        long recordEnd;
+        lock.lock();
+        try {
+            if(channel == null) throw new IllegalStateException("journal is not open!");
+            int length = 0;
+            for(byte[] payload : payloads) length += RECORD_HEADER_SIZE + payload.length;
+            ByteBuffer record = ByteBuffer.allocate(length);
+            CRC32 crc = new CRC32();
+            for(byte[] payload : payloads) {
+                crc.reset();
+                crc.update(payload);
+                record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            }
+            record.flip();
+            try {
+                writeFully(channel, record);
+            } catch(IOException e) {
+                //Elimino l'eventuale record scritto parzialmente, in modo che i record successivi restino leggibili
+                channel.truncate(size);
+                channel.position(size);
+                throw e;
+            }
+            size += record.limit();
+            recordEpoch = epoch;
+            recordEnd = size;
+        } finally {
+            lock.unlock();
+        }
+        if(forceOnAppend) force(recordEpoch, recordEnd);
+    }
+
+    /*
+    Rende persistente il journal almeno fino alla posizione end dell'epoca recordEpoch. Se nel frattempo un altro
+    thread ha eseguito una force che comprende end non ha effetto; se il contenuto del journal è stato sostituito
+    (open, reset, close) il record non fa più parte del journal e non ha effetto.
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    private void force(long recordEpoch, long end) throws IOException {
+        forceLock.lock();
+        try {
+            FileChannel ch;
+            long target;
+            lock.lock();
+            try {
+                if(epoch != recordEpoch || forced >= end) return;
+                ch = channel;
+                target = size; //la force comprende anche i record scritti dopo end
+            } finally {
+                lock.unlock();
+            }
+            try {
+                ch.force(false);
+            } catch(ClosedChannelException e) {
+                lock.lock();
+                try {
+                    if(epoch == recordEpoch) throw e;
+                    return; //journal chiuso nel frattempo
+                } finally {
+                    lock.unlock();
+                }
+            }
+            lock.lock();
+            try {
+                if(epoch == recordEpoch) forced = Math.max(forced, target);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    /*
+    Legge il journal da ch a partire dall'inizio e, se visitor != null, riapplica i record validi
+    @return la posizione successiva all'ultimo record valido; -1 se ch non contiene un journal della generazione generation
+     */
+    private static long scan(FileChannel ch, long generation, Visitor visitor) throws IOException, ClassNotFoundException {
+        if(ch.size() < HEADER_SIZE) return -1;
+        ch.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), SecureFileCodec.BUFFER_SIZE));
+        if(in.readInt() != MAGIC || in.readLong() != generation) return -1;
+        long end = HEADER_SIZE;
+        long available = ch.size() - HEADER_SIZE;
+        while (available >= RECORD_HEADER_SIZE) {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if(length < 0 || length > available - RECORD_HEADER_SIZE) break; //record incompleto
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if((int) crc.getValue() != checksum) break; //record danneggiato
+            if(visitor != null) apply(payload, visitor);
+            end += RECORD_HEADER_SIZE + length;
+            available -= RECORD_HEADER_SIZE + length;
+        }
+        return end;
+    }
+
+    /*
+    Restituisce la posizione successiva all'ultimo record valido di ch; -1 se ch non contiene un journal della generazione generation
+     */
+    private static long validEnd(FileChannel ch, long generation) throws IOException {
+        try {
+            return scan(ch, generation, null);
+        } catch(ClassNotFoundException e) {
+            throw new IllegalStateException("records are not applied without a visitor", e); //non può verificarsi
+        }
+    }
+
+    /*
+    Riapplica con visitor l'operazione registrata nel record con contenuto payload
+    @throws StreamCorruptedException se il tipo del record non è valido
+     */
+    private static void apply(byte[] payload, Visitor visitor) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case CREATE_USER:
+                visitor.createUser(in.readUTF(), in.readUTF());
+                break;
+            case REMOVE_USER:
+                visitor.removeUser(in.readUTF());
+                break;
+            case PUT:
+                String owner = in.readUTF();
+                byte[] file = new byte[in.readInt()];
+                in.readFully(file);
+                visitor.put(owner, file);
+                break;
+            case REMOVE:
+                visitor.remove(in.readUTF(), in.readUTF());
+                break;
+            case SHARE:
+                visitor.share(in.readUTF(), in.readUTF(), in.readUTF(), AccessLevel.values()[in.readByte()]);
+                break;
+            default:
+                throw new StreamCorruptedException("invalid journal record type: " + type);
+        }
+    }
+
+    private static ByteBuffer header(long generation) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putLong(generation).flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) ch.write(buffer);
+    }
+}
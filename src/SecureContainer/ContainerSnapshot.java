@@ -0,0 +1,133 @@
+package SecureContainer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+public final class ContainerSnapshot {
+    /*
+     * Overview:
+     * ContainerSnapshot scrive e legge su disco lo snapshot di un container (il container serializzato).
+     * La scrittura è atomica: lo snapshot viene scritto in un documento temporaneo nella stessa cartella, reso
+     * persistente (fsync) e quindi rinominato sul documento di destinazione. Un'interruzione durante la scrittura lascia
+     * quindi su disco lo snapshot precedente, mai uno snapshot incompleto.
+     * Lo snapshot è seguito da un footer (FOOTER_MAGIC: int, CRC32 dello snapshot: int) verificato durante la lettura;
+     * gli snapshot senza footer (scritti prima della sua introduzione) vengono letti senza verifica, purché non
+     * contengano altri byte dopo l'oggetto serializzato.
+     */
+
+    private static final int FOOTER_MAGIC = 0x53465343; //"SFSC"
+    private static final int FOOTER_SIZE = 2 * Integer.BYTES; //FOOTER_MAGIC + CRC32
+
+    private ContainerSnapshot() {}
+
+    /*
+    Scrive atomicamente obj serializzato nel documento su disco path
+    @requires path != null && !path.isEmpty() && obj != null
+    @throws NullPointerException se path = null || obj = null
+    @throws IllegalArgumentException se path.isEmpty()
+    @throws IOException se si verifica un errore durante la scrittura; in tal caso il documento path non viene modificato
+    @effects il documento path contiene obj serializzato seguito dal footer
+    */
+    public static void write(String path, Serializable obj) throws NullPointerException, IllegalArgumentException, IOException {
+        if(path == null) throw new NullPointerException("path must be != null !");
+        if(path.isEmpty()) throw new IllegalArgumentException("path can't be an empty string!");
+        if(obj == null) throw new NullPointerException("obj must be != null !");
+
+        writeAtomically(path, f -> {
+            CRC32 crc = new CRC32();
+            ObjectOutputStream out = new ObjectOutputStream(new CheckedOutputStream(f, crc));
+            out.writeObject(obj);
+            out.flush();
+            DataOutputStream footer = new DataOutputStream(f);
+            footer.writeInt(FOOTER_MAGIC);
+            footer.writeInt((int) crc.getValue());
+            footer.flush();
+        });
+    }
+
+    //Contenuto di un documento scritto da writeAtomically
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /*
+    Sostituisce atomicamente il documento su disco path con quello scritto da content: content scrive in un documento
+    temporaneo nella stessa cartella che viene reso persistente (fsync) e quindi rinominato su path
+    @requires path != null && !path.isEmpty() && content != null
+    @throws IOException se si verifica un errore durante la scrittura; in tal caso il documento path non viene modificato
+    @effects il documento path contiene quanto scritto da content
+    */
+    static void writeAtomically(String path, Content content) throws IOException {
+        Path target = Paths.get(path).toAbsolutePath();
+        Path dir = target.getParent();
+        Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                OutputStream f = new BufferedOutputStream(Channels.newOutputStream(channel), SecureFileCodec.BUFFER_SIZE);
+                content.writeTo(f);
+                f.flush();
+                channel.force(true); //il documento deve essere su disco prima di sostituire il precedente
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch(IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        syncDirectory(dir);
+    }
+
+    /*
+    Legge l'oggetto serializzato nel documento su disco path, verificandone il CRC32 se presente il footer
+    @requires path != null && !path.isEmpty()
+    @throws NullPointerException se path = null
+    @throws IllegalArgumentException se path.isEmpty()
+    @throws StreamCorruptedException se il CRC32 del footer non corrisponde al contenuto del documento
+    @throws IOException se si verifica un errore durante la lettura
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return l'oggetto letto
+    */
+    public static Object read(String path) throws NullPointerException, IllegalArgumentException, IOException, ClassNotFoundException {
+        if(path == null) throw new NullPointerException("path must be != null !");
+        if(path.isEmpty()) throw new IllegalArgumentException("path can't be an empty string!");
+
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        int length = bytes.length;
+        if(length >= FOOTER_SIZE) {
+            ByteBuffer footer = ByteBuffer.wrap(bytes, length - FOOTER_SIZE, FOOTER_SIZE);
+            if(footer.getInt() == FOOTER_MAGIC) {
+                length -= FOOTER_SIZE;
+                CRC32 crc = new CRC32();
+                crc.update(bytes, 0, length);
+                if((int) crc.getValue() != footer.getInt()) throw new StreamCorruptedException("snapshot checksum mismatch: " + path);
+            }
+        }
+        ByteArrayInputStream content = new ByteArrayInputStream(bytes, 0, length);
+        try (ObjectInputStream in = new ObjectInputStream(content)) {
+            Object res = in.readObject();
+            //Byte successivi all'oggetto: footer incompleto, ad esempio di uno snapshot troncato
+            if(content.available() != 0) throw new StreamCorruptedException("unexpected data after snapshot: " + path);
+            return res;
+        }
+    }
+
+    /*
+    Rende persistente la rinomina di un documento nella cartella dir. Non tutti i sistemi permettono di aprire una
+    cartella: in tal caso la rinomina viene resa persistente dal sistema operativo.
+     */
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch(IOException ex) {
+            //cartella non apribile (ad esempio su Windows)
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package SecureContainer;
+
+import SecureContainer.Exceptions.IllegalInvocationException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CredentialCache {
+    /*
+     * Overview:
+     * CredentialCache memorizza le verifiche di password andate a buon fine più recenti, in modo da evitare di
+     * ripetere il calcolo dell'hash della password (costoso per costruzione) ad ogni autenticazione dello stesso utente.
+     * Per ogni utente viene memorizzato solo un digest HMAC di (id, password, hash della password memorizzato in User)
+     * calcolato con una chiave casuale generata alla creazione della cache: la password in chiaro non viene mai
+     * memorizzata. Poiché il digest dipende anche dall'hash memorizzato in User, un cambio di password rende
+     * automaticamente non valida la voce relativa all'utente.
+     * Una voce scade dopo ttl millisecondi; se la cache contiene maxSize voci, quella usata meno di recente viene rimossa.
+     * Può essere utilizzata da più thread contemporaneamente.
+     *
+     * Typical Element:
+     *    {(id_0, digest_0, scadenza_0), ..., (id_n-1, digest_n-1, scadenza_n-1)} con n <= maxSize
+     *
+     * IR:
+     *    entries != null && mac != null && ttl > 0 && maxSize > 0 && entries.size() <= maxSize && hits >= 0 && misses >= 0
+     */
+
+    private static final SecureRandom RAND = new SecureRandom();
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = 32;
+
+    private final long ttl; //durata di una voce in millisecondi
+    private final int maxSize; //numero massimo di voci
+    private final Mac mac; //HMAC con chiave casuale utilizzato per calcolare i digest
+    private final LinkedHashMap<String,Entry> entries; //voci della cache in ordine di accesso (LRU)
+    private long hits; //numero di verifiche risolte dalla cache
+    private long misses; //numero di verifiche non risolte dalla cache
+
+    private static final class Entry {
+        private final byte[] digest; //digest HMAC delle credenziali verificate
+        private final long expiration; //istante di scadenza della voce
+
+        Entry(byte[] p_digest, long p_expiration) {
+            digest = p_digest;
+            expiration = p_expiration;
+        }
+    }
+
+    /*
+    Crea una cache vuota
+    @requires p_ttl > 0 && p_maxSize > 0
+    @throws IllegalArgumentException se p_ttl <= 0 || p_maxSize <= 0
+    @throws IllegalStateException se l'algoritmo HMAC non è disponibile
+     */
+    public CredentialCache(long p_ttl, int p_maxSize) throws IllegalArgumentException, IllegalStateException {
+        if(p_ttl <= 0) throw new IllegalArgumentException("p_ttl must be > 0 !");
+        if(p_maxSize <= 0) throw new IllegalArgumentException("p_maxSize must be > 0 !");
+        ttl = p_ttl;
+        maxSize = p_maxSize;
+
+        byte[] key = new byte[KEY_LENGTH];
+        RAND.nextBytes(key);
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Exception encountered while initializing " + ALGORITHM, e);
+        }
+
+        entries = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /*
+    Verifica se p_candidatePwd è la password di u. Se la verifica è già presente in cache (e non è scaduta) l'hash della
+    password non viene ricalcolato; altrimenti viene utilizzato u.auth e, se la verifica ha successo, questa viene
+    memorizzata nella cache.
+    @requires u != null && p_candidatePwd != null && !p_candidatePwd.isEmpty() && u.hasPassword()
+    @throws NullPointerException se u = null || p_candidatePwd = null
+    @throws IllegalArgumentException se p_candidatePwd.isEmpty()
+    @throws IllegalInvocationException se !u.hasPassword()
+    @modifies this
+    @effects aggiorna hits o misses; se la verifica non era presente in cache ed ha successo viene memorizzata
+    @return true se la password è corretta, altrimenti false
+     */
+    public boolean auth(User u, String p_candidatePwd) throws NullPointerException, IllegalArgumentException, IllegalInvocationException {
+        if(u == null) throw new NullPointerException("u must be != null !");
+        if(p_candidatePwd == null) throw new NullPointerException("p_candidatePwd must be != null !");
+        if(p_candidatePwd.isEmpty()) throw new IllegalArgumentException("p_candidatePwd can't be an empty string!");
+
+        if(lookup(u, p_candidatePwd)) return true;
+        if(!u.auth(p_candidatePwd)) return false;
+        store(u, p_candidatePwd);
+        return true;
+    }
+
+    /*
+    Rimuove dalla cache la voce relativa all'utente Id
+    @requires Id != null
+    @throws NullPointerException se Id = null
+    @modifies this
+    @effects rimuove la voce relativa a Id, se presente
+     */
+    public synchronized void invalidate(String Id) throws NullPointerException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        entries.remove(Id);
+    }
+
+    /*
+    Svuota la cache
+    @modifies this
+    @effects rimuove tutte le voci
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /*
+    Restituisce il numero di voci presenti nella cache, incluse quelle scadute non ancora rimosse
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /*
+    Restituisce il numero di verifiche risolte dalla cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /*
+    Restituisce il numero di verifiche non risolte dalla cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /*
+    Verifica se la cache contiene una voce valida per (u, pwd)
+    @modifies this
+    @effects aggiorna hits o misses; rimuove la voce di u se scaduta
+    @return true se la cache contiene una voce valida per (u, pwd); false altrimenti
+     */
+    private synchronized boolean lookup(User u, String pwd) {
+        Entry e = entries.get(u.getId());
+        if(e != null && System.currentTimeMillis() >= e.expiration) {
+            entries.remove(u.getId());
+            e = null;
+        }
+        if(e == null || !MessageDigest.isEqual(e.digest, digest(u, pwd))) {
+            misses++;
+            return false;
+        }
+        hits++;
+        return true;
+    }
+
+    /*
+    Memorizza la verifica di (u, pwd)
+    @modifies this
+    @effects entries contiene una voce per u con scadenza pari a ora + ttl
+     */
+    private synchronized void store(User u, String pwd) {
+        entries.put(u.getId(), new Entry(digest(u, pwd), System.currentTimeMillis() + ttl));
+        //Rimuovo eventuali voci scadute meno recenti
+        Iterator<Entry> iter = entries.values().iterator();
+        long now = System.currentTimeMillis();
+        while (iter.hasNext() && now >= iter.next().expiration) iter.remove();
+    }
+
+    /*
+    Calcola il digest HMAC di (u.id, pwd, hash della password di u)
+    @requires chiamato mentre si possiede il lock su this
+     */
+    private byte[] digest(User u, String pwd) {
+        update(u.getId());
+        update(pwd);
+        PasswordHash hash = u.getPassword();
+        update(hash == null ? new byte[0] : hash.getHash()); //l'hash cambia ad ogni cambio di password (nuovo salt)
+        return mac.doFinal();
+    }
+
+    /*
+    Aggiunge s al digest in calcolo, preceduta dalla sua lunghezza
+     */
+    private void update(String s) {
+        update(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+    Aggiunge bytes al digest in calcolo, preceduti dalla loro lunghezza
+     */
+    private void update(byte[] bytes) {
+        mac.update((byte) (bytes.length >>> 24));
+        mac.update((byte) (bytes.length >>> 16));
+        mac.update((byte) (bytes.length >>> 8));
+        mac.update((byte) bytes.length);
+        mac.update(bytes);
+    }
+}
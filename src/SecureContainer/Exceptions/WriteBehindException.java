@@ -0,0 +1,32 @@
+package SecureContainer.Exceptions;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class WriteBehindException extends IOException {
+    private final Map<String,IOException> failures; //errore più recente di ciascun documento non scritto, per path
+
+    /**
+     * Costruttore per WriteBehindException con l'errore di ciascun documento su disco che non è stato possibile scrivere.
+     * La causa è l'errore del primo documento, gli errori degli altri documenti sono soppressi.
+     */
+    public WriteBehindException(Map<String,IOException> p_failures) {
+        super("write-behind failed for " + p_failures.size() + " document(s): " + String.join(", ", p_failures.keySet()),
+              p_failures.isEmpty() ? null : p_failures.values().iterator().next());
+        failures = Collections.unmodifiableMap(new LinkedHashMap<>(p_failures));
+        boolean first = true;
+        for (IOException e : failures.values()) {
+            if(!first) addSuppressed(e);
+            first = false;
+        }
+    }
+
+    /**
+     * Restituisce l'errore di ciascun documento su disco che non è stato possibile scrivere, per path.
+     */
+    public Map<String,IOException> getFailures() {
+        return failures;
+    }
+}
@@ -7,6 +7,7 @@ import SecureContainer.Exceptions.UnknownUserException;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 
 public interface ISecureFileContainer<E>  {
     /*
@@ -112,6 +113,28 @@ public interface ISecureFileContainer<E>  {
     E get(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException,
             CredentialException, NoAccessException, IOException, ClassNotFoundException;
 
+    /*
+    Ottiene una copia in sola lettura del file nella collezione, condivisa tra tutte le chiamate a getSnapshot
+    se vengono rispettati i controlli di identità.
+    A differenza di get il contenuto non viene riletto da disco e la copia viene creata solo alla prima lettura di
+    ciascuna versione del dato: le chiamate successive restituiscono lo stesso oggetto finché il dato non viene
+    riletto da disco (get, readFileFromDisk) o scritto su disco (writeFileOnDisk).
+    NOTA BENE: l'oggetto restituito è condiviso e non deve essere modificato dal chiamante; le modifiche fatte ad un
+               dato ottenuto con get e accesso W sono visibili con getSnapshot solo dopo writeFileOnDisk.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw && d = file &&
+              (Access((u,d)) = w || Access((u,d)) = r) )
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+                                 Not (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw &&
+                                      d = file && (Access((u,d)) = w || Access((u,d)) = r) )
+    @return una copia in sola lettura di file, condivisa tra le chiamate a getSnapshot
+    */
+    E getSnapshot(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException,
+            CredentialException, NoAccessException;
+
     /*
     Rimuove il file nella collezione
     se vengono rispettati i controlli di identità
@@ -201,6 +224,21 @@ public interface ISecureFileContainer<E>  {
     Iterator<E> getIterator(String Owner, String passw) throws NullPointerException, IllegalArgumentException,
                                                                CredentialException;
 
+    /*
+    Restituisce un iteratore (senza remove) che genera tutti i file condivisi con l'utente da altri utenti,
+    in ordine arbitrario, se vengono rispettati i controlli di identità.
+    I file condivisi in sola lettura sono restituiti come copia, quelli condivisi in scrittura per riferimento (come get)
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @return Dato u = {Id,passw} restituisce un iteratore (senza remove) che genera tutti i d in D tali che
+            Access(u,d) è definito && Not (OwnedData(u) contiene d)
+    */
+    Iterator<E> getSharedWithMe(String Id, String passw) throws NullPointerException, IllegalArgumentException,
+                                                                CredentialException;
+
     // ****** ...altre operazione da definire a scelta *******
 
     /*
@@ -258,13 +296,15 @@ public interface ISecureFileContainer<E>  {
     @throws IOException se si verifica un problema durante la scrittura su file
     @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
     @modifies this
-    @effects inizializza this con ciò che viene letto dal documento su disco relativo
+    @effects inizializza this con ciò che viene letto dal documento su disco relativo; le sessioni aperte da utenti non
+             presenti nel documento letto non sono più valide
     @return restituisce true se la lettura ha successo; false altrimenti
      */
     boolean readContainerFromDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException;
 
     /*
-    Memorizza this nel documento su disco relativo
+    Memorizza this nel documento su disco relativo.
+    La scrittura è atomica (vedi ContainerSnapshot): se non va a buon fine il documento contiene ancora il contenuto precedente.
     @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
               (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
     @throws NullPointerException se Id = null || passw = null || file = null
@@ -292,4 +332,354 @@ public interface ISecureFileContainer<E>  {
     @return true se esiste un utente u tale che u.id = Id && u.password = passw; false altrimenti
     */
     boolean userAuth(String Id, String passw) throws NullPointerException, IllegalArgumentException;
+
+    // ****** Operazioni basate su sessione *******
+    // Una sessione s viene aperta con login e identifica l'utente u che l'ha aperta: Id(s) = u.id.
+    // Una sessione è valida se è stata aperta da this, non è stata chiusa con logout e non è scaduta.
+    // Le operazioni seguenti si comportano come le corrispondenti operazioni con credenziali, ma la verifica
+    // della password viene effettuata una sola volta, al momento del login.
+
+    /*
+    Apre una sessione per l'utente u con u.id = Id
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @modifies this
+    @return una nuova sessione valida s tale che Id(s) = Id
+    */
+    Session login(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException;
+
+    /*
+    Chiude la sessione s. Dopo la chiusura s non è più valida.
+    @requires s != null
+    @throws NullPointerException se s = null
+    @modifies this
+    @effects s non è più valida
+    */
+    void logout(Session s) throws NullPointerException;
+
+    /*
+    Verifica che la sessione s sia valida, senza accedere ai dati di this (ad esempio all'inizio di una chiamata batch)
+    @requires s != null
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+    */
+    void checkSession(Session s) throws NullPointerException, CredentialException;
+
+    /*
+    Come getSize(Owner, passw) con u.id = Id(s)
+    @requires s != null && s valida
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+    @return Dato u con u.id = Id(s) restituisce |OwnedData(u)|
+     */
+    int getSize(Session s) throws NullPointerException, CredentialException;
+
+    /*
+    Come put(Owner, passw, file) con u.id = Id(s)
+    @requires s != null && s valida && file != null
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects Dato u con u.id = Id(s) se OwnedData(u) non contiene elementi uguali a file allora file viene inserito in
+             OwnedData(u); altrimenti file non viene inserito
+    @return true se file viene inserito in OwnedData(u), false altrimenti.
+    */
+    boolean put(Session s, E file) throws NullPointerException, CredentialException, IOException;
+
+    /*
+    Come get(Owner, passw, file) con u.id = Id(s)
+    @requires s != null && s valida && file != null && file in D &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id(s) && d = file && (Access((u,d)) = w || Access((u,d)) = r))
+    @throws NullPointerException se s = null || file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se s non è valida
+    @throws NoAccessException se Not (Exist (u,d) appartenente a (D * U) tale che u.id = Id(s) && d = file &&
+                                      (Access((u,d)) = w || Access((u,d)) = r))
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return restituisce una copia del file se Access(u,d) = R; altrimenti se  Access(u,d) = W restituisce il dato stesso
+    */
+    E get(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException,
+            NoAccessException, IOException, ClassNotFoundException;
+
+    /*
+    Come getSnapshot(Id, passw, file) con u.id = Id(s)
+    @requires s != null && s valida && file != null && file in D &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id(s) && d = file && (Access((u,d)) = w || Access((u,d)) = r))
+    @throws NullPointerException se s = null || file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se s non è valida
+    @throws NoAccessException se Not (Exist (u,d) appartenente a (D * U) tale che u.id = Id(s) && d = file &&
+                                      (Access((u,d)) = w || Access((u,d)) = r))
+    @return una copia in sola lettura di file, condivisa tra le chiamate a getSnapshot
+    */
+    E getSnapshot(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException,
+            NoAccessException;
+
+    /*
+    Come remove(Owner, passw, file) con u.id = Id(s)
+    @requires s != null && s valida && file != null && file in D && OwnedData(u) contiene file con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se s non è valida
+    @throws NoAccessException se Not (OwnedData(u) contiene file) con u.id = Id(s)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    E remove(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException,
+                                       NoAccessException;
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) con u.id = Id(s)
+    @requires s != null && s valida && file != null && newFilePath != null && !newFilePath.isEmpty() &&
+              Not (Exist d in D. d.path = newFilePath) && OwnedData(u) contiene file con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null || newFilePath = null
+    @throws IllegalArgumentException se file non in D || newFilePath.isEmpty() || Exist d in D. d.path = newFilePath
+    @throws CredentialException se s non è valida
+    @throws NoAccessException se Not (OwnedData(u) contiene file) con u.id = Id(s)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects effettua una copia di file
+     */
+    void copy(Session s, E file, String newFilePath) throws NullPointerException, IllegalArgumentException,
+            CredentialException, NoAccessException, IOException;
+
+    /*
+    Come shareR(Owner, passw, Other, file) con Owner = Id(s)
+    @requires s != null && s valida && Other != null && !Other.isEmpty() && Other != Id(s) && file != null &&
+              OwnedData(u) contiene file con u.id = Id(s) && (Exist u appartenente a U tale che u.id = Other)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws IllegalArgumentException se Other.isEmpty() || Other = Id(s) || file non in D
+    @throws CredentialException se s non è valida
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se Not (OwnedData(u) contiene file) con u.id = Id(s)
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = r
+     */
+    void shareR(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException,
+                                                        CredentialException, UnknownUserException, NoAccessException;
+
+    /*
+    Come shareW(Owner, passw, Other, file) con Owner = Id(s)
+    @requires s != null && s valida && Other != null && !Other.isEmpty() && Other != Id(s) && file != null &&
+              OwnedData(u) contiene file con u.id = Id(s) && (Exist u appartenente a U tale che u.id = Other)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws IllegalArgumentException se Other.isEmpty() || Other = Id(s) || file non in D
+    @throws CredentialException se s non è valida
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se Not (OwnedData(u) contiene file) con u.id = Id(s)
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = w
+     */
+    void shareW(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException,
+                                                        CredentialException, UnknownUserException, NoAccessException;
+
+    /*
+    Come getIterator(Owner, passw) con u.id = Id(s)
+    @requires s != null && s valida
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+    @return Restituisce un iteratore (senza remove) che genera tutti i file dell’utente in ordine arbitrario
+    */
+    Iterator<E> getIterator(Session s) throws NullPointerException, CredentialException;
+
+    /*
+    Come getSharedWithMe(Id, passw) con u.id = Id(s)
+    @requires s != null && s valida
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+    @return Restituisce un iteratore (senza remove) che genera tutti i file condivisi con l'utente da altri utenti
+    */
+    Iterator<E> getSharedWithMe(Session s) throws NullPointerException, CredentialException;
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) con u.id = Id(s)
+    @requires s != null && s valida && file != null && file in D && Access(u,file) = w con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se s non è valida
+    @throws NoAccessException se Access(u,file) != w con u.id = Id(s)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+     */
+    void writeFileOnDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException,
+            NoAccessException, IOException;
+
+    /*
+    Come readFileFromDisk(Id, passw, file) con u.id = Id(s)
+    @requires s != null && s valida && file != null && file in D &&
+              (Access(u,file) = w || Access(u,file) = r) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se s non è valida
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r) con u.id = Id(s)
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @modifies this
+    @effects recupera contenuto di file da documento su disco relativo
+     */
+    void readFileFromDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException,
+            NoAccessException, IOException, ClassNotFoundException;
+
+    /*
+    Inserisce in D i dati di files con un'unica verifica delle credenziali, come put(Owner, passw, file) per ciascun
+    dato. L'esito di ciascun inserimento è riportato separatamente: un inserimento non riuscito non interrompe gli altri.
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && files != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null || files = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @modifies this
+    @effects per ogni i, files.get(i) viene inserito come da put(Owner, passw, files.get(i))
+    @return res tale che res(i) è il valore restituito da put per files.get(i) o l'eccezione sollevata
+    */
+    default BatchResult<Boolean> putAll(String Owner, String passw, List<E> files) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if (files == null) throw new NullPointerException("files must be != null !");
+        Session s = login(Owner, passw);
+        try {
+            return putAll(s, files);
+        } finally {
+            logout(s);
+        }
+    }
+
+    /*
+    Come putAll(Owner, passw, files) con u.id = Id(s)
+    @requires s != null && s valida && files != null
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+    @modifies this
+    @return vedi putAll(Owner, passw, files)
+     */
+    default BatchResult<Boolean> putAll(Session s, List<E> files) throws NullPointerException, CredentialException {
+        if (files == null) throw new NullPointerException("files must be != null !");
+        checkSession(s);
+        return BatchResult.run(files, file -> put(s, file));
+    }
+
+    /*
+    Ottiene i dati di files con un'unica verifica delle credenziali, come get(Owner, passw, file) per ciascun dato.
+    L'esito di ciascuna lettura è riportato separatamente.
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && files != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null || files = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @return res tale che res(i) è il valore restituito da get per files.get(i) o l'eccezione sollevata
+    */
+    default BatchResult<E> getAll(String Owner, String passw, List<E> files) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if (files == null) throw new NullPointerException("files must be != null !");
+        Session s = login(Owner, passw);
+        try {
+            return getAll(s, files);
+        } finally {
+            logout(s);
+        }
+    }
+
+    /*
+    Come getAll(Owner, passw, files) con u.id = Id(s)
+    @requires s != null && s valida && files != null
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+    @return vedi getAll(Owner, passw, files)
+     */
+    default BatchResult<E> getAll(Session s, List<E> files) throws NullPointerException, CredentialException {
+        if (files == null) throw new NullPointerException("files must be != null !");
+        checkSession(s);
+        return BatchResult.run(files, file -> get(s, file));
+    }
+
+    /*
+    Rimuove i dati di files con un'unica verifica delle credenziali, come remove(Owner, passw, file) per ciascun dato.
+    L'esito di ciascuna rimozione è riportato separatamente.
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && files != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null || files = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @modifies this
+    @effects per ogni i, files.get(i) viene rimosso come da remove(Owner, passw, files.get(i))
+    @return res tale che res(i) è il valore restituito da remove per files.get(i) o l'eccezione sollevata
+    */
+    default BatchResult<E> removeAll(String Owner, String passw, List<E> files) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if (files == null) throw new NullPointerException("files must be != null !");
+        Session s = login(Owner, passw);
+        try {
+            return removeAll(s, files);
+        } finally {
+            logout(s);
+        }
+    }
+
+    /*
+    Come removeAll(Owner, passw, files) con u.id = Id(s)
+    @requires s != null && s valida && files != null
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+    @modifies this
+    @return vedi removeAll(Owner, passw, files)
+     */
+    default BatchResult<E> removeAll(Session s, List<E> files) throws NullPointerException, CredentialException {
+        if (files == null) throw new NullPointerException("files must be != null !");
+        checkSession(s);
+        return BatchResult.run(files, file -> remove(s, file));
+    }
+
+    /*
+    Condivide con Other i dati di files con livello di accesso acc e un'unica verifica delle credenziali, come
+    shareR(Owner, passw, Other, file) (acc = R) o shareW(Owner, passw, Other, file) (acc = W) per ciascun dato.
+    L'esito di ciascuna condivisione è riportato separatamente.
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && files != null && acc != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null || files = null || acc = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @modifies this
+    @effects per ogni i, files.get(i) viene condiviso con Other come da shareR/shareW
+    @return res tale che res(i) indica se la condivisione di files.get(i) è riuscita o l'eccezione sollevata
+    */
+    default BatchResult<Void> shareAll(String Owner, String passw, String Other, List<E> files, AccessLevel acc) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if (files == null) throw new NullPointerException("files must be != null !");
+        if (acc == null) throw new NullPointerException("acc must be != null !");
+        Session s = login(Owner, passw);
+        try {
+            return shareAll(s, Other, files, acc);
+        } finally {
+            logout(s);
+        }
+    }
+
+    /*
+    Come shareAll(Owner, passw, Other, files, acc) con Owner = Id(s)
+    @requires s != null && s valida && files != null && acc != null
+    @throws NullPointerException se s = null || files = null || acc = null
+    @throws CredentialException se s non è valida
+    @modifies this
+    @return vedi shareAll(Owner, passw, Other, files, acc)
+     */
+    default BatchResult<Void> shareAll(Session s, String Other, List<E> files, AccessLevel acc) throws NullPointerException, CredentialException {
+        if (files == null) throw new NullPointerException("files must be != null !");
+        if (acc == null) throw new NullPointerException("acc must be != null !");
+        checkSession(s);
+        return BatchResult.run(files, file -> {
+            if (acc == AccessLevel.W) shareW(s, Other, file);
+            else shareR(s, Other, file);
+            return null;
+        });
+    }
+
+    /*
+    Restituisce true se i metodi di this possono essere invocati da più thread contemporaneamente senza sincronizzazione
+    esterna (vedi AsyncSecureFileContainer.onVirtualThreads)
+    @return false; le implementazioni che lo consentono ridefiniscono il metodo
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
 }
@@ -0,0 +1,1379 @@
+package SecureContainer;
+
+import SecureContainer.Exceptions.CredentialException;
+import SecureContainer.Exceptions.DuplicatedUserException;
+import SecureContainer.Exceptions.NoAccessException;
+import SecureContainer.Exceptions.UnknownUserException;
+
+import java.io.*;
+import java.util.*;
+
+public class IndexedSecureDataContainer<E extends SecureFile> extends SecureFile implements ISecureFileContainer<E> {
+    /*
+     * Overview:
+     * IndexedSecureDataContainer è un'implementazione di ISecureFileContainer memorizzata su disco come ContainerIndex.
+     * readContainerFromDisk non deserializza il container ma mappa in memoria l'indice: il tempo di lettura non dipende
+     * dal numero di utenti e di dati. Utenti, proprietari e accessi vengono letti direttamente dall'indice e
+     * materializzati in memoria solo quando vengono utilizzati o modificati; il contenuto di un dato viene decodificato
+     * dall'indice solo quando è richiesto (getIterator, getSnapshot, copy, remove, writeFileOnDisk).
+     * Le modifiche successive alla lettura sono mantenute in memoria e scritte da writeContainerOnDisk, che sostituisce
+     * atomicamente l'indice su disco; i dati non modificati vengono copiati dall'indice precedente senza decodificarli.
+     * Come MapSecureDataContainer, this non può essere utilizzato da più thread contemporaneamente senza
+     * sincronizzazione esterna.
+     */
+
+    /*
+     AF(c):
+        U = c.users.values + {index.user(id) | id in c.index.getUserIds() && id non in c.users.keySet && id non in c.removedUsers}
+        D = c.files.keySet + {p | p in c.index.getFilePaths() && p non in c.files.keySet && p non in c.removedFiles}
+        A = c.AccessLevel
+
+        Owner(d) = c.files.get(d).owner se d in c.files.keySet; c.index.getOwner(d) altrimenti
+        Access(u,d) = W se Owner(d) = u.id; c.files.get(d).accesses.get(u.id) se d in c.files.keySet;
+                      c.index.getAccess(d, u.id) altrimenti
+        OwnedData(u) = {d in D | Owner(d) = u.id}
+        SharedData(u) = {d in D | Owner(d) != u.id && Access(u,d) definito}
+
+     IR:
+        users != null && files != null && removedUsers != null && removedFiles != null &&
+        admin != null && admin.hasPassword() && users.get(admin.id) = admin &&
+        For all (id,u) in users. u.id = id &&
+        (index = null => removedUsers = {} && removedFiles = {}) &&
+        For all (p,e) in files. Owner(p) appartiene a U && e.accesses.keySet sottoinsieme di U - {Owner(p)} &&
+                                (e.data = null => index != null && index.containsFile(p)) &&
+                                (e.data != null => e.data.getFilePath() = p) &&
+        ownedEntries != null && sharedEntries != null &&
+        For all (id,ps) in ownedEntries. ps != {} && ps = {p in files.keySet | files.get(p).owner = id} &&
+        For all (id,ps) in sharedEntries. ps != {} && ps = {p -> acc | p in files.keySet && files.get(p).accesses.get(id) = acc} &&
+        For all (p,e) in files. e.owner in ownedEntries.keySet && e.accesses.keySet sottoinsieme di sharedEntries.keySet
+     */
+
+    //Perché è opportuno definire serialversionUID ?
+    // -> https://stackoverflow.com/questions/285793/what-is-a-serialversionuid-and-why-should-i-use-it
+    private static final long serialversionUID = 14L;
+
+    private User admin; //admin del container
+    private Map<String,User> users; //Utenti creati o letti dall'indice, indicizzati per id
+    private Map<String,FileEntry<E>> files; //Dati creati, modificati o letti dall'indice, indicizzati per path
+    private Map<String,Set<String>> ownedEntries; //Path dei dati di files, indicizzati per id del proprietario
+    private Map<String,Map<String,AccessLevel>> sharedEntries; //Path e livello di accesso dei dati di files, per id degli utenti a cui sono condivisi
+    private Set<String> removedUsers; //Utenti dell'indice rimossi
+    private Set<String> removedFiles; //Dati dell'indice rimossi
+    private transient ContainerIndex index; //Indice letto da disco (null se this non è mai stato letto da disco)
+    private transient SessionManager sessions = new SessionManager(); //Sessioni aperte sul container
+    private transient CredentialCache credentialCache; //Cache delle verifiche di password (null se disabilitata)
+    private transient SecureFileCodec codec = new CompactSecureFileCodec(); //Formato dei dati su disco e nell'indice
+    private transient boolean logging; //Se true le rimozioni fallite dei documenti su disco vengono segnalate su System.out
+
+    private static final class FileEntry<E> implements Serializable {
+        private static final long serialversionUID = 15L;
+        private E data; //contenuto del dato (null se non ancora decodificato dall'indice)
+        private transient E snapshot; //copia in sola lettura restituita da getSnapshot (null se non ancora creata)
+        private final String owner; //id del proprietario
+        private final Map<String,AccessLevel> accesses; //livello di accesso degli utenti diversi dal proprietario, per id
+
+        FileEntry(E p_data, String p_owner, Map<String,AccessLevel> p_accesses) {
+            data = p_data;
+            owner = p_owner;
+            accesses = new HashMap<>(p_accesses);
+        }
+    }
+
+    /*
+    Inizializza container vuoto.
+    p_filePath rappresenta il path assoluto nel quale l'intero container può essere memorizzato
+    */
+    public IndexedSecureDataContainer(String path) {
+        super(path);
+        users = new HashMap<>();
+        files = new HashMap<>();
+        ownedEntries = new HashMap<>();
+        sharedEntries = new HashMap<>();
+        removedUsers = new HashSet<>();
+        removedFiles = new HashSet<>();
+
+        admin = new User("Luca", "Diavolo!");
+        users.put(admin.getId(), admin);
+        assert repInv();
+    }
+
+    /*
+    Verifica la condizione di IR
+    @return true se IR = true; false altrimenti
+     */
+    private boolean repInv() {
+        boolean ir = users != null && files != null && removedUsers != null && removedFiles != null &&
+                     ownedEntries != null && sharedEntries != null &&
+                     admin != null && admin.hasPassword() && admin == users.get(admin.getId()) &&
+                     (index != null || (removedUsers.isEmpty() && removedFiles.isEmpty()));
+        if(ir) {
+            //For all (id,u) in users. u.id = id
+            for (Map.Entry<String,User> entry : users.entrySet()) {
+                if(!entry.getKey().equals(entry.getValue().getId())) return false;
+            }
+        }
+        if(ir) {
+            int grants = 0;
+            for (Map.Entry<String,FileEntry<E>> entry : files.entrySet()) {
+                FileEntry<E> e = entry.getValue();
+                if(!hasUser(e.owner) || e.accesses.containsKey(e.owner)) return false;
+                //ogni dato materializzato compare negli indici del proprietario e degli utenti a cui è condiviso
+                Set<String> owned = ownedEntries.get(e.owner);
+                if(owned == null || !owned.contains(entry.getKey())) return false;
+                for (Map.Entry<String,AccessLevel> grant : e.accesses.entrySet()) {
+                    Map<String,AccessLevel> shared = sharedEntries.get(grant.getKey());
+                    if(!hasUser(grant.getKey()) || shared == null || shared.get(entry.getKey()) != grant.getValue()) return false;
+                }
+                grants += e.accesses.size();
+                if(e.data == null ? index == null || !index.containsFile(entry.getKey()) : !e.data.getFilePath().equals(entry.getKey())) return false;
+            }
+            //gli indici non contengono altri dati
+            int owned = 0;
+            for (Set<String> ps : ownedEntries.values()) {
+                if(ps.isEmpty()) return false;
+                owned += ps.size();
+            }
+            int shared = 0;
+            for (Map<String,AccessLevel> ps : sharedEntries.values()) {
+                if(ps.isEmpty()) return false;
+                shared += ps.size();
+            }
+            ir = owned == files.size() && shared == grants;
+        }
+        return ir;
+    }
+
+    /*
+    Crea l’identità di un nuovo utente della collezione
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              Not (Exist u appartenente a U tale che u.id = Id)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws DuplicatedUserException se (Exist u appartenente a U tale che u.id = Id)
+    @modifies this
+    @effects u = {Id,passw} && this_post.U = this_pre.U + u
+    */
+    @Override
+    public void createUser(String Id, String passw) throws NullPointerException, IllegalArgumentException, DuplicatedUserException {
+        assert repInv();
+        if(passw == null) throw new NullPointerException("passw must be != null !");
+        if(passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
+        if(userExist(Id)) throw new DuplicatedUserException("users id must be unique !");
+
+        doCreateUser(new User(Id, passw));
+    }
+
+    /*
+    Aggiunge u agli utenti di this
+    @requires u != null && u.hasPassword() && Not (Exist v appartenente a U tale che v.id = u.id)
+    @modifies this
+    @effects this_post.U = this_pre.U + u
+     */
+    private void doCreateUser(User u) {
+        assert repInv();
+        users.put(u.getId(), u);
+        assert repInv();
+    }
+
+    /*
+     Rimuove l’utente dalla collezione
+     @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && !Id.equals(admin.id)
+               (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+     @throws NullPointerException se Id = null || passw = null
+     @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || Id.equals(admin.id)
+     @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+     @modifies this
+     @effects u = {Id,passw} && this_post.U = this_pre.U - u &&
+              this_post.D = this_pre.D - OwnedData(u)
+     */
+    @Override
+    public void removeUser(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doRemoveUser(Id);
+    }
+
+    /*
+    Come removeUser(Id, passw) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato
+    @throws IllegalArgumentException se Id.equals(admin.id)
+    @modifies this
+    @effects vedi removeUser(Id, passw)
+     */
+    private void doRemoveUser(String Id) throws IllegalArgumentException {
+        assert repInv();
+        if(Id.equals(admin.getId())) throw new IllegalArgumentException("admin user can't be removed !");
+        //credenziali valide
+        sessions.closeAll(Id); //le sessioni aperte dall'utente non sono più valide
+        if(credentialCache != null) credentialCache.invalidate(Id); //la verifica della password non è più valida
+        //I dati che appartenevano all'utente devono essere rimossi
+        for (String p : ownedPaths(Id)) unlink(p);
+        //Rimuovere eventuali accessi assegnati all'utente rimosso
+        for (String p : sharedPaths(Id).keySet()) revoke(p, findEntry(p), Id);
+        users.remove(Id);
+        if(index != null && index.containsUser(Id)) removedUsers.add(Id);
+
+        assert repInv();
+    }
+
+    /*
+    Restituisce il numero dei file di un utente presenti nella collezione
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @return Dato u = {Owner,passw} restituisce |OwnedData(u)|
+     */
+    @Override
+    public int getSize(String Owner, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        assert repInv();
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetSize(Owner);
+    }
+
+    /*
+    Come getSize(Owner, passw) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato
+    @return Dato u con u.id = Owner restituisce |OwnedData(u)|
+     */
+    private int doGetSize(String Owner) {
+        return ownedPaths(Owner).size();
+    }
+
+    /*
+    Inserisce il file nella collezione
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw )
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects Dato u = {Id,passw} se D non contiene elementi uguali a file allora file viene inserito in
+             OwnedData(u); altrimenti file non viene inserito
+    @return Dato u = {Id,passw} restituisce true se file viene inserito in OwnedData(u), false altrimenti.
+    */
+    @Override
+    public boolean put(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, IOException {
+        assert repInv();
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doPut(Owner, file);
+    }
+
+    /*
+    Come put(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null
+    @throws NullPointerException se file = null
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects vedi put(Owner, passw, file)
+    @return vedi put(Owner, passw, file)
+     */
+    private boolean doPut(String Owner, E file) throws NullPointerException, IOException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        String path = file.getFilePath();
+        if(findEntry(path) != null) return false;
+
+        link(path, new FileEntry<>(file, Owner, Collections.emptyMap()));
+        try {
+            codec.write(file); //scrivo oggetto su disco
+        } catch(IOException | RuntimeException e) {
+            detach(path);
+            File doc = new File(path);
+            if(!doc.delete() && doc.exists()) e.addSuppressed(new IOException("Failed to remove file: " + path));
+            throw e;
+        }
+
+        assert repInv();
+        return true;
+    }
+
+    /*
+    Ottiene una copia del file nella collezione
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw &&
+              (Access((u,d)) = w || Access((u,d)) = r) )
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return restituisce una copia del file se Access(u,d) = R; altrimenti se  Access(u,d) = W restituisce il dato stesso
+    */
+    @Override
+    public E get(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGet(Owner, file);
+    }
+
+    /*
+    Come get(Owner, passw, file) ma per un utente già autenticato.
+    Il contenuto del dato viene sempre riletto dal documento su disco relativo.
+    @requires Owner identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return vedi get(Owner, passw, file)
+     */
+    private E doGet(String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        FileEntry<E> entry = requireEntry(file);
+        AccessLevel acc = accessOf(entry, Owner);
+        if(acc == null) throw new NoAccessException("user " + Owner + " has no access to file");
+
+        E res = loadFile(entry, file.getFilePath()); //aggiorno file con contenuto del doc relativo
+
+        assert repInv();
+        //NOTA BENE: come in MapSecureDataContainer, con accesso in scrittura si ottiene un riferimento diretto al dato
+        return acc == AccessLevel.W ? res : copyOf(res);
+    }
+
+    /*
+    Ottiene una copia in sola lettura del file nella collezione, condivisa tra tutte le chiamate a getSnapshot
+    se vengono rispettati i controlli di identità.
+    La copia viene decodificata dall'indice o creata dal dato in memoria alla prima lettura di ciascuna versione del
+    dato, senza rileggere il documento su disco.
+    NOTA BENE: l'oggetto restituito è condiviso e non deve essere modificato dal chiamante
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw && d = file &&
+              (Access((u,d)) = w || Access((u,d)) = r) )
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @return una copia in sola lettura di file, condivisa tra le chiamate a getSnapshot
+    */
+    @Override
+    public E getSnapshot(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetSnapshot(Id, file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @modifies this
+    @return vedi getSnapshot(Id, passw, file)
+     */
+    private E doGetSnapshot(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        FileEntry<E> entry = requireEntry(file);
+        if(accessOf(entry, Id) == null) throw new NoAccessException("user " + Id + " has no access to file");
+
+        if(entry.snapshot == null) { //prima lettura della versione corrente del dato
+            //Il contenuto decodificato dall'indice è già una copia indipendente
+            entry.snapshot = entry.data == null ? decode(file.getFilePath()) : copyOf(entry.data);
+        }
+
+        assert repInv();
+        return entry.snapshot;
+    }
+
+    /*
+    Rimuove il file nella collezione
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && file != null
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file)
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    @Override
+    public E remove(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        assert repInv();
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doRemove(Owner, file);
+    }
+
+    /*
+    Come remove(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    private E doRemove(String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        FileEntry<E> entry = requireEntry(file);
+        if(!entry.owner.equals(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to remove file!");
+
+        E res = dataOf(entry, file.getFilePath());
+        unlink(file.getFilePath());
+
+        if(!new File(res.getFilePath()).delete() && logging) System.out.println("Failed to remove file: " + res.getFilePath());
+
+        assert repInv();
+        return res;
+    }
+
+    /*
+    Crea una copia del file nella collezione
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() && file != null &&
+              Not (Exist d in D. d.path = newFilePath) &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file)
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || Exist d in D. d.path = newFilePath
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects effettua una copia di file
+     */
+    @Override
+    public void copy(String Owner, String passw, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        assert repInv();
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        doCopy(Owner, file, newFilePath);
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file &&
+              Not (Exist d in D. d.path = newFilePath)
+    @throws NullPointerException se file = null || newFilePath = null
+    @throws IllegalArgumentException se file non in D || newFilePath.isEmpty() || Exist d in D. d.path = newFilePath
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects effettua una copia di file
+     */
+    private void doCopy(String Owner, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        FileEntry<E> entry = requireEntry(file);
+        if(!entry.owner.equals(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
+        if(findEntry(new SecureFile(newFilePath).getFilePath()) != null) throw new IllegalArgumentException("newfilePath must be unique inside data collection!");
+        E copyFile = copyOf(dataOf(entry, file.getFilePath()));
+        copyFile.setFilePath(newFilePath);
+        doPut(Owner, copyFile);
+
+        assert repInv();
+    }
+
+    /*
+    Condivide in lettura il file nella collezione con un altro utente
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && Other!=null && Owner != Other && !Owner.isEmpty() && !passw.isEmpty() && !Other.isEmpty()
+              && file != null &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw && OwnedData(u) contiene file) &&
+              (Exist u appartenente a U tale che u.id = Other)
+    @throws NullPointerException se Owner = null || passw = null || Other = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || Other.isEmpty() || Owner = Other
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = r
+     */
+    @Override
+    public void shareR(String Owner, String passw, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        assert repInv();
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        doSetAccesses(Owner, Other, file, AccessLevel.R);
+    }
+
+    /*
+    Condivide in lettura e scrittura il file nella collezione con un altro utente
+    se vengono rispettati i controlli di identità
+    @requires vedi shareR(Owner, passw, Other, file)
+    @throws vedi shareR(Owner, passw, Other, file)
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = w
+    */
+    @Override
+    public void shareW(String Owner, String passw, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        assert repInv();
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        doSetAccesses(Owner, Other, file, AccessLevel.W);
+    }
+
+    /*
+    Assegna il livello di accesso acc a Other per file, se Owner è il proprietario di file
+    @requires Owner identifica un utente autenticato && Other != null && Owner != Other && !Other.isEmpty() &&
+              file != null && acc != null && OwnedData(u) contiene file con u.id = Owner &&
+              (Exist u appartenente a U tale che u.id = Other)
+    @throws NullPointerException se Other = null || file = null
+    @throws IllegalArgumentException se Other.isEmpty() || Owner = Other || acc = null || file non in D
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se Not (OwnedData(u) contiene file) con u.id = Owner
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = acc
+     */
+    private void doSetAccesses(String Owner, String Other, E file, AccessLevel acc) throws NullPointerException, IllegalArgumentException, UnknownUserException, NoAccessException {
+        assert repInv();
+        if(Other == null) throw new NullPointerException("Other must be != null !");
+        if(acc == null) throw new IllegalArgumentException("acc can't be null !");
+        if(Other.isEmpty()) throw new IllegalArgumentException("Other can't be empty!");
+        if(Owner.equals(Other)) throw new IllegalArgumentException("You can't share data with yourself!");
+        if(file == null) throw new NullPointerException("file must be != null !");
+        FileEntry<E> entry = requireEntry(file);
+        if(!entry.owner.equals(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to share file!");
+        if(findUser(Other) == null) throw new UnknownUserException("you are trying to share a file with unknown user: " + Other );
+
+        entry.accesses.put(Other, acc);
+        sharedEntries.computeIfAbsent(Other, id -> new LinkedHashMap<>()).put(file.getFilePath(), acc);
+
+        assert repInv();
+    }
+
+    private class FilesIterator implements Iterator<E> {
+        private final Iterator<Map.Entry<String,AccessLevel>> iterPaths; //iteratore dei path dei dati da visitare
+
+        //Inizializza l'iteratore sui dati con i path di p_paths, restituiti secondo il livello di accesso associato
+        FilesIterator(Map<String,AccessLevel> p_paths) {
+            iterPaths = p_paths.entrySet().iterator();
+        }
+
+        /*
+         * Verifica se sono rimasti ancora dei dati da visitare
+         * @return ci sono ancora dati da visitare; false altrimenti
+         */
+        @Override
+        public boolean hasNext() {
+            return iterPaths.hasNext();
+        }
+
+        /*
+         * Restituisce il prossimo dato, decodificandolo dall'indice se non ancora presente in memoria: una copia se
+         * l'accesso è in sola lettura
+         * @throws NoSuchElementException se !hasNext()
+         * @return prossimo dato
+         */
+        @Override
+        public E next() {
+            Map.Entry<String,AccessLevel> next = iterPaths.next();
+            E res = dataOf(findEntry(next.getKey()), next.getKey());
+            return next.getValue() == AccessLevel.W ? res : copyOf(res);
+        }
+    }
+
+    /*
+    Restituisce un iteratore (senza remove) che genera tutti i file
+    dell’utente in ordine arbitrario
+    se vengono rispettati i controlli di identità
+    @requires Owner != null && passw != null && !Owner.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NullPointerException se Owner = null || passw = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @return Restituisce un iteratore (senza remove) che genera tutti i file dell’utente in ordine arbitrario
+    */
+    @Override
+    public Iterator<E> getIterator(String Owner, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        assert repInv();
+        if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetIterator(Owner);
+    }
+
+    private Iterator<E> doGetIterator(String Owner) {
+        Map<String,AccessLevel> owned = new LinkedHashMap<>();
+        for (String p : ownedPaths(Owner)) owned.put(p, AccessLevel.W);
+        return new FilesIterator(owned);
+    }
+
+    /*
+    Restituisce un iteratore (senza remove) che genera tutti i file condivisi con l'utente da altri utenti,
+    in ordine arbitrario, se vengono rispettati i controlli di identità.
+    I file condivisi in sola lettura sono restituiti come copia, quelli condivisi in scrittura per riferimento (come get)
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @return Dato u = {Id,passw} restituisce un iteratore (senza remove) che genera tutti i d in D tali che
+            Access(u,d) è definito && Not (OwnedData(u) contiene d)
+    */
+    @Override
+    public Iterator<E> getSharedWithMe(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        return new FilesIterator(sharedPaths(Id));
+    }
+
+    /*
+    Memorizza file nel documento su disco relativo
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se Access(u,file) != w
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+     */
+    @Override
+    public void writeFileOnDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doWriteFileOnDisk(Id, file);
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && Access(u,file) = w
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Access(u,file) != w
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+     */
+    private void doWriteFileOnDisk(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        FileEntry<E> entry = requireEntry(file);
+        AccessLevel acc = accessOf(entry, Id);
+        if(acc == null) throw new NoAccessException("user " + Id + " has no access to file");
+        if(acc != AccessLevel.W) throw new NoAccessException("user " + Id + " must have write access to file!");
+
+        codec.write(dataOf(entry, file.getFilePath())); //memorizzo contenuto del dato presente nel container su disco
+        entry.snapshot = null; //il contenuto memorizzato potrebbe essere cambiato: la copia precedente non è più valida
+
+        assert repInv();
+    }
+
+    /*
+    Leggi file dal documento su disco relativo
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file &&
+              (Access(u,d) = w || Access(u,d) = r))
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura su disco
+    @modifies this
+    @effects recupera contenuto di file da documento su disco relativo
+    */
+    @Override
+    public void readFileFromDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doReadFileFromDisk(Id, file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura su disco
+    @modifies this
+    @effects recupera contenuto di file da documento su disco relativo
+     */
+    private void doReadFileFromDisk(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        FileEntry<E> entry = requireEntry(file);
+        if(accessOf(entry, Id) == null) throw new NoAccessException("user " + Id + " has no access to file");
+
+        loadFile(entry, file.getFilePath());
+
+        assert repInv();
+    }
+
+    /*
+    Verifica se esiste un utente u con u.id = id
+    @requires Id != null && !Id.isEmpty()
+    @throws NullPointerException se Id = null
+    @throws IllegalArgumentException se Id.isEmpty()
+    @return true se esiste un utente u tale che u.id = Id; false altrimenti
+    */
+    @Override
+    public boolean userExist(String Id) throws NullPointerException, IllegalArgumentException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        if(Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
+        return hasUser(Id);
+    }
+
+    /*
+    Verifica se esiste un utente u con u.id = id e u.password = passw
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty()
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @return true se esiste un utente u tale che u.id = Id && u.password = passw; false altrimenti
+    */
+    @Override
+    public boolean userAuth(String Id, String passw) throws NullPointerException, IllegalArgumentException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        if(Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
+        if(passw == null) throw new NullPointerException("passw must be != null !");
+        if(passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
+        User u = findUser(Id);
+        return u != null && checkPassword(u, passw);
+    }
+
+    /*
+    Verifica se passw è la password di u, utilizzando la cache delle credenziali se abilitata
+    @requires u != null && passw != null && !passw.isEmpty() && u.hasPassword()
+    @return true se passw è la password di u; false altrimenti
+    */
+    private boolean checkPassword(User u, String passw) {
+        return credentialCache == null ? u.auth(passw) : credentialCache.auth(u, passw);
+    }
+
+    /*
+    Abilita la cache delle credenziali verificate utilizzando p_cache; se p_cache = null la cache viene disabilitata
+    @modifies this
+    @effects userAuth utilizza p_cache per evitare di ricalcolare l'hash di password già verificate
+    */
+    public void setCredentialCache(CredentialCache p_cache) {
+        credentialCache = p_cache;
+    }
+
+    /*
+    Restituisce la cache delle credenziali utilizzata da this; null se disabilitata
+    */
+    public CredentialCache getCredentialCache() {
+        return credentialCache;
+    }
+
+    /*
+    Utilizza p_codec per scrivere e leggere i dati dai documenti su disco relativi e dall'indice.
+    NOTA BENE: il contenuto dei dati già presenti nell'indice su disco deve poter essere letto da p_codec
+    @requires p_codec != null
+    @throws NullPointerException se p_codec = null
+    @modifies this
+    @effects writeFileOnDisk, readFileFromDisk e writeContainerOnDisk utilizzano il formato definito da p_codec
+    */
+    public void setCodec(SecureFileCodec p_codec) throws NullPointerException {
+        if(p_codec == null) throw new NullPointerException("p_codec must be != null !");
+        codec = p_codec;
+    }
+
+    /*
+    Restituisce il codec utilizzato per scrivere e leggere i dati dai documenti su disco relativi e dall'indice
+    */
+    public SecureFileCodec getCodec() {
+        return codec;
+    }
+
+    /*
+    Abilita (p_logging = true) o disabilita la segnalazione su System.out dei documenti su disco non rimossi
+    @modifies this
+    */
+    public void setLogging(boolean p_logging) {
+        logging = p_logging;
+    }
+
+    /*
+    Restituisce l'indice letto da disco da cui this legge utenti e dati non ancora materializzati; null se this non è
+    mai stato letto da disco
+    */
+    public ContainerIndex getIndex() {
+        return index;
+    }
+
+    /*
+    Memorizza this nel documento su disco relativo come ContainerIndex.
+    La scrittura è atomica: se non va a buon fine il documento contiene ancora l'indice precedente.
+    I dati non modificati dopo l'ultima lettura vengono copiati dall'indice precedente senza decodificarli.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @modifies this
+    @effects scrivi contenuto di this nel documento su disco relativo
+    @return restituisce true se this viene scritto correttamente su disco; false atrimenti
+     */
+    @Override
+    public boolean writeContainerOnDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        if(!admin.getId().equals(Id)) throw new CredentialException("user " + Id + " is not an admin");
+        try {
+            ContainerIndex.Writer writer = new ContainerIndex.Writer(admin.getId());
+            //Utenti
+            for (User u : users.values()) writer.addUser(u.getId(), u.getPasswordHash());
+            if(index != null) {
+                for (String id : index.getUserIds()) {
+                    if(!users.containsKey(id) && !removedUsers.contains(id)) writer.addUser(id, index.getPasswordHash(id));
+                }
+            }
+            //Dati e accessi
+            for (Map.Entry<String,FileEntry<E>> entry : files.entrySet()) {
+                FileEntry<E> e = entry.getValue();
+                String p = entry.getKey();
+                writer.addFile(p, e.owner, e.data == null ? index.getData(p) : encode(e.data));
+                for (Map.Entry<String,AccessLevel> grant : e.accesses.entrySet()) writer.grant(p, grant.getKey(), grant.getValue());
+            }
+            if(index != null) {
+                for (String p : index.getFilePaths()) {
+                    if(files.containsKey(p) || removedFiles.contains(p)) continue;
+                    writer.addFile(p, index.getOwner(p), index.getData(p)); //copio il contenuto senza decodificarlo
+                    for (Map.Entry<String,AccessLevel> grant : index.getAccesses(p).entrySet()) writer.grant(p, grant.getKey(), grant.getValue());
+                }
+            }
+            writer.write(getFilePath());
+            //L'indice scritto contiene tutte le modifiche: i dati materializzati restano in memoria
+            ContainerIndex newIndex = ContainerIndex.open(getFilePath());
+            if(index != null) index.close();
+            index = newIndex;
+            removedUsers.clear();
+            removedFiles.clear();
+        } catch(IOException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        assert repInv();
+        return true;
+    }
+
+    /*
+    Inizializza this con l'indice memorizzato nel documento su disco relativo. L'indice viene mappato in memoria:
+    utenti e dati vengono letti dall'indice solo quando utilizzati.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @modifies this
+    @effects inizializza this con ciò che viene letto dal documento su disco relativo
+    @return restituisce true se la lettura ha successo; false altrimenti
+     */
+    @Override
+    public boolean readContainerFromDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        if(!admin.getId().equals(Id)) throw new CredentialException("user " + Id + " is not an admin");
+        ContainerIndex newIndex;
+        User newAdmin;
+        try {
+            newIndex = ContainerIndex.open(getFilePath());
+            String adminId = newIndex.getAdminId();
+            String hash = newIndex.getPasswordHash(adminId);
+            if(hash == null || hash.isEmpty()) throw new StreamCorruptedException("corrupted container index: " + getFilePath());
+            newAdmin = User.withPasswordHash(adminId, hash);
+        } catch(IOException | RuntimeException ex) {
+            ex.printStackTrace();
+            return false;
+        }
+        //Aggiorno variabili di istanza
+        if(index != null) index.close();
+        index = newIndex;
+        admin = newAdmin;
+        users.clear();
+        users.put(admin.getId(), admin);
+        files.clear();
+        ownedEntries.clear();
+        sharedEntries.clear();
+        removedUsers.clear();
+        removedFiles.clear();
+        //gli utenti sono stati sostituiti: le sessioni e le verifiche di password precedenti potrebbero non essere più valide
+        sessions.retainUsers(id -> findUser(id) != null);
+        if(credentialCache != null) credentialCache.clear();
+
+        assert repInv();
+        return true;
+    }
+
+    /*
+    Apre una sessione per l'utente u con u.id = Id
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @modifies this
+    @return una nuova sessione valida s tale che Id(s) = Id
+    */
+    @Override
+    public Session login(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        return sessions.open(Id);
+    }
+
+    /*
+    Chiude la sessione s. Dopo la chiusura s non è più valida.
+    @requires s != null
+    @throws NullPointerException se s = null
+    @modifies this
+    @effects s non è più valida
+    */
+    @Override
+    public void logout(Session s) throws NullPointerException {
+        sessions.close(s);
+    }
+
+    /*
+    Verifica che la sessione s sia valida
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void checkSession(Session s) throws NullPointerException, CredentialException {
+        sessions.resolve(s);
+    }
+
+    /*
+    Restituisce le operazioni sugli utenti di this che ShardedSecureFileContainer esegue dopo aver verificato le
+    credenziali sullo shard di riferimento (vedi ShardAccess)
+     */
+    ShardAccess<E> shardAccess() {
+        return new ShardAccess<E>() {
+            @Override
+            public void createUser(String Id, String passwordHash) throws NullPointerException, IllegalArgumentException, DuplicatedUserException {
+                if(passwordHash == null) throw new NullPointerException("passwordHash must be != null !");
+                if(passwordHash.isEmpty()) throw new IllegalArgumentException("passwordHash can't be empty!");
+                if(userExist(Id)) throw new DuplicatedUserException("users id must be unique !");
+                doCreateUser(User.withPasswordHash(Id, passwordHash));
+            }
+
+            @Override
+            public Session login(String Id) throws NullPointerException, CredentialException {
+                if(Id == null) throw new NullPointerException("Id must be != null !");
+                if(!hasUser(Id)) throw new CredentialException("valid users' credentials are required !");
+                return sessions.open(Id);
+            }
+
+            @Override
+            public void removeUser(String Id) throws NullPointerException, IllegalArgumentException, CredentialException {
+                if(Id == null) throw new NullPointerException("Id must be != null !");
+                if(!hasUser(Id)) throw new CredentialException("valid users' credentials are required !");
+                doRemoveUser(Id);
+            }
+
+            @Override
+            public E ownedCopy(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+                String Owner = sessions.resolve(s);
+                if(file == null) throw new NullPointerException("file must be != null !");
+                FileEntry<E> entry = requireEntry(file);
+                if(!entry.owner.equals(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
+                return copyOf(dataOf(entry, file.getFilePath()));
+            }
+        };
+    }
+
+    /*
+    Come getSize(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public int getSize(Session s) throws NullPointerException, CredentialException {
+        return doGetSize(sessions.resolve(s));
+    }
+
+    /*
+    Come put(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public boolean put(Session s, E file) throws NullPointerException, CredentialException, IOException {
+        return doPut(sessions.resolve(s), file);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) con u.id = Id(s). I dati vengono inseriti in D con un'unica verifica di IR e
+    scritti su disco in parallelo (vedi SecureFileCodec.writeAll).
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<Boolean> putAll(Session s, List<E> p_files) throws NullPointerException, CredentialException {
+        return doPutAll(sessions.resolve(s), p_files);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && p_files != null
+    @throws NullPointerException se p_files = null
+    @modifies this
+    @effects vedi putAll(Owner, passw, files)
+    @return vedi putAll(Owner, passw, files)
+     */
+    private BatchResult<Boolean> doPutAll(String Owner, List<E> p_files) throws NullPointerException {
+        assert repInv();
+        if(p_files == null) throw new NullPointerException("files must be != null !");
+        BatchResult<Boolean> res = new BatchResult<>(p_files.size());
+        List<E> linked = new ArrayList<>(); //dati inseriti in D, da scrivere su disco
+        List<Integer> linkedPos = new ArrayList<>(); //posizione in p_files di ciascun dato di linked
+        for(int i = 0; i < p_files.size(); i++) {
+            E file = p_files.get(i);
+            if(file == null) res.fail(i, new NullPointerException("file must be != null !"));
+            else if(findEntry(file.getFilePath()) != null) res.succeed(i, false); //anche se compare più volte in p_files
+            else {
+                link(file.getFilePath(), new FileEntry<>(file, Owner, Collections.emptyMap()));
+                linked.add(file);
+                linkedPos.add(i);
+            }
+        }
+
+        Exception[] errors = codec.writeAll(linked); //scrivo i dati su disco
+        for(int k = 0; k < linked.size(); k++) {
+            String path = linked.get(k).getFilePath();
+            if(errors[k] == null) res.succeed(linkedPos.get(k), true);
+            else {
+                //come put: il dato non scritto su disco viene rimosso
+                detach(path);
+                File doc = new File(path);
+                if(!doc.delete() && doc.exists()) errors[k].addSuppressed(new IOException("Failed to remove file: " + path));
+                res.fail(linkedPos.get(k), errors[k]);
+            }
+        }
+
+        assert repInv();
+        return res;
+    }
+
+    /*
+    Come get(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E get(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        return doGet(sessions.resolve(s), file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E getSnapshot(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return doGetSnapshot(sessions.resolve(s), file);
+    }
+
+    /*
+    Come remove(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E remove(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return doRemove(sessions.resolve(s), file);
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null || newFilePath = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void copy(Session s, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        doCopy(sessions.resolve(s), file, newFilePath);
+    }
+
+    /*
+    Come shareR(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareR(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        doSetAccesses(sessions.resolve(s), Other, file, AccessLevel.R);
+    }
+
+    /*
+    Come shareW(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareW(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        doSetAccesses(sessions.resolve(s), Other, file, AccessLevel.W);
+    }
+
+    /*
+    Come getIterator(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getIterator(Session s) throws NullPointerException, CredentialException {
+        return doGetIterator(sessions.resolve(s));
+    }
+
+    /*
+    Come getSharedWithMe(Id, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getSharedWithMe(Session s) throws NullPointerException, CredentialException {
+        return new FilesIterator(sharedPaths(sessions.resolve(s)));
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void writeFileOnDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        doWriteFileOnDisk(sessions.resolve(s), file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void readFileFromDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        doReadFileFromDisk(sessions.resolve(s), file);
+    }
+
+    /*
+    Verifica se esiste un utente u con u.id = Id, senza materializzarlo
+     */
+    private boolean hasUser(String Id) {
+        if(users.containsKey(Id)) return true;
+        return index != null && !removedUsers.contains(Id) && index.containsUser(Id);
+    }
+
+    /*
+    Restituisce l'utente u con u.id = Id, materializzandolo dall'indice se necessario
+    @modifies this
+    @return u appartenente a U tale che u.id = Id; null se non esiste
+     */
+    private User findUser(String Id) {
+        User u = users.get(Id);
+        if(u == null && index != null && !removedUsers.contains(Id)) {
+            String hash = index.getPasswordHash(Id);
+            if(hash != null) {
+                u = User.withPasswordHash(Id, hash);
+                users.put(Id, u);
+            }
+        }
+        return u;
+    }
+
+    /*
+    Restituisce la voce del dato con path p, materializzandola dall'indice se necessario (senza decodificarne il contenuto)
+    @modifies this
+    @return la voce del dato d in D con d.path = p; null se non esiste
+     */
+    private FileEntry<E> findEntry(String p) {
+        FileEntry<E> entry = files.get(p);
+        if(entry == null && index != null && !removedFiles.contains(p)) {
+            String owner = index.getOwner(p);
+            if(owner != null) {
+                entry = new FileEntry<>(null, owner, index.getAccesses(p));
+                link(p, entry);
+            }
+        }
+        return entry;
+    }
+
+    /*
+    Restituisce la voce di file
+    @requires file != null
+    @throws IllegalArgumentException se file non in D
+     */
+    private FileEntry<E> requireEntry(E file) throws IllegalArgumentException {
+        FileEntry<E> entry = findEntry(file.getFilePath());
+        if(entry == null) throw new IllegalArgumentException("file must be inside data collection!");
+        return entry;
+    }
+
+    /*
+    Restituisce il livello di accesso dell'utente Id al dato di entry
+    @return W se Id è il proprietario; il livello di accesso assegnato a Id; null se Id non ha accesso
+     */
+    private static AccessLevel accessOf(FileEntry<?> entry, String Id) {
+        return entry.owner.equals(Id) ? AccessLevel.W : entry.accesses.get(Id);
+    }
+
+    /*
+    Restituisce il contenuto in memoria del dato di entry con path p, decodificandolo dall'indice se necessario
+    @requires entry è la voce del dato con path p
+    @throws IllegalStateException se il contenuto memorizzato nell'indice non può essere decodificato
+    @modifies entry
+     */
+    private E dataOf(FileEntry<E> entry, String p) throws IllegalStateException {
+        if(entry.data == null) entry.data = decode(p);
+        return entry.data;
+    }
+
+    /*
+    Decodifica il contenuto del dato con path p memorizzato nell'indice
+    @requires index != null && index.containsFile(p)
+    @throws IllegalStateException se il contenuto memorizzato nell'indice non può essere decodificato
+     */
+    @SuppressWarnings("unchecked")
+    private E decode(String p) throws IllegalStateException {
+        try {
+            return (E) codec.decode(new ByteArrayInputStream(index.getData(p)));
+        } catch(IOException | ClassNotFoundException ex) {
+            throw new IllegalStateException("can't decode " + p + " from container index " + index.getPath(), ex);
+        }
+    }
+
+    /*
+    Legge il contenuto del dato di entry con path p dal documento su disco relativo
+    @requires entry è la voce del dato con path p
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @modifies entry
+    @return il dato appena letto
+     */
+    private E loadFile(FileEntry<E> entry, String p) throws IOException, ClassNotFoundException {
+        @SuppressWarnings("unchecked")
+        E newfile = (E) codec.read(p);
+        entry.data = newfile;
+        entry.snapshot = null; //la copia in sola lettura si riferisce alla versione precedente del dato
+        return newfile;
+    }
+
+    /*
+    Rimuove da D il dato con path p
+    @requires p è il path di un dato in D
+    @modifies this
+     */
+    private void unlink(String p) {
+        detach(p);
+        if(index != null && index.containsFile(p)) removedFiles.add(p);
+    }
+
+    /*
+    Inserisce in files la voce entry del dato con path p, aggiornando gli indici per proprietario e per utente
+    @requires p non in files.keySet
+    @modifies this
+     */
+    private void link(String p, FileEntry<E> entry) {
+        files.put(p, entry);
+        ownedEntries.computeIfAbsent(entry.owner, id -> new LinkedHashSet<>()).add(p);
+        for (Map.Entry<String,AccessLevel> grant : entry.accesses.entrySet()) {
+            sharedEntries.computeIfAbsent(grant.getKey(), id -> new LinkedHashMap<>()).put(p, grant.getValue());
+        }
+    }
+
+    /*
+    Rimuove da files la voce del dato con path p, aggiornando gli indici per proprietario e per utente
+    @modifies this
+     */
+    private void detach(String p) {
+        FileEntry<E> entry = files.remove(p);
+        if(entry == null) return;
+        Set<String> owned = ownedEntries.get(entry.owner);
+        owned.remove(p);
+        if(owned.isEmpty()) ownedEntries.remove(entry.owner);
+        for (String id : entry.accesses.keySet()) unshare(id, p);
+    }
+
+    /*
+    Rimuove l'accesso dell'utente Id al dato di entry con path p
+    @requires entry è la voce in files del dato con path p
+    @modifies this, entry
+     */
+    private void revoke(String p, FileEntry<E> entry, String Id) {
+        if(entry.accesses.remove(Id) != null) unshare(Id, p);
+    }
+
+    //Rimuove p dall'indice dei dati condivisi con l'utente Id
+    private void unshare(String Id, String p) {
+        Map<String,AccessLevel> shared = sharedEntries.get(Id);
+        if(shared == null) return;
+        shared.remove(p);
+        if(shared.isEmpty()) sharedEntries.remove(Id);
+    }
+
+    /*
+    Restituisce i path dei dati di cui è proprietario l'utente Id, senza scorrere i dati materializzati di altri utenti
+     */
+    private List<String> ownedPaths(String Id) {
+        List<String> res = new ArrayList<>();
+        if(index != null) {
+            for (String p : index.getOwnedFiles(Id)) {
+                if(!files.containsKey(p) && !removedFiles.contains(p)) res.add(p);
+            }
+        }
+        res.addAll(ownedEntries.getOrDefault(Id, Collections.emptySet()));
+        return res;
+    }
+
+    /*
+    Restituisce i path dei dati condivisi con l'utente Id da altri utenti e il relativo livello di accesso, senza scorrere
+    i dati materializzati non condivisi con Id
+     */
+    private Map<String,AccessLevel> sharedPaths(String Id) {
+        Map<String,AccessLevel> res = new LinkedHashMap<>();
+        if(index != null) {
+            for (Map.Entry<String,AccessLevel> grant : index.getSharedFiles(Id).entrySet()) {
+                String p = grant.getKey();
+                if(!files.containsKey(p) && !removedFiles.contains(p)) res.put(p, grant.getValue());
+            }
+        }
+        res.putAll(sharedEntries.getOrDefault(Id, Collections.emptyMap()));
+        return res;
+    }
+
+    /*
+    Restituisce il contenuto di file codificato con codec
+    @throws IOException se si verifica un errore durante la codifica
+     */
+    private byte[] encode(E file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.encode(file, bytes);
+        return bytes.toByteArray();
+    }
+
+    /*
+    Restituisce una deep copy di d (vedi deepCopy)
+    @requires d != null
+     */
+    @SuppressWarnings("unchecked")
+    private E copyOf(E d) {
+        return (E) deepCopy(d);
+    }
+
+    /* Restituisce una deep copy di orig, o null se l'oggetto non può essere serializzato.
+     * @requires orig != null
+     * @throws NullPointerException se orig = null
+     * @return null se si è verificato
+     */
+    private Object deepCopy(Object orig) throws NullPointerException{
+        if(orig == null) throw new NullPointerException("orig ucan't be null!");
+
+        Object obj = null;
+        try {
+            // Conversione dell'oggetto in un array di byte
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bos);
+            out.writeObject(orig);
+            out.flush();
+            out.close();
+
+            // Crea un input stream dall'array di byte e leggi
+            // una copia dell'oggetto
+            ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bos.toByteArray()));
+            obj = in.readObject();
+        }
+        catch(IOException e) {
+            e.printStackTrace();
+        }
+        catch(ClassNotFoundException cnfe) {
+            cnfe.printStackTrace();
+        }
+        return obj;
+    }
+}
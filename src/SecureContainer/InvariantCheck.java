@@ -0,0 +1,13 @@
+package SecureContainer;
+
+/*
+ * Overview:
+ * InvariantCheck stabilisce come un container verifica il proprio invariante di rappresentazione (IR) all'inizio e alla
+ * fine di ogni operazione quando le asserzioni sono abilitate (-ea). Con le asserzioni disabilitate l'invariante non
+ * viene mai verificato, indipendentemente da InvariantCheck.
+ */
+public enum InvariantCheck {
+    FULL,        //ogni verifica controlla l'intero IR: costo proporzionale alla dimensione del container
+    INCREMENTAL, //ogni verifica controlla le dimensioni delle strutture e i soli dati e utenti modificati dalla verifica precedente
+    SAMPLED      //come INCREMENTAL, con una verifica completa ogni InvariantTracker.SAMPLE_INTERVAL verifiche
+}
@@ -0,0 +1,100 @@
+package SecureContainer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+final class InvariantTracker<K> {
+    /*
+     * Overview:
+     * InvariantTracker registra i dati e gli utenti di un container modificati dall'ultima verifica dell'invariante di
+     * rappresentazione e stabilisce, secondo InvariantCheck, se la verifica successiva deve essere completa o può
+     * limitarsi alle voci modificate. Le modifiche vengono registrate solo se le asserzioni sono abilitate e la
+     * verifica non è completa, quindi senza costi in produzione.
+     *
+     * IR:
+     *    mode != null && files != null && users != null && (all => files = {} && users = {})
+     */
+
+    static final int SAMPLE_INTERVAL = 1024; //numero di verifiche tra due verifiche complete con InvariantCheck.SAMPLED
+    static final boolean ASSERTIONS; //true se le asserzioni sono abilitate per il package
+
+    static {
+        boolean enabled = false;
+        assert enabled = true; //eseguito solo con le asserzioni abilitate
+        ASSERTIONS = enabled;
+    }
+
+    private InvariantCheck mode = InvariantCheck.INCREMENTAL; //modalità di verifica
+    private final Set<K> files = new HashSet<>(); //dati modificati dall'ultima verifica
+    private final Set<String> users = new HashSet<>(); //id degli utenti modificati dall'ultima verifica
+    private boolean all = true; //true se la prossima verifica deve essere completa (ad esempio dopo readContainerFromDisk)
+    private long checks; //numero di verifiche effettuate
+
+    InvariantCheck getMode() {
+        return mode;
+    }
+
+    /*
+    Imposta la modalità di verifica; la verifica successiva è completa
+    @requires p_mode != null
+    @throws NullPointerException se p_mode = null
+    @modifies this
+     */
+    void setMode(InvariantCheck p_mode) throws NullPointerException {
+        if(p_mode == null) throw new NullPointerException("p_mode must be != null !");
+        mode = p_mode;
+        markAll();
+    }
+
+    //Registra la modifica del dato file
+    void markFile(K file) {
+        if(tracking()) files.add(file);
+    }
+
+    //Registra la modifica dell'utente con id Id
+    void markUser(String Id) {
+        if(tracking()) users.add(Id);
+    }
+
+    //Richiede una verifica completa alla prossima verifica (ad esempio perché tutte le strutture sono state sostituite)
+    void markAll() {
+        all = true;
+        files.clear();
+        users.clear();
+    }
+
+    /*
+    Stabilisce se la prossima verifica deve essere completa
+    @modifies this
+    @return true se la verifica deve controllare l'intero IR; false se può limitarsi a dirtyFiles() e dirtyUsers()
+     */
+    boolean fullCheckDue() {
+        checks++;
+        return all || mode == InvariantCheck.FULL || (mode == InvariantCheck.SAMPLED && checks % SAMPLE_INTERVAL == 0);
+    }
+
+    //Dati modificati dall'ultima verifica
+    Set<K> dirtyFiles() {
+        return Collections.unmodifiableSet(files);
+    }
+
+    //Id degli utenti modificati dall'ultima verifica
+    Set<String> dirtyUsers() {
+        return Collections.unmodifiableSet(users);
+    }
+
+    /*
+    Registra il successo di una verifica: le modifiche precedenti non devono più essere verificate
+    @modifies this
+     */
+    void checked() {
+        all = false;
+        files.clear();
+        users.clear();
+    }
+
+    private boolean tracking() {
+        return ASSERTIONS && !all && mode != InvariantCheck.FULL;
+    }
+}
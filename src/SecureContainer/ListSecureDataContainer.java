@@ -6,32 +6,66 @@ import SecureContainer.Exceptions.NoAccessException;
 import SecureContainer.Exceptions.UnknownUserException;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class ListSecureDataContainer<E extends SecureFile> extends SecureFile implements ISecureFileContainer<E>  {
     /*
      AF(c):
-        U = c.users
-        D = c.data
+        U = c.users.values
+        D = c.positions.keySet (gli elementi non null di c.dataSet, in ordine di inserimento)
         A = c.AccessLevel
+        Content(d) = c.payloads.get(d) se presente; il contenuto del documento su disco d.path altrimenti
 
-        Owner(d) = c.owners(di) dove di è la posizione del dato d in data
-        Access(d,u) = c.accesses(di) dove di è la posizione del dato d in data
+        Owner(d) = c.owners(di) dove di = c.positions.get(d) è la posizione del dato d in dataSet
+        Access(d,u) = W se c.owners(di) = u; c.acl.get(d, u.id) altrimenti, dove di = c.positions.get(d)
+        OwnedData(u) = c.ownedFiles.get(u.id)
+        SharedData(u) = c.acl.getShared(u.id).keySet
 
      IR:
-        users != null && dataSet!= null && owners != null && accesses != null && admin != null &&
-        admin.hasPassword() && users.contains(admin) &&
-        |dataSet| = |owners| = |accesses| &&
-        Not (Exist d1 e d2. d1 != d2 && dataSet.contains(d1) && dataSet.contains(d2)) &&
-        owners sottoinsieme di users &&
-        For all map. map in accesses => map.keySet sottoinsieme di users
+        users != null && dataSet!= null && owners != null && acl != null && admin != null &&
+        admin.hasPassword() && users.get(admin.id) = admin &&
+        For all (id,u) in users. u.id = id &&
+        ownedFiles != null && ownedFiles.keySet = users.keySet &&
+        For all (id,files) in ownedFiles. For all d in files. owners(di).id = id && sum |files| = |positions| &&
+        acl.getFiles() sottoinsieme di positions.keySet && acl.getUsers() sottoinsieme di users.keySet &&
+        For all d in acl.getFiles(). Not (acl.getAccesses(d) contiene owners(di).id) &&
+        |dataSet| = |owners| && positions != null &&
+        For all 0 <= i < |dataSet|. (dataSet(i) = null <==> owners(i) = null) &&
+        For all 0 <= i < |dataSet|. dataSet(i) != null ==> positions.get(dataSet(i)) = i &&
+        |positions| = |{i | dataSet(i) != null}| &&
+        |dataSet| - |positions| <= max(|positions|, 1) &&
+        owners sottoinsieme di users.values + {null} &&
+        snapshots != null && snapshots.keySet sottoinsieme di positions.keySet &&
+        diskVersions != null && diskVersions.keySet sottoinsieme di positions.keySet && payloads != null
+
+     NOTA BENE: dataSet, positions, ownedFiles, acl, snapshots e diskVersions contengono solo le chiavi dei dati, ovvero
+                SecureFile con il path del dato; il contenuto dei dati è memorizzato in payloads (vedi PayloadCache).
      */
 
     private User admin; //admin del container
-    private Set<User> users; //Utenti presenti nel container
-    private List<E> dataSet; //dati presenti nel container
-    private List<User> owners; //proprietari dei dati presenti nel container
-    private List<Map<User,AccessLevel>> accesses; //Livello di accesso ad ogni dato presente nel container asseganto a ogni utente nel container
+    private long generation; //Generazione dello snapshot di this scritto su disco (vedi ContainerJournal)
+    private Map<String,User> users; //Utenti presenti nel container indicizzati per id
+    private List<SecureFile> dataSet; //dati presenti nel container in ordine di inserimento (null per i dati rimossi non ancora compattati)
+    private List<User> owners; //proprietari dei dati presenti nel container (null per i dati rimossi non ancora compattati)
+    private transient Map<SecureFile,Integer> positions = new HashMap<>(); //Posizione in dataSet di ciascun dato presente nel container
+    private Map<String,Set<SecureFile>> ownedFiles; //Dati posseduti da ciascun utente del container, in ordine di inserimento, indicizzati per id
+    private AclStore<SecureFile> acl; //Livello di accesso ai dati presenti nel container assegnato dai proprietari ad altri utenti
+    private transient Map<SecureFile, E> snapshots = new HashMap<>(); //Copie in sola lettura dei dati, condivise tra le chiamate a getSnapshot
+    private transient SessionManager sessions = new SessionManager(); //Sessioni aperte sul container
+    private transient CredentialCache credentialCache; //Cache delle verifiche di password (null se disabilitata)
+    private transient SecureFileCodec codec = new CompactSecureFileCodec(); //Formato dei documenti su disco dei dati
+    private transient boolean logging; //Se true le letture/scritture dei dati su disco vengono segnalate su System.out
+    private transient LoadPolicy loadPolicy = LoadPolicy.ALWAYS; //Quando get rilegge il contenuto dei dati da disco
+    private transient Map<SecureFile,Long> diskVersions = new HashMap<>(); //Versione del documento su disco dei dati caricati in memoria
+    private transient ContainerJournal journal; //Journal delle modifiche successive allo snapshot su disco (null se disabilitato)
+    private transient long journalLimit; //Dimensione in byte del journal oltre la quale this viene riscritto su disco
+    private transient boolean synced; //true se lo snapshot su disco e il journal contengono tutte le modifiche di this
+    private transient IOException journalFailure; //Ultimo errore che ha impedito di rendere persistente una modifica di this (null se this è stato riscritto su disco dopo l'errore)
+    private transient InvariantTracker<SecureFile> invariants = new InvariantTracker<>(); //Dati e utenti modificati dall'ultima verifica di IR
+    private transient PayloadCache<E> payloads; //Contenuto dei dati di D indicizzato per path
 
     /*
     Inizializza container vuoto.
@@ -39,47 +73,152 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     */
     public ListSecureDataContainer(String p_filePath) throws NullPointerException, IllegalArgumentException {
         super(p_filePath);
-        users = new HashSet<>();
+        users = new HashMap<>();
         dataSet = new ArrayList<>();
         owners = new ArrayList<>();
-        accesses = new ArrayList<>();
+        ownedFiles = new HashMap<>();
+        acl = new AclStore<>();
         admin = new User("Luca", "Diavolo!");
-        users.add(admin);
+        users.put(admin.getId(), admin);
+        ownedFiles.put(admin.getId(), new LinkedHashSet<>());
+        setPayloadCache(new PayloadCache<>());
+    }
+
+    /*
+    Verifica la condizione di IR secondo la modalità di verifica di this (vedi InvariantCheck)
+    @modifies this
+    @return true se IR = true (limitatamente alle voci verificate); false altrimenti
+     */
+    private boolean repInv() {
+        boolean ir = invariants.fullCheckDue() ? fullRepInv() : incrementalRepInv();
+        if (ir) invariants.checked();
+        return ir;
+    }
+
+    /*
+    Verifica le dimensioni delle strutture di this e la condizione di IR per i soli dati e utenti modificati
+    dall'ultima verifica
+    @return true se IR = true per i dati e gli utenti modificati; false altrimenti
+     */
+    private boolean incrementalRepInv() {
+        if (users == null || dataSet == null || owners == null || acl == null || ownedFiles == null || admin == null ||
+            snapshots == null || diskVersions == null) return false;
+        if (!admin.hasPassword() || admin != users.get(admin.getId()) || ownedFiles.size() != users.size() ||
+            positions == null || owners.size() != dataSet.size() || positions.size() > dataSet.size() ||
+            dataSet.size() - positions.size() > Math.max(positions.size(), 1) ||
+            acl.getFiles().size() > positions.size() || acl.getUsers().size() > users.size() ||
+            snapshots.size() > positions.size() || diskVersions.size() > positions.size() || payloads == null) return false;
+        for (String id : invariants.dirtyUsers()) {
+            User u = users.get(id);
+            if (u == null) {
+                //utente rimosso: nessun dato e nessun accesso
+                if (ownedFiles.containsKey(id) || acl.countShared(id) != 0) return false;
+                continue;
+            }
+            Set<SecureFile> owned = ownedFiles.get(id);
+            if (!u.getId().equals(id) || owned == null || !acl.repInv(id)) return false;
+            for (SecureFile d : owned) {
+                int pos = indexOf(d);
+                if (pos == -1 || owners.get(pos) != u) return false;
+            }
+        }
+        for (SecureFile d : invariants.dirtyFiles()) {
+            int pos = indexOf(d);
+            if (pos == -1) {
+                //dato rimosso: nessun accesso o copia
+                if (!acl.getAccesses(d).isEmpty() || snapshots.containsKey(d) || diskVersions.containsKey(d)) return false;
+                continue;
+            }
+            User owner = owners.get(pos);
+            //La posizione del dato è quella registrata in positions
+            if (!d.equals(dataSet.get(pos)) || !isRegistered(owner) || !ownedFiles.get(owner.getId()).contains(d)) return false;
+            if (!acl.repInv(d)) return false;
+            for (String id : acl.getAccesses(d).keySet()) {
+                if (id.equals(owner.getId()) || !users.containsKey(id)) return false;
+            }
+        }
+        return true;
     }
 
     /*
     Verifica la condizione di IR
     @return true se IR = true; false altrimenti
      */
-    private boolean repInv() {
+    private boolean fullRepInv() {
         boolean ir;
-        ir = users != null && dataSet != null && owners != null && accesses != null && admin != null &&
-                admin.hasPassword() && users.contains(admin) && dataSet.size() == owners.size() && dataSet.size() == accesses.size() &&
-                onlyUnique(dataSet);
+        ir = users != null && dataSet != null && owners != null && acl != null && ownedFiles != null && admin != null &&
+                positions != null && ownedFiles.keySet().equals(users.keySet()) &&
+                admin.hasPassword() && admin.equals(users.get(admin.getId())) && dataSet.size() == owners.size() &&
+                dataSet.size() - positions.size() <= Math.max(positions.size(), 1);
+        if (ir) {
+            //positions contiene esattamente i dati non null di dataSet con la relativa posizione: i dati sono unici
+            int live = 0;
+            for (int i = 0; i < dataSet.size(); i++) {
+                SecureFile d = dataSet.get(i);
+                if ((d == null) != (owners.get(i) == null) || (d != null && !Integer.valueOf(i).equals(positions.get(d)))) {
+                    ir = false;
+                    break;
+                }
+                if (d != null) live++;
+            }
+            ir = ir && live == positions.size();
+        }
+        if (ir) {
+            //For all (id,u) in users. u.id = id
+            for (Map.Entry<String, User> entry : users.entrySet()) {
+                if (!entry.getKey().equals(entry.getValue().getId())) {
+                    ir = false;
+                    break;
+                }
+            }
+        }
+        if (ir) {
+            //ownedFiles.keySet = users.keySet && For all (id,files) in ownedFiles. For all d in files. owners(d).id = id
+            int owned = 0;
+            for (Map.Entry<String, Set<SecureFile>> entry : ownedFiles.entrySet()) {
+                for (SecureFile d : entry.getValue()) {
+                    int pos = indexOf(d);
+                    User owner = pos == -1 ? null : owners.get(pos);
+                    if (owner == null || !owner.getId().equals(entry.getKey())) {
+                        ir = false;
+                        break;
+                    }
+                }
+                if (!ir) break;
+                owned += entry.getValue().size();
+            }
+            //Ogni dato compare in esattamente un insieme di ownedFiles
+            ir = ir && owned == positions.size();
+        }
+        if (ir) {
+            //acl.getUsers() sottoinsieme di users.keySet
+            ir = acl.repInv() && users.keySet().containsAll(acl.getUsers());
+        }
+        if (ir) {
+            //acl.getFiles() sottoinsieme di positions.keySet && For all d in acl.getFiles(). Not (acl.getAccesses(d) contiene owners(di).id)
+            for (SecureFile d : acl.getFiles()) {
+                int pos = indexOf(d);
+                if (pos == -1 || acl.get(d, owners.get(pos).getId()) != null) {
+                    ir = false;
+                    break;
+                }
+            }
+        }
         if (ir) {
-            //For all map. map in accesses => map.keySet sottoinsieme di users
-            for (Map<User, AccessLevel> map : accesses) {
-                if (!users.containsAll(map.keySet())) {
+            //owners sottoinsieme di users.values + {null}
+            for (User u : owners) {
+                if (u != null && !isRegistered(u)) {
                     ir = false;
                     break;
                 }
             }
         }
+        ir = ir && snapshots != null && positions.keySet().containsAll(snapshots.keySet());
+        ir = ir && diskVersions != null && positions.keySet().containsAll(diskVersions.keySet());
+        ir = ir && payloads != null;
         return ir;
     }
 
-    /*
-    Verifica se p_l contiene solo elementi unici (true); oppure no (false)
-    @requires p_l != null
-    @throws NullPointerException se p_l = null
-    @return true p_l contiene almeno una coppia di elementi d1 e d2 per i quali d1.equals(d2); false altrimenti
-     */
-    private boolean onlyUnique(List<E> p_l) throws NullPointerException {
-        if (p_l == null) throw new NullPointerException("p_l can't be null!");
-        List<E> noDuplicates = new ArrayList<>(new HashSet<>(p_l)); //converto lista in un insieme. Di conseguenza possibile elementi duplicati vengono rimossi
-        return p_l.size() == noDuplicates.size();
-    }
-
     /*
     Crea l’identità di un nuovo utente della collezione
     @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
@@ -97,11 +236,34 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
         if (passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
         if (userExist(Id)) throw new DuplicatedUserException("users id must be unique !");
 
-        users.add(new User(Id, passw));
+        doCreateUser(new User(Id, passw));
+    }
 
+    /*
+    Aggiunge u agli utenti di this e registra la creazione nel journal
+    @requires u != null && u.hasPassword() && Not (Exist v appartenente a U tale che v.id = u.id)
+    @modifies this
+    @effects this_post.U = this_pre.U + u
+     */
+    private void doCreateUser(User u) {
+        assert repInv();
+        addUser(u);
+        journal(j -> j.appendCreateUser(u.getId(), u.getPasswordHash()));
         assert repInv();
     }
 
+    /*
+    Aggiunge u agli utenti di this
+    @requires u != null && Not (Exist v appartenente a U tale che v.id = u.id)
+    @modifies this
+    @effects this_post.U = this_pre.U + u && OwnedData(u) = {} && SharedData(u) = {}
+     */
+    private void addUser(User u) {
+        users.put(u.getId(), u);
+        ownedFiles.put(u.getId(), new LinkedHashSet<>());
+        markUser(u.getId());
+    }
+
     /*
      Rimuove l’utente dalla collezione
      @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && !Id.equals(admin.id)
@@ -117,28 +279,52 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public void removeUser(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if (!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
+        doRemoveUser(Id);
+    }
+
+    /*
+    Come removeUser(Id, passw) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato
+    @throws IllegalArgumentException se Id.equals(admin.id)
+    @modifies this
+    @effects vedi removeUser(Id, passw)
+     */
+    private void doRemoveUser(String Id) throws IllegalArgumentException {
+        assert repInv();
         if (Id.equals(admin.getId())) throw new IllegalArgumentException("admin user can't be removed !");
+        //credenziali valide
+        sessions.closeAll(Id); //le sessioni aperte dall'utente non sono più valide
+        if (credentialCache != null) credentialCache.invalidate(Id); //la verifica della password non è più valida
+        for (SecureFile file : ownedFiles.get(Id)) {
+            snapshots.remove(file);
+            diskVersions.remove(file);
+        }
+        dropUser(Id);
+        journal(j -> j.appendRemoveUser(Id));
 
-        User toRemove = new User(Id);
+        assert repInv();
+    }
 
-        //credenziali valide
-        assert users.remove(toRemove); //rimuovo utente da insieme degli utenti presenti
+    /*
+    Rimuove l'utente u con u.id = Id e i dati di cui è proprietario
+    @requires Exist u appartenente a U tale che u.id = Id && u != admin
+    @modifies this
+    @effects this_post.U = this_pre.U - u && this_post.D = this_pre.D - OwnedData(u) &&
+             For all d in this_post.D. Access(u,d) non definito
+     */
+    private void dropUser(String Id) {
+        users.remove(Id); //rimuovo utente da insieme degli utenti presenti
+        markUser(Id);
         //L'insieme dei dati che prima appartenevano all'utente u con u.id = Id devono essere rimossi
-        int lastOwner = owners.indexOf(toRemove);
-        while (lastOwner != -1) {//Ci sono ancora dati di cui era proprietario da rimuovere
-            owners.remove(lastOwner); //rimuovo proprietario del dato rimosso
-            dataSet.remove(lastOwner); //rimuovo dato di cui era proprietario
-            accesses.remove(lastOwner);  //rimuovo mappa deggli accessi definiti per il dato rimosso
-            lastOwner = owners.indexOf(toRemove);
+        for (SecureFile file : ownedFiles.remove(Id)) {
+            markFile(file);
+            release(indexOf(file)); //rimuovo dato di cui era proprietario e relativo proprietario
+            acl.removeFile(file);  //rimuovo gli accessi definiti per il dato rimosso
+            payloads.remove(file);
         }
+        compactIfSparse(); //una sola compattazione per tutti i dati rimossi
         //Rimuovere eventuali accessi asseganti all'utente rimosso
-        Iterator<Map<User, AccessLevel>> iterAccesses = accesses.iterator();
-        while (iterAccesses.hasNext()) {
-            Map<User, AccessLevel> map = iterAccesses.next();
-            map.remove(toRemove);
-        }
-
-        assert repInv();
+        acl.removeUser(Id);
     }
 
     /*
@@ -155,7 +341,17 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public int getSize(String Owner, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if (!userAuth(Owner, passw)) throw new CredentialException("valid users' credentials are required !");
-        return Collections.frequency(owners, new User(Owner));
+        return doGetSize(Owner);
+    }
+
+    /*
+    Come getSize(Owner, passw) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato
+    @return Dato u con u.id = Owner restituisce |OwnedData(u)|
+     */
+    private int doGetSize(String Owner) {
+        assert repInv();
+        return ownedFiles.get(Owner).size();
     }
 
     /*
@@ -176,25 +372,35 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public boolean put(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, IOException {
         assert repInv();
         if (!userAuth(Owner, passw)) throw new CredentialException("valid users' credentials are required !");
+        return doPut(Owner, file);
+    }
+
+    /*
+    Come put(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null
+    @throws NullPointerException se file = null
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects vedi put(Owner, passw, file)
+    @return vedi put(Owner, passw, file)
+     */
+    private boolean doPut(String Owner, E file) throws NullPointerException, IOException {
+        assert repInv();
         if (file == null) throw new NullPointerException("file must be != null !");
 
-        if (dataSet.contains(file)) return false;
+        if (positions.containsKey(file)) return false;
         else {
             //Decommentando la riga seguente si ottiene il seguente risultato: i dati inseriti in this non sono manipolabili dall'esterno.
             //NOTA BENE: se il dato viene modificato e si vogliono rendere effettive le modifiche occorre utilizzare il metodo writeFileOnDisk
             //file = (E) deepCopy(file);
-            dataSet.add(file);
-            User usr = new User(Owner, passw);
-            Map<User, AccessLevel> mapAcc = new HashMap<>();
-            mapAcc.put(usr, AccessLevel.W);
-            owners.add(usr);
-            accesses.add(mapAcc);
+            link(getUser(Owner), file);
             try {
-                writeFileOnDisk(Owner,passw,file); //scrivo oggetto su disco
+                doWriteFileOnDisk(Owner,file); //scrivo oggetto su disco
             }catch (Exception e){
-                remove(Owner,passw,file);
+                doRemove(Owner,file);
                 throw e;
             };
+            journal(j -> j.appendPut(Owner, encode(file)));
         }
 
         assert repInv();
@@ -221,22 +427,89 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public E get(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
         assert repInv();
         if (!userAuth(Owner, passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGet(Owner, file);
+    }
+
+    /*
+    Come get(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return vedi get(Owner, passw, file)
+     */
+    private E doGet(String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
         if (file == null) throw new NullPointerException("file must be != null !");
-        int filePos = dataSet.indexOf(file);
+        int filePos = indexOf(file);
         if (filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
-        Map<User, AccessLevel> fileMapAcc = accesses.get(filePos);
-        if (!fileMapAcc.containsKey(new User(Owner)))
+        AccessLevel acc = accessOf(filePos, Owner); //recupero livello di accesso associato all'utente
+        if (acc == null)
             throw new NoAccessException("user " + Owner + " has no access to file");
 
-        AccessLevel acc = fileMapAcc.get(new User(Owner)); //recupero livello di accesso associato all'utente
-
-        readFileFromDisk(Owner, passw, file); //aggiornna file con contenuto del doc relativo
+        E res = mustLoad(file) ? loadFile(filePos) : getFile(filePos); //aggiornna file con contenuto del doc relativo
 
         assert repInv();
         //NOTA BENE: se l'utente ha accesso in scrittura al dato ottiene un riferimento diretto all'oggetto contenuto
         //           in this. In questo modo le eventuali modfiche fatte dall'esterno si ripercuoteranno anche sul dato all'interno
         //           di this. Sarà compito dell cliente decidere se salvare eventuali modifiche su disco utilizzando il metodo writeFileOnDisk
-        return acc == AccessLevel.W ? dataSet.get(filePos) : (E) deepCopy(dataSet.get(filePos));
+        return acc == AccessLevel.W ? res : (E) deepCopy(res);
+    }
+
+    /*
+    Ottiene una copia in sola lettura del file nella collezione, condivisa tra tutte le chiamate a getSnapshot
+    se vengono rispettati i controlli di identità.
+    A differenza di get il contenuto non viene riletto da disco e la copia viene creata solo alla prima lettura di
+    ciascuna versione del dato: le chiamate successive restituiscono lo stesso oggetto finché il dato non viene
+    riletto da disco (get, readFileFromDisk) o scritto su disco (writeFileOnDisk).
+    NOTA BENE: l'oggetto restituito è condiviso e non deve essere modificato dal chiamante; le modifiche fatte ad un
+               dato ottenuto con get e accesso W sono visibili con getSnapshot solo dopo writeFileOnDisk.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw && d = file &&
+              (Access((u,d)) = w || Access((u,d)) = r) )
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+                                 Not (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw &&
+                                      d = file && (Access((u,d)) = w || Access((u,d)) = r) )
+    @return una copia in sola lettura di file, condivisa tra le chiamate a getSnapshot
+    */
+    @Override
+    public E getSnapshot(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        assert repInv();
+        if (!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetSnapshot(Id, file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @modifies this
+    @effects se snapshots non contiene una copia di file, ne crea una e la aggiunge a snapshots
+    @return vedi getSnapshot(Id, passw, file)
+     */
+    private E doGetSnapshot(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
+        assert repInv();
+        if (file == null) throw new NullPointerException("file must be != null !");
+        int filePos = indexOf(file);
+        if (filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
+        if (accessOf(filePos, Id) == null)
+            throw new NoAccessException("user " + Id + " has no access to file");
+
+        E res = snapshots.get(file);
+        if (res == null) { //prima lettura della versione corrente del dato
+            res = copyOf(loadedFile(filePos));
+            snapshots.put(dataSet.get(filePos), res);
+        }
+
+        assert repInv();
+        return res;
     }
 
     /*
@@ -257,22 +530,66 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public E remove(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
         assert repInv();
         if (!userAuth(Owner, passw)) throw new CredentialException("valid users' credentials are required !");
+        return doRemove(Owner, file);
+    }
+
+    /*
+    Come remove(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    private E doRemove(String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
+        assert repInv();
+        E res = removeOwned(Owner, file);
+        journal(j -> j.appendRemove(Owner, file.getFilePath()));
+        deleteDocument(file);
+
+        assert repInv();
+        return res;
+    }
+
+    /*
+    Rimuove file da D senza registrare la rimozione nel journal né eliminare il documento su disco
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    private E removeOwned(String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
         if (file == null) throw new NullPointerException("file must be != null !");
-        int filePos = dataSet.indexOf(file);
+        int filePos = indexOf(file);
         if (filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
-        if (!owners.get(filePos).equals(new User(Owner)))
+        if (owners.get(filePos) != getUser(Owner))
             throw new NoAccessException("user " + Owner + " must be the Owner to remove file!");
 
-        E res = dataSet.remove(filePos);
-        owners.remove(filePos);
-        accesses.remove(filePos);
-
-        if (!new File(res.getFilePath()).delete()) System.out.println("Failed to remove file: " + res.getFilePath());
-
-        assert repInv();
+        E res; //contenuto del dato che sarà rimosso
+        try {
+            res = getFile(filePos);
+        } catch (IOException | ClassNotFoundException ex) {
+            ex.printStackTrace();
+            res = file; //il contenuto non è più leggibile: restituisco il dato passato
+        }
+        unlink(filePos);
+        snapshots.remove(file);
+        diskVersions.remove(file);
         return res;
     }
 
+    /*
+    Elimina il documento su disco di un dato rimosso da D
+     */
+    private void deleteDocument(E file) {
+        if (!new File(file.getFilePath()).delete()) System.out.println("Failed to remove file: " + file.getFilePath());
+    }
+
     /*
     Crea una copia del file nella collezione
     se vengono rispettati i controlli di identità
@@ -292,14 +609,30 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public void copy(String Owner, String passw, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
         assert repInv();
         if (!userAuth(Owner, passw)) throw new CredentialException("valid users' credentials are required !");
+        doCopy(Owner, file, newFilePath);
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file &&
+              Not (Exist d in D. d.path = newFilePath)
+    @throws NullPointerException se file = null || newFilePath = null
+    @throws IllegalArgumentException se file non in D || newFilePath.isEmpty() || Exist d in D. d.path = newFilePath
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects effettua una copia di file
+     */
+    private void doCopy(String Owner, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException {
+        assert repInv();
         if (file == null) throw new NullPointerException("file must be != null !");
-        int filePos = dataSet.indexOf(file);
+        int filePos = indexOf(file);
         if (filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
-        if (!owners.get(filePos).equals(new User(Owner))) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
-        if (dataSet.contains(new SecureFile(newFilePath))) throw new IllegalArgumentException("newfilePath must be unique inside data collection!");
+        if (owners.get(filePos) != getUser(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
+        if (positions.containsKey(new SecureFile(newFilePath))) throw new IllegalArgumentException("newfilePath must be unique inside data collection!");
         E copyFile = (E)deepCopy(file);
         copyFile.setFilePath(newFilePath);
-        put(Owner, passw, copyFile);
+        doPut(Owner, copyFile);
 
         assert repInv();
     }
@@ -365,34 +698,212 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     private void setAccesses(String Owner, String passw, String Other, E file, AccessLevel acc) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
         assert repInv();
         if (!userAuth(Owner, passw)) throw new CredentialException("valid users' credentials are required !");
+        doSetAccesses(Owner, Other, file, acc);
+    }
+
+    /*
+    Come setAccesses(Owner, passw, Other, file, acc) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && vedi setAccesses(Owner, passw, Other, file, acc)
+    @throws vedi setAccesses(Owner, passw, Other, file, acc) ad eccezione di CredentialException
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = acc
+     */
+    private void doSetAccesses(String Owner, String Other, E file, AccessLevel acc) throws NullPointerException, IllegalArgumentException, UnknownUserException, NoAccessException {
+        assert repInv();
+        grantOwned(Owner, Other, file, acc);
+        journal(j -> j.appendShare(Owner, Other, file.getFilePath(), acc));
+
+        assert repInv();
+    }
+
+    /*
+    Come doSetAccesses(Owner, Other, file, acc) ma senza registrare la condivisione nel journal
+    @requires Owner identifica un utente autenticato && Other != null && !Other.isEmpty() && Owner != Other &&
+              file != null && file in D && acc != null && OwnedData(u) contiene file && (Exist u appartenente a U tale che u.id = Other)
+    @throws vedi doSetAccesses(Owner, Other, file, acc)
+    @modifies this
+    @effects Access(u,file) = acc con u.id = Other
+     */
+    private void grantOwned(String Owner, String Other, E file, AccessLevel acc) throws NullPointerException, IllegalArgumentException, UnknownUserException, NoAccessException {
         if (Other == null) throw new NullPointerException("Other must be != null !");
         if (acc == null) throw new IllegalArgumentException("acc can't be null !");
         if (Other.isEmpty()) throw new IllegalArgumentException("Other can't be empty!");
         if (Owner.equals(Other)) throw new IllegalArgumentException("You can't share data with yourself!");
         if (file == null) throw new NullPointerException("file must be != null !");
-        int filePos = dataSet.indexOf(file);
+        int filePos = indexOf(file);
         if (filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
-        if (!owners.get(filePos).equals(new User(Owner)))
+        if (owners.get(filePos) != getUser(Owner))
             throw new NoAccessException("user " + Owner + " must be the Owner to share file!");
-        if (!users.contains(new User(Other)))
+        if (!users.containsKey(Other))
             throw new UnknownUserException("you are trying to share a file with unknown user: " + Other);
 
-        User otherUser = getUser(Other);
-        accesses.get(filePos).put(otherUser, acc);
+        grant(filePos, getUser(Other), acc);
+    }
+
+    /*
+    Inserisce file in D con proprietario usr
+    @requires file != null && usr appartiene a U && file non in D
+    @modifies this
+    @effects this_post.D = this_pre.D + file && Owner(file) = usr && Access(usr,file) = w
+     */
+    private void link(User usr, E file) {
+        SecureFile key = keyOf(file); //le strutture di this non devono mantenere in memoria il contenuto di file
+        positions.put(key, dataSet.size());
+        dataSet.add(key);
+        owners.add(usr);
+        ownedFiles.get(usr.getId()).add(key);
+        payloads.put(file);
+        markFile(key);
+        markUser(usr.getId());
+    }
+
+    /*
+    Rimuove da D il dato in posizione filePos
+    @requires 0 <= filePos < dataSet.size()
+    @modifies this
+    @effects this_post.D = this_pre.D - dataSet.get(filePos)
+    @return la chiave del dato rimosso
+     */
+    private SecureFile unlink(int filePos) {
+        User owner = owners.get(filePos);
+        SecureFile res = release(filePos);
+        acl.removeFile(res); //res non è più condiviso con gli utenti a cui il proprietario ne aveva concesso l'accesso
+        ownedFiles.get(owner.getId()).remove(res);
+        payloads.remove(res);
+        compactIfSparse();
+        markFile(res);
+        markUser(owner.getId());
+        return res;
+    }
+
+    /*
+    Libera la posizione filePos di dataSet e owners lasciando al suo posto un dato rimosso (null): le posizioni degli
+    altri dati non cambiano
+    @requires 0 <= filePos < dataSet.size() && dataSet.get(filePos) != null
+    @modifies this
+    @effects dataSet(filePos) = null && owners(filePos) = null && positions non contiene il dato in posizione filePos
+    @return la chiave del dato rimosso
+     */
+    private SecureFile release(int filePos) {
+        SecureFile res = dataSet.set(filePos, null);
+        owners.set(filePos, null);
+        positions.remove(res);
+        return res;
+    }
+
+    /*
+    Compatta dataSet e owners se i dati rimossi sono più dei dati presenti. Il costo della compattazione è
+    ammortizzato sulle rimozioni che l'hanno resa necessaria.
+    @modifies this
+    @effects |dataSet| - |positions| <= max(|positions|, 1)
+     */
+    private void compactIfSparse() {
+        if (dataSet.size() - positions.size() > Math.max(positions.size(), 1)) reindex();
+    }
+
+    /*
+    Rimuove i dati rimossi (null) da dataSet e owners mantenendo l'ordine di inserimento e ricalcola positions
+    @modifies this
+    @effects dataSet e owners non contengono null && For all 0 <= i < |dataSet|. positions.get(dataSet(i)) = i
+     */
+    private void reindex() {
+        List<SecureFile> newDataSet = new ArrayList<>(dataSet.size());
+        List<User> newOwners = new ArrayList<>(owners.size());
+        Map<SecureFile,Integer> newPositions = new HashMap<>();
+        for (int i = 0; i < dataSet.size(); i++) {
+            SecureFile d = dataSet.get(i);
+            if (d == null) continue;
+            newPositions.put(d, newDataSet.size());
+            newDataSet.add(d);
+            newOwners.add(owners.get(i));
+        }
+        dataSet = newDataSet;
+        owners = newOwners;
+        positions = newPositions;
+    }
+
+    /*
+    Restituisce la posizione in dataSet del dato file
+    @return i tale che dataSet(i).equals(file); -1 se file non in D
+     */
+    private int indexOf(Object file) {
+        Integer pos = positions.get(file);
+        return pos == null ? -1 : pos;
+    }
+
+    /*
+    Assegna ad other il livello di accesso acc al dato in posizione filePos
+    @requires 0 <= filePos < dataSet.size() && other appartiene a U && other != owners.get(filePos) && acc != null
+    @modifies this
+    @effects Access(other,dataSet.get(filePos)) = acc
+     */
+    private void grant(int filePos, User other, AccessLevel acc) {
+        acl.grant(dataSet.get(filePos), other.getId(), acc);
+        markFile(dataSet.get(filePos));
+        markUser(other.getId());
+    }
+
+    /*
+    Registra la modifica di file per la verifica incrementale di IR (vedi InvariantTracker)
+     */
+    private void markFile(SecureFile file) {
+        if (invariants != null) invariants.markFile(file); //invariants = null durante la riapplicazione del journal
+    }
+
+    /*
+    Registra la modifica dell'utente con id Id per la verifica incrementale di IR (vedi InvariantTracker)
+     */
+    private void markUser(String Id) {
+        if (invariants != null) invariants.markUser(Id); //invariants = null durante la riapplicazione del journal
+    }
+
+    /*
+    Restituisce il livello di accesso dell'utente u con u.id = Id al dato in posizione filePos
+    @requires 0 <= filePos < dataSet.size()
+    @return Access(dataSet.get(filePos),u); null se non definito
+     */
+    private AccessLevel accessOf(int filePos, String Id) {
+        return owners.get(filePos).getId().equals(Id) ? AccessLevel.W : acl.get(dataSet.get(filePos), Id);
+    }
+
+    private class SharedFilesIterator implements Iterator<E> {
+        private final Iterator<Map.Entry<SecureFile,AccessLevel>> iterShared; //iteratore dei dati condivisi con targetUser
+
+        //Inizializza l'iteratore sui dati condivisi con l'utente con id p_targetId
+        SharedFilesIterator(String p_targetId){
+            iterShared = acl.getShared(p_targetId).entrySet().iterator();
+        }
+
+        /*
+         * Verifica se sono rimasti ancora dei dati da visitare
+         * @return ci sono ancora dati da visitare; false altrimenti
+         */
+        @Override
+        public boolean hasNext() {
+            return iterShared.hasNext();
+        }
+
+        /*
+         * Restituisce il prossimo dato condiviso con targetUser: una copia se l'accesso è in sola lettura
+         * @throws NoSuchElementException se !hasNext()
+         * @throws UncheckedIOException se il contenuto del dato non è in memoria e non può essere letto da disco
+         * @return prossimo dato condiviso con targetUser
+         */
+        @Override
+        public E next() {
+            Map.Entry<SecureFile,AccessLevel> entry = iterShared.next();
+            E d = loadedFile(indexOf(entry.getKey()));
+            return entry.getValue() == AccessLevel.W ? d : copyOf(d);
+        }
 
-        assert repInv();
     }
 
     private class UserFilesIterator implements Iterator<E> {
-        private E current; //elemento corrente
-        private User targetUser; //proprietario dei file
-        private int currentTargetPos = -1; //Ultima posizione di targetUser in owners
+        private final Iterator<SecureFile> iterFiles; //iteratore dei dati di cui è proprietario targetUser
 
-        //Inizializza putatore al primo dato di cui è proprietario targetUser
-        UserFilesIterator(User p_targetUser){
-            targetUser = p_targetUser;
-            currentTargetPos = ListSecureDataContainer.this.owners.indexOf(p_targetUser);
-            current = currentTargetPos == -1 ? null : ListSecureDataContainer.this.dataSet.get(currentTargetPos);
+        //Inizializza l'iteratore sui dati di cui è proprietario l'utente con id p_targetId
+        UserFilesIterator(String p_targetId){
+            iterFiles = ownedFiles.get(p_targetId).iterator();
         }
 
         /*
@@ -401,25 +912,18 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
          */
         @Override
         public boolean hasNext() {
-            return current == null;
+            return iterFiles.hasNext();
         }
 
         /*
-         * Restituisce dato corrente di targetUser e aggiorna il puntatore.
-         * @modifies current
-         * @effect current punta al successivo dato da visitare; se non ce ne sono altri current = null
-         * @return dato corrente di targetUser
+         * Restituisce il prossimo dato di targetUser.
+         * @throws NoSuchElementException se !hasNext()
+         * @throws UncheckedIOException se il contenuto del dato non è in memoria e non può essere letto da disco
+         * @return prossimo dato di targetUser
          */
         @Override
         public E next() {
-            E data = current;
-            //Recupero posizione (se possibile) di un altra occorrenza di targetUser nella lista dei proprietari rimanente
-            int newTargetPos = ListSecureDataContainer.this.owners.subList(currentTargetPos+1,owners.size()).indexOf(targetUser);
-            //Se non trovo altre occorrenze nella lista rimanente significa che ho finito la visita; altrimenti assegno a currentTargetPos
-            //la posizione della nuova occorrenza trovata nella lista rimanente.
-            currentTargetPos = newTargetPos == -1 ? -1 : currentTargetPos + 1 + newTargetPos;
-            current = currentTargetPos == -1 ? null : ListSecureDataContainer.this.dataSet.get(currentTargetPos);
-            return  data;
+            return loadedFile(indexOf(iterFiles.next()));
         }
 
     }
@@ -440,46 +944,399 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
         assert repInv();
         if (!userAuth(Owner, passw)) throw new CredentialException("valid users' credentials are required !");
         //Restituisco Iteratore senza remove dei file di cui Owner è il proprietario
-        return new UserFilesIterator(new User(Owner));
+        return new UserFilesIterator(Owner);
     }
 
     /*
-    Memorizza file nel documento su disco relativo
-    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
-              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
-    @throws NullPointerException se Id = null || passw = null || file = null
+    Restituisce un iteratore (senza remove) che genera tutti i file condivisi con l'utente da altri utenti,
+    in ordine arbitrario, se vengono rispettati i controlli di identità.
+    I file condivisi in sola lettura sono restituiti come copia, quelli condivisi in scrittura per riferimento (come get)
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
     @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
     @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
-    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
-            Not (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
-    @throws IOException se si verifica un errore durante la scrittura su disco
-    @effects scrivi contenuto di file nel documento su disco relativo
-    @return restitusice true se la scrittura è andata a buon fine; false altrimenti
-     */
+    @return Dato u = {Id,passw} restituisce un iteratore (senza remove) che genera tutti i d in D tali che
+            Access(u,d) è definito && Not (OwnedData(u) contiene d)
+    */
     @Override
-    public void writeFileOnDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException  {
+    public Iterator<E> getSharedWithMe(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if (!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
-        if (file == null) throw new NullPointerException("file must be != null !");
-        int filePos = dataSet.indexOf(file);
-        if (filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
-        if (!accesses.get(filePos).containsKey(new User(Id)))
-            throw new NoAccessException("user " + Id + " has no access to file");
-        if (accesses.get(filePos).get(new User(Id)) != AccessLevel.W)
-            throw new NoAccessException("user " + Id + " must have write access to file!");
 
-        //Salvo oggetto file nel documento su disco relativo
+        return new SharedFilesIterator(Id);
+    }
+
+    /*
+    Apre una sessione per l'utente u con u.id = Id
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @modifies this
+    @return una nuova sessione valida s tale che Id(s) = Id
+    */
+    @Override
+    public Session login(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        assert repInv();
+        if (!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
+        return sessions.open(Id);
+    }
+
+    /*
+    Chiude la sessione s. Dopo la chiusura s non è più valida.
+    @requires s != null
+    @throws NullPointerException se s = null
+    @modifies this
+    @effects s non è più valida
+    */
+    @Override
+    public void logout(Session s) throws NullPointerException {
+        sessions.close(s);
+    }
+
+    /*
+    Verifica che la sessione s sia valida
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void checkSession(Session s) throws NullPointerException, CredentialException {
+        sessions.resolve(s);
+    }
+
+    /*
+    Restituisce le operazioni sugli utenti di this che ShardedSecureFileContainer esegue dopo aver verificato le
+    credenziali sullo shard di riferimento (vedi ShardAccess)
+     */
+    ShardAccess<E> shardAccess() {
+        return new ShardAccess<E>() {
+            @Override
+            public void createUser(String Id, String passwordHash) throws NullPointerException, IllegalArgumentException, DuplicatedUserException {
+                if (passwordHash == null) throw new NullPointerException("passwordHash must be != null !");
+                if (passwordHash.isEmpty()) throw new IllegalArgumentException("passwordHash can't be empty!");
+                if (userExist(Id)) throw new DuplicatedUserException("users id must be unique !");
+                doCreateUser(User.withPasswordHash(Id, passwordHash));
+            }
+
+            @Override
+            public Session login(String Id) throws NullPointerException, CredentialException {
+                if (Id == null) throw new NullPointerException("Id must be != null !");
+                if (!users.containsKey(Id)) throw new CredentialException("valid users' credentials are required !");
+                return sessions.open(Id);
+            }
+
+            @Override
+            public void removeUser(String Id) throws NullPointerException, IllegalArgumentException, CredentialException {
+                if (Id == null) throw new NullPointerException("Id must be != null !");
+                if (!users.containsKey(Id)) throw new CredentialException("valid users' credentials are required !");
+                doRemoveUser(Id);
+            }
+
+            @Override
+            public E ownedCopy(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+                String Owner = sessions.resolve(s);
+                if(file == null) throw new NullPointerException("file must be != null !");
+                int filePos = indexOf(file);
+                if(filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
+                if(owners.get(filePos) != getUser(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
+                return copyOf(file);
+            }
+        };
+    }
+
+    /*
+    Come getSize(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public int getSize(Session s) throws NullPointerException, CredentialException {
+        return doGetSize(sessions.resolve(s));
+    }
+
+    /*
+    Come put(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public boolean put(Session s, E file) throws NullPointerException, CredentialException, IOException {
+        return doPut(sessions.resolve(s), file);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) con u.id = Id(s). I dati vengono inseriti in D con un'unica verifica di IR e
+    scritti su disco in parallelo (vedi SecureFileCodec.writeAll).
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<Boolean> putAll(Session s, List<E> files) throws NullPointerException, CredentialException {
+        return doPutAll(sessions.resolve(s), files);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && files != null
+    @throws NullPointerException se files = null
+    @modifies this
+    @effects vedi putAll(Owner, passw, files)
+    @return vedi putAll(Owner, passw, files)
+     */
+    private BatchResult<Boolean> doPutAll(String Owner, List<E> files) throws NullPointerException {
+        assert repInv();
+        if (files == null) throw new NullPointerException("files must be != null !");
+        BatchResult<Boolean> res = new BatchResult<>(files.size());
+        User usr = getUser(Owner);
+        List<E> linked = new ArrayList<>(); //dati inseriti in D, da scrivere su disco
+        List<Integer> linkedPos = new ArrayList<>(); //posizione in files di ciascun dato di linked
+        for (int i = 0; i < files.size(); i++) {
+            E file = files.get(i);
+            if (file == null) res.fail(i, new NullPointerException("file must be != null !"));
+            else if (positions.containsKey(file)) res.succeed(i, false); //anche se compare più volte in files
+            else {
+                link(usr, file);
+                linked.add(file);
+                linkedPos.add(i);
+            }
+        }
+
+        Exception[] errors = codec.writeAll(linked); //scrivo i dati su disco
+        for (int k = 0; k < linked.size(); k++) {
+            E file = linked.get(k);
+            try {
+                if (errors[k] != null) throw errors[k];
+                diskVersions.put(keyOf(file), diskVersion(file));
+                journal(j -> j.appendPut(Owner, encode(file)));
+                if (logging) System.out.println("Object has been serialized");
+                res.succeed(linkedPos.get(k), true);
+            } catch (Exception e) {
+                //come put: il dato non scritto su disco viene rimosso
+                unlink(indexOf(file));
+                diskVersions.remove(file);
+                File doc = new File(file.getFilePath());
+                if (!doc.delete() && doc.exists()) e.addSuppressed(new IOException("Failed to remove file: " + file.getFilePath()));
+                res.fail(linkedPos.get(k), e);
+            }
+        }
+
+        assert repInv();
+        return res;
+    }
+
+    /*
+    Come get(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E get(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        return doGet(sessions.resolve(s), file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E getSnapshot(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return doGetSnapshot(sessions.resolve(s), file);
+    }
+
+    /*
+    Come remove(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E remove(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return doRemove(sessions.resolve(s), file);
+    }
+
+    /*
+    Come removeAll(Owner, passw, files) con u.id = Id(s). I dati vengono rimossi da D con un'unica verifica di IR e le
+    rimozioni registrate nel journal con un'unica scrittura.
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<E> removeAll(Session s, List<E> files) throws NullPointerException, CredentialException {
+        String Owner = sessions.resolve(s);
+        assert repInv();
+        if (files == null) throw new NullPointerException("files must be != null !");
+        BatchResult<E> res = new BatchResult<>(files.size());
+        List<E> removed = new ArrayList<>(); //dati rimossi da D, di cui eliminare il documento su disco
+        List<String> removedPaths = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                res.succeed(i, removeOwned(Owner, files.get(i)));
+                removed.add(files.get(i));
+                removedPaths.add(files.get(i).getFilePath());
+            } catch (RuntimeException e) {
+                res.fail(i, e);
+            }
+        }
+        if (!removed.isEmpty()) journal(j -> j.appendRemoveAll(Owner, removedPaths));
+        for (E file : removed) deleteDocument(file);
+
+        assert repInv();
+        return res;
+    }
 
-        E containerFile = dataSet.get(filePos); //recupero file da container
-        FileOutputStream f = new FileOutputStream(containerFile.getFilePath());
-        ObjectOutputStream out = new ObjectOutputStream(f);
+    /*
+    Come shareAll(Owner, passw, Other, files, acc) con Owner = Id(s). I livelli di accesso vengono assegnati con
+    un'unica verifica di IR e registrati nel journal con un'unica scrittura.
+    @throws NullPointerException se s = null || files = null || acc = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<Void> shareAll(Session s, String Other, List<E> files, AccessLevel acc) throws NullPointerException, CredentialException {
+        String Owner = sessions.resolve(s);
+        assert repInv();
+        if (files == null) throw new NullPointerException("files must be != null !");
+        if (acc == null) throw new NullPointerException("acc must be != null !");
+        BatchResult<Void> res = new BatchResult<>(files.size());
+        List<String> shared = new ArrayList<>(); //path dei dati condivisi
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                grantOwned(Owner, Other, files.get(i), acc);
+                shared.add(files.get(i).getFilePath());
+            } catch (RuntimeException e) {
+                res.fail(i, e);
+            }
+        }
+        if (!shared.isEmpty()) journal(j -> j.appendShareAll(Owner, Other, shared, acc));
+
+        assert repInv();
+        return res;
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null || newFilePath = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void copy(Session s, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        doCopy(sessions.resolve(s), file, newFilePath);
+    }
+
+    /*
+    Come shareR(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareR(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        doSetAccesses(sessions.resolve(s), Other, file, AccessLevel.R);
+    }
+
+    /*
+    Come shareW(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareW(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        doSetAccesses(sessions.resolve(s), Other, file, AccessLevel.W);
+    }
+
+    /*
+    Come getIterator(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getIterator(Session s) throws NullPointerException, CredentialException {
+        return new UserFilesIterator(sessions.resolve(s));
+    }
+
+    /*
+    Come getSharedWithMe(Id, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getSharedWithMe(Session s) throws NullPointerException, CredentialException {
+        return new SharedFilesIterator(sessions.resolve(s));
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void writeFileOnDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        doWriteFileOnDisk(sessions.resolve(s), file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void readFileFromDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        doReadFileFromDisk(sessions.resolve(s), file);
+    }
+
+    /*
+    Memorizza file nel documento su disco relativo
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+            Not (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+    @return restitusice true se la scrittura è andata a buon fine; false altrimenti
+     */
+    @Override
+    public void writeFileOnDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException  {
+        assert repInv();
+        if (!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
+        doWriteFileOnDisk(Id, file);
+    }
 
-        out.writeObject(containerFile); //memorizzo contenuto di containerFile su disco
+    /*
+    Come writeFileOnDisk(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && Access(u,file) = w
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Access(u,file) != w
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+     */
+    private void doWriteFileOnDisk(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException {
+        assert repInv();
+        if (file == null) throw new NullPointerException("file must be != null !");
+        int filePos = indexOf(file);
+        if (filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
+        AccessLevel acc = accessOf(filePos, Id);
+        if (acc == null)
+            throw new NoAccessException("user " + Id + " has no access to file");
+        if (acc != AccessLevel.W)
+            throw new NoAccessException("user " + Id + " must have write access to file!");
 
-        out.close();
-        f.close();
+        //Salvo oggetto file nel documento su disco relativo
+
+        E containerFile = payloads.get(file); //recupero file da container
+        if (containerFile == null) {
+            //il contenuto del dato non è in memoria: coincide con quello su disco
+            assert repInv();
+            return;
+        }
+        codec.write(containerFile); //memorizzo contenuto di containerFile su disco
+        snapshots.remove(file); //il contenuto memorizzato potrebbe essere cambiato: la copia precedente non è più valida
+        diskVersions.put(dataSet.get(filePos), diskVersion(containerFile));
 
-        System.out.println("Object has been serialized");
+        if (logging) System.out.println("Object has been serialized");
         assert repInv();
     }
 
@@ -500,27 +1357,140 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public void readFileFromDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException  {
         assert repInv();
         if (!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
+        doReadFileFromDisk(Id, file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura su disco
+    @modifies this
+    @effects recupera contenuto di file da documento su disco relativo
+     */
+    private void doReadFileFromDisk(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
         if (file == null) throw new NullPointerException("file must be != null !");
-        int filePos = dataSet.indexOf(file);
+        int filePos = indexOf(file);
         if (filePos == -1) throw new IllegalArgumentException("file must be inside data collection!");
-        if (!accesses.get(filePos).containsKey(new User(Id)))
+        if (accessOf(filePos, Id) == null)
             throw new NoAccessException("user " + Id + " has no access to file");
 
+        loadFile(filePos);
+
+        assert repInv();
+    }
+
+    /*
+    Legge il contenuto del dato in posizione filePos dal documento su disco relativo e lo sostituisce a quello presente in payloads
+    @requires 0 <= filePos < dataSet.size() && dataSet.get(filePos) != null
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @modifies this
+    @effects il dato risulta caricato con la versione del documento appena letto
+    @return il contenuto del dato appena letto
+     */
+    private E loadFile(int filePos) throws IOException, ClassNotFoundException {
+        SecureFile file = dataSet.get(filePos);
+        long version = diskVersion(file); //letta prima del contenuto: una scrittura successiva verrà rilevata da VALIDATE
         // Deserialization
+        E newfile = (E) codec.read(file.getFilePath());
+        //Sostituisco il contenuto in memoria con quello appena letto da documento
+        payloads.put(newfile);
+        snapshots.remove(file); //la copia in sola lettura si riferisce alla versione precedente del dato
+        diskVersions.put(file, version);
+        markFile(file);
+
+        if (logging) System.out.println("Object has been deserialized");
+        return newfile;
+    }
 
-        FileInputStream f = new FileInputStream(file.getFilePath());
-        ObjectInputStream in = new ObjectInputStream(f);
+    /*
+    Restituisce il contenuto del dato in posizione filePos, leggendolo da disco se non presente in payloads
+    @requires 0 <= filePos < dataSet.size() && dataSet.get(filePos) != null
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return Content(dataSet.get(filePos))
+     */
+    private E getFile(int filePos) throws IOException, ClassNotFoundException {
+        E res = payloads.get(dataSet.get(filePos));
+        return res != null ? res : loadFile(filePos);
+    }
 
-        E newfile = (E) in.readObject();
-        //Rimuovo vecchio file da container e metto quello appena letto da documento
-        dataSet.set(filePos, newfile);
+    /*
+    Come getFile(filePos), per i metodi che non possono sollevare eccezioni controllate
+    @requires 0 <= filePos < dataSet.size() && dataSet.get(filePos) != null
+    @throws UncheckedIOException se non è possibile leggere il contenuto del dato da disco
+    @return Content(dataSet.get(filePos))
+     */
+    private E loadedFile(int filePos) throws UncheckedIOException {
+        try {
+            return getFile(filePos);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (ClassNotFoundException ex) {
+            throw new UncheckedIOException(new IOException(ex));
+        }
+    }
 
-        in.close();
-        f.close();
+    /*
+    Restituisce la chiave di file memorizzata nelle strutture di this: un SecureFile con lo stesso path di file, privo
+    del contenuto di file
+    @requires file != null
+     */
+    private static SecureFile keyOf(SecureFile file) {
+        return new SecureFile(file.getFilePath());
+    }
 
-        System.out.println("Object has been deserialized");
+    /*
+    Rimuove la copia in sola lettura del dato con path path: il contenuto del dato non è più in payloads
+     */
+    private void dropSnapshot(String path) {
+        snapshots.remove(new SecureFile(path));
+    }
 
-        assert repInv();
+    /*
+    Carica da disco tutti i dati non ancora caricati. I dati il cui documento non può essere letto restano non caricati
+    e verranno letti da get. Se payloads non può contenere tutti i dati, quelli caricati per primi vengono rimossi.
+    @modifies this
+     */
+    private void loadAll() {
+        for (int i = 0; i < dataSet.size(); i++) {
+            if (dataSet.get(i) == null || diskVersions.containsKey(dataSet.get(i))) continue;
+            try {
+                loadFile(i);
+            } catch (IOException | ClassNotFoundException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /*
+    Verifica se get deve rileggere file da disco secondo loadPolicy
+    @requires file in D
+    @throws IOException se loadPolicy = VALIDATE e non è possibile leggere la versione del documento su disco
+    @return true se file deve essere letto da disco; false se può essere utilizzato il contenuto in memoria
+     */
+    private boolean mustLoad(SecureFile file) throws IOException {
+        Long version = diskVersions.get(file);
+        switch (loadPolicy) {
+            case ALWAYS:
+                return true;
+            case VALIDATE:
+                return version == null || version != diskVersion(file);
+            default:
+                return version == null;
+        }
+    }
+
+    /*
+    Restituisce la versione del documento su disco di file, ovvero l'istante della sua ultima modifica
+    @throws IOException se non è possibile leggere gli attributi del documento
+     */
+    private static long diskVersion(SecureFile file) throws IOException {
+        return Files.getLastModifiedTime(Paths.get(file.getFilePath())).to(TimeUnit.NANOSECONDS);
     }
 
     /*
@@ -539,26 +1509,38 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public boolean readContainerFromDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if (!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
-        if (!admin.equals(new User(Id))) throw new CredentialException("user " + Id + " is not an admin");
+        if (!admin.getId().equals(Id)) throw new CredentialException("user " + Id + " is not an admin");
         // Deserialization
         try {
-            FileInputStream f = new FileInputStream(getFilePath()); //doc sul quale effettuare la lettura
-            ObjectInputStream in = new ObjectInputStream(f);
-
-            ListSecureDataContainer<E> newContainer = (ListSecureDataContainer<E>) in.readObject();
+            ListSecureDataContainer<E> newContainer = (ListSecureDataContainer<E>) ContainerSnapshot.read(getFilePath());
+            newContainer.reindex(); //positions non viene memorizzato su disco
+            //Riapplico allo snapshot le modifiche successive registrate nel journal
+            newContainer.replayJournal(codec);
             //Aggiorno variabili di istanza
+            this.generation = newContainer.generation;
             this.admin = newContainer.admin;
             this.users = newContainer.users;
             this.dataSet = newContainer.dataSet;
             this.owners = newContainer.owners;
-            this.accesses = newContainer.accesses;
-
-            in.close();
-            f.close();
+            this.positions = newContainer.positions;
+            this.ownedFiles = newContainer.ownedFiles;
+            this.acl = newContainer.acl;
+            //gli utenti sono stati sostituiti: le sessioni e le verifiche di password precedenti potrebbero non essere più valide
+            sessions.retainUsers(users::containsKey);
+            if (credentialCache != null) credentialCache.clear();
+            this.snapshots.clear();
+            this.diskVersions.clear();
+            this.payloads.clear();
+            for (E d : newContainer.payloads.values()) this.payloads.put(d); //i dati rimossi verranno riletti da disco
+            invariants.markAll(); //tutte le strutture sono state sostituite
+            synced = true;
+            journalFailure = null;
+            if (journal != null) journal.open(generation);
         } catch (IOException | ClassNotFoundException ex) {
             ex.printStackTrace();
             return false;
         }
+        if (loadPolicy == LoadPolicy.EAGER) loadAll();
         assert repInv();
         return true;
     }
@@ -577,16 +1559,9 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
     public boolean writeContainerOnDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if (!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
-        if (!admin.equals(new User(Id))) throw new CredentialException("user " + Id + " is not an admin");
-        // Serialization
+        if (!admin.getId().equals(Id)) throw new CredentialException("user " + Id + " is not an admin");
         try {
-            FileOutputStream f = new FileOutputStream(getFilePath()); //doc sul quale effettuare la scrittura
-            ObjectOutputStream out = new ObjectOutputStream(f);
-
-            out.writeObject(this); //memorizzo contenuto del container su disco
-
-            out.close();
-            f.close();
+            compact();
         } catch (IOException ex) {
             ex.printStackTrace();
             return false;
@@ -595,6 +1570,112 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
         return true;
     }
 
+    /*
+    Scrive this nel documento su disco relativo (snapshot) e svuota il journal, che da questo momento si riferisce al
+    nuovo snapshot; se il journal è disabilitato elimina l'eventuale journal di uno snapshot precedente
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+     */
+    private void compact() throws IOException {
+        generation++; //il journal dello snapshot precedente non è più valido
+        // Serialization
+        ContainerSnapshot.write(getFilePath(), this); //memorizzo contenuto del container su disco
+
+        if (journal == null) Files.deleteIfExists(Paths.get(journalPath()));
+        else if (journal.isOpen()) journal.reset(generation);
+        else journal.open(generation);
+        synced = true;
+        journalFailure = null;
+    }
+
+    /*
+    Registra l'operazione append nel journal, se abilitato. Se la scrittura sul journal non va a buon fine o il journal
+    supera journalLimit byte, this viene riscritto su disco e il journal svuotato. Se anche la riscrittura non va a buon
+    fine isSynced() restituisce false e l'errore è restituito da getJournalFailure.
+    @modifies this
+     */
+    private void journal(ContainerJournal.Append append) {
+        if (journal == null) {
+            synced = false; //la modifica non viene registrata su disco
+            return;
+        }
+        if (synced) {
+            try {
+                append.to(journal);
+                if (journal.size() < journalLimit) return;
+            } catch (IOException ex) {
+                journalFailure = ex; //la modifica viene registrata dalla riscrittura di this
+            }
+        }
+        //Il journal non contiene la modifica o è troppo grande: riscrivo this su disco
+        try {
+            compact();
+        } catch (IOException ex) {
+            journalFailure = ex; //vedi getJournalFailure
+            synced = false;
+        }
+    }
+
+    /*
+    Riapplica a this le modifiche registrate nel journal dello snapshot di generazione generation.
+    Utilizza solo le variabili di istanza memorizzate nello snapshot: può essere chiamato su un container appena letto da disco.
+    @throws IOException se si verifica un errore durante la lettura del journal
+    @throws ClassNotFoundException se non è possibile deserializzare un dato registrato nel journal
+    @modifies this
+    @return true se esiste il journal dello snapshot di generazione generation; false altrimenti
+     */
+    private boolean replayJournal(SecureFileCodec p_codec) throws IOException, ClassNotFoundException {
+        //Le operazioni sono state verificate prima di essere registrate: vengono ignorate solo quelle non più applicabili
+        return new ContainerJournal(journalPath()).replay(generation, new ContainerJournal.Visitor() {
+            @Override
+            public void createUser(String id, String passwordHash) {
+                if (!users.containsKey(id)) addUser(User.withPasswordHash(id, passwordHash));
+            }
+
+            @Override
+            public void removeUser(String id) {
+                if (users.containsKey(id) && !admin.getId().equals(id)) dropUser(id);
+            }
+
+            @Override
+            public void put(String owner, byte[] file) throws IOException, ClassNotFoundException {
+                @SuppressWarnings("unchecked")
+                E d = (E) p_codec.decode(new ByteArrayInputStream(file));
+                if (users.containsKey(owner) && !positions.containsKey(d)) link(users.get(owner), d);
+            }
+
+            @Override
+            public void remove(String owner, String filePath) {
+                int filePos = indexOf(new SecureFile(filePath));
+                if (filePos != -1 && owners.get(filePos).getId().equals(owner)) unlink(filePos);
+            }
+
+            @Override
+            public void share(String owner, String other, String filePath, AccessLevel acc) {
+                int filePos = indexOf(new SecureFile(filePath));
+                if (filePos == -1 || !owners.get(filePos).getId().equals(owner) || owner.equals(other) || !users.containsKey(other)) return;
+                grant(filePos, users.get(other), acc);
+            }
+        });
+    }
+
+    /*
+    Restituisce il path del documento su disco del journal di this
+     */
+    private String journalPath() {
+        return getFilePath() + ".journal";
+    }
+
+    /*
+    Restituisce il contenuto di file codificato con codec
+    @throws IOException se si verifica un errore durante la codifica
+     */
+    private byte[] encode(E file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.encode(file, bytes);
+        return bytes.toByteArray();
+    }
+
     /*
     Verifica se esiste un utente u con u.id = id
     @requires Id != null && !Id.isEmpty()
@@ -608,7 +1689,7 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
         if (Id == null) throw new NullPointerException("Id must be != null !");
         if (Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
         assert repInv();
-        return users.contains(new User(Id));
+        return users.containsKey(Id);
     }
 
     /*
@@ -625,24 +1706,245 @@ public class ListSecureDataContainer<E extends SecureFile> extends SecureFile im
         if (Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
         if (passw == null) throw new NullPointerException("passw must be != null !");
         if (passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
-        for (User u : users) {
-            if (u.equals(new User(Id)) && u.auth(passw)) return true;
-        }
+        User u = users.get(Id);
         assert repInv();
-        return false;
+        return u != null && checkPassword(u, passw);
     }
 
-    private User getUser(String Id) {
+    /*
+    Verifica se passw è la password di u, utilizzando la cache delle credenziali se abilitata
+    @requires u != null && passw != null && !passw.isEmpty() && u.hasPassword()
+    @return true se passw è la password di u; false altrimenti
+    */
+    private boolean checkPassword(User u, String passw) {
+        return credentialCache == null ? u.auth(passw) : credentialCache.auth(u, passw);
+    }
+
+    /*
+    Abilita la cache delle credenziali verificate utilizzando p_cache; se p_cache = null la cache viene disabilitata
+    @modifies this
+    @effects userAuth utilizza p_cache per evitare di ricalcolare l'hash di password già verificate
+    */
+    public void setCredentialCache(CredentialCache p_cache) {
+        credentialCache = p_cache;
+    }
+
+    /*
+    Restituisce la cache delle credenziali utilizzata da this; null se disabilitata
+    */
+    public CredentialCache getCredentialCache() {
+        return credentialCache;
+    }
+
+    /*
+    Utilizza p_cache per mantenere in memoria il contenuto dei dati: il contenuto dei dati rimossi da p_cache viene
+    riletto da disco quando necessario. Il contenuto dei dati presenti nella cache precedente viene inserito in p_cache.
+    Di default la cache non ha limiti e il contenuto di tutti i dati resta in memoria.
+    NOTA BENE: con una cache limitata, le modifiche fatte ad un dato ottenuto con get e accesso W e non scritte con
+               writeFileOnDisk vengono perse se il dato viene rimosso dalla cache quando il cliente non ne mantiene più
+               alcun riferimento.
+    @requires p_cache != null && p_cache non è utilizzata da altri container
+    @throws NullPointerException se p_cache = null
+    @modifies this
+    */
+    public void setPayloadCache(PayloadCache<E> p_cache) throws NullPointerException {
+        if (p_cache == null) throw new NullPointerException("p_cache must be != null !");
+        if (p_cache == payloads) return;
+        p_cache.setEvictionListener(this::dropSnapshot);
+        if (payloads != null) {
+            payloads.setEvictionListener(null);
+            for (E d : payloads.values()) p_cache.put(d);
+        }
+        payloads = p_cache;
+    }
+
+    /*
+    Restituisce la cache del contenuto dei dati utilizzata da this
+    */
+    public PayloadCache<E> getPayloadCache() {
+        return payloads;
+    }
+
+    /*
+    Utilizza p_codec per scrivere e leggere i dati dai documenti su disco relativi
+    @requires p_codec != null
+    @throws NullPointerException se p_codec = null
+    @modifies this
+    @effects writeFileOnDisk e readFileFromDisk utilizzano il formato definito da p_codec
+    */
+    public void setCodec(SecureFileCodec p_codec) throws NullPointerException {
+        if (p_codec == null) throw new NullPointerException("p_codec must be != null !");
+        codec = p_codec;
+    }
+
+    /*
+    Restituisce il codec utilizzato per scrivere e leggere i dati dai documenti su disco relativi
+    */
+    public SecureFileCodec getCodec() {
+        return codec;
+    }
+
+    /*
+    Abilita (p_logging = true) o disabilita la segnalazione su System.out delle letture/scritture dei dati su disco
+    @modifies this
+    */
+    public void setLogging(boolean p_logging) {
+        logging = p_logging;
+    }
+
+    /*
+    Stabilisce quando get rilegge il contenuto dei dati da disco (vedi LoadPolicy).
+    Con p_policy = EAGER i dati non ancora caricati vengono caricati subito.
+    @requires p_policy != null
+    @throws NullPointerException se p_policy = null
+    @modifies this
+    */
+    public void setLoadPolicy(LoadPolicy p_policy) throws NullPointerException {
+        if (p_policy == null) throw new NullPointerException("p_policy must be != null !");
+        loadPolicy = p_policy;
+        if (loadPolicy == LoadPolicy.EAGER) loadAll();
+    }
+
+    /*
+    Restituisce la politica con la quale get rilegge il contenuto dei dati da disco
+    */
+    public LoadPolicy getLoadPolicy() {
+        return loadPolicy;
+    }
+
+    /*
+    Stabilisce come viene verificato l'invariante di rappresentazione di this quando le asserzioni sono abilitate
+    (vedi InvariantCheck). La verifica successiva è completa.
+    @requires p_check != null
+    @throws NullPointerException se p_check = null
+    @modifies this
+    */
+    public void setInvariantCheck(InvariantCheck p_check) throws NullPointerException {
+        invariants.setMode(p_check);
+    }
+
+    /*
+    Restituisce la modalità di verifica dell'invariante di rappresentazione di this
+    */
+    public InvariantCheck getInvariantCheck() {
+        return invariants.getMode();
+    }
+
+    /*
+    Abilita il journal delle modifiche di this (vedi ContainerJournal), memorizzato nel documento getFilePath() + ".journal".
+    Da questo momento createUser, removeUser, put, copy, remove, shareR e shareW vengono rese persistenti aggiungendo un
+    record al journal; quando il journal supera p_maxSize byte this viene riscritto su disco e il journal svuotato.
+    readContainerFromDisk riapplica allo snapshot letto le modifiche registrate nel journal.
+    Se this contiene modifiche non presenti su disco (ad esempio se non è mai stato letto o scritto su disco) viene
+    riscritto su disco immediatamente.
+    @requires p_maxSize > 0
+    @throws IllegalArgumentException se p_maxSize <= 0
+    @throws IOException se si verifica un errore durante l'accesso al disco; in tal caso il journal resta disabilitato
+    @modifies this
+    */
+    public void enableJournal(long p_maxSize) throws IllegalArgumentException, IOException {
         assert repInv();
-        Iterator<User> iterUsers = users.iterator();
-        User res = null;
-        User target = new User(Id);
-        while (iterUsers.hasNext()) {
-            res = iterUsers.next();
-            if (res.equals(target)) break;
+        if (p_maxSize <= 0) throw new IllegalArgumentException("p_maxSize must be > 0 !");
+        if (journal == null) journal = new ContainerJournal(journalPath());
+        journalLimit = p_maxSize;
+        try {
+            if (synced) journal.open(generation);
+            else compact();
+        } catch (IOException ex) {
+            journal.close();
+            journal = null;
+            throw ex;
         }
         assert repInv();
-        return res;
+    }
+
+    /*
+    Disabilita il journal delle modifiche di this: le modifiche successive vengono rese persistenti solo da writeContainerOnDisk
+    @throws IOException se si verifica un errore durante la chiusura del journal
+    @modifies this
+    */
+    public void disableJournal() throws IOException {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } finally {
+            journal = null;
+        }
+    }
+
+    /*
+    Restituisce il journal delle modifiche di this; null se disabilitato
+    */
+    public ContainerJournal getJournal() {
+        return journal;
+    }
+
+    /*
+    Restituisce true se lo snapshot su disco e il journal contengono tutte le modifiche di this; false se this è stato
+    modificato dall'ultima scrittura su disco a journal disabilitato, o se né il journal né la riscrittura di this su disco
+    sono riusciti a registrare una modifica (vedi getJournalFailure)
+    */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /*
+    Restituisce l'ultimo errore di scrittura del journal o di riscrittura di this su disco che ha impedito di rendere
+    persistente una modifica di this; null se non si è verificato alcun errore dall'ultima scrittura di this su disco
+    */
+    public IOException getJournalFailure() {
+        return journalFailure;
+    }
+
+    /*
+    Restituisce l'utente u con u.id = Id
+    @return u appartenente a U tale che u.id = Id; null se non esiste
+     */
+    private User getUser(String Id) {
+        return users.get(Id);
+    }
+
+    /*
+    Verifica se u è un utente registrato in this
+    @return true se u != null && u appartiene a U; false altrimenti
+     */
+    private boolean isRegistered(User u) {
+        return u != null && u == users.get(u.getId());
+    }
+
+    /*
+    Serializza this (vedi ContainerSnapshot): oltre alle variabili di istanza non transient memorizza il contenuto dei
+    dati presenti in payloads, così lo snapshot contiene anche i dati il cui documento su disco viene in seguito
+    modificato o eliminato (con una cache limitata, solo quelli ancora in memoria)
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(new ArrayList<>(payloads.values()));
+    }
+
+    /*
+    Deserializza this: il contenuto dei dati memorizzato nello snapshot viene inserito in una cache senza limiti.
+    Gli snapshot scritti prima dell'introduzione di payloads contengono il contenuto dei dati direttamente in dataSet.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        payloads = new PayloadCache<>();
+        try {
+            @SuppressWarnings("unchecked")
+            List<E> saved = (List<E>) in.readObject();
+            for (E d : saved) payloads.put(d);
+        } catch (OptionalDataException ex) {
+            if (!ex.eof) throw ex; //snapshot precedente: nessun contenuto dopo le variabili di istanza
+        }
+    }
+
+    /*
+    Restituisce una deep copy di d (vedi deepCopy)
+    @requires d != null
+     */
+    @SuppressWarnings("unchecked")
+    private E copyOf(E d) {
+        return (E) deepCopy(d);
     }
 
     /* Restituisce una deep copy di orig, o null se l'oggetto non può essere serializzato.
@@ -0,0 +1,15 @@
+package SecureContainer;
+
+/*
+ * Overview:
+ * LoadPolicy stabilisce quando get rilegge da disco il contenuto di un dato del container.
+ * Un dato è caricato se il suo contenuto in memoria è stato scritto su disco (put, writeFileOnDisk) o letto da disco
+ * (get, readFileFromDisk) dopo l'ultima lettura del container (readContainerFromDisk).
+ * readFileFromDisk rilegge sempre il dato da disco, indipendentemente da LoadPolicy.
+ */
+public enum LoadPolicy {
+    ALWAYS,   //get rilegge sempre il dato da disco (le modifiche non scritte con writeFileOnDisk vengono perse)
+    EAGER,    //readContainerFromDisk carica tutti i dati; get non rilegge mai da disco
+    LAZY,     //get legge da disco solo i dati non ancora caricati
+    VALIDATE  //get rilegge da disco i dati non caricati o il cui documento è stato modificato dopo l'ultimo caricamento
+}
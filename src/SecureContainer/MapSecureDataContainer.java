@@ -6,23 +6,38 @@ import SecureContainer.Exceptions.NoAccessException;
 import SecureContainer.Exceptions.UnknownUserException;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
-public class MapSecureDataContainer<E extends SecureFile> extends SecureFile implements ISecureFileContainer<E> {
+public class MapSecureDataContainer<E extends SecureFile> extends SecureFile implements ISecureFileContainer<E>, Closeable {
     /*
      AF(c):
-        U = c.users
+        U = c.users.values
         D = c.dataSet
         A = c.AccessLevel
+        Content(d) = c.payloads.get(d) se presente; il contenuto del documento su disco d.path altrimenti
 
         Owner = c.owners
-        Access = c.accesses
+        OwnedData(u) = c.ownedFiles.get(u.id)
+        Access(u,d) = W se c.owners.get(d) = u; c.acl.get(d, u.id) altrimenti
+        SharedData(u) = c.acl.getShared(u.id).keySet
      
      IR:
-        users != null && dataSet!= null && owners != null && accesses != null &&
-        owners.keySet = dataSet && accesses.keySet = dataSet &&
-        owners.values sottoinsieme di users && admin != null && admin.hasPassword() && users.contains(admin)
-        For all map. map in accesses.values => map.keySet sottoinsieme di users
+        users != null && dataSet!= null && owners != null && acl != null &&
+        owners.keySet = dataSet &&
+        owners.values sottoinsieme di users.values && admin != null && admin.hasPassword() && users.get(admin.id) = admin &&
+        For all (id,u) in users. u.id = id &&
+        ownedFiles != null && ownedFiles.keySet = users.keySet &&
+        For all (id,files) in ownedFiles. For all d in files. owners.get(d).id = id && sum |files| = |dataSet| &&
+        acl.getFiles() sottoinsieme di dataSet && acl.getUsers() sottoinsieme di users.keySet &&
+        For all d in acl.getFiles(). Not (acl.getAccesses(d) contiene owners.get(d).id) &&
+        snapshots != null && snapshots.keySet sottoinsieme di dataSet &&
+        diskVersions != null && diskVersions.keySet sottoinsieme di dataSet && payloads != null
+
+     NOTA BENE: dataSet, owners, ownedFiles, acl, snapshots e diskVersions contengono solo le chiavi dei dati, ovvero
+                SecureFile con il path del dato; il contenuto dei dati è memorizzato in payloads (vedi PayloadCache).
      */
 
     //Implementazioni alternative
@@ -34,11 +49,26 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     private static final long serialversionUID = 10L;
 
     private User admin; //admin del container
-    private Set<User> users; //Utenti presenti nel container
-    private Set<E> dataSet;  //Dati presenti nel container
-    private Map<E,User> owners; //Proprietario associato a ciascun dato presente nel container
-    private Map<E,Map<User,AccessLevel>> accesses; //Livello di accesso ad ogni dato presente nel container asseganto a ogni utente nel container
-
+    private long generation; //Generazione dello snapshot di this scritto su disco (vedi ContainerJournal)
+    private Map<String,User> users; //Utenti presenti nel container indicizzati per id
+    private Set<SecureFile> dataSet;  //Dati presenti nel container
+    private Map<SecureFile,User> owners; //Proprietario associato a ciascun dato presente nel container
+    private Map<String,Set<SecureFile>> ownedFiles; //Dati posseduti da ciascun utente del container indicizzati per id
+    private AclStore<SecureFile> acl; //Livello di accesso ai dati presenti nel container assegnato dai proprietari ad altri utenti
+    private transient Map<SecureFile,E> snapshots = new HashMap<>(); //Copie in sola lettura dei dati, condivise tra le chiamate a getSnapshot
+    private transient SessionManager sessions = new SessionManager(); //Sessioni aperte sul container
+    private transient CredentialCache credentialCache; //Cache delle verifiche di password (null se disabilitata)
+    private transient SecureFileCodec codec = new CompactSecureFileCodec(); //Formato dei documenti su disco dei dati
+    private transient boolean logging; //Se true le letture/scritture dei dati su disco vengono segnalate su System.out
+    private transient LoadPolicy loadPolicy = LoadPolicy.ALWAYS; //Quando get rilegge il contenuto dei dati da disco
+    private transient Map<SecureFile,Long> diskVersions = new HashMap<>(); //Versione del documento su disco dei dati caricati in memoria
+    private transient ContainerJournal journal; //Journal delle modifiche successive allo snapshot su disco (null se disabilitato)
+    private transient long journalLimit; //Dimensione in byte del journal oltre la quale this viene riscritto su disco
+    private transient boolean synced; //true se lo snapshot su disco e il journal contengono tutte le modifiche di this
+    private transient IOException journalFailure; //Ultimo errore che ha impedito di rendere persistente una modifica di this (null se this è stato riscritto su disco dopo l'errore)
+    private transient InvariantTracker<SecureFile> invariants = new InvariantTracker<>(); //Dati e utenti modificati dall'ultima verifica di IR
+    private transient WriteBehindWriter writeBehind; //Scrittura differita dei dati su disco (null se disabilitata)
+    private transient PayloadCache<E> payloads; //Contenuto dei dati di D indicizzato per path
 
     /*
     Inizializza container vuoto.
@@ -46,33 +76,129 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     */
     public MapSecureDataContainer(String path) {
         super(path);
-        users = new HashSet<>();
+        users = new HashMap<>();
         dataSet = new HashSet<>();
         owners = new HashMap<>();
-        accesses = new HashMap<>();
+        ownedFiles = new HashMap<>();
+        acl = new AclStore<>();
 
         admin = new User("Luca", "Diavolo!");
-        users.add(admin);
+        users.put(admin.getId(), admin);
+        ownedFiles.put(admin.getId(), new HashSet<>());
+        setPayloadCache(new PayloadCache<>());
+    }
+
+    /*
+    Verifica la condizione di IR secondo la modalità di verifica di this (vedi InvariantCheck)
+    @modifies this
+    @return true se IR = true (limitatamente alle voci verificate); false altrimenti
+     */
+    private boolean repInv(){
+        boolean ir = invariants.fullCheckDue() ? fullRepInv() : incrementalRepInv();
+        if(ir) invariants.checked();
+        return ir;
+    }
+
+    /*
+    Verifica le dimensioni delle strutture di this e la condizione di IR per i soli dati e utenti modificati
+    dall'ultima verifica
+    @return true se IR = true per i dati e gli utenti modificati; false altrimenti
+     */
+    private boolean incrementalRepInv(){
+        if(users == null || dataSet == null || owners == null || acl == null || ownedFiles == null || admin == null ||
+           snapshots == null || diskVersions == null || payloads == null) return false;
+        if(!admin.hasPassword() || admin != users.get(admin.getId()) || ownedFiles.size() != users.size() ||
+           owners.size() != dataSet.size() || acl.getFiles().size() > dataSet.size() || acl.getUsers().size() > users.size() ||
+           snapshots.size() > dataSet.size() || diskVersions.size() > dataSet.size()) return false;
+        for (String id : invariants.dirtyUsers()) {
+            User u = users.get(id);
+            if(u == null) {
+                //utente rimosso: nessun dato e nessun accesso
+                if(ownedFiles.containsKey(id) || acl.countShared(id) != 0) return false;
+                continue;
+            }
+            Set<SecureFile> owned = ownedFiles.get(id);
+            if(!u.getId().equals(id) || owned == null || !acl.repInv(id)) return false;
+            for (SecureFile d : owned) {
+                if(owners.get(d) != u) return false;
+            }
+        }
+        for (SecureFile d : invariants.dirtyFiles()) {
+            User owner = owners.get(d);
+            if(!dataSet.contains(d)) {
+                //dato rimosso: nessun proprietario, accesso o copia
+                if(owner != null || !acl.getAccesses(d).isEmpty() || snapshots.containsKey(d) || diskVersions.containsKey(d)) return false;
+                continue;
+            }
+            if(!isRegistered(owner) || !ownedFiles.get(owner.getId()).contains(d)) return false;
+            if(!acl.repInv(d)) return false;
+            for (String id : acl.getAccesses(d).keySet()) {
+                if(id.equals(owner.getId()) || !users.containsKey(id)) return false;
+            }
+        }
+        return true;
     }
 
     /*
     Verifica la condizione di IR
     @return true se IR = true; false altrimenti
      */
-    private boolean repInv(){
+    private boolean fullRepInv(){
         boolean ir;
-        ir = users != null && dataSet != null && owners != null && accesses != null &&
-             owners.keySet().equals(dataSet) && accesses.keySet().equals(dataSet) && admin != null && admin.hasPassword() &&
-             users.contains(admin) && users.containsAll(owners.values());
+        ir = users != null && dataSet != null && owners != null && acl != null && ownedFiles != null &&
+             ownedFiles.keySet().equals(users.keySet()) && owners.keySet().equals(dataSet) && admin != null && admin.hasPassword() &&
+             admin.equals(users.get(admin.getId()));
+        if(ir) {
+            //For all (id,u) in users. u.id = id
+            for (Map.Entry<String, User> entry : users.entrySet()) {
+                if (!entry.getKey().equals(entry.getValue().getId())) {
+                    ir = false;
+                    break;
+                }
+            }
+        }
+        if(ir) {
+            //ownedFiles.keySet = users.keySet && For all (id,files) in ownedFiles. For all d in files. owners(d).id = id
+            int owned = 0;
+            for (Map.Entry<String, Set<SecureFile>> entry : ownedFiles.entrySet()) {
+                for (SecureFile d : entry.getValue()) {
+                    User owner = owners.get(d);
+                    if (owner == null || !owner.getId().equals(entry.getKey())) {
+                        ir = false;
+                        break;
+                    }
+                }
+                if (!ir) break;
+                owned += entry.getValue().size();
+            }
+            //Ogni dato compare in esattamente un insieme di ownedFiles
+            ir = ir && owned == dataSet.size();
+        }
+        if(ir) {
+            //acl.getFiles() sottoinsieme di dataSet && acl.getUsers() sottoinsieme di users.keySet
+            ir = acl.repInv() && dataSet.containsAll(acl.getFiles()) && users.keySet().containsAll(acl.getUsers());
+        }
         if(ir) {
-            //For all map. map in accesses.values => map.keySet sottoinsieme di users
-            for (Map<User, AccessLevel> map : accesses.values()) {
-                if (!users.containsAll(map.keySet())) {
+            //For all d in acl.getFiles(). Not (acl.getAccesses(d) contiene owners.get(d).id)
+            for (SecureFile d : acl.getFiles()) {
+                if (acl.get(d, owners.get(d).getId()) != null) {
                     ir = false;
                     break;
                 }
             }
         }
+        if(ir) {
+            //owners.values sottoinsieme di users.values
+            for (User u : owners.values()) {
+                if (!isRegistered(u)) {
+                    ir = false;
+                    break;
+                }
+            }
+        }
+        ir = ir && snapshots != null && dataSet.containsAll(snapshots.keySet());
+        ir = ir && diskVersions != null && dataSet.containsAll(diskVersions.keySet());
+        ir = ir && payloads != null;
         return ir;
     }
 
@@ -93,9 +219,32 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
         if(passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
         if(userExist(Id)) throw new DuplicatedUserException("users id must be unique !");
 
-        users.add(new User(Id,passw));
+        doCreateUser(new User(Id,passw));
+    }
 
+    /*
+    Aggiunge u agli utenti di this e registra la creazione nel journal
+    @requires u != null && u.hasPassword() && Not (Exist v appartenente a U tale che v.id = u.id)
+    @modifies this
+    @effects this_post.U = this_pre.U + u
+     */
+    private void doCreateUser(User u) {
         assert repInv();
+        addUser(u);
+        journal(j -> j.appendCreateUser(u.getId(), u.getPasswordHash()));
+        assert repInv();
+    }
+
+    /*
+    Aggiunge u agli utenti di this
+    @requires u != null && Not (Exist v appartenente a U tale che v.id = u.id)
+    @modifies this
+    @effects this_post.U = this_pre.U + u && OwnedData(u) = {} && SharedData(u) = {}
+     */
+    private void addUser(User u) {
+        users.put(u.getId(), u);
+        ownedFiles.put(u.getId(), new HashSet<>());
+        markUser(u.getId());
     }
 
     /*
@@ -113,31 +262,55 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     public void removeUser(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doRemoveUser(Id);
+    }
+
+    /*
+    Come removeUser(Id, passw) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato
+    @throws IllegalArgumentException se Id.equals(admin.id)
+    @modifies this
+    @effects vedi removeUser(Id, passw)
+     */
+    private void doRemoveUser(String Id) throws IllegalArgumentException {
+        assert repInv();
         if (Id.equals(admin.getId())) throw new IllegalArgumentException("admin user can't be removed !");
         //credenziali valide
-        users.remove(new User(Id)); //rimuovo utente da insime degli utenti presenti
-        //L'insieme dei dati che prima appartenevano all'utente u con u.id = Id devono essere rimossi da
-        // dataSet, owners e accesses
-
-        Iterator<Map.Entry<E,User>> iterOwners = owners.entrySet().iterator();
-        while (iterOwners.hasNext()) {
-            Map.Entry<E,User> entry = iterOwners.next();
-            if(entry.getValue().equals(new User(Id))){//trovata coppia (e,u) dove u.id = Id
-                dataSet.remove(entry.getKey());
-                accesses.remove(entry.getKey());
-                iterOwners.remove();
-            }
-        }
-        //Rimuovere eventuali accessi asseganti all'utente rimosso
-        Iterator<Map.Entry<E,Map<User,AccessLevel>>> iterAccesses = accesses.entrySet().iterator();
-        while (iterAccesses.hasNext()) {
-            Map.Entry<E,Map<User,AccessLevel>> entry = iterAccesses.next();
-            entry.getValue().remove(new User(Id));
+        sessions.closeAll(Id); //le sessioni aperte dall'utente non sono più valide
+        if(credentialCache != null) credentialCache.invalidate(Id); //la verifica della password non è più valida
+        for (SecureFile file : ownedFiles.get(Id)) {
+            snapshots.remove(file);
+            diskVersions.remove(file);
         }
+        dropUser(Id);
+        journal(j -> j.appendRemoveUser(Id));
 
         assert repInv();
     }
 
+    /*
+    Rimuove l'utente u con u.id = Id e i dati di cui è proprietario
+    @requires Exist u appartenente a U tale che u.id = Id && u != admin
+    @modifies this
+    @effects this_post.U = this_pre.U - u && this_post.D = this_pre.D - OwnedData(u) &&
+             For all d in this_post.D. Access(u,d) non definito
+     */
+    private void dropUser(String Id) {
+        users.remove(Id); //rimuovo utente da insime degli utenti presenti
+        markUser(Id);
+        //L'insieme dei dati che prima appartenevano all'utente u con u.id = Id devono essere rimossi da
+        // dataSet, owners e acl
+        for (SecureFile file : ownedFiles.remove(Id)) {
+            markFile(file);
+            dataSet.remove(file);
+            owners.remove(file);
+            acl.removeFile(file);
+            payloads.remove(file);
+        }
+        //Rimuovere eventuali accessi asseganti all'utente rimosso
+        acl.removeUser(Id);
+    }
+
     /*
     Restituisce il numero dei file di un utente presenti nella
     collezione
@@ -152,14 +325,17 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     public int getSize(String Owner, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
-        int count = 0;
-        Iterator<Map.Entry<E,User>> iterOwners = owners.entrySet().iterator();
-        while (iterOwners.hasNext()) {
-            Map.Entry<E,User> entry = iterOwners.next();
-            if(entry.getValue().equals(new User(Owner))) count++;
-        }
+        return doGetSize(Owner);
+    }
+
+    /*
+    Come getSize(Owner, passw) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato
+    @return Dato u con u.id = Owner restituisce |OwnedData(u)|
+     */
+    private int doGetSize(String Owner) {
         assert repInv();
-        return count;
+        return ownedFiles.get(Owner).size();
     }
 
     /*
@@ -180,6 +356,20 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     public boolean put(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, IOException {
         assert repInv();
         if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doPut(Owner, file);
+    }
+
+    /*
+    Come put(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null
+    @throws NullPointerException se file = null
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects vedi put(Owner, passw, file)
+    @return vedi put(Owner, passw, file)
+     */
+    private boolean doPut(String Owner, E file) throws NullPointerException, IOException {
+        assert repInv();
         if(file == null) throw new NullPointerException("file must be != null !");
 
         if(dataSet.contains(file)) return false;
@@ -188,19 +378,14 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
             //Decommentando la riga seguente si ottiene il seguente risultato: i dati inseriti in this non sono manipolabili dall'esterno.
             //NOTA BENE: se il dato viene modificato e si vogliono rendere effettive le modifiche occorre utilizzare il metodo writeFileOnDisk
             //file = (E) deepCopy(file);
-            dataSet.add(file);
-            User usr = new User(Owner,passw);
-            Map<User,AccessLevel> mapAcc = new HashMap<>();
-            mapAcc.put(usr,AccessLevel.W);
-            owners.put(file,usr);
-            accesses.put(file,mapAcc);
+            link(getUser(Owner), file);
             try {
-                writeFileOnDisk(Owner,passw,file); //scrivo oggetto su disco
+                doWriteFileOnDisk(Owner,file); //scrivo oggetto su disco
             }catch (Exception e){
-                remove(Owner,passw,file);
+                doRemove(Owner,file);
                 throw e;
             };
-
+            journal(j -> j.appendPut(Owner, encode(file)));
         }
 
         assert repInv();
@@ -227,20 +412,27 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     public E get(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
         assert repInv();
         if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGet(Owner, file);
+    }
+
+    /*
+    Come get(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return vedi get(Owner, passw, file)
+     */
+    private E doGet(String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
         if(file == null) throw new NullPointerException("file must be != null !");
         if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
-        if(!accesses.get(file).containsKey(new User(Owner))) throw new NoAccessException("user " + Owner + " has no access to file");
-
-        AccessLevel acc = accesses.get(file).get(new User(Owner)); //recupero livello di accesso associato all'utente
-
-        readFileFromDisk(Owner,passw,file); //aggiornna file con contenuto del doc relativo
+        AccessLevel acc = accessOf(file, Owner); //recupero livello di accesso associato all'utente
+        if(acc == null) throw new NoAccessException("user " + Owner + " has no access to file");
 
-        Iterator<E> iterData = dataSet.iterator();
-        E res = null;
-        while (iterData.hasNext()) {
-            res = iterData.next();
-            if(res.equals(file)) break;
-        }
+        E res = mustLoad(file) ? loadFile(file) : getFile(file); //aggiornna file con contenuto del doc relativo
 
         assert res != null;
         assert repInv();
@@ -250,6 +442,58 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
         return acc == AccessLevel.W ? res : (E) deepCopy(res);
     }
 
+    /*
+    Ottiene una copia in sola lettura del file nella collezione, condivisa tra tutte le chiamate a getSnapshot
+    se vengono rispettati i controlli di identità.
+    A differenza di get il contenuto non viene riletto da disco e la copia viene creata solo alla prima lettura di
+    ciascuna versione del dato: le chiamate successive restituiscono lo stesso oggetto finché il dato non viene
+    riletto da disco (get, readFileFromDisk) o scritto su disco (writeFileOnDisk).
+    NOTA BENE: l'oggetto restituito è condiviso e non deve essere modificato dal chiamante; le modifiche fatte ad un
+               dato ottenuto con get e accesso W sono visibili con getSnapshot solo dopo writeFileOnDisk.
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw && d = file &&
+              (Access((u,d)) = w || Access((u,d)) = r) )
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+                                 Not (Exist (u,d) appartenente a (D * U) tale che u.id = Id && u.password = passw &&
+                                      d = file && (Access((u,d)) = w || Access((u,d)) = r) )
+    @return una copia in sola lettura di file, condivisa tra le chiamate a getSnapshot
+    */
+    @Override
+    public E getSnapshot(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        return doGetSnapshot(Id, file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @modifies this
+    @effects se snapshots non contiene una copia di file, ne crea una e la aggiunge a snapshots
+    @return vedi getSnapshot(Id, passw, file)
+     */
+    private E doGetSnapshot(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
+        if(accessOf(file, Id) == null) throw new NoAccessException("user " + Id + " has no access to file");
+
+        E res = snapshots.get(file);
+        if(res == null) { //prima lettura della versione corrente del dato
+            res = copyOf(loadedFile(file));
+            snapshots.put(keyOf(file), res);
+        }
+
+        assert repInv();
+        return res;
+    }
+
     /*
     Rimuove il file nella collezione
     se vengono rispettati i controlli di identità
@@ -268,22 +512,66 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     public E remove(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
         assert repInv();
         if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
-        if(file == null) throw new NullPointerException("file must be != null !");
-        if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
-        if(!owners.get(file).equals(new User(Owner))) throw new NoAccessException("user " + Owner + " must be the Owner to remove file!");
-
-        E res = getFile(file); //recupero da dataSet elemento che sarà rimosso
-        dataSet.remove(file);
-        owners.remove(file);
-        accesses.remove(file);
+        return doRemove(Owner, file);
+    }
 
-        if(!new File(res.getFilePath()).delete()) System.out.println("Failed to remove file: " + res.getFilePath());
+    /*
+    Come remove(Owner, passw, file) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    private E doRemove(String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
+        assert repInv();
+        E res = removeOwned(Owner, file);
+        journal(j -> j.appendRemove(Owner, file.getFilePath()));
+        deleteDocument(file);
 
         assert res != null;
         assert repInv();
         return res;
     }
 
+    /*
+    Rimuove file da D senza registrare la rimozione nel journal né eliminare il documento su disco
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+    @return restituisce una copia di file prima di rimuoverlo da D
+     */
+    private E removeOwned(String Owner, E file) throws NullPointerException, IllegalArgumentException, NoAccessException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
+        if(owners.get(file) != getUser(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to remove file!");
+
+        E res; //contenuto del dato che sarà rimosso
+        try {
+            res = getFile(file);
+        } catch(IOException | ClassNotFoundException ex) {
+            ex.printStackTrace();
+            res = file; //il contenuto non è più leggibile: restituisco il dato passato
+        }
+        snapshots.remove(file);
+        diskVersions.remove(file);
+        unlink(file);
+        return res;
+    }
+
+    /*
+    Elimina il documento su disco di un dato rimosso da D
+     */
+    private void deleteDocument(E file) {
+        discardPending(file); //il writer non deve ricreare il documento eliminato
+        if(!new File(file.getFilePath()).delete()) System.out.println("Failed to remove file: " + file.getFilePath());
+    }
+
     /*
     Crea una copia del file nella collezione
     se vengono rispettati i controlli di identità
@@ -303,13 +591,29 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     public void copy(String Owner, String passw, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
         assert repInv();
         if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        doCopy(Owner, file, newFilePath);
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && file != null && file in D && OwnedData(u) contiene file &&
+              Not (Exist d in D. d.path = newFilePath)
+    @throws NullPointerException se file = null || newFilePath = null
+    @throws IllegalArgumentException se file non in D || newFilePath.isEmpty() || Exist d in D. d.path = newFilePath
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+    @effects effettua una copia di file
+     */
+    private void doCopy(String Owner, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException {
+        assert repInv();
         if(file == null) throw new NullPointerException("file must be != null !");
         if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
-        if(!owners.get(file).equals(new User(Owner))) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
+        if(owners.get(file) != getUser(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
         if(dataSet.contains(new SecureFile(newFilePath))) throw new IllegalArgumentException("newfilePath must be unique inside data collection!");
         E copyFile = (E)deepCopy(file);
         copyFile.setFilePath(newFilePath);
-        put(Owner,passw, copyFile);
+        doPut(Owner, copyFile);
 
         assert repInv();
     }
@@ -375,47 +679,150 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     private void setAccesses(String Owner, String passw, String Other, E file, AccessLevel acc) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException{
         assert repInv();
         if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
+        doSetAccesses(Owner, Other, file, acc);
+    }
+
+    /*
+    Come setAccesses(Owner, passw, Other, file, acc) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && vedi setAccesses(Owner, passw, Other, file, acc)
+    @throws vedi setAccesses(Owner, passw, Other, file, acc) ad eccezione di CredentialException
+    @modifies this
+    @effects u= {Other, passw}, Access(u,file) = acc
+     */
+    private void doSetAccesses(String Owner, String Other, E file, AccessLevel acc) throws NullPointerException, IllegalArgumentException, UnknownUserException, NoAccessException{
+        assert repInv();
+        grantOwned(Owner, Other, file, acc);
+        journal(j -> j.appendShare(Owner, Other, file.getFilePath(), acc));
+
+        assert repInv();
+    }
+
+    /*
+    Come doSetAccesses(Owner, Other, file, acc) ma senza registrare la condivisione nel journal
+    @requires Owner identifica un utente autenticato && Other != null && !Other.isEmpty() && Owner != Other &&
+              file != null && file in D && acc != null && OwnedData(u) contiene file && (Exist u appartenente a U tale che u.id = Other)
+    @throws vedi doSetAccesses(Owner, Other, file, acc)
+    @modifies this
+    @effects Access(u,file) = acc con u.id = Other
+     */
+    private void grantOwned(String Owner, String Other, E file, AccessLevel acc) throws NullPointerException, IllegalArgumentException, UnknownUserException, NoAccessException{
         if(Other == null) throw new NullPointerException("Other must be != null !");
         if(acc == null) throw new IllegalArgumentException("acc can't be null !");
         if(Other.isEmpty()) throw new IllegalArgumentException("Other can't be empty!");
         if(Owner.equals(Other)) throw new IllegalArgumentException("You can't share data with yourself!");
         if(file == null) throw new NullPointerException("file must be != null !");
         if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
-        if(!owners.get(file).equals(new User(Owner))) throw new NoAccessException("user " + Owner + " must be the Owner to share file!");
-        if(!users.contains(new User(Other))) throw new UnknownUserException("you are trying to share a file with unknown user: " + Other );
+        if(owners.get(file) != getUser(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to share file!");
+        if(!users.containsKey(Other)) throw new UnknownUserException("you are trying to share a file with unknown user: " + Other );
 
-        User otherUser = getUser(Other);
-        accesses.get(file).put(otherUser,acc);
+        grant(keyOf(file), getUser(Other), acc); //in acl memorizzo la chiave del dato, non quello passato
+    }
 
-        assert repInv();
+    /*
+    Inserisce file in D con proprietario usr
+    @requires file != null && usr appartiene a U && file non in D
+    @modifies this
+    @effects this_post.D = this_pre.D + file && Owner(file) = usr && Access(usr,file) = w
+     */
+    private void link(User usr, E file) {
+        SecureFile key = keyOf(file); //le strutture di this non devono mantenere in memoria il contenuto di file
+        dataSet.add(key);
+        owners.put(key,usr);
+        ownedFiles.get(usr.getId()).add(key);
+        payloads.put(file);
+        markFile(key);
+        markUser(usr.getId());
     }
 
-    private class UserFilesIterator implements Iterator<E> {
-        private E current; //elemento corrente
-        private User targetUser; //proprietario dei file
-        private Iterator<Map.Entry<E,User>> iterOwners; //iteratore di owners.entrySet
+    /*
+    Rimuove file da D
+    @requires file appartiene a dataSet
+    @modifies this
+    @effects this_post.D = this_pre.D - file
+     */
+    private void unlink(SecureFile file) {
+        User owner = owners.remove(file);
+        dataSet.remove(file);
+        acl.removeFile(file); //file non è più condiviso con gli utenti a cui il proprietario ne aveva concesso l'accesso
+        ownedFiles.get(owner.getId()).remove(file);
+        payloads.remove(file);
+        markFile(file);
+        markUser(owner.getId());
+    }
+
+    /*
+    Assegna ad other il livello di accesso acc a file
+    @requires file appartiene a dataSet && other appartiene a U && other != Owner(file) && acc != null
+    @modifies this
+    @effects Access(other,file) = acc
+     */
+    private void grant(SecureFile file, User other, AccessLevel acc) {
+        acl.grant(file, other.getId(), acc);
+        markFile(file);
+        markUser(other.getId());
+    }
+
+    /*
+    Registra la modifica di file per la verifica incrementale di IR (vedi InvariantTracker)
+     */
+    private void markFile(SecureFile file) {
+        if(invariants != null) invariants.markFile(file); //invariants = null durante la riapplicazione del journal
+    }
+
+    /*
+    Registra la modifica dell'utente con id Id per la verifica incrementale di IR (vedi InvariantTracker)
+     */
+    private void markUser(String Id) {
+        if(invariants != null) invariants.markUser(Id); //invariants = null durante la riapplicazione del journal
+    }
+
+    /*
+    Restituisce il livello di accesso dell'utente u con u.id = Id a file
+    @requires file appartiene a dataSet
+    @return Access(u,file); null se non definito
+     */
+    private AccessLevel accessOf(SecureFile file, String Id) {
+        return owners.get(file).getId().equals(Id) ? AccessLevel.W : acl.get(file, Id);
+    }
 
-        //Inizializza putatore al primo dato di cui è proprietario targetUser
-        UserFilesIterator(User p_targetUser){
-            targetUser = p_targetUser;
-            iterOwners = owners.entrySet().iterator();
-            current = getNext();
+    private class SharedFilesIterator implements Iterator<E> {
+        private final Iterator<Map.Entry<SecureFile,AccessLevel>> iterShared; //iteratore dei dati condivisi con targetUser
+
+        //Inizializza l'iteratore sui dati condivisi con l'utente con id p_targetId
+        SharedFilesIterator(String p_targetId){
+            iterShared = acl.getShared(p_targetId).entrySet().iterator();
         }
 
         /*
-         * Restituisce il prossimo dato di targetUser. Se non ce ne sono altri ritorna null
-         * @modifies iterOwners
-         * @effect prosegue con l'iterazione di iterOwners (iterOwners.next) finché iterOwners.hasNext()
-         * @return il prossimo dato di targetUser; se non ce ne sono altri ritorna null
+         * Verifica se sono rimasti ancora dei dati da visitare
+         * @return ci sono ancora dati da visitare; false altrimenti
          */
-        private E getNext(){
-            while (iterOwners.hasNext()) {
-                Map.Entry<E,User> entry = iterOwners.next();
-                if(entry.getValue().equals(targetUser)) {
-                    return entry.getKey();
-                }
-            }
-            return null;
+        @Override
+        public boolean hasNext() {
+            return iterShared.hasNext();
+        }
+
+        /*
+         * Restituisce il prossimo dato condiviso con targetUser: una copia se l'accesso è in sola lettura
+         * @throws NoSuchElementException se !hasNext()
+         * @throws UncheckedIOException se il contenuto del dato non è in memoria e non può essere letto da disco
+         * @return prossimo dato condiviso con targetUser
+         */
+        @Override
+        public E next() {
+            Map.Entry<SecureFile,AccessLevel> entry = iterShared.next();
+            E d = loadedFile(entry.getKey());
+            return entry.getValue() == AccessLevel.W ? d : copyOf(d);
+        }
+
+    }
+
+    private class UserFilesIterator implements Iterator<E> {
+        private final Iterator<SecureFile> iterFiles; //iteratore dei dati di cui è proprietario targetUser
+
+        //Inizializza l'iteratore sui dati di cui è proprietario l'utente con id p_targetId
+        UserFilesIterator(String p_targetId){
+            iterFiles = ownedFiles.get(p_targetId).iterator();
         }
 
         /*
@@ -424,20 +831,18 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
          */
         @Override
         public boolean hasNext() {
-            return current == null;
+            return iterFiles.hasNext();
         }
 
         /*
-         * Restituisce dato corrente di targetUser e aggiorna il puntatore.
-         * @modifies current
-         * @effect current = getNext()
-         * @return dato corrente di targetUser
+         * Restituisce il prossimo dato di targetUser.
+         * @throws NoSuchElementException se !hasNext()
+         * @throws UncheckedIOException se il contenuto del dato non è in memoria e non può essere letto da disco
+         * @return prossimo dato di targetUser
          */
         @Override
         public E next() {
-            E data = current;
-            current = getNext();
-            return  data;
+            return loadedFile(iterFiles.next());
         }
 
     }
@@ -459,83 +864,511 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
         if(!userAuth(Owner,passw)) throw new CredentialException("valid users' credentials are required !");
 
         //Restituisco Iteratore senza remove dei file di cui Owner è proprietario
-        return new UserFilesIterator(new User(Owner));
+        return new UserFilesIterator(Owner);
     }
 
     /*
-    Memorizza file nel documento su disco relativo
-    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
-              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
-    @throws NullPointerException se Id = null || passw = null || file = null
+    Restituisce un iteratore (senza remove) che genera tutti i file condivisi con l'utente da altri utenti,
+    in ordine arbitrario, se vengono rispettati i controlli di identità.
+    I file condivisi in sola lettura sono restituiti come copia, quelli condivisi in scrittura per riferimento (come get)
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
     @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
     @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
-    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
-            Not (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
-    @throws IOException se si verifica un errore durante la scrittura su disco
-    @effects scrivi contenuto di file nel documento su disco relativo
-    @return restitusice true se la scrittura è andata a buon fine; false altrimenti
-     */
+    @return Dato u = {Id,passw} restituisce un iteratore (senza remove) che genera tutti i d in D tali che
+            Access(u,d) è definito && Not (OwnedData(u) contiene d)
+    */
     @Override
-    public void writeFileOnDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+    public Iterator<E> getSharedWithMe(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
-        if(file == null) throw new NullPointerException("file must be != null !");
-        if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
-        if(!accesses.get(file).containsKey(new User(Id))) throw new NoAccessException("user " + Id + " has no access to file");
-        if(accesses.get(file).get(new User(Id)) != AccessLevel.W) throw new NoAccessException("user " + Id + " must have write access to file!");
-        //Salvo oggetto file nel documento su disco relativo
-
-        E containerFile = getFile(file); //recupero file da container
-        FileOutputStream f = new FileOutputStream(containerFile.getFilePath());
-        ObjectOutputStream out = new ObjectOutputStream(f);
-
-        out.writeObject(containerFile); //memorizzo contenuto di containerFile su disco
 
-        out.close();
-        f.close();
-
-        System.out.println("Object has been serialized");
-
-        assert repInv();
+        return new SharedFilesIterator(Id);
     }
 
     /*
-    Leggi file dal documento su disco relativo
-    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
-              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
-    @throws NullPointerException se Id = null || passw = null || file = null
+    Apre una sessione per l'utente u con u.id = Id
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
+              (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NullPointerException se Id = null || passw = null
     @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
     @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
-    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
-            Not (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
-    @throws IOException se si verifica un errore durante la lettura su disco
     @modifies this
-    @effects recupera contenuto di file da documento su disco relativo
+    @return una nuova sessione valida s tale che Id(s) = Id
     */
     @Override
-    public void readFileFromDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+    public Session login(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
-        if(file == null) throw new NullPointerException("file must be != null !");
-        if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
-        if(!accesses.get(file).containsKey(new User(Id))) throw new NoAccessException("user " + Id + " has no access to file");
-
-        // Deserialization
-        FileInputStream f = new FileInputStream(file.getFilePath());
-        ObjectInputStream in = new ObjectInputStream(f);
-
-        E newfile = (E) in.readObject();
-        //Rimuovo vecchio file da container e metto quello appena letto da documento
-        dataSet.remove(newfile);
-        dataSet.add(newfile);
-
-        in.close();
-        f.close();
-
-        System.out.println("Object has been deserialized");
-
-
-        assert repInv();
+        return sessions.open(Id);
+    }
+
+    /*
+    Chiude la sessione s. Dopo la chiusura s non è più valida.
+    @requires s != null
+    @throws NullPointerException se s = null
+    @modifies this
+    @effects s non è più valida
+    */
+    @Override
+    public void logout(Session s) throws NullPointerException {
+        sessions.close(s);
+    }
+
+    /*
+    Verifica che la sessione s sia valida
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void checkSession(Session s) throws NullPointerException, CredentialException {
+        sessions.resolve(s);
+    }
+
+    /*
+    Restituisce le operazioni sugli utenti di this che ShardedSecureFileContainer esegue dopo aver verificato le
+    credenziali sullo shard di riferimento (vedi ShardAccess)
+     */
+    ShardAccess<E> shardAccess() {
+        return new ShardAccess<E>() {
+            @Override
+            public void createUser(String Id, String passwordHash) throws NullPointerException, IllegalArgumentException, DuplicatedUserException {
+                if(passwordHash == null) throw new NullPointerException("passwordHash must be != null !");
+                if(passwordHash.isEmpty()) throw new IllegalArgumentException("passwordHash can't be empty!");
+                if(userExist(Id)) throw new DuplicatedUserException("users id must be unique !");
+                doCreateUser(User.withPasswordHash(Id, passwordHash));
+            }
+
+            @Override
+            public Session login(String Id) throws NullPointerException, CredentialException {
+                if(Id == null) throw new NullPointerException("Id must be != null !");
+                if(!users.containsKey(Id)) throw new CredentialException("valid users' credentials are required !");
+                return sessions.open(Id);
+            }
+
+            @Override
+            public void removeUser(String Id) throws NullPointerException, IllegalArgumentException, CredentialException {
+                if(Id == null) throw new NullPointerException("Id must be != null !");
+                if(!users.containsKey(Id)) throw new CredentialException("valid users' credentials are required !");
+                doRemoveUser(Id);
+            }
+
+            @Override
+            public E ownedCopy(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+                String Owner = sessions.resolve(s);
+                if(file == null) throw new NullPointerException("file must be != null !");
+                if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
+                if(owners.get(file) != getUser(Owner)) throw new NoAccessException("user " + Owner + " must be the Owner to copy file!");
+                return copyOf(file);
+            }
+        };
+    }
+
+    /*
+    Come getSize(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public int getSize(Session s) throws NullPointerException, CredentialException {
+        return doGetSize(sessions.resolve(s));
+    }
+
+    /*
+    Come put(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public boolean put(Session s, E file) throws NullPointerException, CredentialException, IOException {
+        return doPut(sessions.resolve(s), file);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) con u.id = Id(s). I dati vengono inseriti in D con un'unica verifica di IR e
+    scritti su disco in parallelo (vedi SecureFileCodec.writeAll).
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<Boolean> putAll(Session s, List<E> files) throws NullPointerException, CredentialException {
+        return doPutAll(sessions.resolve(s), files);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) ma per un utente già autenticato
+    @requires Owner identifica un utente autenticato && files != null
+    @throws NullPointerException se files = null
+    @modifies this
+    @effects vedi putAll(Owner, passw, files)
+    @return vedi putAll(Owner, passw, files)
+     */
+    private BatchResult<Boolean> doPutAll(String Owner, List<E> files) throws NullPointerException {
+        assert repInv();
+        if(files == null) throw new NullPointerException("files must be != null !");
+        BatchResult<Boolean> res = new BatchResult<>(files.size());
+        User usr = getUser(Owner);
+        List<E> linked = new ArrayList<>(); //dati inseriti in D, da scrivere su disco
+        List<Integer> linkedPos = new ArrayList<>(); //posizione in files di ciascun dato di linked
+        for(int i = 0; i < files.size(); i++) {
+            E file = files.get(i);
+            if(file == null) res.fail(i, new NullPointerException("file must be != null !"));
+            else if(dataSet.contains(file)) res.succeed(i, false); //anche se compare più volte in files
+            else {
+                link(usr, file);
+                linked.add(file);
+                linkedPos.add(i);
+            }
+        }
+
+        Exception[] errors = writeBehind == null ? codec.writeAll(linked) : submitAll(linked); //scrivo i dati su disco
+        for(int k = 0; k < linked.size(); k++) {
+            E file = linked.get(k);
+            try {
+                if(errors[k] != null) throw errors[k];
+                if(writeBehind == null) diskVersions.put(keyOf(file), diskVersion(file));
+                journal(j -> j.appendPut(Owner, encode(file)));
+                if(logging) System.out.println("Object has been serialized");
+                res.succeed(linkedPos.get(k), true);
+            } catch(Exception e) {
+                //come put: il dato non scritto su disco viene rimosso
+                unlink(file);
+                diskVersions.remove(file);
+                File doc = new File(file.getFilePath());
+                if(!doc.delete() && doc.exists()) e.addSuppressed(new IOException("Failed to remove file: " + file.getFilePath()));
+                res.fail(linkedPos.get(k), e);
+            }
+        }
+
+        assert repInv();
+        return res;
+    }
+
+    /*
+    Come get(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E get(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        return doGet(sessions.resolve(s), file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E getSnapshot(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return doGetSnapshot(sessions.resolve(s), file);
+    }
+
+    /*
+    Come remove(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E remove(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return doRemove(sessions.resolve(s), file);
+    }
+
+    /*
+    Come removeAll(Owner, passw, files) con u.id = Id(s). I dati vengono rimossi da D con un'unica verifica di IR e le
+    rimozioni registrate nel journal con un'unica scrittura.
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<E> removeAll(Session s, List<E> files) throws NullPointerException, CredentialException {
+        String Owner = sessions.resolve(s);
+        assert repInv();
+        if(files == null) throw new NullPointerException("files must be != null !");
+        BatchResult<E> res = new BatchResult<>(files.size());
+        List<E> removed = new ArrayList<>(); //dati rimossi da D, di cui eliminare il documento su disco
+        List<String> removedPaths = new ArrayList<>();
+        for(int i = 0; i < files.size(); i++) {
+            try {
+                res.succeed(i, removeOwned(Owner, files.get(i)));
+                removed.add(files.get(i));
+                removedPaths.add(files.get(i).getFilePath());
+            } catch(RuntimeException e) {
+                res.fail(i, e);
+            }
+        }
+        if(!removed.isEmpty()) journal(j -> j.appendRemoveAll(Owner, removedPaths));
+        for(E file : removed) deleteDocument(file);
+
+        assert repInv();
+        return res;
+    }
+
+    /*
+    Come shareAll(Owner, passw, Other, files, acc) con Owner = Id(s). I livelli di accesso vengono assegnati con
+    un'unica verifica di IR e registrati nel journal con un'unica scrittura.
+    @throws NullPointerException se s = null || files = null || acc = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<Void> shareAll(Session s, String Other, List<E> files, AccessLevel acc) throws NullPointerException, CredentialException {
+        String Owner = sessions.resolve(s);
+        assert repInv();
+        if(files == null) throw new NullPointerException("files must be != null !");
+        if(acc == null) throw new NullPointerException("acc must be != null !");
+        BatchResult<Void> res = new BatchResult<>(files.size());
+        List<String> shared = new ArrayList<>(); //path dei dati condivisi
+        for(int i = 0; i < files.size(); i++) {
+            try {
+                grantOwned(Owner, Other, files.get(i), acc);
+                shared.add(files.get(i).getFilePath());
+            } catch(RuntimeException e) {
+                res.fail(i, e);
+            }
+        }
+        if(!shared.isEmpty()) journal(j -> j.appendShareAll(Owner, Other, shared, acc));
+
+        assert repInv();
+        return res;
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null || newFilePath = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void copy(Session s, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        doCopy(sessions.resolve(s), file, newFilePath);
+    }
+
+    /*
+    Come shareR(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareR(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        doSetAccesses(sessions.resolve(s), Other, file, AccessLevel.R);
+    }
+
+    /*
+    Come shareW(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareW(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        doSetAccesses(sessions.resolve(s), Other, file, AccessLevel.W);
+    }
+
+    /*
+    Come getIterator(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getIterator(Session s) throws NullPointerException, CredentialException {
+        return new UserFilesIterator(sessions.resolve(s));
+    }
+
+    /*
+    Come getSharedWithMe(Id, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getSharedWithMe(Session s) throws NullPointerException, CredentialException {
+        return new SharedFilesIterator(sessions.resolve(s));
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void writeFileOnDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        doWriteFileOnDisk(sessions.resolve(s), file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void readFileFromDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        doReadFileFromDisk(sessions.resolve(s), file);
+    }
+
+    /*
+    Memorizza file nel documento su disco relativo
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+            Not (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+    @return restitusice true se la scrittura è andata a buon fine; false altrimenti
+     */
+    @Override
+    public void writeFileOnDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doWriteFileOnDisk(Id, file);
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && Access(u,file) = w
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Access(u,file) != w
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrivi contenuto di file nel documento su disco relativo
+     */
+    private void doWriteFileOnDisk(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
+        AccessLevel acc = accessOf(file, Id);
+        if(acc == null) throw new NoAccessException("user " + Id + " has no access to file");
+        if(acc != AccessLevel.W) throw new NoAccessException("user " + Id + " must have write access to file!");
+        //Salvo oggetto file nel documento su disco relativo
+
+        E containerFile = payloads.get(file); //recupero file da container
+        if(containerFile == null) {
+            //il contenuto del dato non è in memoria: coincide con quello su disco
+            assert repInv();
+            return;
+        }
+        if(writeBehind == null) {
+            codec.write(containerFile); //memorizzo contenuto di containerFile su disco
+            diskVersions.put(keyOf(file), diskVersion(containerFile));
+        }
+        else {
+            writeBehind.submit(containerFile.getFilePath(), encode(containerFile)); //scritto su disco in differita
+            diskVersions.remove(file); //la versione su disco sarà nota solo dopo la scrittura
+        }
+        snapshots.remove(file); //il contenuto memorizzato potrebbe essere cambiato: la copia precedente non è più valida
+
+        if(logging) System.out.println("Object has been serialized");
+
+        assert repInv();
+    }
+
+    /*
+    Leggi file dal documento su disco relativo
+    @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() && file != null &&
+              (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se (Exist u appartenente a U tale che u.id = Id && u.password = passw) &&
+            Not (Exist (u,d) appartenente a U tale che u.id = Id && u.password = passw && d = file && Access(u,d) = w)
+    @throws IOException se si verifica un errore durante la lettura su disco
+    @modifies this
+    @effects recupera contenuto di file da documento su disco relativo
+    */
+    @Override
+    public void readFileFromDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
+        if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
+        doReadFileFromDisk(Id, file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) ma per un utente già autenticato
+    @requires Id identifica un utente autenticato && file != null && file in D && (Access(u,file) = w || Access(u,file) = r)
+    @throws NullPointerException se file = null
+    @throws IllegalArgumentException se file non in D
+    @throws NoAccessException se Not (Access(u,file) = w || Access(u,file) = r)
+    @throws IOException se si verifica un errore durante la lettura su disco
+    @modifies this
+    @effects recupera contenuto di file da documento su disco relativo
+     */
+    private void doReadFileFromDisk(String Id, E file) throws NullPointerException, IllegalArgumentException, NoAccessException, IOException, ClassNotFoundException {
+        assert repInv();
+        if(file == null) throw new NullPointerException("file must be != null !");
+        if(!dataSet.contains(file)) throw new IllegalArgumentException("file must be inside data collection!");
+        if(accessOf(file, Id) == null) throw new NoAccessException("user " + Id + " has no access to file");
+
+        loadFile(file);
+
+        assert repInv();
+    }
+
+    /*
+    Legge il contenuto di file dal documento su disco relativo e lo sostituisce a quello presente in payloads
+    @requires file in D
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @modifies this
+    @effects file risulta caricato con la versione del documento appena letto
+    @return il contenuto di file appena letto
+     */
+    private E loadFile(SecureFile file) throws IOException, ClassNotFoundException {
+        if(writeBehind != null) writeBehind.awaitWritten(file.getFilePath()); //il documento deve contenere l'ultima scrittura
+        long version = diskVersion(file); //letta prima del contenuto: una scrittura successiva verrà rilevata da VALIDATE
+        // Deserialization
+        E newfile = (E) codec.read(file.getFilePath());
+        //Sostituisco il contenuto in memoria con quello appena letto da documento
+        payloads.put(newfile);
+        snapshots.remove(file); //la copia in sola lettura si riferisce alla versione precedente del dato
+        diskVersions.put(keyOf(file), version);
+        markFile(file);
+
+        if(logging) System.out.println("Object has been deserialized");
+        return newfile;
+    }
+
+    /*
+    Carica da disco tutti i dati non ancora caricati. I dati il cui documento non può essere letto restano non caricati
+    e verranno letti da get. Se payloads non può contenere tutti i dati, quelli caricati per primi vengono rimossi.
+    @modifies this
+     */
+    private void loadAll() {
+        for (SecureFile file : new ArrayList<>(dataSet)) {
+            if(diskVersions.containsKey(file)) continue;
+            try {
+                loadFile(file);
+            } catch(IOException | ClassNotFoundException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /*
+    Verifica se get deve rileggere file da disco secondo loadPolicy
+    @requires file in D
+    @throws IOException se loadPolicy = VALIDATE e non è possibile leggere la versione del documento su disco
+    @return true se file deve essere letto da disco; false se può essere utilizzato il contenuto in memoria
+     */
+    private boolean mustLoad(E file) throws IOException {
+        //Con una scrittura differita in attesa il contenuto in memoria è più recente di quello su disco
+        if(writeBehind != null && writeBehind.isPending(file.getFilePath())) return false;
+        Long version = diskVersions.get(file);
+        switch (loadPolicy) {
+            case ALWAYS:
+                return true;
+            case VALIDATE:
+                return version == null || version != diskVersion(file);
+            default:
+                return version == null;
+        }
+    }
+
+    /*
+    Restituisce la versione del documento su disco di file, ovvero l'istante della sua ultima modifica
+    @throws IOException se non è possibile leggere gli attributi del documento
+     */
+    private static long diskVersion(SecureFile file) throws IOException {
+        return Files.getLastModifiedTime(Paths.get(file.getFilePath())).to(TimeUnit.NANOSECONDS);
     }
 
     /*
@@ -550,7 +1383,7 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
         if(Id == null) throw new NullPointerException("Id must be != null !");
         if(Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
         assert repInv();
-        return users.contains(new User(Id));
+        return users.containsKey(Id);
     }
 
     /*
@@ -566,11 +1399,287 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
         if(Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
         if(passw == null) throw new NullPointerException("passw must be != null !");
         if(passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
-        for (User u : users) {
-            if(u.equals(new User(Id)) && u.auth(passw)) return true;
+        User u = users.get(Id);
+        assert repInv();
+        return u != null && checkPassword(u, passw);
+    }
+
+    /*
+    Verifica se passw è la password di u, utilizzando la cache delle credenziali se abilitata
+    @requires u != null && passw != null && !passw.isEmpty() && u.hasPassword()
+    @return true se passw è la password di u; false altrimenti
+    */
+    private boolean checkPassword(User u, String passw) {
+        return credentialCache == null ? u.auth(passw) : credentialCache.auth(u, passw);
+    }
+
+    /*
+    Abilita la cache delle credenziali verificate utilizzando p_cache; se p_cache = null la cache viene disabilitata
+    @modifies this
+    @effects userAuth utilizza p_cache per evitare di ricalcolare l'hash di password già verificate
+    */
+    public void setCredentialCache(CredentialCache p_cache) {
+        credentialCache = p_cache;
+    }
+
+    /*
+    Restituisce la cache delle credenziali utilizzata da this; null se disabilitata
+    */
+    public CredentialCache getCredentialCache() {
+        return credentialCache;
+    }
+
+    /*
+    Utilizza p_cache per mantenere in memoria il contenuto dei dati: il contenuto dei dati rimossi da p_cache viene
+    riletto da disco quando necessario. Il contenuto dei dati presenti nella cache precedente viene inserito in p_cache.
+    Di default la cache non ha limiti e il contenuto di tutti i dati resta in memoria.
+    NOTA BENE: con una cache limitata, le modifiche fatte ad un dato ottenuto con get e accesso W e non scritte con
+               writeFileOnDisk vengono perse se il dato viene rimosso dalla cache quando il cliente non ne mantiene più
+               alcun riferimento.
+    @requires p_cache != null && p_cache non è utilizzata da altri container
+    @throws NullPointerException se p_cache = null
+    @modifies this
+    */
+    public void setPayloadCache(PayloadCache<E> p_cache) throws NullPointerException {
+        if(p_cache == null) throw new NullPointerException("p_cache must be != null !");
+        if(p_cache == payloads) return;
+        p_cache.setEvictionListener(this::dropSnapshot);
+        if(payloads != null) {
+            payloads.setEvictionListener(null);
+            for (E d : payloads.values()) p_cache.put(d);
         }
+        payloads = p_cache;
+    }
+
+    /*
+    Restituisce la cache del contenuto dei dati utilizzata da this
+    */
+    public PayloadCache<E> getPayloadCache() {
+        return payloads;
+    }
+
+    /*
+    Utilizza p_codec per scrivere e leggere i dati dai documenti su disco relativi
+    @requires p_codec != null
+    @throws NullPointerException se p_codec = null
+    @modifies this
+    @effects writeFileOnDisk e readFileFromDisk utilizzano il formato definito da p_codec
+    */
+    public void setCodec(SecureFileCodec p_codec) throws NullPointerException {
+        if(p_codec == null) throw new NullPointerException("p_codec must be != null !");
+        codec = p_codec;
+    }
+
+    /*
+    Restituisce il codec utilizzato per scrivere e leggere i dati dai documenti su disco relativi
+    */
+    public SecureFileCodec getCodec() {
+        return codec;
+    }
+
+    /*
+    Abilita (p_logging = true) o disabilita la segnalazione su System.out delle letture/scritture dei dati su disco
+    @modifies this
+    */
+    public void setLogging(boolean p_logging) {
+        logging = p_logging;
+    }
+
+    /*
+    Stabilisce quando get rilegge il contenuto dei dati da disco (vedi LoadPolicy).
+    Con p_policy = EAGER i dati non ancora caricati vengono caricati subito.
+    @requires p_policy != null
+    @throws NullPointerException se p_policy = null
+    @modifies this
+    */
+    public void setLoadPolicy(LoadPolicy p_policy) throws NullPointerException {
+        if(p_policy == null) throw new NullPointerException("p_policy must be != null !");
+        loadPolicy = p_policy;
+        if(loadPolicy == LoadPolicy.EAGER) loadAll();
+    }
+
+    /*
+    Restituisce la politica con la quale get rilegge il contenuto dei dati da disco
+    */
+    public LoadPolicy getLoadPolicy() {
+        return loadPolicy;
+    }
+
+    /*
+    Stabilisce come viene verificato l'invariante di rappresentazione di this quando le asserzioni sono abilitate
+    (vedi InvariantCheck). La verifica successiva è completa.
+    @requires p_check != null
+    @throws NullPointerException se p_check = null
+    @modifies this
+    */
+    public void setInvariantCheck(InvariantCheck p_check) throws NullPointerException {
+        invariants.setMode(p_check);
+    }
+
+    /*
+    Restituisce la modalità di verifica dell'invariante di rappresentazione di this
+    */
+    public InvariantCheck getInvariantCheck() {
+        return invariants.getMode();
+    }
+
+    /*
+    Abilita il journal delle modifiche di this (vedi ContainerJournal), memorizzato nel documento getFilePath() + ".journal".
+    Da questo momento createUser, removeUser, put, copy, remove, shareR e shareW vengono rese persistenti aggiungendo un
+    record al journal; quando il journal supera p_maxSize byte this viene riscritto su disco e il journal svuotato.
+    readContainerFromDisk riapplica allo snapshot letto le modifiche registrate nel journal.
+    Se this contiene modifiche non presenti su disco (ad esempio se non è mai stato letto o scritto su disco) viene
+    riscritto su disco immediatamente.
+    @requires p_maxSize > 0
+    @throws IllegalArgumentException se p_maxSize <= 0
+    @throws IOException se si verifica un errore durante l'accesso al disco; in tal caso il journal resta disabilitato
+    @modifies this
+    */
+    public void enableJournal(long p_maxSize) throws IllegalArgumentException, IOException {
         assert repInv();
-        return false;
+        if(p_maxSize <= 0) throw new IllegalArgumentException("p_maxSize must be > 0 !");
+        if(journal == null) journal = new ContainerJournal(journalPath());
+        journalLimit = p_maxSize;
+        try {
+            if(synced) journal.open(generation);
+            else compact();
+        } catch(IOException ex) {
+            journal.close();
+            journal = null;
+            throw ex;
+        }
+        assert repInv();
+    }
+
+    /*
+    Disabilita il journal delle modifiche di this: le modifiche successive vengono rese persistenti solo da writeContainerOnDisk
+    @throws IOException se si verifica un errore durante la chiusura del journal
+    @modifies this
+    */
+    public void disableJournal() throws IOException {
+        if(journal == null) return;
+        try {
+            journal.close();
+        } finally {
+            journal = null;
+        }
+    }
+
+    /*
+    Restituisce il journal delle modifiche di this; null se disabilitato
+    */
+    public ContainerJournal getJournal() {
+        return journal;
+    }
+
+    /*
+    Restituisce true se lo snapshot su disco e il journal contengono tutte le modifiche di this; false se this è stato
+    modificato dall'ultima scrittura su disco a journal disabilitato, o se né il journal né la riscrittura di this su disco
+    sono riusciti a registrare una modifica (vedi getJournalFailure)
+    */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /*
+    Restituisce l'ultimo errore di scrittura del journal o di riscrittura di this su disco che ha impedito di rendere
+    persistente una modifica di this; null se non si è verificato alcun errore dall'ultima scrittura di this su disco
+    */
+    public IOException getJournalFailure() {
+        return journalFailure;
+    }
+
+    /*
+    Abilita la scrittura differita dei dati su disco (vedi WriteBehindWriter): da questo momento put, putAll, copy e
+    writeFileOnDisk accodano il contenuto dei dati, che viene scritto su disco in background a gruppi di al più
+    p_batchSize documenti ed entro circa p_windowMillis millisecondi, e ritornano senza attendere la scrittura.
+    Le letture da disco di un dato (get, readFileFromDisk) attendono la scrittura in attesa del dato stesso;
+    writeContainerOnDisk, readContainerFromDisk, flush e close attendono tutte le scritture in attesa.
+    NOTA BENE: un errore di scrittura non annulla più l'inserimento del dato (put restituisce true) ma viene sollevato
+               dalla flush successiva; il dato viene riscritto fino a quando la scrittura riesce.
+    Se la scrittura differita era già abilitata le scritture in attesa vengono completate prima di cambiare parametri.
+    @requires p_windowMillis >= 0 && p_batchSize >= 1
+    @throws IllegalArgumentException se p_windowMillis < 0 || p_batchSize < 1
+    @throws IOException se non è possibile completare le scritture in attesa; in tal caso i parametri non cambiano
+    @modifies this
+    */
+    public void enableWriteBehind(long p_windowMillis, int p_batchSize) throws IllegalArgumentException, IOException {
+        WriteBehindWriter w = new WriteBehindWriter(p_windowMillis, p_batchSize);
+        try {
+            disableWriteBehind();
+        } catch(IOException ex) {
+            w.close();
+            throw ex;
+        }
+        writeBehind = w;
+    }
+
+    /*
+    Disabilita la scrittura differita dei dati su disco, dopo aver completato le scritture in attesa
+    @throws IOException se non è possibile completare le scritture in attesa; in tal caso la scrittura differita resta abilitata
+    @modifies this
+    */
+    public void disableWriteBehind() throws IOException {
+        if(writeBehind == null) return;
+        writeBehind.flush();
+        writeBehind.close();
+        writeBehind = null;
+    }
+
+    /*
+    Restituisce il writer delle scritture differite di this; null se la scrittura differita è disabilitata
+    */
+    public WriteBehindWriter getWriteBehind() {
+        return writeBehind;
+    }
+
+    /*
+    Attende che tutte le scritture differite in attesa siano state scritte e sincronizzate su disco; se la scrittura
+    differita è disabilitata non ha effetto
+    @throws IOException se la scrittura di un dato non è riuscita
+    */
+    public void flush() throws IOException {
+        if(writeBehind != null) writeBehind.flush();
+    }
+
+    /*
+    Completa le scritture differite in attesa e chiude journal e writer: da questo momento le modifiche di this
+    vengono scritte su disco in modo sincrono e rese persistenti solo da writeContainerOnDisk
+    @throws IOException se non è possibile completare le scritture in attesa o chiudere il journal
+    @modifies this
+    */
+    @Override
+    public void close() throws IOException {
+        try {
+            disableWriteBehind();
+        } finally {
+            disableJournal();
+        }
+    }
+
+    /*
+    Accoda per la scrittura differita il contenuto di ciascun dato di files, come writeAll del codec
+    @requires writeBehind != null && files != null
+    @return res tale che res.length = files.size() e res[i] è l'eccezione sollevata dalla codifica di files.get(i)
+            (null se il dato è stato accodato)
+     */
+    private Exception[] submitAll(List<E> files) {
+        Exception[] res = new Exception[files.size()];
+        for(int i = 0; i < files.size(); i++) {
+            try {
+                writeBehind.submit(files.get(i).getFilePath(), encode(files.get(i)));
+            } catch(IOException | RuntimeException e) {
+                res[i] = e;
+            }
+        }
+        return res;
+    }
+
+    /*
+    Annulla l'eventuale scrittura differita in attesa di file, prima che il documento su disco venga eliminato
+     */
+    private void discardPending(E file) {
+        if(writeBehind != null) writeBehind.discard(file.getFilePath());
     }
 
     /*
@@ -586,16 +1695,10 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     public boolean writeContainerOnDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException{
         assert repInv();
         if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
-        if(!admin.equals(new User(Id))) throw new CredentialException("user " + Id + " is not an admin");
-        // Serialization
+        if(!admin.getId().equals(Id)) throw new CredentialException("user " + Id + " is not an admin");
         try {
-            FileOutputStream f = new FileOutputStream(getFilePath()); //doc sul quale effettuare la scrittura
-            ObjectOutputStream out = new ObjectOutputStream(f);
-
-            out.writeObject(this); //memorizzo contenuto del container su disco
-
-            out.close();
-            f.close();
+            flush(); //i documenti dei dati devono essere aggiornati quanto lo snapshot
+            compact();
         } catch(IOException ex) {
             ex.printStackTrace();
             return false;
@@ -604,6 +1707,120 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
         return true;
     }
 
+    /*
+    Scrive this nel documento su disco relativo (snapshot) e svuota il journal, che da questo momento si riferisce al
+    nuovo snapshot; se il journal è disabilitato elimina l'eventuale journal di uno snapshot precedente
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @modifies this
+     */
+    private void compact() throws IOException {
+        generation++; //il journal dello snapshot precedente non è più valido
+        // Serialization
+        ContainerSnapshot.write(getFilePath(), this); //memorizzo contenuto del container su disco
+
+        if(journal == null) Files.deleteIfExists(Paths.get(journalPath()));
+        else if(journal.isOpen()) journal.reset(generation);
+        else journal.open(generation);
+        synced = true;
+        journalFailure = null;
+    }
+
+    /*
+    Registra l'operazione append nel journal, se abilitato. Se la scrittura sul journal non va a buon fine o il journal
+    supera journalLimit byte, this viene riscritto su disco e il journal svuotato. Se anche la riscrittura non va a buon
+    fine isSynced() restituisce false e l'errore è restituito da getJournalFailure.
+    @modifies this
+     */
+    private void journal(ContainerJournal.Append append) {
+        if(journal == null) {
+            synced = false; //la modifica non viene registrata su disco
+            return;
+        }
+        if(synced) {
+            try {
+                append.to(journal);
+                if(journal.size() < journalLimit) return;
+            } catch(IOException ex) {
+                journalFailure = ex; //la modifica viene registrata dalla riscrittura di this
+            }
+        }
+        //Il journal non contiene la modifica o è troppo grande: riscrivo this su disco
+        try {
+            compact();
+        } catch(IOException ex) {
+            journalFailure = ex; //vedi getJournalFailure
+            synced = false;
+        }
+    }
+
+    /*
+    Riapplica a this le modifiche registrate nel journal dello snapshot di generazione generation.
+    Utilizza solo le variabili di istanza memorizzate nello snapshot: può essere chiamato su un container appena letto da disco.
+    @throws IOException se si verifica un errore durante la lettura del journal
+    @throws ClassNotFoundException se non è possibile deserializzare un dato registrato nel journal
+    @modifies this
+    @return true se esiste il journal dello snapshot di generazione generation; false altrimenti
+     */
+    private boolean replayJournal(SecureFileCodec p_codec) throws IOException, ClassNotFoundException {
+        Map<String,SecureFile> byPath = new HashMap<>(); //dati di this indicizzati per path
+        for (SecureFile d : dataSet) byPath.put(d.getFilePath(), d);
+        //Le operazioni sono state verificate prima di essere registrate: vengono ignorate solo quelle non più applicabili
+        return new ContainerJournal(journalPath()).replay(generation, new ContainerJournal.Visitor() {
+            @Override
+            public void createUser(String id, String passwordHash) {
+                if(!users.containsKey(id)) addUser(User.withPasswordHash(id, passwordHash));
+            }
+
+            @Override
+            public void removeUser(String id) {
+                if(!users.containsKey(id) || admin.getId().equals(id)) return;
+                for (SecureFile d : ownedFiles.get(id)) byPath.remove(d.getFilePath());
+                dropUser(id);
+            }
+
+            @Override
+            public void put(String owner, byte[] file) throws IOException, ClassNotFoundException {
+                @SuppressWarnings("unchecked")
+                E d = (E) p_codec.decode(new ByteArrayInputStream(file));
+                if(!users.containsKey(owner) || byPath.containsKey(d.getFilePath())) return;
+                link(users.get(owner), d);
+                byPath.put(d.getFilePath(), keyOf(d));
+            }
+
+            @Override
+            public void remove(String owner, String filePath) {
+                SecureFile d = byPath.get(filePath);
+                if(d == null || !owners.get(d).getId().equals(owner)) return;
+                unlink(d);
+                byPath.remove(filePath);
+            }
+
+            @Override
+            public void share(String owner, String other, String filePath, AccessLevel acc) {
+                SecureFile d = byPath.get(filePath);
+                if(d == null || !owners.get(d).getId().equals(owner) || owner.equals(other) || !users.containsKey(other)) return;
+                grant(d, users.get(other), acc);
+            }
+        });
+    }
+
+    /*
+    Restituisce il path del documento su disco del journal di this
+     */
+    private String journalPath() {
+        return getFilePath() + ".journal";
+    }
+
+    /*
+    Restituisce il contenuto di file codificato con codec
+    @throws IOException se si verifica un errore durante la codifica
+     */
+    private byte[] encode(E file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.encode(file, bytes);
+        return bytes.toByteArray();
+    }
+
     /*
     Inizializza this con ciò che viene letto dal documento su disco relativo
     @requires Id != null && passw != null && !Id.isEmpty() && !passw.isEmpty() &&
@@ -619,54 +1836,135 @@ public class MapSecureDataContainer<E extends SecureFile> extends SecureFile imp
     public boolean readContainerFromDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
         assert repInv();
         if(!userAuth(Id,passw)) throw new CredentialException("valid users' credentials are required !");
-        if(!admin.equals(new User(Id))) throw new CredentialException("user " + Id + " is not an admin");
+        if(!admin.getId().equals(Id)) throw new CredentialException("user " + Id + " is not an admin");
         // Deserialization
         try{
-            FileInputStream f = new FileInputStream(getFilePath()); //doc sul quale effettuare la lettura
-            ObjectInputStream in = new ObjectInputStream(f);
-
-            MapSecureDataContainer<E> newContainer = (MapSecureDataContainer<E>) in.readObject();
+            flush(); //le scritture in attesa si riferiscono ai dati che vengono sostituiti
+            MapSecureDataContainer<E> newContainer = (MapSecureDataContainer<E>) ContainerSnapshot.read(getFilePath());
+            //Riapplico allo snapshot le modifiche successive registrate nel journal
+            newContainer.replayJournal(codec);
             //Aggiorno variabili di istanza
+            this.generation = newContainer.generation;
             this.admin = newContainer.admin;
             this.users = newContainer.users;
             this.dataSet = newContainer.dataSet;
             this.owners = newContainer.owners;
-            this.accesses = newContainer.accesses;
-
-            in.close();
-            f.close();
+            this.ownedFiles = newContainer.ownedFiles;
+            this.acl = newContainer.acl;
+            //gli utenti sono stati sostituiti: le sessioni e le verifiche di password precedenti potrebbero non essere più valide
+            sessions.retainUsers(users::containsKey);
+            if(credentialCache != null) credentialCache.clear();
+            this.snapshots.clear();
+            this.diskVersions.clear();
+            this.payloads.clear();
+            for (E d : newContainer.payloads.values()) this.payloads.put(d); //i dati rimossi verranno riletti da disco
+            invariants.markAll(); //tutte le strutture sono state sostituite
+            synced = true;
+            journalFailure = null;
+            if(journal != null) journal.open(generation);
         }
         catch(IOException | ClassNotFoundException ex) {
             ex.printStackTrace();
             return false;
         }
+        if(loadPolicy == LoadPolicy.EAGER) loadAll();
         assert repInv();
         return true;
     }
 
+    /*
+    Restituisce l'utente u con u.id = Id
+    @return u appartenente a U tale che u.id = Id; null se non esiste
+     */
     private User getUser(String Id){
-        assert repInv();
-        Iterator<User> iterUsers = users.iterator();
-        User res = null;
-        User target = new User(Id);
-        while (iterUsers.hasNext()) {
-            res = iterUsers.next();
-            if(res.equals(target)) break;
+        return users.get(Id);
+    }
+
+    /*
+    Verifica se u è un utente registrato in this
+    @return true se u != null && u appartiene a U; false altrimenti
+     */
+    private boolean isRegistered(User u){
+        return u != null && u == users.get(u.getId());
+    }
+
+    /*
+    Restituisce il contenuto del dato target, leggendolo da disco se non presente in payloads
+    @requires target in D
+    @throws IOException se si verifica un errore durante la lettura da disco
+    @throws ClassNotFoundException se si verifica un errore durante la deserializzazione
+    @return Content(target)
+     */
+    private E getFile(SecureFile target) throws IOException, ClassNotFoundException {
+        E res = payloads.get(target);
+        return res != null ? res : loadFile(target);
+    }
+
+    /*
+    Come getFile(target), per i metodi che non possono sollevare eccezioni controllate
+    @requires target in D
+    @throws UncheckedIOException se non è possibile leggere il contenuto di target da disco
+    @return Content(target)
+     */
+    private E loadedFile(SecureFile target) throws UncheckedIOException {
+        try {
+            return getFile(target);
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch(ClassNotFoundException ex) {
+            throw new UncheckedIOException(new IOException(ex));
         }
-        assert repInv();
-        return res;
     }
 
-    private E getFile(E target){
-        assert repInv();
-        Iterator<E> iterFile = dataSet.iterator();
-        E res = null;
-        while (iterFile.hasNext()) {
-            res = iterFile.next();
-            if(res.equals(target)) break;
+    /*
+    Restituisce la chiave di file memorizzata nelle strutture di this: un SecureFile con lo stesso path di file, privo
+    del contenuto di file
+    @requires file != null
+     */
+    private static SecureFile keyOf(SecureFile file) {
+        return new SecureFile(file.getFilePath());
+    }
+
+    /*
+    Rimuove la copia in sola lettura del dato con path path: il contenuto del dato non è più in payloads
+     */
+    private void dropSnapshot(String path) {
+        snapshots.remove(new SecureFile(path));
+    }
+
+    /*
+    Serializza this (vedi ContainerSnapshot): oltre alle variabili di istanza non transient memorizza il contenuto dei
+    dati presenti in payloads, così lo snapshot contiene anche i dati il cui documento su disco viene in seguito
+    modificato o eliminato (con una cache limitata, solo quelli ancora in memoria)
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(new ArrayList<>(payloads.values()));
+    }
+
+    /*
+    Deserializza this: il contenuto dei dati memorizzato nello snapshot viene inserito in una cache senza limiti.
+    Gli snapshot scritti prima dell'introduzione di payloads contengono il contenuto dei dati direttamente in dataSet.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        payloads = new PayloadCache<>();
+        try {
+            @SuppressWarnings("unchecked")
+            List<E> saved = (List<E>) in.readObject();
+            for (E d : saved) payloads.put(d);
+        } catch(OptionalDataException ex) {
+            if(!ex.eof) throw ex; //snapshot precedente: nessun contenuto dopo le variabili di istanza
         }
-        assert repInv();
-        return res;
+    }
+
+    /*
+    Restituisce una deep copy di d (vedi deepCopy)
+    @requires d != null
+     */
+    @SuppressWarnings("unchecked")
+    private E copyOf(E d) {
+        return (E) deepCopy(d);
     }
 
     /* Restituisce una deep copy di orig, o null se l'oggetto non può essere serializzato.
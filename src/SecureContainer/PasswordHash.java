@@ -0,0 +1,94 @@
+package SecureContainer;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+final class PasswordHash implements Serializable {
+    /*
+     * Overview:
+     * PasswordHash è un tipo di dato immutabile che rappresenta l'hash di una password insieme al salt e ai parametri
+     * con cui è stato calcolato (vedi PasswordUtils). Salt e hash sono memorizzati come array di byte: la verifica di
+     * una password li confronta in tempo costante senza codificarli. La rappresentazione testuale (encode, parse) è
+     * utilizzata solo per memorizzare l'hash fuori da User (journal, indice).
+     *
+     * Typical Element:
+     *    (iterazioni, lunghezza della chiave, salt, hash)
+     *
+     * IR:
+     *    iterations > 0 && keyLength > 0 && salt != null && hash != null && salt.length > 0 && hash.length > 0
+     */
+
+    private static final String SEPARATOR = "$";
+    private static final long serialVersionUID = 1L;
+
+    private final int iterations; //iterazioni con cui è stato calcolato hash
+    private final int keyLength; //lunghezza in bit della chiave derivata
+    private final byte[] salt; //salt dell'utente
+    private final byte[] hash; //chiave derivata dalla password
+
+    /*
+    Crea l'hash (p_iterations, p_keyLength, p_salt, p_hash). Gli array non vengono copiati.
+    @requires p_iterations > 0 && p_keyLength > 0 && p_salt != null && p_hash != null && p_salt.length > 0 && p_hash.length > 0
+    @throws NullPointerException se p_salt = null || p_hash = null
+    @throws IllegalArgumentException se p_iterations <= 0 || p_keyLength <= 0 || p_salt.length = 0 || p_hash.length = 0
+     */
+    PasswordHash(int p_iterations, int p_keyLength, byte[] p_salt, byte[] p_hash) throws NullPointerException, IllegalArgumentException {
+        if (p_salt == null) throw new NullPointerException("p_salt must be != null !");
+        if (p_hash == null) throw new NullPointerException("p_hash must be != null !");
+        if (p_iterations <= 0 || p_keyLength <= 0) throw new IllegalArgumentException("p_iterations and p_keyLength must be > 0 !");
+        if (p_salt.length == 0 || p_hash.length == 0) throw new IllegalArgumentException("p_salt and p_hash can't be empty!");
+        iterations = p_iterations;
+        keyLength = p_keyLength;
+        salt = p_salt;
+        hash = p_hash;
+    }
+
+    /*
+    Legge un hash dalla sua rappresentazione testuale
+    @requires p_encoded != null
+    @throws NullPointerException se p_encoded = null
+    @return l'hash rappresentato da p_encoded; null se p_encoded non è nel formato prodotto da encode
+     */
+    static PasswordHash parse(String p_encoded) throws NullPointerException {
+        if (p_encoded == null) throw new NullPointerException("p_encoded must be != null !");
+        String[] parts = p_encoded.split("\\" + SEPARATOR, -1);
+        if (parts.length != 4) return null; //formato non riconosciuto
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            return new PasswordHash(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), decoder.decode(parts[2]), decoder.decode(parts[3]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /*
+    Restituisce la rappresentazione testuale di this: iterazioni$lunghezza della chiave$salt$hash (salt e hash in Base64)
+     */
+    String encode() {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return iterations + SEPARATOR + keyLength + SEPARATOR + encoder.encodeToString(salt) + SEPARATOR + encoder.encodeToString(hash);
+    }
+
+    /*
+    Verifica in tempo costante se p_candidate coincide con l'hash di this
+    @return true se p_candidate contiene gli stessi byte di hash; false altrimenti (anche se p_candidate = null)
+     */
+    boolean matches(byte[] p_candidate) {
+        return p_candidate != null && MessageDigest.isEqual(hash, p_candidate);
+    }
+
+    int getIterations() { return iterations; }
+
+    int getKeyLength() { return keyLength; }
+
+    /*
+    Restituisce il salt di this. L'array non deve essere modificato.
+     */
+    byte[] getSalt() { return salt; }
+
+    /*
+    Restituisce l'hash di this. L'array non deve essere modificato.
+     */
+    byte[] getHash() { return hash; }
+}
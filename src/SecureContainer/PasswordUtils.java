@@ -1,73 +1,182 @@
 package SecureContainer;
 
 import java.security.SecureRandom;
-import java.util.Base64;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 
 /*
 Quetsa classe prende spunto dal seguente articolo:
 https://dev.to/awwsmm/how-to-encrypt-a-password-in-java-42dh
+
+Overview:
+    Ogni hash prodotto da hashPassword utilizza un salt casuale generato per l'hash stesso e contiene i parametri con
+    cui è stato calcolato, nel formato
+        iterazioni$lunghezza della chiave$salt$hash   (salt e hash codificati in Base64)
+    in modo che possa essere verificato anche dopo un riavvio o dopo che il numero di iterazioni è stato modificato.
+    All'interno del package l'hash è rappresentato da PasswordHash, che ne memorizza salt e chiave come array di byte.
+    Il numero di iterazioni utilizzato per i nuovi hash è inizialmente letto dalla proprietà di sistema
+    SecureContainer.PasswordUtils.iterations (65536 se non definita) e può essere modificato con setIterations.
+    Se è stato impostato un executor di verifica (setVerificationExecutor) il calcolo dell'hash di verifyPassword viene
+    eseguito dai thread dell'executor: il chiamante attende il risultato ma il numero di calcoli contemporanei è
+    limitato dalla dimensione dell'executor.
+    Ogni thread utilizza una propria istanza di SecretKeyFactory, creata al primo calcolo e poi riutilizzata (le
+    istanze non possono essere utilizzate da più thread contemporaneamente).
  */
 public class PasswordUtils {
     private static final SecureRandom RAND = new SecureRandom();
-    private static final int salt_length = 512;
-    private static final int ITERATIONS = 65536;
+    private static final int salt_length = 32;
+    private static final int DEFAULT_ITERATIONS = 65536;
     private static final int KEY_LENGTH = 512;
     private static final String ALGORITHM = "PBKDF2WithHmacSHA512";
-    private static final String salt = PasswordUtils.generateSalt();
+    private static volatile int iterations = Math.max(1, Integer.getInteger("SecureContainer.PasswordUtils.iterations", DEFAULT_ITERATIONS)); //Iterazioni dei nuovi hash
+    private static volatile ExecutorService verificationExecutor; //Executor che calcola gli hash di verifyPassword (null se disabilitato)
+    private static final ThreadLocal<SecretKeyFactory> FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            return null; //l'errore viene segnalato da pbkdf2
+        }
+    }); //SecretKeyFactory del thread corrente
 
     /*
-     * Genera una stringa casuale partendo da un array di byte lungo length
+     * Genera un array di byte casuale lungo length
      * @requires length >= 1
      * @throws IllegalArgumentException se length < 1
-     * @return Restituisce una stringa generata in modo casuale
+     * @return Restituisce un array di byte generato in modo casuale
      */
-    private static String generateSalt (final int length) throws IllegalArgumentException{
+    private static byte[] generateSalt (final int length) throws IllegalArgumentException{
         if (length < 1) throw new IllegalArgumentException("length must be > 0");
 
         byte[] salt = new byte[length];
         RAND.nextBytes(salt);
 
-        return Base64.getEncoder().encodeToString(salt);
+        return salt;
     }
 
     /*
-     * Genera una stringa casuale
-     * @return Restituisce una stringa generata in modo casuale
+     * Genera un array di byte casuale
+     * @return Restituisce un array di byte generato in modo casuale
      */
-    private static String generateSalt () {
+    private static byte[] generateSalt () {
         return generateSalt(salt_length);
     }
 
     /*
-     * Produce hash di password utilizzando salt.
+     * Produce hash di password utilizzando un nuovo salt casuale e il numero di iterazioni corrente.
      * Se si verifica un errore durante la generazione della stringa hash viene restituito null
-     * @requires password != null && salt != null && !password.isEmpty()
-     * @throws NullPointerException se password = null || salt = null
+     * @requires password != null && !password.isEmpty()
+     * @throws NullPointerException se password = null
      * @throws IllegalArgumentException se password.isEmpty()
-     * @return Restituisce la stringa hash associata a password se nessun errore si verifica durante la sua generazione
-     *         altrimenti restituisce null.
+     * @return Restituisce la stringa hash associata a password, comprensiva di salt e parametri (vedi Overview), se
+     *         nessun errore si verifica durante la sua generazione altrimenti restituisce null.
      */
     public static String hashPassword (String password) throws NullPointerException, IllegalArgumentException{
+        PasswordHash res = hash(password);
+        return res == null ? null : res.encode();
+    }
+
+    /*
+     * Come hashPassword(password) ma restituisce l'hash come PasswordHash
+     * @requires password != null && !password.isEmpty()
+     * @throws NullPointerException se password = null
+     * @throws IllegalArgumentException se password.isEmpty()
+     * @return l'hash di password; null se si verifica un errore durante la sua generazione
+     */
+    static PasswordHash hash (String password) throws NullPointerException, IllegalArgumentException{
         if (password == null) throw new NullPointerException("password must be != null");
-        if (salt == null) throw new NullPointerException("salt must be != null");
         if (password.isEmpty()) throw new IllegalArgumentException("password can't be empty!");
 
+        int cost = iterations;
+        byte[] salt = generateSalt();
+        byte[] securePassword = pbkdf2(password, salt, cost, KEY_LENGTH);
+        return securePassword == null ? null : new PasswordHash(cost, KEY_LENGTH, salt, securePassword);
+    }
+
+    /*
+     * Verifica se l'hash di password, calcolato con il salt e i parametri contenuti in key, è uguale a quello di key.
+     * Se è stato impostato un executor di verifica l'hash viene calcolato da uno dei suoi thread.
+     * @requires password != null && key != null && !password.isEmpty() && !key.isEmpty()
+     * @throws NullPointerException se password = null || key = null
+     * @throws IllegalArgumentException se password.isEmpty() || key.isEmpty()
+     * @throws RejectedExecutionException se l'executor di verifica non accetta ulteriori verifiche
+     * @return true se l'hash di password coincide con la stringa key; false altrimenti (anche se key non è nel
+     *         formato prodotto da hashPassword o se il thread corrente viene interrotto durante l'attesa)
+     */
+    public static boolean verifyPassword (String password, String key) throws NullPointerException, IllegalArgumentException, RejectedExecutionException{
+        if (password == null) throw new NullPointerException("password must be != null");
+        if (key == null) throw new NullPointerException("key must be != null");
+        if (password.isEmpty()) throw new IllegalArgumentException("password cant't be empty!");
+        if (key.isEmpty()) throw new IllegalArgumentException("key cant't be empty!");
+
+        PasswordHash hash = PasswordHash.parse(key);
+        return hash != null && verify(password, hash);
+    }
+
+    /*
+     * Come verifyPassword(password, key) ma con l'hash rappresentato da PasswordHash
+     * @requires password != null && hash != null && !password.isEmpty()
+     * @throws NullPointerException se password = null || hash = null
+     * @throws IllegalArgumentException se password.isEmpty()
+     * @throws RejectedExecutionException se l'executor di verifica non accetta ulteriori verifiche
+     * @return true se l'hash di password coincide con hash; false altrimenti
+     */
+    static boolean verify (String password, PasswordHash hash) throws NullPointerException, IllegalArgumentException, RejectedExecutionException{
+        if (password == null) throw new NullPointerException("password must be != null");
+        if (hash == null) throw new NullPointerException("hash must be != null");
+        if (password.isEmpty()) throw new IllegalArgumentException("password cant't be empty!");
+
+        ExecutorService executor = verificationExecutor;
+        if (executor == null) return compute(password, hash);
+        Future<Boolean> res = executor.submit(() -> compute(password, hash));
+        try {
+            return res.get();
+        } catch (InterruptedException e) {
+            res.cancel(true);
+            Thread.currentThread().interrupt(); //l'interruzione viene gestita dal chiamante
+            return false;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /*
+     * Calcola nel thread corrente l'hash di password con il salt e i parametri di hash e lo confronta in tempo
+     * costante con quello di hash
+     * @requires password != null && hash != null
+     * @return true se l'hash di password coincide con quello di hash; false altrimenti
+     */
+    private static boolean compute(String password, PasswordHash hash) {
+        return hash.matches(pbkdf2(password, hash.getSalt(), hash.getIterations(), hash.getKeyLength()));
+    }
+
+    /*
+     * Calcola la chiave PBKDF2 di password
+     * @requires password != null && salt != null && cost >= 1 && keyLength >= 1
+     * @return la chiave derivata da password; null se si verifica un errore durante il calcolo
+     */
+    private static byte[] pbkdf2(String password, byte[] salt, int cost, int keyLength) {
         char[] chars = password.toCharArray();
-        byte[] bytes = salt.getBytes();
 
-        PBEKeySpec spec = new PBEKeySpec(chars, bytes, ITERATIONS, KEY_LENGTH);
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, cost, keyLength);
 
         Arrays.fill(chars, Character.MIN_VALUE);
 
         try {
-            SecretKeyFactory fac = SecretKeyFactory.getInstance(ALGORITHM);
-            byte[] securePassword = fac.generateSecret(spec).getEncoded();
-            return Base64.getEncoder().encodeToString(securePassword);
+            SecretKeyFactory fac = FACTORY.get();
+            if (fac == null) throw new NoSuchAlgorithmException(ALGORITHM + " not available");
+            return fac.generateSecret(spec).getEncoded();
         } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
             System.err.println("Exception encountered in hashPassword()");
             return null;
@@ -77,21 +186,57 @@ public class PasswordUtils {
     }
 
     /*
-     * Verifica se l'hash di password è uguale a key
-     * @requires password != null && key != null && salt != null && !password.isEmpty() && !key.isEmpty()
-     * @throws NullPointerException se password = null || key = null || salt = null
-     * @throws IllegalArgumentException se password.isEmpty() || key.isEmpty()
-     * @return true se l'hash di password coincide con la stringa key
+     * Imposta il numero di iterazioni utilizzato per calcolare i nuovi hash. Gli hash già calcolati restano
+     * verificabili con il numero di iterazioni con cui sono stati prodotti.
+     * @requires p_iterations >= 1
+     * @throws IllegalArgumentException se p_iterations < 1
      */
-    public static boolean verifyPassword (String password, String key) throws NullPointerException, IllegalArgumentException{
-        if (password == null) throw new NullPointerException("password must be != null");
-        if (key == null) throw new NullPointerException("key must be != null");
-        if (salt == null) throw new NullPointerException("salt must be != null");
-        if (password.isEmpty()) throw new IllegalArgumentException("password cant't be empty!");
-        if (key.isEmpty()) throw new IllegalArgumentException("key cant't be empty!");
+    public static void setIterations(int p_iterations) throws IllegalArgumentException {
+        if (p_iterations < 1) throw new IllegalArgumentException("p_iterations must be > 0");
+        iterations = p_iterations;
+    }
 
-        String optEncrypted = hashPassword(password);
-        if (optEncrypted == null) return false;
-        return optEncrypted.equals(key);
+    /*
+     * Restituisce il numero di iterazioni utilizzato per calcolare i nuovi hash
+     */
+    public static int getIterations() {
+        return iterations;
+    }
+
+    /*
+     * Calcola gli hash di verifyPassword con i thread di p_executor; se p_executor = null gli hash vengono calcolati dal
+     * thread chiamante. La chiusura dell'executor resta a carico del chiamante.
+     */
+    public static void setVerificationExecutor(ExecutorService p_executor) {
+        verificationExecutor = p_executor;
+    }
+
+    /*
+     * Restituisce l'executor che calcola gli hash di verifyPassword; null se disabilitato
+     */
+    public static ExecutorService getVerificationExecutor() {
+        return verificationExecutor;
+    }
+
+    /*
+     * Crea un executor di verifica limitato: al più p_threads hash vengono calcolati contemporaneamente e al più
+     * p_queueSize verifiche restano in attesa; le verifiche ulteriori vengono rifiutate con RejectedExecutionException.
+     * I thread dell'executor sono daemon.
+     * @requires p_threads >= 1 && p_queueSize >= 1
+     * @throws IllegalArgumentException se p_threads < 1 || p_queueSize < 1
+     * @return un nuovo executor da utilizzare con setVerificationExecutor
+     */
+    public static ExecutorService newVerificationExecutor(int p_threads, int p_queueSize) throws IllegalArgumentException {
+        if (p_threads < 1) throw new IllegalArgumentException("p_threads must be > 0");
+        if (p_queueSize < 1) throw new IllegalArgumentException("p_queueSize must be > 0");
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(p_threads, p_threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(p_queueSize),
+                r -> {
+                    Thread t = new Thread(r, "password-verifier-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
     }
 }
@@ -0,0 +1,259 @@
+package SecureContainer;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+public class PayloadCache<E extends SecureFile> {
+    /*
+     * Overview:
+     * PayloadCache memorizza il contenuto dei dati di un container indicizzato per path, in modo che il container possa
+     * mantenere in memoria solo i metadati dei dati (path, proprietario, accessi) e rileggere da disco il contenuto dei
+     * dati non presenti nella cache.
+     * Ad ogni dato viene assegnato un peso (1 se non specificato diversamente): quando la somma dei pesi supera
+     * maxWeight i dati usati meno di recente vengono rimossi (LRU), a meno che non resti un solo dato.
+     * Un dato rimosso resta raggiungibile con un riferimento debole finché qualcuno (ad esempio il cliente che lo ha
+     * ottenuto con get e accesso W) ne mantiene un riferimento: get restituisce lo stesso oggetto, così le modifiche
+     * non ancora scritte su disco non vengono perse finché il dato è in uso.
+     * Può essere utilizzata da più thread contemporaneamente.
+     *
+     * Typical Element:
+     *    {(path_0, d_0), ..., (path_n-1, d_n-1)} con sum peso(d_i) <= maxWeight || n = 1
+     *
+     * IR:
+     *    entries != null && evicted != null && queue != null && weigher != null && maxWeight > 0 &&
+     *    weight = sum e.weight per e in entries.values && (weight <= maxWeight || entries.size() <= 1) &&
+     *    For all path in entries.keySet. Not evicted.containsKey(path) && hits >= 0 && misses >= 0 && evictions >= 0
+     */
+
+    private final long maxWeight; //somma massima dei pesi dei dati in entries
+    private final ToLongFunction<? super E> weigher; //peso di ciascun dato
+    private final LinkedHashMap<String,Entry<E>> entries; //dati presenti nella cache in ordine di accesso (LRU)
+    private final Map<String,Ref<E>> evicted; //dati rimossi da entries, ancora raggiungibili se in uso
+    private final ReferenceQueue<E> queue; //riferimenti di evicted i cui dati non sono più raggiungibili
+    private long weight; //somma dei pesi dei dati in entries
+    private long hits; //numero di letture risolte dalla cache
+    private long misses; //numero di letture non risolte dalla cache
+    private long evictions; //numero di dati rimossi da entries per rispettare maxWeight
+    private Consumer<String> evictionListener; //notificato con il path di ogni dato rimosso da entries (null se assente)
+
+    private static final class Entry<E> {
+        private final E data; //contenuto del dato
+        private final long weight; //peso del dato al momento dell'inserimento
+
+        Entry(E p_data, long p_weight) {
+            data = p_data;
+            weight = p_weight;
+        }
+    }
+
+    private static final class Ref<E> extends WeakReference<E> {
+        private final String path; //path del dato riferito
+
+        Ref(String p_path, E p_data, ReferenceQueue<E> p_queue) {
+            super(p_data, p_queue);
+            path = p_path;
+        }
+    }
+
+    /*
+    Crea una cache vuota senza limiti: nessun dato viene mai rimosso
+     */
+    public PayloadCache() {
+        this(Long.MAX_VALUE, d -> 1);
+    }
+
+    /*
+    Crea una cache vuota che contiene al più p_maxSize dati
+    @requires p_maxSize > 0
+    @throws IllegalArgumentException se p_maxSize <= 0
+     */
+    public PayloadCache(int p_maxSize) throws IllegalArgumentException {
+        this((long) p_maxSize, d -> 1);
+    }
+
+    /*
+    Crea una cache vuota nella quale la somma dei pesi dei dati, calcolati con p_weigher all'inserimento, non supera
+    p_maxWeight (ad esempio la dimensione stimata in byte del contenuto dei dati)
+    @requires p_maxWeight > 0 && p_weigher != null && p_weigher restituisce pesi >= 0
+    @throws IllegalArgumentException se p_maxWeight <= 0
+    @throws NullPointerException se p_weigher = null
+     */
+    public PayloadCache(long p_maxWeight, ToLongFunction<? super E> p_weigher) throws IllegalArgumentException, NullPointerException {
+        if(p_maxWeight <= 0) throw new IllegalArgumentException("p_maxWeight must be > 0 !");
+        if(p_weigher == null) throw new NullPointerException("p_weigher must be != null !");
+        maxWeight = p_maxWeight;
+        weigher = p_weigher;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        evicted = new HashMap<>();
+        queue = new ReferenceQueue<>();
+    }
+
+    /*
+    Restituisce il contenuto del dato con lo stesso path di key
+    @requires key != null
+    @throws NullPointerException se key = null
+    @modifies this
+    @effects aggiorna hits o misses; il dato restituito diventa il più recente. Un dato rimosso ma ancora in uso
+             viene reinserito nella cache
+    @return il dato d tale che d.path = key.path; null se la cache non lo contiene
+     */
+    public synchronized E get(SecureFile key) throws NullPointerException {
+        if(key == null) throw new NullPointerException("key must be != null !");
+        expunge();
+        Entry<E> e = entries.get(key.getFilePath());
+        if(e != null) {
+            hits++;
+            return e.data;
+        }
+        Ref<E> ref = evicted.remove(key.getFilePath());
+        E res = ref == null ? null : ref.get();
+        if(res == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        admit(key.getFilePath(), res);
+        return res;
+    }
+
+    /*
+    Inserisce d nella cache, sostituendo l'eventuale dato con lo stesso path
+    @requires d != null
+    @throws NullPointerException se d = null
+    @modifies this
+    @effects d è il dato più recente; se la somma dei pesi supera maxWeight vengono rimossi i dati meno recenti
+     */
+    public synchronized void put(E d) throws NullPointerException {
+        if(d == null) throw new NullPointerException("d must be != null !");
+        expunge();
+        evicted.remove(d.getFilePath());
+        admit(d.getFilePath(), d);
+    }
+
+    /*
+    Rimuove dalla cache il dato con lo stesso path di key
+    @requires key != null
+    @throws NullPointerException se key = null
+    @modifies this
+     */
+    public synchronized void remove(SecureFile key) throws NullPointerException {
+        if(key == null) throw new NullPointerException("key must be != null !");
+        Entry<E> e = entries.remove(key.getFilePath());
+        if(e != null) weight -= e.weight;
+        evicted.remove(key.getFilePath());
+    }
+
+    /*
+    Svuota la cache
+    @modifies this
+    @effects rimuove tutti i dati, compresi quelli rimossi ancora in uso
+     */
+    public synchronized void clear() {
+        entries.clear();
+        evicted.clear();
+        weight = 0;
+    }
+
+    /*
+    Restituisce il numero di dati presenti nella cache (esclusi quelli rimossi ancora in uso)
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /*
+    Restituisce la somma dei pesi dei dati presenti nella cache
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /*
+    Restituisce la somma massima dei pesi dei dati presenti nella cache
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /*
+    Restituisce il numero di letture risolte dalla cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /*
+    Restituisce il numero di letture non risolte dalla cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /*
+    Restituisce il numero di dati rimossi dalla cache per rispettare maxWeight
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /*
+    Notifica p_listener con il path di ogni dato rimosso dalla cache per rispettare maxWeight (null per nessuna notifica).
+    p_listener viene eseguito mentre si possiede il lock su this.
+    @modifies this
+     */
+    synchronized void setEvictionListener(Consumer<String> p_listener) {
+        evictionListener = p_listener;
+    }
+
+    /*
+    Restituisce i dati presenti nella cache, dal meno recente al più recente (esclusi quelli rimossi ancora in uso)
+     */
+    synchronized List<E> values() {
+        List<E> res = new ArrayList<>(entries.size());
+        for (Entry<E> e : entries.values()) res.add(e.data);
+        return res;
+    }
+
+    /*
+    Inserisce d con path in entries e rimuove i dati meno recenti finché weight <= maxWeight o resta un solo dato
+    @requires chiamato mentre si possiede il lock su this && Not evicted.containsKey(path)
+    @modifies this
+     */
+    private void admit(String path, E d) {
+        long w = weigher.applyAsLong(d);
+        Entry<E> old = entries.put(path, new Entry<>(d, w));
+        if(old != null) weight -= old.weight;
+        weight += w;
+
+        Iterator<Map.Entry<String,Entry<E>>> iter = entries.entrySet().iterator();
+        while (weight > maxWeight && entries.size() > 1) {
+            Map.Entry<String,Entry<E>> eldest = iter.next(); //d è il più recente: non viene mai rimosso
+            iter.remove();
+            weight -= eldest.getValue().weight;
+            evicted.put(eldest.getKey(), new Ref<>(eldest.getKey(), eldest.getValue().data, queue));
+            evictions++;
+            if(evictionListener != null) evictionListener.accept(eldest.getKey());
+        }
+    }
+
+    /*
+    Rimuove da evicted i riferimenti ai dati non più raggiungibili
+    @requires chiamato mentre si possiede il lock su this
+    @modifies this
+     */
+    private void expunge() {
+        Ref<?> ref;
+        while ((ref = (Ref<?>) queue.poll()) != null) {
+            //il path potrebbe essere stato nel frattempo riassegnato ad un altro riferimento
+            if(evicted.get(ref.path) == ref) evicted.remove(ref.path);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package SecureContainer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Overview:
+    Executor con cui eseguire le chiamate ad un container (vedi AsyncSecureFileContainer.onVirtualThreads).
+    In modalità virtual thread ogni chiamata viene eseguita da un nuovo virtual thread: durante le letture e scritture
+    su disco il virtual thread si sospende e il thread di piattaforma che lo eseguiva può eseguire altre chiamate, così
+    il numero di chiamate bloccate sull'I/O non è limitato dal numero di thread di piattaforma.
+    Affinché la sospensione sia possibile le chiamate non devono attendere l'I/O all'interno di blocchi synchronized
+    (il virtual thread resterebbe legato al thread di piattaforma): ConcurrentSecureDataContainer, ContainerJournal e
+    AsyncSecureFileContainer utilizzano per questo ReentrantLock.
+    I virtual thread sono disponibili a partire da Java 21; il progetto è compilato per Java 17, per cui
+    l'executor viene cercato a runtime. La modalità piattaforma esegue le chiamate con un pool di thread di piattaforma
+    che crea un nuovo thread quando tutti quelli esistenti sono occupati.
+ */
+public final class RequestExecutors {
+    private static final MethodHandle NEW_VIRTUAL = findVirtualFactory(); //Executors.newVirtualThreadPerTaskExecutor (null se non disponibile)
+
+    private RequestExecutors() {}
+
+    /*
+     * Restituisce true se il runtime corrente supporta i virtual thread
+     */
+    public static boolean virtualThreadsAvailable() {
+        return NEW_VIRTUAL != null;
+    }
+
+    /*
+     * Crea un executor che esegue ogni task su un nuovo virtual thread
+     * @throws UnsupportedOperationException se !virtualThreadsAvailable()
+     * @return un nuovo executor a virtual thread
+     */
+    public static ExecutorService newVirtualThreadExecutor() throws UnsupportedOperationException {
+        if (NEW_VIRTUAL == null) throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+        try {
+            return (ExecutorService) NEW_VIRTUAL.invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Crea un executor che esegue i task con thread di piattaforma daemon, creandone uno nuovo quando tutti quelli
+     * esistenti sono occupati (i thread inattivi vengono terminati dopo 60 secondi)
+     * @return un nuovo executor a thread di piattaforma
+     */
+    public static ExecutorService newPlatformThreadExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "container-request-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /*
+     * Crea l'executor delle chiamate: a virtual thread se disponibili, altrimenti a thread di piattaforma
+     */
+    public static ExecutorService newRequestExecutor() {
+        return virtualThreadsAvailable() ? newVirtualThreadExecutor() : newPlatformThreadExecutor();
+    }
+
+    /*
+     * Cerca Executors.newVirtualThreadPerTaskExecutor nel runtime corrente
+     * @return il metodo trovato; null se il runtime non supporta i virtual thread
+     */
+    private static MethodHandle findVirtualFactory() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
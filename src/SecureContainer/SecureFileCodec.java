@@ -0,0 +1,90 @@
+package SecureContainer;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.IntStream;
+
+public interface SecureFileCodec {
+    /*
+     * Overview:
+     * SecureFileCodec definisce il formato con il quale il contenuto di un SecureFile viene scritto e letto dal
+     * documento su disco relativo (writeFileOnDisk/readFileFromDisk dei container).
+     * Le implementazioni devono poter essere utilizzate da più thread contemporaneamente.
+     */
+
+    int BUFFER_SIZE = 8192; //dimensione del buffer utilizzato per leggere/scrivere i documenti su disco
+
+    /*
+    Scrive il contenuto di file su out
+    @requires file != null && out != null
+    @throws NullPointerException se file = null || out = null
+    @throws IOException se si verifica un errore durante la scrittura
+    @modifies out
+    @effects scrive su out il contenuto di file, che può essere riletto con decode
+     */
+    void encode(SecureFile file, OutputStream out) throws NullPointerException, IOException;
+
+    /*
+    Legge da in un SecureFile scritto con encode
+    @requires in != null
+    @throws NullPointerException se in = null
+    @throws IOException se si verifica un errore durante la lettura o il contenuto di in non è nel formato atteso
+    @throws ClassNotFoundException se la classe del dato letto non è disponibile
+    @modifies in
+    @return il SecureFile letto da in
+     */
+    SecureFile decode(InputStream in) throws NullPointerException, IOException, ClassNotFoundException;
+
+    /*
+    Scrive il contenuto di file nel documento su disco relativo, attraverso un buffer
+    @requires file != null
+    @throws NullPointerException se file = null
+    @throws IOException se si verifica un errore durante la scrittura su disco
+    @effects scrive il contenuto di file nel documento file.filePath
+     */
+    default void write(SecureFile file) throws NullPointerException, IOException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(file.getFilePath())), BUFFER_SIZE)) {
+            encode(file, out);
+        }
+    }
+
+    /*
+    Scrive il contenuto di ciascun dato di files nel documento su disco relativo, come write, utilizzando più thread
+    contemporaneamente. Un errore nella scrittura di un dato non interrompe la scrittura degli altri.
+    @requires files != null && files non contiene null && i dati di files hanno path distinti
+    @throws NullPointerException se files = null
+    @effects per ogni i tale che res[i] = null scrive il contenuto di files.get(i) nel documento files.get(i).filePath
+    @return res tale che res.length = files.size() e res[i] è l'eccezione sollevata dalla scrittura di files.get(i)
+            (null se la scrittura è riuscita)
+     */
+    default Exception[] writeAll(List<? extends SecureFile> files) throws NullPointerException {
+        if(files == null) throw new NullPointerException("files must be != null !");
+        Exception[] res = new Exception[files.size()];
+        IntStream.range(0, files.size()).parallel().forEach(i -> {
+            try {
+                write(files.get(i));
+            } catch (IOException | RuntimeException e) {
+                res[i] = e;
+            }
+        });
+        return res;
+    }
+
+    /*
+    Legge il SecureFile memorizzato nel documento su disco path, attraverso un buffer
+    @requires path != null
+    @throws NullPointerException se path = null
+    @throws IOException se si verifica un errore durante la lettura su disco
+    @throws ClassNotFoundException se la classe del dato letto non è disponibile
+    @return il SecureFile memorizzato in path
+     */
+    default SecureFile read(String path) throws NullPointerException, IOException, ClassNotFoundException {
+        if(path == null) throw new NullPointerException("path must be != null !");
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(path)), BUFFER_SIZE)) {
+            return decode(in);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package SecureContainer;
+
+import java.io.*;
+
+public class SerializationCodec implements SecureFileCodec {
+    /*
+     * Overview:
+     * SerializationCodec scrive e legge il contenuto dei dati con la serializzazione Java standard (ObjectOutputStream),
+     * includendo il descrittore completo delle classi. È il formato utilizzato dai container prima dell'introduzione di
+     * SecureFileCodec: i documenti possono essere letti da qualsiasi ObjectInputStream anche se le classi dei dati
+     * cambiano in modo compatibile.
+     */
+
+    @Override
+    public void encode(SecureFile file, OutputStream out) throws NullPointerException, IOException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        if(out == null) throw new NullPointerException("out must be != null !");
+        ObjectOutputStream objOut = new ObjectOutputStream(out);
+        objOut.writeObject(file);
+        objOut.flush(); //out non viene chiuso: è compito del chiamante
+    }
+
+    @Override
+    public SecureFile decode(InputStream in) throws NullPointerException, IOException, ClassNotFoundException {
+        if(in == null) throw new NullPointerException("in must be != null !");
+        Object obj = new ObjectInputStream(in).readObject();
+        if(!(obj instanceof SecureFile)) throw new InvalidObjectException("the stream doesn't contain a SecureFile");
+        return (SecureFile) obj;
+    }
+}
@@ -0,0 +1,66 @@
+package SecureContainer;
+
+import java.util.Objects;
+
+public final class Session {
+    /*
+     * Overview:
+     * Session è un riferimento opaco restituito da ISecureFileContainer.login. Identifica un utente già autenticato
+     * e permette di invocare le operazioni del container senza ripetere la verifica della password.
+     * Una sessione ha una scadenza, dopo la quale non è più valida.
+     *
+     * Typical Element:
+     *    - token: stringa casuale che identifica la sessione all'interno del container che l'ha generata
+     *    - expiration: istante (in millisecondi) oltre il quale la sessione non è più valida
+     */
+
+    private final String token; //identificativo casuale della sessione
+    private final long expiration; //istante di scadenza della sessione (System.currentTimeMillis)
+
+    /*
+    Costruttore
+    @requires p_token != null && !p_token.isEmpty()
+    @throws NullPointerException se p_token = null
+    @throws IllegalArgumentException se p_token.isEmpty()
+     */
+    Session(String p_token, long p_expiration) throws NullPointerException, IllegalArgumentException {
+        if(p_token == null) throw new NullPointerException("p_token must be != null !");
+        if(p_token.isEmpty()) throw new IllegalArgumentException("p_token can't be an empty string!");
+        token = p_token;
+        expiration = p_expiration;
+    }
+
+    /*
+    Restituisce l'istante di scadenza della sessione
+    @return istante di scadenza della sessione espresso in millisecondi
+     */
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /*
+    Verifica se la sessione è scaduta
+    @return true se la sessione è scaduta; false altrimenti
+     */
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiration;
+    }
+
+    @Override
+    public String toString() {
+        return "Session[expiration=" + expiration + "]"; //il token non deve essere esposto
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Session session = (Session) o;
+        return token.equals(session.token);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(token);
+    }
+}
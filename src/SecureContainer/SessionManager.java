@@ -0,0 +1,136 @@
+package SecureContainer;
+
+import SecureContainer.Exceptions.CredentialException;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+class SessionManager {
+    /*
+     * Overview:
+     * SessionManager gestisce le sessioni aperte su un container: associa ad ogni sessione valida l'id dell'utente
+     * che l'ha aperta. Può essere utilizzato da più thread contemporaneamente.
+     *
+     * IR:
+     *    sessions != null && ttl > 0 &&
+     *    For all (s,id) in sessions. s != null && id != null && !id.isEmpty()
+     */
+
+    static final long DEFAULT_TTL = 30 * 60 * 1000L; //durata predefinita di una sessione: 30 minuti
+    private static final SecureRandom RAND = new SecureRandom();
+    private static final int TOKEN_LENGTH = 32;
+    private static final int PURGE_INTERVAL = 64; //numero di sessioni aperte tra due rimozioni delle sessioni scadute
+
+    private final long ttl; //durata di una sessione in millisecondi
+    private final Map<Session,String> sessions; //sessioni aperte e id dell'utente associato
+    private final AtomicInteger opened = new AtomicInteger(); //numero di sessioni aperte dall'ultima rimozione delle sessioni scadute
+
+    /*
+    Crea un gestore di sessioni con durata predefinita
+     */
+    SessionManager() {
+        this(DEFAULT_TTL);
+    }
+
+    /*
+    Crea un gestore di sessioni con durata p_ttl
+    @requires p_ttl > 0
+    @throws IllegalArgumentException se p_ttl <= 0
+     */
+    SessionManager(long p_ttl) throws IllegalArgumentException {
+        if(p_ttl <= 0) throw new IllegalArgumentException("p_ttl must be > 0 !");
+        ttl = p_ttl;
+        sessions = new ConcurrentHashMap<>();
+    }
+
+    /*
+    Apre una nuova sessione per l'utente Id
+    @requires Id != null && !Id.isEmpty()
+    @throws NullPointerException se Id = null
+    @throws IllegalArgumentException se Id.isEmpty()
+    @modifies this
+    @effects this_post.sessions = this_pre.sessions + (s,Id)
+    @return la nuova sessione s
+     */
+    Session open(String Id) throws NullPointerException, IllegalArgumentException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        if(Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
+        if(opened.incrementAndGet() % PURGE_INTERVAL == 0) purge();
+
+        byte[] bytes = new byte[TOKEN_LENGTH];
+        RAND.nextBytes(bytes);
+        Session s = new Session(Base64.getEncoder().encodeToString(bytes), System.currentTimeMillis() + ttl);
+        sessions.put(s, Id);
+        return s;
+    }
+
+    /*
+    Restituisce l'id dell'utente che ha aperto la sessione s
+    @requires s != null && s in sessions && !s.isExpired()
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è stata aperta da this, è stata chiusa oppure è scaduta
+    @modifies this
+    @effects se s è scaduta viene rimossa da sessions
+    @return id dell'utente associato a s
+     */
+    String resolve(Session s) throws NullPointerException, CredentialException {
+        if(s == null) throw new NullPointerException("session must be != null !");
+        String Id = sessions.get(s);
+        if(Id == null) throw new CredentialException("a valid session is required !");
+        if(s.isExpired()) {
+            sessions.remove(s);
+            throw new CredentialException("session expired !");
+        }
+        return Id;
+    }
+
+    /*
+    Chiude la sessione s
+    @requires s != null
+    @throws NullPointerException se s = null
+    @modifies this
+    @effects this_post.sessions = this_pre.sessions - s
+     */
+    void close(Session s) throws NullPointerException {
+        if(s == null) throw new NullPointerException("session must be != null !");
+        sessions.remove(s);
+    }
+
+    /*
+    Chiude tutte le sessioni aperte dall'utente Id
+    @requires Id != null
+    @throws NullPointerException se Id = null
+    @modifies this
+    @effects this_post.sessions = this_pre.sessions - {(s,id) | id = Id}
+     */
+    void closeAll(String Id) throws NullPointerException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        sessions.values().removeIf(Id::equals);
+    }
+
+    /*
+    Chiude tutte le sessioni aperte da utenti che non soddisfano registered (ad esempio dopo che gli utenti del
+    container sono stati sostituiti da readContainerFromDisk)
+    @requires registered != null
+    @throws NullPointerException se registered = null
+    @modifies this
+    @effects this_post.sessions = this_pre.sessions - {(s,id) | !registered.test(id)}
+     */
+    void retainUsers(Predicate<String> registered) throws NullPointerException {
+        if(registered == null) throw new NullPointerException("registered must be != null !");
+        sessions.values().removeIf(registered.negate());
+    }
+
+    /*
+    Rimuove le sessioni scadute
+    @modifies this
+    @effects this_post.sessions = this_pre.sessions - {(s,id) | s.isExpired()}
+     */
+    private void purge() {
+        sessions.keySet().removeIf(Session::isExpired);
+    }
+}
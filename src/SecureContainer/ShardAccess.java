@@ -0,0 +1,74 @@
+package SecureContainer;
+
+import SecureContainer.Exceptions.CredentialException;
+import SecureContainer.Exceptions.DuplicatedUserException;
+import SecureContainer.Exceptions.NoAccessException;
+
+/*
+Overview:
+    Operazioni sugli utenti di un container che ShardedSecureFileContainer esegue su ciascuno shard dopo aver verificato
+    le credenziali dell'utente una sola volta sullo shard di riferimento: nessuna di esse verifica la password o ne
+    calcola l'hash. Consente inoltre di ottenere la copia di un dato da inserire in un altro shard. Viene restituito solo dai metodi package-private shardAccess dei container del package, per cui
+    non consente ai clienti esterni al package di aggirare la verifica delle credenziali.
+ */
+interface ShardAccess<E extends SecureFile> {
+
+    /*
+    Crea l'utente Id con l'hash della password passwordHash già calcolato (rappresentato come in User.getPasswordHash),
+    in modo che tutti gli shard memorizzino lo stesso hash
+    @requires Id != null && passwordHash != null && !Id.isEmpty() && passwordHash è nel formato di PasswordUtils
+    @throws NullPointerException se Id = null || passwordHash = null
+    @throws IllegalArgumentException se Id.isEmpty() || passwordHash non è nel formato di PasswordUtils
+    @throws DuplicatedUserException se (Exist u appartenente a U tale che u.id = Id)
+    @modifies container
+    @effects u = {Id, passwordHash} && container_post.U = container_pre.U + u
+     */
+    void createUser(String Id, String passwordHash) throws NullPointerException, IllegalArgumentException, DuplicatedUserException;
+
+    /*
+    Apre una sessione per l'utente u con u.id = Id senza verificarne la password
+    @requires Id != null
+    @throws NullPointerException se Id = null
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id)
+    @modifies container
+    @return una nuova sessione valida s tale che Id(s) = Id
+     */
+    Session login(String Id) throws NullPointerException, CredentialException;
+
+    /*
+    Rimuove l'utente u con u.id = Id senza verificarne la password, come removeUser(Id, passw) del container
+    @requires Id != null && !Id.equals(admin.id)
+    @throws NullPointerException se Id = null
+    @throws IllegalArgumentException se Id.equals(admin.id)
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id)
+    @modifies container
+    @effects vedi removeUser(Id, passw) del container
+     */
+    void removeUser(String Id) throws NullPointerException, IllegalArgumentException, CredentialException;
+
+    /*
+    Restituisce una deep copy di file, come quella creata da copy(s, file, newFilePath) del container, senza inserirla
+    nel container
+    @requires s != null && s valida && file != null && file in D && OwnedData(u) contiene file con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws IllegalArgumentException se file non in D
+    @throws CredentialException se s non è valida
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @return una deep copy di file
+     */
+    E ownedCopy(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException;
+
+    /*
+    Restituisce l'accesso agli utenti di container se container è uno dei container del package; null altrimenti
+    @requires container != null
+    @throws NullPointerException se container = null
+     */
+    static <E extends SecureFile> ShardAccess<E> of(ISecureFileContainer<E> container) throws NullPointerException {
+        if(container == null) throw new NullPointerException("container must be != null !");
+        if(container instanceof MapSecureDataContainer) return ((MapSecureDataContainer<E>) container).shardAccess();
+        if(container instanceof ListSecureDataContainer) return ((ListSecureDataContainer<E>) container).shardAccess();
+        if(container instanceof ConcurrentSecureDataContainer) return ((ConcurrentSecureDataContainer<E>) container).shardAccess();
+        if(container instanceof IndexedSecureDataContainer) return ((IndexedSecureDataContainer<E>) container).shardAccess();
+        return null;
+    }
+}
@@ -0,0 +1,898 @@
+package SecureContainer;
+
+import SecureContainer.Exceptions.CredentialException;
+import SecureContainer.Exceptions.DuplicatedUserException;
+import SecureContainer.Exceptions.NoAccessException;
+import SecureContainer.Exceptions.UnknownUserException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+public class ShardedSecureFileContainer<E extends SecureFile> implements ISecureFileContainer<E>, Closeable {
+    /*
+     * Overview:
+     * ShardedSecureFileContainer è un'implementazione di ISecureFileContainer che partiziona i dati su n container
+     * indipendenti (shard), ciascuno con le proprie strutture dati, i propri lock e il proprio documento su disco
+     * (path + ".shard" + i): lo snapshot di ogni shard contiene solo i dati della propria partizione.
+     *    - ogni dato d appartiene allo shard floorMod(hash(d.path), n): le operazioni su un singolo dato (put, get,
+     *      getSnapshot, remove, shareR, shareW, writeFileOnDisk, readFileFromDisk) vengono eseguite solo da quello shard;
+     *    - ogni utente u ha uno shard di riferimento floorMod(hash(u.id), n), che risponde a userExist e userAuth.
+     *      Poiché proprietario e livelli di accesso di un dato vengono verificati dallo shard del dato, gli utenti sono
+     *      replicati in tutti gli shard;
+     *    - le operazioni che riguardano tutti i dati o tutti gli utenti (createUser, removeUser, getSize, getIterator,
+     *      getSharedWithMe, login, writeContainerOnDisk, readContainerFromDisk) vengono eseguite in parallelo su tutti
+     *      gli shard tramite executor;
+     *    - le credenziali di login, removeUser, getSize, getIterator e getSharedWithMe vengono verificate una sola volta
+     *      dallo shard di riferimento, che poi agisce sugli altri shard senza verificare di nuovo la password
+     *      (ShardAccess); createUser calcola l'hash della password una sola volta e lo replica su tutti gli shard.
+     *      Gli shard che non sono container del package verificano invece di nuovo le credenziali;
+     *    - createUser e removeUser dello stesso utente vengono serializzati: createUser crea l'utente prima nello shard
+     *      di riferimento e poi negli altri shard; se la creazione non riesce su uno shard l'utente viene rimosso dagli
+     *      shard in cui era stato creato;
+     *    - copy di un dato in uno shard diverso da quello di newFilePath ottiene dallo shard di origine una deep copy
+     *      del dato, dopo averne verificato il proprietario, e la inserisce direttamente nello shard di destinazione.
+     *      Se lo shard di origine non è un container del package la copia viene invece creata nello shard di origine
+     *      e poi spostata nello shard di destinazione.
+     * Una sessione di this corrisponde ad una sessione aperta su ciascuno shard.
+     * Può essere utilizzato da più thread contemporaneamente se gli shard lo consentono (isThreadSafe()).
+     * NOTA BENE: ad eccezione di createUser e login, le operazioni eseguite su tutti gli shard non sono atomiche: se
+     *            uno shard solleva un'eccezione le modifiche degli altri shard non vengono annullate.
+     *
+     * AF(c):
+     *    U = c.shards.get(0).U
+     *    D = unione di c.shards.get(i).D per 0 <= i < n
+     *    Owner(d) = c.shards.get(shard(d)).Owner(d)
+     *    Access(u,d) = c.shards.get(shard(d)).Access(u,d)
+     *
+     * IR:
+     *    shards != null && shards.size() > 0 && For all 0 <= i < shards.size(). shards.get(i) != null &&
+     *    access != null && access.size() = shards.size() &&
+     *    For all 0 <= i < shards.size(). access.get(i) = ShardAccess.of(shards.get(i)) &&
+     *    userLocks != null && userLocks.length > 0 &&
+     *    For all 0 <= i < shards.size(). shards.get(i).U = shards.get(0).U &&
+     *    For all 0 <= i < shards.size(). For all d in shards.get(i).D. shard(d) = i &&
+     *    executor != null && sessions != null && shardSessions != null &&
+     *    For all (s,ss) in shardSessions. ss.sessions.length = shards.size()
+     */
+
+    private final String filePath; //path da cui vengono derivati i documenti su disco degli shard
+    private final List<ISecureFileContainer<E>> shards; //container che memorizzano ciascuna partizione dei dati
+    private final List<ShardAccess<E>> access; //access.get(i) è l'accesso agli utenti e ai dati dello shard i (null se non disponibile)
+    private final ReentrantLock[] userLocks = new ReentrantLock[64]; //lock di createUser e removeUser, per hash dell'id
+    private final Executor executor; //Executor delle operazioni eseguite su tutti gli shard
+    private final ExecutorService ownExecutor; //executor creato da this e terminato da close (null se fornito dal cliente)
+    private final boolean threadSafe; //true se tutti gli shard consentono chiamate concorrenti
+    private final SessionManager sessions = new SessionManager(); //Sessioni aperte su this
+    private final Map<Session,ShardSessions> shardSessions = new ConcurrentHashMap<>(); //sessioni sugli shard di ciascuna sessione di this
+
+    private static final class ShardSessions {
+        private final String id; //id dell'utente che ha aperto le sessioni
+        private final Session[] sessions; //sessions[i] è la sessione aperta sullo shard i
+
+        ShardSessions(String p_id, Session[] p_sessions) {
+            id = p_id;
+            sessions = p_sessions;
+        }
+    }
+
+    /*
+    Crea un container vuoto partizionato su p_shards ConcurrentSecureDataContainer, che esegue le operazioni su tutti
+    gli shard con un proprio executor (vedi close)
+    @requires p_filePath != null && !p_filePath.isEmpty() && p_shards > 0
+    @throws NullPointerException se p_filePath = null
+    @throws IllegalArgumentException se p_filePath.isEmpty() || p_shards <= 0
+     */
+    public ShardedSecureFileContainer(String p_filePath, int p_shards) throws NullPointerException, IllegalArgumentException {
+        this(p_filePath, p_shards, ConcurrentSecureDataContainer::new, RequestExecutors.newPlatformThreadExecutor(), true);
+    }
+
+    /*
+    Crea un container vuoto partizionato su p_shards container creati con p_factory a partire dal path del documento
+    su disco di ciascuno shard; le operazioni su tutti gli shard vengono eseguite con p_executor, che non viene
+    terminato da close
+    @requires p_filePath != null && !p_filePath.isEmpty() && p_shards > 0 && p_factory != null && p_executor != null &&
+              p_factory restituisce container vuoti distinti
+    @throws NullPointerException se p_filePath = null || p_factory = null || p_executor = null || p_factory restituisce null
+    @throws IllegalArgumentException se p_filePath.isEmpty() || p_shards <= 0
+     */
+    public ShardedSecureFileContainer(String p_filePath, int p_shards, Function<String, ? extends ISecureFileContainer<E>> p_factory,
+                                      Executor p_executor) throws NullPointerException, IllegalArgumentException {
+        this(p_filePath, p_shards, p_factory, p_executor, false);
+    }
+
+    private ShardedSecureFileContainer(String p_filePath, int p_shards, Function<String, ? extends ISecureFileContainer<E>> p_factory,
+                                       Executor p_executor, boolean p_ownExecutor) throws NullPointerException, IllegalArgumentException {
+        if(p_filePath == null) throw new NullPointerException("p_filePath must be != null !");
+        if(p_filePath.isEmpty()) throw new IllegalArgumentException("p_filePath can't be empty!");
+        if(p_shards <= 0) throw new IllegalArgumentException("p_shards must be > 0 !");
+        if(p_factory == null) throw new NullPointerException("p_factory must be != null !");
+        if(p_executor == null) throw new NullPointerException("p_executor must be != null !");
+        List<ISecureFileContainer<E>> containers = new ArrayList<>(p_shards);
+        for(int i = 0; i < p_shards; i++) {
+            ISecureFileContainer<E> shard = p_factory.apply(p_filePath + ".shard" + i);
+            if(shard == null) throw new NullPointerException("p_factory must return a container !");
+            containers.add(shard);
+        }
+        filePath = p_filePath;
+        shards = Collections.unmodifiableList(containers);
+        List<ShardAccess<E>> accesses = new ArrayList<>(p_shards);
+        for(ISecureFileContainer<E> shard : containers) accesses.add(ShardAccess.of(shard));
+        access = Collections.unmodifiableList(accesses);
+        for(int i = 0; i < userLocks.length; i++) userLocks[i] = new ReentrantLock();
+        executor = p_executor;
+        ownExecutor = p_ownExecutor ? (ExecutorService) p_executor : null;
+        threadSafe = containers.stream().allMatch(ISecureFileContainer::isThreadSafe);
+    }
+
+    /*
+    Restituisce il path da cui vengono derivati i documenti su disco degli shard
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /*
+    Restituisce il numero di shard di this
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /*
+    Restituisce true se tutti gli shard consentono chiamate concorrenti: le strutture di this lo consentono sempre
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return threadSafe;
+    }
+
+    /*
+    Restituisce lo shard i-esimo
+    @requires 0 <= i < getShardCount()
+    @throws IndexOutOfBoundsException se i < 0 || i >= getShardCount()
+     */
+    public ISecureFileContainer<E> getShard(int i) throws IndexOutOfBoundsException {
+        return shards.get(i);
+    }
+
+    /*
+    Restituisce l'indice dello shard a cui appartiene il dato file
+    @requires file != null
+    @throws NullPointerException se file = null
+     */
+    public int shardOf(SecureFile file) throws NullPointerException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        return Math.floorMod(file.getFilePath().hashCode(), shards.size());
+    }
+
+    /*
+    Restituisce l'indice dello shard di riferimento dell'utente Id
+    @requires Id != null
+    @throws NullPointerException se Id = null
+     */
+    public int homeShardOf(String Id) throws NullPointerException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        return Math.floorMod(Id.hashCode(), shards.size());
+    }
+
+    /*
+    Termina l'executor creato da this; non ha effetto se l'executor è stato fornito dal cliente.
+    Le operazioni eseguite su tutti gli shard dopo close sollevano RejectedExecutionException.
+    @modifies this
+     */
+    @Override
+    public void close() {
+        if(ownExecutor != null) ownExecutor.shutdown();
+    }
+
+    /*
+    Crea l’identità di un nuovo utente della collezione nello shard di riferimento e poi negli altri shard, con lo
+    stesso hash della password. Se la creazione non riesce su uno shard l'utente viene rimosso dagli altri shard.
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws DuplicatedUserException se (Exist u appartenente a U tale che u.id = Id)
+     */
+    @Override
+    public void createUser(String Id, String passw) throws NullPointerException, IllegalArgumentException, DuplicatedUserException {
+        if(Id == null) throw new NullPointerException("Id must be != null !");
+        if(passw == null) throw new NullPointerException("passw must be != null !");
+        if(Id.isEmpty()) throw new IllegalArgumentException("Id can't be empty!");
+        if(passw.isEmpty()) throw new IllegalArgumentException("passw can't be empty!");
+        String hash = new User(Id, passw).getPasswordHash();
+        int home = homeShardOf(Id);
+        ReentrantLock lock = userLock(Id);
+        lock.lock();
+        try {
+            createUser(home, Id, passw, hash);
+            try {
+                onAllShards(i -> {
+                    if(i != home) createUser(i, Id, passw, hash);
+                    return null;
+                }, (i, created) -> {
+                    if(i != home) removeUser(i, Id, passw);
+                });
+            } catch(RuntimeException e) {
+                removeUser(home, Id, passw);
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Rimuove l’utente e i suoi dati da tutti gli shard e chiude tutte le sessioni aperte dall'utente
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || Id.equals(admin.id)
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+     */
+    @Override
+    public void removeUser(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
+        ReentrantLock lock = userLock(Id);
+        lock.lock();
+        try {
+            onAllShards(i -> {
+                removeUser(i, Id, passw);
+                return null;
+            });
+        } finally {
+            lock.unlock();
+        }
+        sessions.closeAll(Id);
+        shardSessions.values().removeIf(ss -> ss.id.equals(Id));
+    }
+
+    /*
+    Restituisce il numero dei file di un utente presenti nella collezione, sommando quelli di ciascuno shard
+    @throws NullPointerException se Owner = null || passw = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+     */
+    @Override
+    public int getSize(String Owner, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        Session s = login(Owner, passw);
+        try {
+            return getSize(s);
+        } finally {
+            logout(s);
+        }
+    }
+
+    /*
+    Inserisce il file nello shard a cui appartiene
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw )
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    @Override
+    public boolean put(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, IOException {
+        return shards.get(shardOf(file)).put(Owner, passw, file);
+    }
+
+    /*
+    Ottiene il file dallo shard a cui appartiene
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NoAccessException se Access(u,file) non è definito
+     */
+    @Override
+    public E get(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        return shards.get(shardOf(file)).get(Owner, passw, file);
+    }
+
+    /*
+    Ottiene una copia in sola lettura del file dallo shard a cui appartiene
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty() || file non in D
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se Access(u,file) non è definito
+     */
+    @Override
+    public E getSnapshot(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return shards.get(shardOf(file)).getSnapshot(Id, passw, file);
+    }
+
+    /*
+    Rimuove il file dallo shard a cui appartiene
+    @throws NullPointerException se Owner = null || passw = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+     */
+    @Override
+    public E remove(String Owner, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        return shards.get(shardOf(file)).remove(Owner, passw, file);
+    }
+
+    /*
+    Crea una copia del file nella collezione. Se newFilePath appartiene ad uno shard diverso da quello di file la copia
+    viene inserita direttamente nello shard di newFilePath (vedi Overview).
+    @throws NullPointerException se Owner = null || passw = null || file = null || newFilePath = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || newFilePath.isEmpty() ||
+                                     Exist d in D. d.path = newFilePath
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    @Override
+    public void copy(String Owner, String passw, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        Session s = login(Owner, passw);
+        try {
+            copy(s, file, newFilePath);
+        } finally {
+            logout(s);
+        }
+    }
+
+    /*
+    Condivide in lettura il file con un altro utente nello shard a cui appartiene
+    @throws NullPointerException se Owner = null || passw = null || Other = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || Other.isEmpty() || Owner = Other
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+     */
+    @Override
+    public void shareR(String Owner, String passw, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        shards.get(shardOf(file)).shareR(Owner, passw, Other, file);
+    }
+
+    /*
+    Condivide in lettura e scrittura il file con un altro utente nello shard a cui appartiene
+    @throws NullPointerException se Owner = null || passw = null || Other = null || file = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty() || Other.isEmpty() || Owner = Other
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+    @throws UnknownUserException Not (Exist u appartenente a U tale che u.id = Other)
+    @throws NoAccessException se Not (OwnedData(u) contiene file)
+     */
+    @Override
+    public void shareW(String Owner, String passw, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        shards.get(shardOf(file)).shareW(Owner, passw, Other, file);
+    }
+
+    /*
+    Restituisce un iteratore (senza remove) che genera tutti i file dell’utente, uno shard dopo l'altro. Gli iteratori
+    degli shard vengono ottenuti in parallelo.
+    @throws NullPointerException se Owner = null || passw = null
+    @throws IllegalArgumentException se Owner.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Owner && u.password = passw)
+     */
+    @Override
+    public Iterator<E> getIterator(String Owner, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        Session s = login(Owner, passw);
+        try {
+            return getIterator(s);
+        } finally {
+            logout(s);
+        }
+    }
+
+    /*
+    Restituisce un iteratore (senza remove) che genera tutti i file condivisi con l'utente, uno shard dopo l'altro.
+    Gli iteratori degli shard vengono ottenuti in parallelo.
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+     */
+    @Override
+    public Iterator<E> getSharedWithMe(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        Session s = login(Id, passw);
+        try {
+            return getSharedWithMe(s);
+        } finally {
+            logout(s);
+        }
+    }
+
+    /*
+    Memorizza file nel documento su disco relativo tramite lo shard a cui appartiene
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se Access(u,file) != w
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    @Override
+    public void writeFileOnDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        shards.get(shardOf(file)).writeFileOnDisk(Id, passw, file);
+    }
+
+    /*
+    Leggi file dal documento su disco relativo tramite lo shard a cui appartiene
+    @throws NullPointerException se Id = null || passw = null || file = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+    @throws NoAccessException se Access(u,file) != w
+    @throws IOException se si verifica un errore durante la lettura su disco
+     */
+    @Override
+    public void readFileFromDisk(String Id, String passw, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        shards.get(shardOf(file)).readFileFromDisk(Id, passw, file);
+    }
+
+    /*
+    Inizializza ciascuno shard con ciò che viene letto dal proprio documento su disco, in parallelo
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @return true se la lettura di tutti gli shard ha successo; false altrimenti
+     */
+    @Override
+    public boolean readContainerFromDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        boolean res = true;
+        for(boolean read : onAllShards(i -> shards.get(i).readContainerFromDisk(Id, passw))) res &= read;
+        return res;
+    }
+
+    /*
+    Memorizza ciascuno shard nel proprio documento su disco, in parallelo. La scrittura di ciascuno shard è atomica,
+    ma se la scrittura di uno shard non va a buon fine gli altri shard vengono comunque scritti.
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw && id = admin.id)
+    @return true se tutti gli shard vengono scritti correttamente su disco; false atrimenti
+     */
+    @Override
+    public boolean writeContainerOnDisk(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        boolean res = true;
+        for(boolean written : onAllShards(i -> shards.get(i).writeContainerOnDisk(Id, passw))) res &= written;
+        return res;
+    }
+
+    /*
+    Verifica se esiste un utente u con u.id = id nello shard di riferimento dell'utente
+    @throws NullPointerException se Id = null
+    @throws IllegalArgumentException se Id.isEmpty()
+     */
+    @Override
+    public boolean userExist(String Id) throws NullPointerException, IllegalArgumentException {
+        return shards.get(homeShardOf(Id)).userExist(Id);
+    }
+
+    /*
+    Verifica le credenziali dell'utente nello shard di riferimento dell'utente
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+     */
+    @Override
+    public boolean userAuth(String Id, String passw) throws NullPointerException, IllegalArgumentException {
+        return shards.get(homeShardOf(Id)).userAuth(Id, passw);
+    }
+
+    /*
+    Apre una sessione per l'utente u con u.id = Id dopo averne verificato le credenziali nello shard di riferimento,
+    aprendo in parallelo una sessione su ciascuno shard. Se il login non riesce su uno shard le sessioni aperte sugli
+    altri shard vengono chiuse.
+    @throws NullPointerException se Id = null || passw = null
+    @throws IllegalArgumentException se Id.isEmpty() || passw.isEmpty()
+    @throws CredentialException se Not (Exist u appartenente a U tale che u.id = Id && u.password = passw)
+     */
+    @Override
+    public Session login(String Id, String passw) throws NullPointerException, IllegalArgumentException, CredentialException {
+        if(!userAuth(Id, passw)) throw new CredentialException("valid users' credentials are required !");
+        //la sessione di this viene aperta per prima, così non scade dopo le sessioni degli shard
+        Session s = sessions.open(Id);
+        try {
+            List<Session> opened = onAllShards(i -> login(i, Id, passw), (i, shardSession) -> shards.get(i).logout(shardSession));
+            shardSessions.keySet().removeIf(Session::isExpired);
+            shardSessions.put(s, new ShardSessions(Id, opened.toArray(new Session[0])));
+            return s;
+        } catch(RuntimeException e) {
+            sessions.close(s);
+            throw e;
+        }
+    }
+
+    /*
+    Chiude la sessione s e le corrispondenti sessioni sugli shard
+    @throws NullPointerException se s = null
+     */
+    @Override
+    public void logout(Session s) throws NullPointerException {
+        sessions.close(s);
+        ShardSessions ss = shardSessions.remove(s);
+        if(ss == null) return;
+        for(int i = 0; i < shards.size(); i++) shards.get(i).logout(ss.sessions[i]);
+    }
+
+    /*
+    Verifica che la sessione s sia valida, senza accedere agli shard
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void checkSession(Session s) throws NullPointerException, CredentialException {
+        resolve(s);
+    }
+
+    /*
+    Come getSize(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public int getSize(Session s) throws NullPointerException, CredentialException {
+        Session[] ss = resolve(s);
+        int size = 0;
+        for(int n : onAllShards(i -> shards.get(i).getSize(ss[i]))) size += n;
+        return size;
+    }
+
+    /*
+    Come put(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public boolean put(Session s, E file) throws NullPointerException, CredentialException, IOException {
+        Session[] ss = resolve(s);
+        int i = shardOf(file);
+        return shards.get(i).put(ss[i], file);
+    }
+
+    /*
+    Come putAll(Owner, passw, files) con u.id = Id(s). I dati vengono raggruppati per shard e ciascun gruppo viene
+    inserito in parallelo con putAll dello shard; un dato ripetuto in files non viene inviato di nuovo allo shard e il
+    suo esito è false, come se fosse stato inserito dopo la sua prima occorrenza.
+    @throws NullPointerException se s = null || files = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public BatchResult<Boolean> putAll(Session s, List<E> p_files) throws NullPointerException, CredentialException {
+        Session[] ss = resolve(s);
+        if(p_files == null) throw new NullPointerException("files must be != null !");
+        BatchResult<Boolean> res = new BatchResult<>(p_files.size());
+        List<List<E>> groups = new ArrayList<>(shards.size());
+        List<List<Integer>> positions = new ArrayList<>(shards.size()); //posizione in p_files di ciascun dato di groups
+        for(int i = 0; i < shards.size(); i++) {
+            groups.add(new ArrayList<>());
+            positions.add(new ArrayList<>());
+        }
+        Set<E> seen = new HashSet<>();
+        for(int j = 0; j < p_files.size(); j++) {
+            E file = p_files.get(j);
+            if(file == null) {
+                res.fail(j, new NullPointerException("file must be != null !"));
+                continue;
+            }
+            if(!seen.add(file)) {
+                res.succeed(j, false);
+                continue;
+            }
+            groups.get(shardOf(file)).add(file);
+            positions.get(shardOf(file)).add(j);
+        }
+
+        List<BatchResult<Boolean>> shardResults = onAllShards(i -> groups.get(i).isEmpty() ? null : shards.get(i).putAll(ss[i], groups.get(i)));
+        for(int i = 0; i < shards.size(); i++) {
+            BatchResult<Boolean> shardRes = shardResults.get(i);
+            for(int k = 0; shardRes != null && k < shardRes.size(); k++) {
+                int j = positions.get(i).get(k);
+                if(shardRes.isSuccess(k)) res.succeed(j, shardRes.get(k));
+                else res.fail(j, shardRes.getError(k));
+            }
+        }
+        return res;
+    }
+
+    /*
+    Come get(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E get(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        Session[] ss = resolve(s);
+        int i = shardOf(file);
+        return shards.get(i).get(ss[i], file);
+    }
+
+    /*
+    Come getSnapshot(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E getSnapshot(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        Session[] ss = resolve(s);
+        int i = shardOf(file);
+        return shards.get(i).getSnapshot(ss[i], file);
+    }
+
+    /*
+    Come remove(Owner, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public E remove(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException {
+        Session[] ss = resolve(s);
+        int i = shardOf(file);
+        return shards.get(i).remove(ss[i], file);
+    }
+
+    /*
+    Come copy(Owner, passw, file, newFilePath) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null || newFilePath = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void copy(Session s, E file, String newFilePath) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        Session[] ss = resolve(s);
+        E target = targetOf(file, newFilePath);
+        int from = shardOf(file);
+        int to = shardOf(target);
+        if(from == to) {
+            shards.get(from).copy(ss[from], file, newFilePath);
+            return;
+        }
+        if(access.get(from) == null) {
+            if(contains(() -> shards.get(to).getSnapshot(ss[to], target))) throw new IllegalArgumentException("newFilePath must be unique inside data collection!");
+            shards.get(from).copy(ss[from], file, newFilePath);
+            move(shards.get(from).remove(ss[from], target), copy -> shards.get(to).put(ss[to], copy));
+            return;
+        }
+        E copy = access.get(from).ownedCopy(ss[from], file);
+        copy.setFilePath(newFilePath);
+        move(copy, c -> shards.get(to).put(ss[to], c));
+    }
+
+    /*
+    Come shareR(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareR(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        Session[] ss = resolve(s);
+        int i = shardOf(file);
+        shards.get(i).shareR(ss[i], Other, file);
+    }
+
+    /*
+    Come shareW(Owner, passw, Other, file) con Owner = Id(s)
+    @throws NullPointerException se s = null || Other = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void shareW(Session s, String Other, E file) throws NullPointerException, IllegalArgumentException, CredentialException, UnknownUserException, NoAccessException {
+        Session[] ss = resolve(s);
+        int i = shardOf(file);
+        shards.get(i).shareW(ss[i], Other, file);
+    }
+
+    /*
+    Come getIterator(Owner, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getIterator(Session s) throws NullPointerException, CredentialException {
+        Session[] ss = resolve(s);
+        return new ChainedIterator<>(onAllShards(i -> shards.get(i).getIterator(ss[i])));
+    }
+
+    /*
+    Come getSharedWithMe(Id, passw) con u.id = Id(s)
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public Iterator<E> getSharedWithMe(Session s) throws NullPointerException, CredentialException {
+        Session[] ss = resolve(s);
+        return new ChainedIterator<>(onAllShards(i -> shards.get(i).getSharedWithMe(ss[i])));
+    }
+
+    /*
+    Come writeFileOnDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void writeFileOnDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException {
+        Session[] ss = resolve(s);
+        int i = shardOf(file);
+        shards.get(i).writeFileOnDisk(ss[i], file);
+    }
+
+    /*
+    Come readFileFromDisk(Id, passw, file) con u.id = Id(s)
+    @throws NullPointerException se s = null || file = null
+    @throws CredentialException se s non è valida
+     */
+    @Override
+    public void readFileFromDisk(Session s, E file) throws NullPointerException, IllegalArgumentException, CredentialException, NoAccessException, IOException, ClassNotFoundException {
+        Session[] ss = resolve(s);
+        int i = shardOf(file);
+        shards.get(i).readFileFromDisk(ss[i], file);
+    }
+
+    /*
+    Restituisce le sessioni sugli shard corrispondenti alla sessione s
+    @requires s != null
+    @throws NullPointerException se s = null
+    @throws CredentialException se s non è valida
+     */
+    private Session[] resolve(Session s) throws NullPointerException, CredentialException {
+        sessions.resolve(s);
+        ShardSessions ss = shardSessions.get(s);
+        if(ss == null) throw new CredentialException("a valid session is required !");
+        return ss.sessions;
+    }
+
+    /*
+    Restituisce il dato con path newFilePath utilizzato per individuare lo shard della copia di file
+    @requires file != null && newFilePath != null && !newFilePath.isEmpty()
+    @throws NullPointerException se file = null || newFilePath = null
+    @throws IllegalArgumentException se newFilePath.isEmpty()
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends SecureFile> E targetOf(E file, String newFilePath) throws NullPointerException, IllegalArgumentException {
+        if(file == null) throw new NullPointerException("file must be != null !");
+        if(newFilePath == null) throw new NullPointerException("newFilePath must be != null !");
+        if(newFilePath.isEmpty()) throw new IllegalArgumentException("newFilePath can't be empty!");
+        return (E) new SecureFile(newFilePath);
+    }
+
+    /*
+    Restituisce true se probe trova il dato cercato o ne nega l'accesso, false se il dato non è presente
+     */
+    private static boolean contains(Runnable probe) {
+        try {
+            probe.run();
+            return true;
+        } catch(NoAccessException e) {
+            return true;
+        } catch(IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /*
+    Inserisce nello shard di destinazione la copia del dato dello shard di origine
+    @throws IllegalArgumentException se nel frattempo è stato inserito un altro dato con lo stesso path
+    @throws IOException se si verifica un errore durante la scrittura su disco
+     */
+    private void move(E copy, ShardPut<E> put) throws IllegalArgumentException, IOException {
+        if(!put.apply(copy)) throw new IllegalArgumentException("newFilePath must be unique inside data collection!");
+    }
+
+    /*
+    Inserimento di un dato in uno shard
+     */
+    @FunctionalInterface
+    private interface ShardPut<E> {
+        boolean apply(E file) throws IOException;
+    }
+
+    /*
+    Restituisce il lock di createUser e removeUser dell'utente Id
+     */
+    private ReentrantLock userLock(String Id) {
+        return userLocks[Math.floorMod(Id.hashCode(), userLocks.length)];
+    }
+
+    /*
+    Crea l'utente Id nello shard i con l'hash della password hash, senza calcolarlo di nuovo se lo shard lo consente
+     */
+    private void createUser(int i, String Id, String passw, String hash) {
+        if(access.get(i) != null) access.get(i).createUser(Id, hash);
+        else shards.get(i).createUser(Id, passw);
+    }
+
+    /*
+    Apre una sessione per l'utente Id, già autenticato, nello shard i, senza verificarne di nuovo la password se lo
+    shard lo consente
+     */
+    private Session login(int i, String Id, String passw) {
+        return access.get(i) != null ? access.get(i).login(Id) : shards.get(i).login(Id, passw);
+    }
+
+    /*
+    Rimuove l'utente Id, già autenticato, dallo shard i, senza verificarne di nuovo la password se lo shard lo consente
+     */
+    private void removeUser(int i, String Id, String passw) {
+        if(access.get(i) != null) access.get(i).removeUser(Id);
+        else shards.get(i).removeUser(Id, passw);
+    }
+
+    /*
+    Annullamento dell'esito di una chiamata riuscita su uno shard
+     */
+    @FunctionalInterface
+    private interface ShardUndo<R> {
+        void apply(int shard, R result);
+    }
+
+    /*
+    Esegue call su tutti gli shard in parallelo con executor e attende che tutte le chiamate terminino
+    @return res tale che res.get(i) = call(i) per 0 <= i < shards.size()
+    @throws RuntimeException la prima eccezione, nell'ordine degli shard, sollevata da call
+     */
+    private <R> List<R> onAllShards(IntFunction<R> call) {
+        return onAllShards(call, null);
+    }
+
+    /*
+    Come onAllShards(call); se una chiamata solleva un'eccezione, undo viene applicato all'esito di ciascuna chiamata
+    riuscita (undo = null per nessun annullamento)
+     */
+    private <R> List<R> onAllShards(IntFunction<R> call, ShardUndo<R> undo) {
+        if(shards.size() == 1) return Collections.singletonList(call.apply(0));
+        List<CompletableFuture<R>> calls = new ArrayList<>(shards.size());
+        for(int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            calls.add(CompletableFuture.supplyAsync(() -> call.apply(shard), executor));
+        }
+        List<R> res = new ArrayList<>(shards.size());
+        RuntimeException failure = null;
+        for(CompletableFuture<R> c : calls) {
+            try {
+                res.add(c.join());
+            } catch(CompletionException e) {
+                if(failure == null) failure = unwrap(e);
+                res.add(null);
+            }
+        }
+        if(failure == null) return res;
+        if(undo != null) {
+            for(int i = 0; i < calls.size(); i++) {
+                if(!calls.get(i).isCompletedExceptionally()) undo.apply(i, res.get(i));
+            }
+        }
+        throw failure;
+    }
+
+    /*
+    Restituisce l'eccezione sollevata dalla chiamata su uno shard
+     */
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if(cause instanceof RuntimeException) return (RuntimeException) cause;
+        if(cause instanceof Error) throw (Error) cause;
+        return new IllegalStateException(cause);
+    }
+
+    /*
+    Iteratore (senza remove) che genera gli elementi di ciascun iteratore di parts, uno dopo l'altro
+     */
+    private static final class ChainedIterator<E> implements Iterator<E> {
+        private final Iterator<Iterator<E>> parts; //iteratori non ancora esauriti
+        private Iterator<E> current = Collections.emptyIterator(); //iteratore corrente
+
+        ChainedIterator(List<Iterator<E>> p_parts) {
+            parts = p_parts.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while(!current.hasNext() && parts.hasNext()) current = parts.next();
+            return current.hasNext();
+        }
+
+        @Override
+        public E next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            return current.next();
+        }
+    }
+}
@@ -3,16 +3,21 @@ package SecureContainer;
 import SecureContainer.Exceptions.IllegalInvocationException;
 
 import java.io.Serializable;
-import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
 
 public class User implements Serializable {
 
     /* Overview:
-     * User è un tipo di dato che contiene le informazioni realtive ad un utente
+     * User è un tipo di dato che contiene le informazioni realtive ad un utente.
+     * I container registrano un'unica istanza di User per ogni id e la utilizzano come identità dell'utente: i controlli
+     * di proprietà e di accesso confrontano l'istanza registrata (anche per riferimento) senza crearne di nuove.
+     * L'hash della password contiene il salt dell'utente e i parametri con cui è stato calcolato (vedi PasswordUtils):
+     * resta verificabile dopo un riavvio e dopo una modifica del numero di iterazioni. Salt e hash sono memorizzati come
+     * array di byte (PasswordHash) e confrontati in tempo costante.
      */
 
     private String id; //id utente
-    private String hash_pwd; //hash della password
+    private PasswordHash hash_pwd; //hash della password, comprensivo di salt e parametri di calcolo (null se non definita)
     //Perché è opportuno definire serialversionUID ?
     // -> https://stackoverflow.com/questions/285793/what-is-a-serialversionuid-and-why-should-i-use-it
     private static final long serialversionUID = 30L;
@@ -30,7 +35,7 @@ public class User implements Serializable {
         if(p_pwd.isEmpty()) throw new IllegalArgumentException("p_pwd can't be an empty string!");
 
         id = p_id;
-        hash_pwd = PasswordUtils.hashPassword(p_pwd);
+        hash_pwd = PasswordUtils.hash(p_pwd);
     }
 
     /*
@@ -44,7 +49,25 @@ public class User implements Serializable {
         if(p_id.isEmpty()) throw new IllegalArgumentException("p_id can't be an empty string!");
 
         id = p_id;
-        hash_pwd = "";
+        hash_pwd = null;
+    }
+
+    /*
+    Crea un utente con id p_id e hash della password p_hash, calcolato in precedenza da un altro utente (ad esempio
+    letto dal journal di un container) e rappresentato come in getPasswordHash
+    @requires p_id != null && p_hash != null && !p_id.isEmpty() && (p_hash.isEmpty() || p_hash è nel formato di PasswordUtils)
+    @throws NullPointerException se p_id = null || p_hash = null
+    @throws IllegalArgumentException se p_id.isEmpty() || p_hash non è vuota e non è nel formato di PasswordUtils
+    @return u tale che u.id = p_id && u.hash_pwd = p_hash
+    */
+    static User withPasswordHash(String p_id, String p_hash) throws NullPointerException, IllegalArgumentException {
+        if(p_hash == null) throw new NullPointerException("p_hash must be != null !");
+        User u = new User(p_id);
+        if(!p_hash.isEmpty()) {
+            u.hash_pwd = PasswordHash.parse(p_hash);
+            if(u.hash_pwd == null) throw new IllegalArgumentException("p_hash is not a valid password hash!");
+        }
+        return u;
     }
 
     /* Controlla se candidatePwd è la password corretta per this
@@ -52,13 +75,14 @@ public class User implements Serializable {
      * @throws NullPointerException se p_candidatePwd = null
      * @throws IllegalArgumentException se p_candidatePwd.isEmpty()
      * @throws IllegalInvocationException se !hasPassword()
+     * @throws RejectedExecutionException se l'executor di verifica di PasswordUtils non accetta ulteriori verifiche
      * @return true se la password è corretta, altrimenti false
      */
-    public boolean auth(String p_candidatePwd) throws NullPointerException, IllegalArgumentException, IllegalInvocationException {
+    public boolean auth(String p_candidatePwd) throws NullPointerException, IllegalArgumentException, IllegalInvocationException, RejectedExecutionException {
         if(p_candidatePwd == null) throw new NullPointerException("p_candidatePwd must be != null !");
         if(p_candidatePwd.isEmpty()) throw new IllegalArgumentException("p_candidatePwd can't be an empty string!");
         if(!hasPassword()) throw new IllegalInvocationException("A password must be already set for this user! Use setPassword if want to set it for the first time");
-        return PasswordUtils.verifyPassword(p_candidatePwd,hash_pwd);
+        return PasswordUtils.verify(p_candidatePwd,hash_pwd);
     }
 
     /* Get id of this
@@ -66,11 +90,22 @@ public class User implements Serializable {
      */
     public String getId() { return id; }
 
+    /*
+    Restituisce la rappresentazione testuale dell'hash della password di this (vedi PasswordUtils)
+    @return hash della password di this; stringa vuota se !hasPassword()
+    */
+    String getPasswordHash(){ return hash_pwd == null ? "" : hash_pwd.encode(); }
+
+    /*
+    Restituisce l'hash della password di this; null se !hasPassword()
+    */
+    PasswordHash getPassword(){ return hash_pwd; }
+
     /*
     Verifica se this ha una password
     @return true se this ha una password; false altrimenti
     */
-    public boolean hasPassword(){ return !hash_pwd.isEmpty();}
+    public boolean hasPassword(){ return hash_pwd != null;}
 
     /* Imosta la password di this con p_pwd se non è stata ancora definita
      * @requires p_pwd != null && !p_pwd.isEmpty() && !hasPassword()
@@ -85,7 +120,7 @@ public class User implements Serializable {
         if(p_pwd.isEmpty()) throw new IllegalArgumentException("p_pwd can't be an empty string!");
         if(hasPassword()) throw new IllegalInvocationException("A password has been already set for this user! Use changePassword if want to change it");
 
-        hash_pwd = PasswordUtils.hashPassword(p_pwd);
+        hash_pwd = PasswordUtils.hash(p_pwd);
     }
 
     /* Cambia la password se ancora se ne è stata definita una
@@ -104,7 +139,7 @@ public class User implements Serializable {
         if(!hasPassword()) throw new IllegalInvocationException("A password must be already set for this user! Use setPassword if want to set it for the first time");
 
         if(!auth(p_pwd_old)) return false;
-        hash_pwd = PasswordUtils.hashPassword(p_pwd_new);
+        hash_pwd = PasswordUtils.hash(p_pwd_new);
         return true;
     }
 
@@ -123,6 +158,6 @@ public class User implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return id.hashCode(); //hashCode di String è memorizzato nella stringa
     }
 }
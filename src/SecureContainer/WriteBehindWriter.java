@@ -0,0 +1,423 @@
+package SecureContainer;
+
+import SecureContainer.Exceptions.WriteBehindException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class WriteBehindWriter implements Closeable {
+    /*
+     * Overview:
+     * WriteBehindWriter scrive in differita il contenuto dei documenti su disco dei dati di un container: submit accoda
+     * il contenuto già codificato e ritorna subito, un thread in background (daemon) lo scrive su disco.
+     * Le scritture vengono raggruppate: il writer attende che il contenuto accodato da più tempo abbia atteso window
+     * nanosecondi (finestra di durabilità) oppure che siano accodati batchSize documenti, poi scrive fino a batchSize
+     * documenti e solo dopo averli scritti tutti li forza su disco (fsync) e li chiude, in modo che il costo delle
+     * sincronizzazioni venga pagato una volta per gruppo e non per documento.
+     * Più submit dello stesso path prima della scrittura vengono fuse: viene scritto solo l'ultimo contenuto.
+     * Se i documenti in attesa sono capacity = 4 * batchSize, submit attende che il writer ne scriva qualcuno.
+     * Un documento la cui scrittura fallisce viene riscritto in un gruppo successivo dopo un'attesa che raddoppia ad ogni
+     * tentativo fallito (da MIN_RETRY_DELAY fino a MAX_RETRY_DELAY), in modo che un errore persistente non tenga occupato
+     * il writer; i documenti in attesa di un nuovo tentativo non contano per capacity. flush riscrive subito anche questi
+     * documenti e solleva una WriteBehindException con il path e l'errore di ciascun documento la cui scrittura non è
+     * ancora riuscita.
+     * flush attende che tutti i documenti in attesa siano stati scritti e sincronizzati; close esegue flush e termina
+     * il writer. Può essere utilizzato da più thread contemporaneamente.
+     *
+     * Typical Element:
+     *    <[(path_0, contenuto_0, t_0), ..., (path_n-1, contenuto_n-1, t_n-1)],
+     *     [(path'_0, contenuto'_0, r_0, e_0), ..., (path'_m-1, contenuto'_m-1, r_m-1, e_m-1)], in scrittura>
+     *    dove t_i è l'istante del primo submit di path_i non ancora scritto, r_j l'istante dal quale può essere ritentata
+     *    la scrittura di path'_j ed e_j l'errore dell'ultimo tentativo
+     *
+     * IR:
+     *    window >= 0 && batchSize >= 1 && capacity = 4 * batchSize && pending != null && retrying != null &&
+     *    inFlight != null && failures != null &&
+     *    For all (path, p) in pending + retrying. path != null && p != null && p.content != null &&
+     *    pending.keySet, retrying.keySet e inFlight sono disgiunti &&
+     *    i valori di pending sono ordinati per time crescente && For all (path, p) in retrying. p.attempts >= 1 &&
+     *    failures.keySet sottoinsieme di retrying.keySet + pending.keySet + inFlight && inFlight.size() <= batchSize
+     */
+
+    private static final AtomicInteger COUNT = new AtomicInteger(); //numero dei writer creati, per il nome dei thread
+    private static final long MIN_RETRY_DELAY = TimeUnit.MILLISECONDS.toNanos(10); //attesa dopo il primo tentativo fallito
+    private static final long MAX_RETRY_DELAY = TimeUnit.SECONDS.toNanos(5); //attesa massima tra due tentativi
+
+    private final long window; //finestra di durabilità in nanosecondi
+    private final int batchSize; //numero massimo di documenti scritti per gruppo
+    private final int capacity; //numero di documenti in attesa oltre il quale submit attende
+    private final ReentrantLock lock = new ReentrantLock(); //protegge tutti i campi seguenti
+    private final Condition changed = lock.newCondition(); //segnalata ad ogni submit e al termine di ogni gruppo
+    private final LinkedHashMap<String,Pending> pending = new LinkedHashMap<>(); //documenti in attesa di scrittura, per path
+    private final LinkedHashMap<String,Pending> retrying = new LinkedHashMap<>(); //documenti non scritti in attesa di un nuovo tentativo, per path
+    private final Set<String> inFlight = new HashSet<>(); //path dei documenti del gruppo in scrittura
+    private final LinkedHashMap<String,IOException> failures = new LinkedHashMap<>(); //errori non ancora sollevati da flush, per path
+    private boolean flushRequested; //true se un chiamante attende la scrittura di tutti i documenti
+    private long rounds; //numero di gruppi scritti
+    private boolean closed; //true dopo close
+    private final Thread writer; //thread che scrive i documenti
+
+    /*
+    Contenuto di un documento in attesa di scrittura
+     */
+    private static final class Pending {
+        byte[] content; //ultimo contenuto accodato
+        final long time; //istante (System.nanoTime) del primo submit non ancora scritto
+        final int attempts; //numero di tentativi di scrittura falliti
+        long retryAt; //istante (System.nanoTime) dal quale può essere ritentata la scrittura (se attempts > 0)
+
+        Pending(byte[] p_content, long p_time) {
+            this(p_content, p_time, 0, p_time);
+        }
+
+        Pending(byte[] p_content, long p_time, int p_attempts, long p_retryAt) {
+            content = p_content;
+            time = p_time;
+            attempts = p_attempts;
+            retryAt = p_retryAt;
+        }
+    }
+
+    /*
+    Crea un writer con finestra di durabilità p_windowMillis millisecondi e gruppi di al più p_batchSize documenti e ne
+    avvia il thread
+    @requires p_windowMillis >= 0 && p_batchSize >= 1
+    @throws IllegalArgumentException se p_windowMillis < 0 || p_batchSize < 1
+     */
+    public WriteBehindWriter(long p_windowMillis, int p_batchSize) throws IllegalArgumentException {
+        if(p_windowMillis < 0) throw new IllegalArgumentException("p_windowMillis must be >= 0 !");
+        if(p_batchSize < 1) throw new IllegalArgumentException("p_batchSize must be > 0 !");
+        window = TimeUnit.MILLISECONDS.toNanos(p_windowMillis);
+        batchSize = p_batchSize;
+        capacity = 4 * p_batchSize;
+        writer = new Thread(this::run, "write-behind-" + COUNT.incrementAndGet());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /*
+    Accoda content per la scrittura nel documento su disco path, sostituendo l'eventuale contenuto già in attesa per
+    path. Attende se i documenti in attesa sono capacity. content non deve essere modificato dopo la chiamata.
+    @requires path != null && content != null
+    @throws NullPointerException se path = null || content = null
+    @throws IllegalStateException se il writer è stato chiuso
+    @throws InterruptedIOException se il thread corrente viene interrotto durante l'attesa
+    @modifies this
+     */
+    public void submit(String path, byte[] content) throws NullPointerException, IllegalStateException, InterruptedIOException {
+        if(path == null) throw new NullPointerException("path must be != null !");
+        if(content == null) throw new NullPointerException("content must be != null !");
+        lock.lock();
+        try {
+            if(closed) throw new IllegalStateException("writer is closed!");
+            while (!pending.containsKey(path) && !retrying.containsKey(path) && pending.size() >= capacity) {
+                flushRequested = true; //il writer non attende la finestra di durabilità
+                changed.signalAll();
+                await();
+                if(closed) throw new IllegalStateException("writer is closed!");
+            }
+            Pending p = pending.get(path);
+            if(p == null) p = retrying.get(path);
+            if(p != null) p.content = content; //mantiene la posizione e l'istante del primo submit (o del nuovo tentativo)
+            else {
+                pending.put(path, new Pending(content, System.nanoTime()));
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Verifica se il documento su disco path ha una scrittura in attesa o in corso
+    @requires path != null
+    @return true se il contenuto di path su disco non è ancora quello dell'ultimo submit; false altrimenti
+     */
+    public boolean isPending(String path) {
+        lock.lock();
+        try {
+            return pending.containsKey(path) || retrying.containsKey(path) || inFlight.contains(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Restituisce il numero di documenti in attesa di scrittura (compresi quelli in scrittura e quelli in attesa di un
+    nuovo tentativo)
+     */
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size() + retrying.size() + inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Annulla la scrittura in attesa del documento su disco path, attendendo il termine dell'eventuale scrittura in corso,
+    in modo che il documento possa essere eliminato senza che il writer lo ricrei. L'eventuale errore di scrittura del
+    documento non viene più sollevato da flush. L'attesa non viene interrotta, così il documento non può essere ricreato
+    dopo l'eliminazione: se il thread corrente viene interrotto durante l'attesa, al termine resta interrotto.
+    @requires path != null
+    @modifies this
+    @effects !isPending(path)
+     */
+    public void discard(String path) {
+        lock.lock();
+        try {
+            while (inFlight.contains(path)) changed.awaitUninterruptibly();
+            pending.remove(path);
+            retrying.remove(path);
+            failures.remove(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Attende che il documento su disco path contenga l'ultimo contenuto accodato per path (ad esempio prima di leggerlo),
+    scrivendo subito i documenti in attesa se necessario
+    @requires path != null
+    @throws IOException se si verifica un errore durante la scrittura dei documenti in attesa
+    @modifies this
+     */
+    public void awaitWritten(String path) throws IOException {
+        if(isPending(path)) flush();
+    }
+
+    /*
+    Scrive subito tutti i documenti in attesa, compresi quelli in attesa di un nuovo tentativo, e attende che siano stati
+    scritti e sincronizzati su disco
+    @throws WriteBehindException se la scrittura di alcuni documenti non è riuscita dopo l'ultima flush e non è riuscita
+            nemmeno in un tentativo successivo (i documenti restano in attesa); getFailures() ne restituisce path ed errori
+    @throws IOException se il thread corrente viene interrotto durante l'attesa
+    @modifies this
+    @effects pendingCount() = 0
+     */
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            while (!pending.isEmpty() || !retrying.isEmpty() || !inFlight.isEmpty()) {
+                if(closed) throw new IllegalStateException("writer is closed!");
+                long now = System.nanoTime();
+                for (Pending p : retrying.values()) p.retryAt = now; //i nuovi tentativi non attendono
+                flushRequested = true;
+                changed.signalAll();
+                long r = rounds;
+                while (rounds == r) await();
+                throwFailure();
+            }
+            throwFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+    Esegue flush e termina il thread del writer; i submit successivi vengono rifiutati. Se flush non riesce i documenti
+    ancora in attesa non vengono scritti. Se il writer è già stato chiuso non ha effetto.
+    @throws IOException se flush non riesce
+    @modifies this
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if(closed) return;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flush();
+        } finally {
+            lock.lock();
+            try {
+                closed = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                writer.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /*
+    Ciclo del thread del writer: attende un gruppo di documenti, lo scrive e ne registra l'esito, fino a close
+     */
+    private void run() {
+        while (true) {
+            Map<String,Pending> batch = new LinkedHashMap<>();
+            lock.lock();
+            try {
+                try {
+                    long wait;
+                    while (!closed && (wait = nextWrite()) > 0) {
+                        if(wait == Long.MAX_VALUE) changed.await();
+                        else changed.awaitNanos(wait);
+                    }
+                } catch(InterruptedException e) {
+                    return; //il thread del writer non viene interrotto da nessuno
+                }
+                if(closed) return;
+                //prima i documenti da ritentare già attesi a sufficienza, poi quelli accodati
+                long now = System.nanoTime();
+                Iterator<Map.Entry<String,Pending>> iter = retrying.entrySet().iterator();
+                while (iter.hasNext() && batch.size() < batchSize) {
+                    Map.Entry<String,Pending> e = iter.next();
+                    if(e.getValue().retryAt - now > 0) continue;
+                    batch.put(e.getKey(), e.getValue());
+                    inFlight.add(e.getKey());
+                    iter.remove();
+                }
+                iter = pending.entrySet().iterator();
+                while (iter.hasNext() && batch.size() < batchSize) {
+                    Map.Entry<String,Pending> e = iter.next();
+                    batch.put(e.getKey(), e.getValue());
+                    inFlight.add(e.getKey());
+                    iter.remove();
+                }
+                if(pending.isEmpty()) flushRequested = false;
+            } finally {
+                lock.unlock();
+            }
+
+            Map<String,IOException> errors = writeBatch(batch);
+
+            lock.lock();
+            try {
+                inFlight.clear();
+                long now = System.nanoTime();
+                for (Map.Entry<String,Pending> e : batch.entrySet()) {
+                    String path = e.getKey();
+                    IOException error = errors.get(path);
+                    if(error == null) {
+                        failures.remove(path); //il documento è stato scritto: l'errore di un tentativo precedente non è più attuale
+                        continue;
+                    }
+                    failures.remove(path); //mantiene l'ordine dell'ultimo errore
+                    failures.put(path, error);
+                    //se nel frattempo è stato accodato un contenuto più recente viene scritto quello
+                    if(pending.containsKey(path)) continue;
+                    Pending failed = e.getValue();
+                    int attempts = failed.attempts + 1;
+                    retrying.put(path, new Pending(failed.content, failed.time, attempts, now + retryDelay(attempts)));
+                }
+                rounds++;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /*
+    Restituisce quanto deve attendere il writer prima di scrivere un gruppo di documenti
+    @requires chiamato mentre si possiede lock
+    @return 0 se il writer deve scrivere subito; Long.MAX_VALUE se non ci sono documenti da scrivere; altrimenti i
+            nanosecondi che mancano alla fine della finestra di durabilità o al primo nuovo tentativo
+     */
+    private long nextWrite() {
+        long now = System.nanoTime();
+        long wait = Long.MAX_VALUE;
+        if(!pending.isEmpty()) {
+            if(flushRequested || pending.size() >= batchSize) return 0;
+            wait = Math.max(0, pending.values().iterator().next().time + window - now);
+        }
+        for (Pending p : retrying.values()) wait = Math.min(wait, Math.max(0, p.retryAt - now));
+        return wait;
+    }
+
+    /*
+    Restituisce l'attesa prima del nuovo tentativo di scrittura di un documento
+    @requires attempts >= 1
+    @return min(MIN_RETRY_DELAY * 2^(attempts - 1), MAX_RETRY_DELAY) nanosecondi
+     */
+    private static long retryDelay(int attempts) {
+        return attempts > 20 ? MAX_RETRY_DELAY : Math.min(MIN_RETRY_DELAY << (attempts - 1), MAX_RETRY_DELAY);
+    }
+
+    /*
+    Scrive il contenuto di ciascun documento di batch, poi li sincronizza su disco e li chiude
+    @return gli errori di scrittura, per path (vuoto se tutte le scritture sono riuscite)
+     */
+    private static Map<String,IOException> writeBatch(Map<String,Pending> batch) {
+        Map<String,IOException> errors = new HashMap<>();
+        Map<String,FileChannel> written = new LinkedHashMap<>();
+        for (Map.Entry<String,Pending> e : batch.entrySet()) {
+            FileChannel ch = null;
+            try {
+                ch = FileChannel.open(Paths.get(e.getKey()), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                ByteBuffer buf = ByteBuffer.wrap(e.getValue().content);
+                while (buf.hasRemaining()) ch.write(buf);
+                written.put(e.getKey(), ch);
+            } catch(IOException | RuntimeException ex) {
+                errors.put(e.getKey(), ex instanceof IOException ? (IOException) ex : new IOException(ex));
+                closeQuietly(ch);
+            }
+        }
+        //Sincronizzazione di gruppo: un solo passaggio dopo tutte le scritture
+        for (Map.Entry<String,FileChannel> e : written.entrySet()) {
+            try {
+                e.getValue().force(true);
+            } catch(IOException ex) {
+                errors.put(e.getKey(), ex);
+            } finally {
+                closeQuietly(e.getValue());
+            }
+        }
+        return errors;
+    }
+
+    /*
+    Chiude ch ignorando gli errori; se ch = null non ha effetto
+     */
+    private static void closeQuietly(FileChannel ch) {
+        if(ch == null) return;
+        try {
+            ch.close();
+        } catch(IOException ignored) {
+        }
+    }
+
+    /*
+    Attende che changed venga segnalata
+    @requires chiamato mentre si possiede lock
+    @throws InterruptedIOException se il thread corrente viene interrotto durante l'attesa
+     */
+    private void await() throws InterruptedIOException {
+        try {
+            changed.await();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the write-behind writer");
+        }
+    }
+
+    /*
+    Solleva gli errori di scrittura registrati dal writer, se presenti, e li cancella
+    @requires chiamato mentre si possiede lock
+    @throws WriteBehindException con path ed errore di ciascun documento non scritto
+     */
+    private void throwFailure() throws WriteBehindException {
+        if(failures.isEmpty()) return;
+        WriteBehindException e = new WriteBehindException(failures);
+        failures.clear();
+        throw e;
+    }
+}
@@ -0,0 +1,199 @@
+import SecureContainer.AsyncSecureFileContainer;
+import SecureContainer.ConcurrentSecureDataContainer;
+import SecureContainer.Exceptions.CredentialException;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.RequestExecutors;
+import SecureContainer.Session;
+import SecureContainer.ShardedSecureFileContainer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncSecureFileContainerTest {
+    @TempDir
+    Path testFolder;
+
+    private ExecutorService authPool;
+    private ExecutorService ioPool;
+    private AtomicInteger authTasks; //task eseguiti da authPool
+    private AtomicInteger ioTasks; //task eseguiti da ioPool
+
+    @BeforeEach
+    void createPools() {
+        authPool = Executors.newFixedThreadPool(2);
+        ioPool = Executors.newFixedThreadPool(4);
+        authTasks = new AtomicInteger();
+        ioTasks = new AtomicInteger();
+    }
+
+    @AfterEach
+    void shutdownPools() {
+        authPool.shutdownNow();
+        ioPool.shutdownNow();
+    }
+
+    /*
+    Executor che inoltra i task a pool contando quelli eseguiti
+     */
+    private static Executor counting(ExecutorService pool, AtomicInteger counter) {
+        return task -> pool.execute(() -> {
+            counter.incrementAndGet();
+            task.run();
+        });
+    }
+
+    /*
+    Attende il completamento di f e restituisce la causa del suo fallimento
+     */
+    private static Throwable failureOf(CompletableFuture<?> f) throws InterruptedException, TimeoutException {
+        try {
+            f.get(60, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        return fail("the future completed normally");
+    }
+
+    @Test
+    void constructor() {
+        MapSecureDataContainer<Exam_SecureWrap> data = new MapSecureDataContainer<>(testFolder + "/container_dump.ser");
+        assertThrows(NullPointerException.class, () -> new AsyncSecureFileContainer<>(null, authPool, ioPool));
+        assertThrows(NullPointerException.class, () -> new AsyncSecureFileContainer<>(data, null, ioPool));
+        assertThrows(NullPointerException.class, () -> new AsyncSecureFileContainer<>(data, authPool, null));
+        assertSame(data, new AsyncSecureFileContainer<>(data, authPool, ioPool).getContainer());
+
+        //close non termina gli executor forniti dal cliente
+        new AsyncSecureFileContainer<>(data, authPool, ioPool).close();
+        assertFalse(authPool.isShutdown());
+        assertFalse(ioPool.isShutdown());
+    }
+
+    @Test
+    void operations() throws Exception {
+        ConcurrentSecureDataContainer<Exam_SecureWrap> data = new ConcurrentSecureDataContainer<>(testFolder + "/container_dump.ser");
+        AsyncSecureFileContainer<Exam_SecureWrap> async = new AsyncSecureFileContainer<>(data,
+                counting(authPool, authTasks), counting(ioPool, ioTasks));
+        data.createUser("Mario", "pwd");
+
+        Exam_SecureWrap analisi = new Exam_SecureWrap(testFolder + "/exam1.ser", "Analisi", 30);
+        assertTrue(async.put("Mario", "pwd", analisi).get(60, TimeUnit.SECONDS));
+        assertFalse(async.put("Mario", "pwd", analisi).get(60, TimeUnit.SECONDS));
+        //Ogni chiamata con credenziali verifica la password su authExecutor e accede ai dati su ioExecutor
+        assertEquals(2, authTasks.get());
+        assertEquals(2, ioTasks.get());
+
+        Session s = async.login("Mario", "pwd").get(60, TimeUnit.SECONDS);
+        assertEquals(analisi, async.get(s, analisi).get(60, TimeUnit.SECONDS));
+        async.copy(s, analisi, testFolder + "/exam1_copy.ser").get(60, TimeUnit.SECONDS);
+        assertEquals(2, data.getSize(s));
+
+        //Con accesso W get restituisce il dato stesso: le sue modifiche vengono scritte da writeFileOnDisk
+        Exam_SecureWrap loaded = async.get(s, analisi).get(60, TimeUnit.SECONDS);
+        loaded.grade = 25;
+        async.writeFileOnDisk(s, loaded).get(60, TimeUnit.SECONDS);
+        async.readFileFromDisk("Mario", "pwd", analisi).get(60, TimeUnit.SECONDS);
+        assertEquals(25, async.get("Mario", "pwd", analisi).get(60, TimeUnit.SECONDS).grade);
+
+        assertEquals(analisi, async.remove(s, analisi).get(60, TimeUnit.SECONDS));
+        assertEquals(1, data.getSize(s));
+        assertTrue(async.userAuth("Mario", "pwd").get(60, TimeUnit.SECONDS));
+        assertFalse(async.userAuth("Mario", "pwd_err").get(60, TimeUnit.SECONDS));
+        data.logout(s);
+    }
+
+    @Test
+    void failures() throws Exception {
+        MapSecureDataContainer<Exam_SecureWrap> data = new MapSecureDataContainer<>(testFolder + "/container_dump.ser");
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            //Container non concorrente: un unico executor a thread singolo
+            AsyncSecureFileContainer<Exam_SecureWrap> async = new AsyncSecureFileContainer<>(data, single, single);
+            data.createUser("Mario", "pwd");
+            Exam_SecureWrap analisi = new Exam_SecureWrap(testFolder + "/exam1.ser", "Analisi", 30);
+
+            //Le eccezioni della chiamata sincrona completano il future eccezionalmente
+            assertTrue(failureOf(async.put("Mario", "pwd_err", analisi)) instanceof CredentialException);
+            assertTrue(failureOf(async.put("Mario", "pwd", null)) instanceof NullPointerException);
+            assertTrue(failureOf(async.get("Mario", "pwd", analisi)) instanceof IllegalArgumentException);
+            assertEquals(0, data.getSize("Mario", "pwd"));
+
+            //Una sessione non più valida completa il future con CredentialException
+            Session s = async.login("Mario", "pwd").get(60, TimeUnit.SECONDS);
+            data.logout(s);
+            assertTrue(failureOf(async.put(s, analisi)) instanceof CredentialException);
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentPut() throws Exception {
+        ConcurrentSecureDataContainer<Exam_SecureWrap> data = new ConcurrentSecureDataContainer<>(testFolder + "/container_dump.ser");
+        AsyncSecureFileContainer<Exam_SecureWrap> async = new AsyncSecureFileContainer<>(data, authPool, ioPool);
+        data.createUser("Mario", "pwd");
+        Session s = data.login("Mario", "pwd");
+
+        List<CompletableFuture<Boolean>> puts = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            puts.add(async.put(s, new Exam_SecureWrap(testFolder + "/exam" + i + ".ser", "Esame" + i, 18 + i % 13)));
+        }
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        for (CompletableFuture<Boolean> f : puts) assertTrue(f.join());
+        assertEquals(40, data.getSize(s));
+        data.logout(s);
+    }
+
+    @Test
+    void onVirtualThreads() throws Exception {
+        assertThrows(NullPointerException.class, () -> AsyncSecureFileContainer.onVirtualThreads(null));
+        assertEquals(Runtime.version().feature() >= 21, RequestExecutors.virtualThreadsAvailable());
+        if (!RequestExecutors.virtualThreadsAvailable()) {
+            assertThrows(UnsupportedOperationException.class, RequestExecutors::newVirtualThreadExecutor);
+        }
+
+        //Container non concorrente: le chiamate, eseguite su thread diversi, vengono serializzate
+        MapSecureDataContainer<Exam_SecureWrap> data = new MapSecureDataContainer<>(testFolder + "/container_dump.ser");
+        AsyncSecureFileContainer<Exam_SecureWrap> async = AsyncSecureFileContainer.onVirtualThreads(data);
+        assertTrue(async.isSerialized());
+        assertFalse(data.isThreadSafe());
+        //Container che consentono chiamate concorrenti: le chiamate non vengono serializzate
+        ConcurrentSecureDataContainer<Exam_SecureWrap> concurrent = new ConcurrentSecureDataContainer<>(testFolder + "/concurrent_dump.ser");
+        ShardedSecureFileContainer<Exam_SecureWrap> sharded = new ShardedSecureFileContainer<>(testFolder + "/sharded_dump.ser", 2);
+        ShardedSecureFileContainer<Exam_SecureWrap> mapShards = new ShardedSecureFileContainer<>(testFolder + "/map_shards.ser", 2,
+                MapSecureDataContainer::new, Runnable::run);
+        try (AsyncSecureFileContainer<Exam_SecureWrap> a = AsyncSecureFileContainer.onVirtualThreads(concurrent);
+             AsyncSecureFileContainer<Exam_SecureWrap> b = AsyncSecureFileContainer.onVirtualThreads(sharded);
+             AsyncSecureFileContainer<Exam_SecureWrap> c = AsyncSecureFileContainer.onVirtualThreads(mapShards)) {
+            assertFalse(a.isSerialized());
+            assertFalse(b.isSerialized());
+            assertTrue(c.isSerialized()); //gli shard non consentono chiamate concorrenti
+        } finally {
+            sharded.close();
+        }
+        data.createUser("Mario", "pwd");
+        Session s = data.login("Mario", "pwd");
+
+        List<CompletableFuture<Boolean>> puts = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            puts.add(async.put(s, new Exam_SecureWrap(testFolder + "/exam" + i + ".ser", "Esame" + i, 18 + i % 13)));
+        }
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        for (CompletableFuture<Boolean> f : puts) assertTrue(f.join());
+        assertEquals(40, data.getSize(s));
+        assertEquals(30, async.get("Mario", "pwd", new Exam_SecureWrap(testFolder + "/exam12.ser")).get(60, TimeUnit.SECONDS).grade);
+        data.logout(s);
+
+        //close termina l'executor creato da onVirtualThreads
+        async.close();
+        assertThrows(RejectedExecutionException.class, () -> async.userAuth("Mario", "pwd"));
+    }
+}
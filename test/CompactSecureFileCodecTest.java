@@ -0,0 +1,111 @@
+import SecureContainer.CompactSecureFileCodec;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.SecureFile;
+import SecureContainer.SecureFileCodec;
+import SecureContainer.SerializationCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactSecureFileCodecTest {
+
+    @TempDir
+    Path testFolder;
+
+    private static byte[] encode(SecureFileCodec codec, SecureFile file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(file, out);
+        return out.toByteArray();
+    }
+
+    private static SecureFile decode(SecureFileCodec codec, byte[] bytes) throws IOException, ClassNotFoundException {
+        return codec.decode(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    void constructor() {
+        //Controllo dei requisiti
+        assertThrows(NullPointerException.class,() -> new CompactSecureFileCodec((Class<?>[]) null));
+        assertThrows(NullPointerException.class,() -> new CompactSecureFileCodec(Exam_SecureWrap.class, null));
+    }
+
+    @Test
+    void encodeDecode() throws IOException, ClassNotFoundException {
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        CompactSecureFileCodec codec = new CompactSecureFileCodec();
+        CompactSecureFileCodec registered = new CompactSecureFileCodec(Exam_SecureWrap.class);
+        //Controllo dei requisiti
+        assertThrows(NullPointerException.class,() -> codec.encode(null, new ByteArrayOutputStream()));
+        assertThrows(NullPointerException.class,() -> codec.encode(exam, null));
+        assertThrows(NullPointerException.class,() -> codec.decode(null));
+
+        for (CompactSecureFileCodec c : new CompactSecureFileCodec[]{codec, registered}) {
+            Exam_SecureWrap copy = (Exam_SecureWrap) decode(c, encode(c, exam));
+            assertNotSame(exam, copy);
+            assertEquals(exam, copy);
+            assertEquals(exam.getFilePath(), copy.getFilePath());
+            assertEquals("Analisi", copy.name);
+            assertEquals(30, copy.grade);
+        }
+
+        //Il formato compatto non contiene i descrittori completi delle classi
+        int standard = encode(new SerializationCodec(), exam).length;
+        int compact = encode(codec, exam).length;
+        int compactRegistered = encode(registered, exam).length;
+        assertTrue(compact < standard);
+        assertTrue(compactRegistered < compact);
+    }
+
+    @Test
+    void decodeErrors() throws IOException, ClassNotFoundException {
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        CompactSecureFileCodec codec = new CompactSecureFileCodec();
+
+        //I documenti scritti con la serializzazione Java standard vengono letti
+        assertEquals(exam, decode(codec, encode(new SerializationCodec(), exam)));
+
+        //Un identificativo assente dalla tabella del codec non può essere letto
+        byte[] registered = encode(new CompactSecureFileCodec(Exam_SecureWrap.class), exam);
+        assertThrows(InvalidClassException.class,() -> decode(codec, registered));
+
+        assertThrows(StreamCorruptedException.class,() -> decode(codec, new byte[]{1, 2, 3}));
+        assertThrows(StreamCorruptedException.class,() -> decode(codec, new byte[0]));
+        byte[] newerVersion = encode(codec, exam);
+        newerVersion[2]++;
+        assertThrows(StreamCorruptedException.class,() -> decode(codec, newerVersion));
+
+        //Uno stream che non contiene un SecureFile non viene accettato
+        ByteArrayOutputStream notFile = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(notFile)) {
+            out.writeObject("not a SecureFile");
+        }
+        assertThrows(InvalidObjectException.class,() -> decode(codec, notFile.toByteArray()));
+    }
+
+    @Test
+    void containerCodec() throws IOException, ClassNotFoundException {
+        MapSecureDataContainer<Exam_SecureWrap> data = new MapSecureDataContainer<>(testFolder + "/container_dump.ser");
+        assertTrue(data.getCodec() instanceof CompactSecureFileCodec);
+        assertThrows(NullPointerException.class,() -> data.setCodec(null));
+        data.createUser("Mario","pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        data.put("Mario","pwd",exam);
+
+        //Con SerializationCodec il documento su disco è leggibile con ObjectInputStream
+        data.setCodec(new SerializationCodec());
+        data.writeFileOnDisk("Mario","pwd",exam);
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(exam.getFilePath()))) {
+            Exam_SecureWrap stored = (Exam_SecureWrap) in.readObject();
+            assertEquals(30, stored.grade);
+        }
+
+        //Il codec predefinito legge anche i documenti scritti nel formato standard
+        data.setCodec(new CompactSecureFileCodec(Exam_SecureWrap.class));
+        data.readFileFromDisk("Mario","pwd",exam);
+        assertEquals(30, data.get("Mario","pwd",exam).grade);
+    }
+}
@@ -0,0 +1,141 @@
+import SecureContainer.ConcurrentSecureDataContainer;
+import SecureContainer.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentSecureDataContainerTest {
+    private static final int THREADS = 8;
+    private static final int FILES_PER_THREAD = 20;
+
+    @TempDir
+    Path testFolder;
+
+    /*
+    Esegue task su THREADS thread che partono contemporaneamente e rilancia la prima eccezione incontrata
+     */
+    private static void runConcurrently(Callable<Void> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Void> f : results) {
+                try {
+                    f.get(60, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    throw (Exception) e.getCause();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentPutAndShare() throws Exception {
+        ConcurrentSecureDataContainer<Exam_SecureWrap> data = new ConcurrentSecureDataContainer<>(testFolder + "/container_dump.ser");
+        data.createUser("Reader", "pwd");
+        for (int i = 0; i < THREADS; i++) data.createUser("User" + i, "pwd");
+        Session reader = data.login("Reader", "pwd");
+
+        ConcurrentLinkedQueue<Integer> ids = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < THREADS; i++) ids.add(i);
+        runConcurrently(() -> {
+            int id = ids.poll();
+            Session s = data.login("User" + id, "pwd");
+            for (int j = 0; j < FILES_PER_THREAD; j++) {
+                Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam_" + id + "_" + j + ".ser", "Esame" + j, 18 + j % 13);
+                assertTrue(data.put(s, exam));
+                assertFalse(data.put(s, exam));
+                data.shareR(s, "Reader", exam);
+                assertEquals(exam, data.get(reader, exam));
+            }
+            assertEquals(FILES_PER_THREAD, data.getSize(s));
+            return null;
+        });
+
+        int shared = 0;
+        Iterator<Exam_SecureWrap> iter = data.getSharedWithMe(reader);
+        while (iter.hasNext()) {
+            iter.next();
+            shared++;
+        }
+        assertEquals(THREADS * FILES_PER_THREAD, shared);
+        assertTrue(data.writeContainerOnDisk("Luca", "Diavolo!"));
+        assertTrue(data.readContainerFromDisk("Luca", "Diavolo!"));
+        for (int i = 0; i < THREADS; i++) assertEquals(FILES_PER_THREAD, data.getSize("User" + i, "pwd"));
+    }
+
+    @Test
+    void concurrentReadersOfSameFile() throws Exception {
+        ConcurrentSecureDataContainer<Exam_SecureWrap> data = new ConcurrentSecureDataContainer<>(testFolder + "/container_dump.ser");
+        data.createUser("Mario", "pwd");
+        data.createUser("Luigi", "pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser", "Analisi", 30);
+        data.put("Mario", "pwd", exam);
+        data.shareR("Mario", "pwd", "Luigi", exam);
+        Session mario = data.login("Mario", "pwd");
+        Session luigi = data.login("Luigi", "pwd");
+
+        runConcurrently(() -> {
+            for (int j = 0; j < 50; j++) {
+                assertEquals(exam, data.get(luigi, exam));
+                assertEquals(exam, data.get(mario, exam));
+                data.writeFileOnDisk("Mario", "pwd", exam);
+            }
+            return null;
+        });
+    }
+
+    @Test
+    void concurrentRemoveUser() throws Exception {
+        ConcurrentSecureDataContainer<Exam_SecureWrap> data = new ConcurrentSecureDataContainer<>(testFolder + "/container_dump.ser");
+        data.createUser("Mario", "pwd");
+        data.createUser("Luigi", "pwd");
+        List<Exam_SecureWrap> exams = new ArrayList<>();
+        for (int j = 0; j < FILES_PER_THREAD; j++) {
+            Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam" + j + ".ser", "Esame" + j, 30);
+            data.put("Mario", "pwd", exam);
+            data.shareW("Mario", "pwd", "Luigi", exam);
+            exams.add(exam);
+        }
+        Session luigi = data.login("Luigi", "pwd");
+
+        //Un thread rimuove Mario mentre gli altri leggono i suoi dati: ogni lettura o va a buon fine
+        //oppure fallisce perché il dato non è più presente nel container
+        ConcurrentLinkedQueue<Integer> ids = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < THREADS; i++) ids.add(i);
+        runConcurrently(() -> {
+            if (ids.poll() == 0) {
+                data.removeUser("Mario", "pwd");
+                return null;
+            }
+            for (Exam_SecureWrap exam : exams) {
+                try {
+                    assertEquals(exam, data.get(luigi, exam));
+                } catch (IllegalArgumentException e) {
+                    //dato rimosso insieme al suo proprietario
+                }
+            }
+            return null;
+        });
+
+        assertFalse(data.userExist("Mario"));
+        assertFalse(data.getSharedWithMe(luigi).hasNext());
+        for (Exam_SecureWrap exam : exams) assertThrows(IllegalArgumentException.class, () -> data.get(luigi, exam));
+    }
+}
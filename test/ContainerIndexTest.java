@@ -0,0 +1,197 @@
+import SecureContainer.AccessLevel;
+import SecureContainer.ContainerIndex;
+import SecureContainer.IndexedSecureDataContainer;
+import SecureContainer.Exceptions.NoAccessException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContainerIndexTest {
+
+    @TempDir
+    Path testFolder;
+
+    @Test
+    void writeOpen() throws IOException {
+        String path = testFolder + "/container.idx";
+        ContainerIndex.Writer writer = new ContainerIndex.Writer("Luca");
+        //Controllo dei requisiti
+        assertThrows(NullPointerException.class,() -> new ContainerIndex.Writer(null));
+        assertThrows(IllegalArgumentException.class,() -> new ContainerIndex.Writer(""));
+        assertThrows(IllegalStateException.class,() -> writer.write(path)); //admin non ancora inserito
+
+        writer.addUser("Luca", "hashLuca");
+        writer.addUser("Mario", "hashMario");
+        writer.addUser("Luigi", "hashLuigi");
+        assertThrows(IllegalArgumentException.class,() -> writer.addUser("Mario", "hash"));
+        writer.addFile("/exam.ser", "Mario", new byte[]{1, 2, 3});
+        writer.addFile("/other.ser", "Luigi", new byte[0]);
+        assertThrows(IllegalArgumentException.class,() -> writer.addFile("/exam.ser", "Mario", new byte[0]));
+        assertThrows(IllegalArgumentException.class,() -> writer.addFile("/new.ser", "Peach", new byte[0]));
+        writer.grant("/exam.ser", "Luigi", AccessLevel.R);
+        writer.grant("/exam.ser", "Luca", AccessLevel.W);
+        assertThrows(IllegalArgumentException.class,() -> writer.grant("/exam.ser", "Mario", AccessLevel.R));
+        assertThrows(IllegalArgumentException.class,() -> writer.grant("/exam.ser", "Peach", AccessLevel.R));
+        assertThrows(IllegalArgumentException.class,() -> writer.grant("/new.ser", "Luigi", AccessLevel.R));
+        writer.write(path);
+
+        try (ContainerIndex index = ContainerIndex.open(path)) {
+            assertEquals(path, index.getPath());
+            assertEquals("Luca", index.getAdminId());
+            assertEquals(3, index.getUserCount());
+            assertEquals(2, index.getFileCount());
+            assertEquals(new HashSet<>(Arrays.asList("Luca", "Mario", "Luigi")), new HashSet<>(index.getUserIds()));
+            assertEquals(new HashSet<>(Arrays.asList("/exam.ser", "/other.ser")), new HashSet<>(index.getFilePaths()));
+
+            assertTrue(index.containsUser("Mario"));
+            assertFalse(index.containsUser("Peach"));
+            assertEquals("hashLuigi", index.getPasswordHash("Luigi"));
+            assertNull(index.getPasswordHash("Peach"));
+            assertEquals(Collections.singletonList("/exam.ser"), index.getOwnedFiles("Mario"));
+            assertTrue(index.getOwnedFiles("Luca").isEmpty());
+            assertEquals(Collections.singletonMap("/exam.ser", AccessLevel.R), index.getSharedFiles("Luigi"));
+
+            assertTrue(index.containsFile("/other.ser"));
+            assertFalse(index.containsFile("/new.ser"));
+            assertEquals("Mario", index.getOwner("/exam.ser"));
+            assertEquals(AccessLevel.W, index.getAccess("/exam.ser", "Mario"));
+            assertEquals(AccessLevel.R, index.getAccess("/exam.ser", "Luigi"));
+            assertNull(index.getAccess("/other.ser", "Mario"));
+            Map<String,AccessLevel> accesses = new HashMap<>();
+            accesses.put("Luigi", AccessLevel.R);
+            accesses.put("Luca", AccessLevel.W);
+            assertEquals(accesses, index.getAccesses("/exam.ser"));
+            assertArrayEquals(new byte[]{1, 2, 3}, index.getData("/exam.ser"));
+            assertArrayEquals(new byte[0], index.getData("/other.ser"));
+            assertNull(index.getData("/new.ser"));
+
+            //Un indice chiuso non può essere letto
+            index.close();
+            assertThrows(IllegalStateException.class,() -> index.containsUser("Mario"));
+        }
+    }
+
+    @Test
+    void corruptedIndex() throws IOException {
+        String path = testFolder + "/container.idx";
+        assertThrows(NullPointerException.class,() -> ContainerIndex.open(null));
+        assertThrows(IllegalArgumentException.class,() -> ContainerIndex.open(""));
+        assertThrows(IOException.class,() -> ContainerIndex.open(path));
+
+        ContainerIndex.Writer writer = new ContainerIndex.Writer("Luca");
+        writer.addUser("Luca", "hash");
+        writer.write(path);
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+
+        //Header non valido
+        byte[] corrupted = bytes.clone();
+        corrupted[0] ^= 0x01;
+        Files.write(Paths.get(path), corrupted);
+        assertThrows(StreamCorruptedException.class,() -> ContainerIndex.open(path));
+
+        //Indice troncato
+        Files.write(Paths.get(path), Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(StreamCorruptedException.class,() -> ContainerIndex.open(path));
+    }
+
+    @Test
+    void corruptedRecord() throws IOException {
+        String path = testFolder + "/container.idx";
+        ContainerIndex.Writer writer = new ContainerIndex.Writer("Luca");
+        writer.addUser("Luca", "hash");
+        writer.addFile("/exam.ser", "Luca", new byte[]{1, 2, 3});
+        writer.write(path);
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+
+        //Lunghezza dell'id dell'admin oltre la fine dell'indice: open ha successo, l'interrogazione rileva l'errore
+        byte[] corrupted = bytes.clone();
+        ByteBuffer.wrap(corrupted).putInt(ByteBuffer.wrap(bytes).getInt(8), Integer.MAX_VALUE);
+        Files.write(Paths.get(path), corrupted);
+        try (ContainerIndex index = ContainerIndex.open(path)) {
+            assertCorrupted(index::getAdminId);
+            assertCorrupted(() -> index.containsUser("Luca"));
+            assertCorrupted(index::getUserIds);
+        }
+
+        //Lunghezza negativa del contenuto del dato
+        corrupted = bytes.clone();
+        ByteBuffer.wrap(corrupted).putInt(ByteBuffer.wrap(bytes).getInt(20) - 3 - Integer.BYTES, -1); //il record del dato precede la tabella utenti
+        Files.write(Paths.get(path), corrupted);
+        try (ContainerIndex index = ContainerIndex.open(path)) {
+            assertEquals("Luca", index.getOwner("/exam.ser"));
+            assertCorrupted(() -> index.getData("/exam.ser"));
+        }
+    }
+
+    private static void assertCorrupted(Executable query) {
+        UncheckedIOException ex = assertThrows(UncheckedIOException.class, query);
+        assertTrue(ex.getCause() instanceof StreamCorruptedException);
+    }
+
+    @Test
+    void indexedContainer() throws IOException, ClassNotFoundException {
+        String path = testFolder + "/container_dump.ser";
+        IndexedSecureDataContainer<Exam_SecureWrap> data = new IndexedSecureDataContainer<>(path);
+        assertNull(data.getIndex());
+        data.createUser("Mario","pwd");
+        data.createUser("Luigi","pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        Exam_SecureWrap other = new Exam_SecureWrap(testFolder + "/other.ser","PR2",28);
+        data.put("Mario","pwd",exam);
+        data.put("Luigi","pwd",other);
+        data.shareR("Mario","pwd","Luigi",exam);
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+        assertEquals(2, data.getIndex().getFileCount());
+
+        //Un nuovo container legge utenti, proprietari e accessi dall'indice
+        IndexedSecureDataContainer<Exam_SecureWrap> read = new IndexedSecureDataContainer<>(path);
+        assertTrue(read.readContainerFromDisk("Luca","Diavolo!"));
+        assertTrue(read.userAuth("Mario","pwd"));
+        assertFalse(read.userAuth("Luigi","wrong"));
+        assertEquals(1, read.getSize("Mario","pwd"));
+        assertEquals(30, read.getSnapshot("Luigi","pwd",exam).grade);
+        assertThrows(NoAccessException.class,() -> read.getSnapshot("Mario","pwd",other));
+        Iterator<Exam_SecureWrap> shared = read.getSharedWithMe("Luigi","pwd");
+        assertEquals("Analisi", shared.next().name);
+        assertFalse(shared.hasNext());
+
+        //Modifiche successive alla lettura: i dati non modificati vengono copiati dall'indice precedente
+        read.createUser("Peach","pwd");
+        read.shareW("Luigi","pwd","Peach",other);
+        read.remove("Mario","pwd",exam);
+        assertFalse(read.put("Luigi","pwd",other));
+        assertTrue(read.writeContainerOnDisk("Luca","Diavolo!"));
+
+        IndexedSecureDataContainer<Exam_SecureWrap> reread = new IndexedSecureDataContainer<>(path);
+        assertTrue(reread.readContainerFromDisk("Luca","Diavolo!"));
+        assertEquals(1, reread.getIndex().getFileCount());
+        assertEquals(0, reread.getSize("Mario","pwd"));
+        assertEquals(28, reread.getSnapshot("Peach","pwd",other).grade);
+        assertEquals(AccessLevel.W, reread.getIndex().getAccess(other.getFilePath(), "Peach"));
+        reread.removeUser("Luigi","pwd");
+        assertFalse(reread.userExist("Luigi"));
+        assertThrows(IllegalArgumentException.class,() -> reread.getSnapshot("Peach","pwd",other));
+
+        //Una lettura non riuscita non modifica il container (il documento viene sostituito, come da writeContainerOnDisk)
+        Files.delete(Paths.get(path));
+        Files.write(Paths.get(path), new byte[]{1, 2, 3});
+        assertFalse(reread.readContainerFromDisk("Luca","Diavolo!"));
+        assertTrue(reread.userExist("Peach"));
+    }
+}
@@ -0,0 +1,364 @@
+import SecureContainer.AccessLevel;
+import SecureContainer.ConcurrentSecureDataContainer;
+import SecureContainer.ContainerJournal;
+import SecureContainer.ISecureFileContainer;
+import SecureContainer.ListSecureDataContainer;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.Exceptions.CredentialException;
+import SecureContainer.Exceptions.NoAccessException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContainerJournalTest {
+
+    @TempDir
+    Path testFolder;
+
+    /*
+    Visitor che registra in ordine le operazioni lette dal journal
+     */
+    private static final class Recorder implements ContainerJournal.Visitor {
+        private final List<String> ops = new ArrayList<>();
+
+        @Override
+        public void createUser(String id, String passwordHash) { ops.add("createUser " + id + " " + passwordHash); }
+
+        @Override
+        public void removeUser(String id) { ops.add("removeUser " + id); }
+
+        @Override
+        public void put(String owner, byte[] file) { ops.add("put " + owner + " " + Arrays.toString(file)); }
+
+        @Override
+        public void remove(String owner, String filePath) { ops.add("remove " + owner + " " + filePath); }
+
+        @Override
+        public void share(String owner, String other, String filePath, AccessLevel acc) { ops.add("share " + owner + " " + other + " " + filePath + " " + acc); }
+    }
+
+    /*
+    Crea un container vuoto dell'implementazione p_implementation nel documento path
+     */
+    private static ISecureFileContainer<Exam_SecureWrap> createContainer(int p_implementation, String path) {
+        switch (p_implementation) {
+            case 1:
+                return new MapSecureDataContainer<>(path);
+            case 2:
+                return new ListSecureDataContainer<>(path);
+            default:
+                return new ConcurrentSecureDataContainer<>(path);
+        }
+    }
+
+    private static void enableJournal(ISecureFileContainer<Exam_SecureWrap> data, long maxSize) throws IOException {
+        if (data instanceof MapSecureDataContainer) ((MapSecureDataContainer<Exam_SecureWrap>) data).enableJournal(maxSize);
+        else if (data instanceof ListSecureDataContainer) ((ListSecureDataContainer<Exam_SecureWrap>) data).enableJournal(maxSize);
+        else ((ConcurrentSecureDataContainer<Exam_SecureWrap>) data).enableJournal(maxSize);
+    }
+
+    private static ContainerJournal getJournal(ISecureFileContainer<Exam_SecureWrap> data) {
+        if (data instanceof MapSecureDataContainer) return ((MapSecureDataContainer<Exam_SecureWrap>) data).getJournal();
+        if (data instanceof ListSecureDataContainer) return ((ListSecureDataContainer<Exam_SecureWrap>) data).getJournal();
+        return ((ConcurrentSecureDataContainer<Exam_SecureWrap>) data).getJournal();
+    }
+
+    private static boolean isSynced(ISecureFileContainer<Exam_SecureWrap> data) {
+        if (data instanceof MapSecureDataContainer) return ((MapSecureDataContainer<Exam_SecureWrap>) data).isSynced();
+        if (data instanceof ListSecureDataContainer) return ((ListSecureDataContainer<Exam_SecureWrap>) data).isSynced();
+        return ((ConcurrentSecureDataContainer<Exam_SecureWrap>) data).isSynced();
+    }
+
+    private static IOException getJournalFailure(ISecureFileContainer<Exam_SecureWrap> data) {
+        if (data instanceof MapSecureDataContainer) return ((MapSecureDataContainer<Exam_SecureWrap>) data).getJournalFailure();
+        if (data instanceof ListSecureDataContainer) return ((ListSecureDataContainer<Exam_SecureWrap>) data).getJournalFailure();
+        return ((ConcurrentSecureDataContainer<Exam_SecureWrap>) data).getJournalFailure();
+    }
+
+    @Test
+    void appendReplay() throws IOException, ClassNotFoundException {
+        String path = testFolder + "/container.journal";
+        assertThrows(NullPointerException.class,() -> new ContainerJournal(null));
+        assertThrows(IllegalArgumentException.class,() -> new ContainerJournal(""));
+
+        ContainerJournal journal = new ContainerJournal(path);
+        assertFalse(journal.isOpen());
+        assertThrows(IllegalStateException.class,() -> journal.appendRemoveUser("Mario"));
+        //Il journal non esiste ancora
+        assertFalse(journal.replay(1, new Recorder()));
+
+        journal.open(1);
+        assertTrue(journal.isOpen());
+        journal.appendCreateUser("Mario", "hash");
+        journal.appendPut("Mario", new byte[]{1, 2, 3});
+        journal.appendShare("Mario", "Luigi", "/exam.ser", AccessLevel.R);
+        journal.appendRemove("Mario", "/exam.ser");
+        journal.appendRemoveUser("Mario");
+        //I record di un batch vengono riletti come record singoli
+        journal.appendShareAll("Mario", "Luigi", Arrays.asList("/a.ser", "/b.ser"), AccessLevel.W);
+        journal.appendRemoveAll("Mario", Arrays.asList("/a.ser", "/b.ser"));
+        journal.close();
+        assertFalse(journal.isOpen());
+
+        Recorder recorder = new Recorder();
+        assertTrue(journal.replay(1, recorder));
+        assertEquals(Arrays.asList("createUser Mario hash", "put Mario [1, 2, 3]", "share Mario Luigi /exam.ser R",
+                "remove Mario /exam.ser", "removeUser Mario", "share Mario Luigi /a.ser W", "share Mario Luigi /b.ser W",
+                "remove Mario /a.ser", "remove Mario /b.ser"), recorder.ops);
+
+        //Il journal di un altro snapshot viene ignorato
+        recorder = new Recorder();
+        assertFalse(journal.replay(2, recorder));
+        assertTrue(recorder.ops.isEmpty());
+
+        //open con la stessa generazione continua il journal esistente
+        journal.open(1);
+        journal.appendRemoveUser("Luigi");
+        recorder = new Recorder();
+        assertTrue(journal.replay(1, recorder));
+        assertEquals(10, recorder.ops.size());
+
+        //reset svuota il journal e lo associa ad un nuovo snapshot
+        journal.reset(2);
+        recorder = new Recorder();
+        assertTrue(journal.replay(2, recorder));
+        assertTrue(recorder.ops.isEmpty());
+        assertFalse(journal.replay(1, recorder));
+        journal.close();
+    }
+
+    @Test
+    void forceOnAppend() throws IOException, ClassNotFoundException, InterruptedException {
+        ContainerJournal journal = new ContainerJournal(testFolder + "/container.journal");
+        assertFalse(journal.isForceOnAppend());
+        journal.setForceOnAppend(true);
+        assertTrue(journal.isForceOnAppend());
+        journal.open(1);
+
+        //Gli append concorrenti attendono la force e nessun record viene perso
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int id = t;
+            writers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 25; i++) journal.appendRemoveUser("user" + id + "_" + i);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread w : writers) w.join();
+        Recorder recorder = new Recorder();
+        assertTrue(journal.replay(1, recorder));
+        assertEquals(100, recorder.ops.size());
+
+        journal.reset(2);
+        journal.appendRemoveUser("Mario");
+        journal.close();
+        recorder = new Recorder();
+        assertTrue(journal.replay(2, recorder));
+        assertEquals(Arrays.asList("removeUser Mario"), recorder.ops);
+    }
+
+    @Test
+    void tornTail() throws IOException, ClassNotFoundException {
+        String path = testFolder + "/container.journal";
+        ContainerJournal journal = new ContainerJournal(path);
+        journal.open(7);
+        journal.appendCreateUser("Mario", "hash");
+        long valid = journal.size();
+        journal.appendCreateUser("Luigi", "hash");
+        journal.close();
+
+        //Simulo un'interruzione durante la scrittura dell'ultimo record
+        try (RandomAccessFile f = new RandomAccessFile(path, "rw")) {
+            f.setLength(f.length() - 3);
+        }
+        Recorder recorder = new Recorder();
+        assertTrue(journal.replay(7, recorder));
+        assertEquals(Arrays.asList("createUser Mario hash"), recorder.ops);
+
+        //open elimina il record incompleto prima di aggiungerne altri
+        journal.open(7);
+        assertEquals(valid, journal.size());
+        journal.appendRemoveUser("Mario");
+        journal.close();
+        recorder = new Recorder();
+        journal.replay(7, recorder);
+        assertEquals(Arrays.asList("createUser Mario hash", "removeUser Mario"), recorder.ops);
+
+        //Un record con CRC errato termina il journal
+        try (RandomAccessFile f = new RandomAccessFile(path, "rw")) {
+            f.seek(f.length() - 1);
+            int last = f.read();
+            f.seek(f.length() - 1);
+            f.write(last ^ 0xFF);
+        }
+        recorder = new Recorder();
+        journal.replay(7, recorder);
+        assertEquals(Arrays.asList("createUser Mario hash"), recorder.ops);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void containerRecovery(int p_implementation) throws IOException, ClassNotFoundException {
+        String path = testFolder + "/container_dump.ser";
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, path);
+        assertNull(getJournal(data));
+        assertThrows(IllegalArgumentException.class,() -> enableJournal(data, 0));
+        data.createUser("Mario","pwd");
+
+        //Il container contiene modifiche non scritte su disco: enableJournal lo riscrive
+        enableJournal(data, 1 << 20);
+        assertNotNull(getJournal(data));
+        assertTrue(Files.exists(Paths.get(path)));
+        byte[] snapshot = Files.readAllBytes(Paths.get(path));
+        long emptySize = getJournal(data).size();
+
+        data.createUser("Luigi","pwd");
+        data.createUser("Peach","pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        Exam_SecureWrap other = new Exam_SecureWrap(testFolder + "/other.ser","PR2",28);
+        Exam_SecureWrap removed = new Exam_SecureWrap(testFolder + "/removed.ser","Fisica",25);
+        data.put("Mario","pwd",exam);
+        data.put("Mario","pwd",removed);
+        data.put("Peach","pwd",other);
+        data.copy("Mario","pwd",exam,testFolder + "/exam_copy.ser");
+        data.shareR("Mario","pwd","Luigi",exam);
+        data.shareW("Peach","pwd","Luigi",other);
+        data.shareW("Mario","pwd","Luigi",removed);
+        data.remove("Mario","pwd",removed);
+        data.removeUser("Peach","pwd");
+
+        //Le modifiche vengono registrate solo nel journal
+        assertArrayEquals(snapshot, Files.readAllBytes(Paths.get(path)));
+        assertTrue(getJournal(data).size() > emptySize);
+
+        //Un nuovo container legge lo snapshot e riapplica il journal
+        ISecureFileContainer<Exam_SecureWrap> recovered = createContainer(p_implementation, path);
+        assertTrue(recovered.readContainerFromDisk("Luca","Diavolo!"));
+        assertTrue(recovered.userAuth("Luigi","pwd"));
+        assertFalse(recovered.userExist("Peach"));
+        assertEquals(2, recovered.getSize("Mario","pwd"));
+        assertEquals(30, recovered.get("Luigi","pwd",exam).grade);
+        assertEquals(30, recovered.get("Mario","pwd",new Exam_SecureWrap(testFolder + "/exam_copy.ser","",0)).grade);
+        assertThrows(IllegalArgumentException.class,() -> recovered.get("Mario","pwd",removed));
+        assertThrows(IllegalArgumentException.class,() -> recovered.get("Luigi","pwd",other));
+        //Luigi ha accesso in lettura ad exam
+        assertThrows(NoAccessException.class,() -> recovered.writeFileOnDisk("Luigi","pwd",exam));
+        int shared = 0;
+        for (java.util.Iterator<Exam_SecureWrap> it = recovered.getSharedWithMe("Luigi","pwd"); it.hasNext(); it.next()) shared++;
+        assertEquals(1, shared);
+
+        //writeContainerOnDisk scrive un nuovo snapshot e svuota il journal
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+        assertEquals(emptySize, getJournal(data).size());
+        data.shareW("Mario","pwd","Luigi",exam);
+        ISecureFileContainer<Exam_SecureWrap> rewritten = createContainer(p_implementation, path);
+        assertTrue(rewritten.readContainerFromDisk("Luca","Diavolo!"));
+        rewritten.writeFileOnDisk("Luigi","pwd",exam);
+        assertThrows(CredentialException.class,() -> rewritten.getSize("Peach","pwd"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void compaction(int p_implementation) throws IOException, ClassNotFoundException {
+        String path = testFolder + "/container_dump.ser";
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, path);
+        enableJournal(data, 64);
+        long emptySize = getJournal(data).size();
+        byte[] snapshot = Files.readAllBytes(Paths.get(path));
+
+        //Il journal supera la dimensione massima: il container viene riscritto e il journal svuotato
+        data.createUser("Mario","pwd");
+        assertEquals(emptySize, getJournal(data).size());
+        assertFalse(Arrays.equals(snapshot, Files.readAllBytes(Paths.get(path))));
+
+        ISecureFileContainer<Exam_SecureWrap> recovered = createContainer(p_implementation, path);
+        assertTrue(recovered.readContainerFromDisk("Luca","Diavolo!"));
+        assertTrue(recovered.userAuth("Mario","pwd"));
+
+        //Dopo la lettura il journal continua dallo snapshot letto
+        enableJournal(recovered, 1 << 20);
+        snapshot = Files.readAllBytes(Paths.get(path));
+        recovered.createUser("Luigi","pwd");
+        assertArrayEquals(snapshot, Files.readAllBytes(Paths.get(path)));
+        ISecureFileContainer<Exam_SecureWrap> again = createContainer(p_implementation, path);
+        assertTrue(again.readContainerFromDisk("Luca","Diavolo!"));
+        assertTrue(again.userAuth("Mario","pwd"));
+        assertTrue(again.userAuth("Luigi","pwd"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void compactionFailure(int p_implementation) throws IOException {
+        String path = testFolder + "/container_dump.ser";
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, path);
+        enableJournal(data, 64);
+        assertTrue(isSynced(data));
+        assertNull(getJournalFailure(data));
+
+        //Lo snapshot non può essere riscritto: la modifica resta solo in memoria e l'errore viene esposto
+        Files.delete(Paths.get(path));
+        Files.createDirectory(Paths.get(path));
+        Files.createFile(Paths.get(path, "blocker"));
+        data.createUser("Mario","pwd");
+        assertTrue(data.userAuth("Mario","pwd"));
+        assertFalse(isSynced(data));
+        assertNotNull(getJournalFailure(data));
+
+        //La riscrittura successiva riporta this in sincronia con il disco
+        Files.delete(Paths.get(path, "blocker"));
+        Files.delete(Paths.get(path));
+        data.createUser("Luigi","pwd");
+        assertTrue(isSynced(data));
+        assertNull(getJournalFailure(data));
+        ISecureFileContainer<Exam_SecureWrap> recovered = createContainer(p_implementation, path);
+        assertTrue(recovered.readContainerFromDisk("Luca","Diavolo!"));
+        assertTrue(recovered.userAuth("Mario","pwd"));
+        assertTrue(recovered.userAuth("Luigi","pwd"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void batchRecovery(int p_implementation) throws IOException, ClassNotFoundException {
+        String path = testFolder + "/container_dump.ser";
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, path);
+        data.createUser("Mario","pwd");
+        data.createUser("Luigi","pwd");
+        enableJournal(data, 1 << 20);
+        List<Exam_SecureWrap> exams = new ArrayList<>();
+        for (int i = 0; i < 4; i++) exams.add(new Exam_SecureWrap(testFolder + "/exam" + i + ".ser","Esame" + i,18 + i));
+        Exam_SecureWrap missing = new Exam_SecureWrap(testFolder + "/missing.ser");
+        assertTrue(data.putAll("Mario","pwd",exams).allSucceeded());
+
+        //Le condivisioni e le rimozioni riuscite di un batch vengono registrate nel journal
+        long before = getJournal(data).size();
+        assertEquals(1, data.shareAll("Mario","pwd","Luigi",Arrays.asList(exams.get(0), missing, exams.get(1), exams.get(2)),AccessLevel.W).getFailureCount());
+        assertEquals(1, data.removeAll("Mario","pwd",Arrays.asList(exams.get(2), missing, exams.get(3))).getFailureCount());
+        assertTrue(getJournal(data).size() > before);
+        assertFalse(Files.exists(Paths.get(exams.get(3).getFilePath())));
+
+        ISecureFileContainer<Exam_SecureWrap> recovered = createContainer(p_implementation, path);
+        assertTrue(recovered.readContainerFromDisk("Luca","Diavolo!"));
+        assertEquals(2, recovered.getSize("Mario","pwd"));
+        int shared = 0;
+        for (java.util.Iterator<Exam_SecureWrap> it = recovered.getSharedWithMe("Luigi","pwd"); it.hasNext(); it.next()) shared++;
+        assertEquals(2, shared);
+        recovered.writeFileOnDisk("Luigi","pwd",exams.get(1));
+        assertThrows(IllegalArgumentException.class,() -> recovered.get("Mario","pwd",exams.get(2)));
+    }
+}
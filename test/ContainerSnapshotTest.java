@@ -0,0 +1,120 @@
+import SecureContainer.ConcurrentSecureDataContainer;
+import SecureContainer.ContainerSnapshot;
+import SecureContainer.ISecureFileContainer;
+import SecureContainer.ListSecureDataContainer;
+import SecureContainer.MapSecureDataContainer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContainerSnapshotTest {
+
+    @TempDir
+    Path testFolder;
+
+    /*
+    Restituisce i nomi dei documenti presenti in testFolder
+     */
+    private String[] listFolder() throws IOException {
+        try (Stream<Path> files = Files.list(testFolder)) {
+            return files.map(p -> p.getFileName().toString()).sorted().toArray(String[]::new);
+        }
+    }
+
+    @Test
+    void writeRead() throws IOException, ClassNotFoundException {
+        String path = testFolder + "/snapshot.ser";
+        //Controllo dei requisiti
+        assertThrows(NullPointerException.class,() -> ContainerSnapshot.write(null, "obj"));
+        assertThrows(IllegalArgumentException.class,() -> ContainerSnapshot.write("", "obj"));
+        assertThrows(NullPointerException.class,() -> ContainerSnapshot.write(path, null));
+        assertThrows(NullPointerException.class,() -> ContainerSnapshot.read(null));
+        assertThrows(IllegalArgumentException.class,() -> ContainerSnapshot.read(""));
+
+        ContainerSnapshot.write(path, new ArrayList<>(Arrays.asList("a", "b")));
+        assertEquals(Arrays.asList("a", "b"), ContainerSnapshot.read(path));
+        //Una nuova scrittura sostituisce lo snapshot senza lasciare documenti temporanei
+        ContainerSnapshot.write(path, "c");
+        assertEquals("c", ContainerSnapshot.read(path));
+        assertArrayEquals(new String[]{"snapshot.ser"}, listFolder());
+    }
+
+    @Test
+    void failedWrite() throws IOException, ClassNotFoundException {
+        String path = testFolder + "/snapshot.ser";
+        ContainerSnapshot.write(path, "old");
+        //Un errore durante la serializzazione non modifica lo snapshot precedente
+        ArrayList<Object> notSerializable = new ArrayList<>();
+        notSerializable.add(new Object());
+        assertThrows(NotSerializableException.class,() -> ContainerSnapshot.write(path, notSerializable));
+        assertEquals("old", ContainerSnapshot.read(path));
+        assertArrayEquals(new String[]{"snapshot.ser"}, listFolder());
+    }
+
+    @Test
+    void checksum() throws IOException, ClassNotFoundException {
+        String path = testFolder + "/snapshot.ser";
+        ContainerSnapshot.write(path, "content of the snapshot");
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+
+        //Un byte modificato viene rilevato dal CRC32 del footer
+        byte[] corrupted = bytes.clone();
+        corrupted[bytes.length / 2] ^= 0x01;
+        Files.write(Paths.get(path), corrupted);
+        assertThrows(StreamCorruptedException.class,() -> ContainerSnapshot.read(path));
+
+        //Uno snapshot troncato non viene letto
+        Files.write(Paths.get(path), Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class,() -> ContainerSnapshot.read(path));
+
+        //Gli snapshot senza footer vengono letti senza verifica
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(path))) {
+            out.writeObject("legacy");
+        }
+        assertEquals("legacy", ContainerSnapshot.read(path));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void corruptedContainer(int p_implementation) throws IOException {
+        String path = testFolder + "/container_dump.ser";
+        ISecureFileContainer<Exam_SecureWrap> data;
+        switch (p_implementation) {
+            case 1:
+                data = new MapSecureDataContainer<>(path);
+                break;
+            case 2:
+                data = new ListSecureDataContainer<>(path);
+                break;
+            default:
+                data = new ConcurrentSecureDataContainer<>(path);
+        }
+        data.createUser("Mario","pwd");
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+        data.createUser("Luigi","pwd");
+
+        //Uno snapshot corrotto non viene letto e il container resta invariato
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        bytes[bytes.length / 2] ^= 0x01;
+        Files.write(Paths.get(path), bytes);
+        assertFalse(data.readContainerFromDisk("Luca","Diavolo!"));
+        assertTrue(data.userExist("Luigi"));
+
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+        data.removeUser("Luigi","pwd");
+        assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+        assertTrue(data.userExist("Luigi"));
+        assertTrue(data.userExist("Mario"));
+    }
+}
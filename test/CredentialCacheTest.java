@@ -0,0 +1,106 @@
+import SecureContainer.CredentialCache;
+import SecureContainer.Exceptions.CredentialException;
+import SecureContainer.Exceptions.IllegalInvocationException;
+import SecureContainer.ListSecureDataContainer;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.User;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialCacheTest {
+
+    @Test
+    void constructor() {
+        //Controllo dei requisiti
+        assertThrows(IllegalArgumentException.class,() -> new CredentialCache(0,10));
+        assertThrows(IllegalArgumentException.class,() -> new CredentialCache(1000,0));
+    }
+
+    @Test
+    void auth() {
+        CredentialCache cache = new CredentialCache(60000,10);
+        User u1 = new User("Mario","pwd");
+        //Controllo dei requisiti
+        assertThrows(NullPointerException.class,() -> cache.auth(null,"pwd"));
+        assertThrows(NullPointerException.class,() -> cache.auth(u1,null));
+        assertThrows(IllegalArgumentException.class,() -> cache.auth(u1,""));
+        assertThrows(IllegalInvocationException.class,() -> cache.auth(new User("Luigi"),"pwd"));
+
+        //Una password errata non viene mai memorizzata
+        assertFalse(cache.auth(u1,"pwd_err"));
+        assertEquals(0, cache.size());
+        //La prima verifica corretta non è in cache, le successive sì
+        assertTrue(cache.auth(u1,"pwd"));
+        assertEquals(0, cache.getHits());
+        assertTrue(cache.auth(u1,"pwd"));
+        assertTrue(cache.auth(u1,"pwd"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.size());
+        //Una password errata non è risolta dalla cache
+        assertFalse(cache.auth(u1,"PWD"));
+        //Il cambio di password invalida la verifica memorizzata
+        u1.changePassword("pwd","pwd_new");
+        assertFalse(cache.auth(u1,"pwd"));
+        assertTrue(cache.auth(u1,"pwd_new"));
+        //Rimozione esplicita
+        cache.invalidate("Mario");
+        assertEquals(0, cache.size());
+        long misses = cache.getMisses();
+        assertTrue(cache.auth(u1,"pwd_new"));
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    void eviction() throws InterruptedException {
+        //Rimozione per dimensione: viene rimossa la voce usata meno di recente
+        CredentialCache cache = new CredentialCache(60000,2);
+        User u1 = new User("Mario","pwd");
+        User u2 = new User("Luigi","pwd");
+        User u3 = new User("Peach","pwd");
+        cache.auth(u1,"pwd");
+        cache.auth(u2,"pwd");
+        cache.auth(u1,"pwd");
+        cache.auth(u3,"pwd");
+        assertEquals(2, cache.size());
+        long hits = cache.getHits();
+        cache.auth(u1,"pwd");
+        assertEquals(hits + 1, cache.getHits());
+        cache.auth(u2,"pwd");
+        assertEquals(hits + 1, cache.getHits());
+
+        //Rimozione per scadenza
+        CredentialCache shortCache = new CredentialCache(50,10);
+        shortCache.auth(u1,"pwd");
+        Thread.sleep(100);
+        shortCache.auth(u1,"pwd");
+        assertEquals(0, shortCache.getHits());
+    }
+
+    @Test
+    void containers() {
+        MapSecureDataContainer<Exam_SecureWrap> map = new MapSecureDataContainer<>("container1_dump.ser");
+        ListSecureDataContainer<Exam_SecureWrap> list = new ListSecureDataContainer<>("container2_dump.ser");
+        assertNull(map.getCredentialCache());
+        map.setCredentialCache(new CredentialCache(60000,10));
+        list.setCredentialCache(new CredentialCache(60000,10));
+
+        map.createUser("Mario","pwd");
+        list.createUser("Mario","pwd");
+        assertTrue(map.userAuth("Mario","pwd"));
+        assertTrue(map.userAuth("Mario","pwd"));
+        assertFalse(map.userAuth("Mario","pwd_err"));
+        assertEquals(1, map.getCredentialCache().getHits());
+        assertTrue(list.userAuth("Mario","pwd"));
+        assertTrue(list.userAuth("Mario","pwd"));
+        assertEquals(1, list.getCredentialCache().getHits());
+
+        //La rimozione dell'utente invalida la verifica memorizzata
+        map.removeUser("Mario","pwd");
+        list.removeUser("Mario","pwd");
+        assertEquals(0, map.getCredentialCache().size());
+        assertEquals(0, list.getCredentialCache().size());
+        assertThrows(CredentialException.class,() -> map.getSize("Mario","pwd"));
+        assertThrows(CredentialException.class,() -> list.getSize("Mario","pwd"));
+    }
+}
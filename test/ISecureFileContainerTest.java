@@ -2,9 +2,15 @@ import SecureContainer.Exceptions.CredentialException;
 import SecureContainer.Exceptions.DuplicatedUserException;
 import SecureContainer.Exceptions.NoAccessException;
 import SecureContainer.Exceptions.UnknownUserException;
+import SecureContainer.AccessLevel;
+import SecureContainer.BatchResult;
+import SecureContainer.ConcurrentSecureDataContainer;
 import SecureContainer.ISecureFileContainer;
+import SecureContainer.IndexedSecureDataContainer;
 import SecureContainer.ListSecureDataContainer;
 import SecureContainer.MapSecureDataContainer;
+import SecureContainer.Session;
+import SecureContainer.ShardedSecureFileContainer;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -15,8 +21,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -69,6 +78,15 @@ class ISecureFileContainerTest {
             case 2:
                 data = new ListSecureDataContainer<>(testFolderPath + "/container2_dump.ser");
                 break;
+            case 3:
+                data = new ConcurrentSecureDataContainer<>(testFolderPath + "/container3_dump.ser");
+                break;
+            case 4:
+                data = new IndexedSecureDataContainer<>(testFolderPath + "/container4_dump.ser");
+                break;
+            case 5:
+                data = new ShardedSecureFileContainer<>(testFolderPath + "/container5_dump.ser", 4);
+                break;
             default:
                 throw new IllegalArgumentException(p_implementation + "doesn't identify an implementation");
         }
@@ -82,7 +100,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void createUser(int p_implementation) {
         createContainer(p_implementation);
 
@@ -100,7 +118,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void removeUser(int p_implementation) {
         createContainer(p_implementation);
 
@@ -120,7 +138,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void getSize(int p_implementation) throws IOException {
         createContainer(p_implementation);
 
@@ -145,7 +163,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void put(int p_implementation) throws IOException, ClassNotFoundException {
         createContainer(p_implementation);
 
@@ -173,7 +191,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void get(int p_implementation) throws IOException, ClassNotFoundException {
         createContainer(p_implementation);
 
@@ -208,7 +226,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void remove(int p_implementation) throws IOException {
         createContainer(p_implementation);
 
@@ -247,7 +265,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void copy(int p_implementation) throws IOException, ClassNotFoundException {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -288,7 +306,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void shareR(int p_implementation) throws IOException, ClassNotFoundException {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -331,7 +349,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void shareW(int p_implementation) throws IOException, ClassNotFoundException {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -377,7 +395,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void getIterator(int p_implementation) throws IOException {
         createContainer(p_implementation);
 
@@ -406,14 +424,153 @@ class ISecureFileContainerTest {
         assertThrows(CredentialException.class,() -> data.getIterator("Mario","pwd_err"));
 
         Iterator<Exam_SecureWrap> iterator = data.getIterator("Mario","pwd");
+        int count = 0;
         while (iterator.hasNext()){
             Exam_SecureWrap cur = iterator.next();
             assertTrue(mario_exams.contains(cur));
+            count++;
+        }
+        assertEquals(data.getSize("Mario","pwd"), count);
+        assertThrows(NoSuchElementException.class, iterator::next);
+        assertThrows(UnsupportedOperationException.class, iterator::remove);
+
+        //Dopo la rimozione di un dato l'iteratore visita solo i dati rimanenti
+        data.remove("Mario","pwd",pr2_mario);
+        iterator = data.getIterator("Mario","pwd");
+        assertTrue(iterator.hasNext());
+        assertEquals(analisi_mario, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertEquals(1, data.getSize("Mario","pwd"));
+        assertEquals(2, data.getSize("Luigi","pwd"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void getSharedWithMe(int p_implementation) throws IOException {
+        createContainer(p_implementation);
+
+        data.createUser("Mario", "pwd");
+        data.createUser("Luigi", "pwd");
+        data.createUser("Peach", "pwd");
+        Exam_SecureWrap analisi_mario = new Exam_SecureWrap(testFolderPath + "/exam1.ser","Analisi",30);
+        Exam_SecureWrap pr2_mario = new Exam_SecureWrap(testFolderPath + "/exam2.ser","PR2",23);
+        Exam_SecureWrap analisi_peach = new Exam_SecureWrap(testFolderPath + "/exam3.ser","Analisi",28);
+
+        data.put("Mario","pwd",analisi_mario);
+        data.put("Mario","pwd",pr2_mario);
+        data.put("Peach","pwd",analisi_peach);
+
+        assertThrows(NullPointerException.class,() -> data.getSharedWithMe(null,"pwd"));
+        assertThrows(NullPointerException.class,() -> data.getSharedWithMe("Luigi",null));
+        assertThrows(IllegalArgumentException.class,() -> data.getSharedWithMe("","pwd"));
+        assertThrows(CredentialException.class,() -> data.getSharedWithMe("Luigi","pwd_err"));
+
+        //Nessun dato condiviso
+        assertFalse(data.getSharedWithMe("Luigi","pwd").hasNext());
+
+        data.shareR("Mario","pwd","Luigi",analisi_mario);
+        data.shareW("Mario","pwd","Luigi",pr2_mario);
+        data.shareW("Peach","pwd","Luigi",analisi_peach);
+        //Un secondo shareR sullo stesso dato aggiorna il livello di accesso senza duplicare il dato
+        data.shareR("Peach","pwd","Luigi",analisi_peach);
+
+        Set<Exam_SecureWrap> shared = new HashSet<>();
+        Iterator<Exam_SecureWrap> iterator = data.getSharedWithMe("Luigi","pwd");
+        while (iterator.hasNext()) assertTrue(shared.add(iterator.next()));
+        assertEquals(Set.of(analisi_mario, pr2_mario, analisi_peach), shared);
+        assertThrows(NoSuchElementException.class, iterator::next);
+        assertThrows(UnsupportedOperationException.class, iterator::remove);
+        //I dati propri non sono condivisi con se stessi
+        assertFalse(data.getSharedWithMe("Mario","pwd").hasNext());
+
+        //I dati condivisi in sola lettura sono restituiti come copia, quelli in scrittura per riferimento
+        iterator = data.getSharedWithMe("Luigi","pwd");
+        while (iterator.hasNext()) {
+            Exam_SecureWrap cur = iterator.next();
+            if(cur.equals(pr2_mario)) assertSame(pr2_mario, cur);
+            else assertNotSame(cur.equals(analisi_mario) ? analisi_mario : analisi_peach, cur);
         }
+
+        //Rimozione di un dato condiviso
+        data.remove("Mario","pwd",pr2_mario);
+        shared.clear();
+        iterator = data.getSharedWithMe("Luigi","pwd");
+        while (iterator.hasNext()) shared.add(iterator.next());
+        assertEquals(Set.of(analisi_mario, analisi_peach), shared);
+
+        //Rimozione del proprietario di un dato condiviso
+        data.removeUser("Peach","pwd");
+        iterator = data.getSharedWithMe("Luigi","pwd");
+        assertEquals(analisi_mario, iterator.next());
+        assertFalse(iterator.hasNext());
+
+        //Rimozione di un utente con cui erano condivisi dei dati
+        data.removeUser("Luigi","pwd");
+        assertThrows(UnknownUserException.class,() -> data.shareR("Mario","pwd","Luigi",analisi_mario));
+        data.createUser("Luigi", "pwd");
+        assertFalse(data.getSharedWithMe("Luigi","pwd").hasNext());
+        assertThrows(NoAccessException.class,() -> data.get("Luigi","pwd",analisi_mario));
+
+        //Variante basata su sessione
+        Session s = data.login("Luigi","pwd");
+        data.shareW("Mario","pwd","Luigi",analisi_mario);
+        iterator = data.getSharedWithMe(s);
+        assertSame(analisi_mario, iterator.next());
+        assertFalse(iterator.hasNext());
+        data.logout(s);
+        assertThrows(CredentialException.class,() -> data.getSharedWithMe(s));
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void getSnapshot(int p_implementation) throws IOException, ClassNotFoundException {
+        createContainer(p_implementation);
+        data.createUser("Mario", "pwd");
+        data.createUser("Luigi", "pwd");
+        data.createUser("Peach", "pwd");
+        Exam_SecureWrap analisi_mario = new Exam_SecureWrap(testFolderPath + "/exam1.ser","Analisi",30);
+        Exam_SecureWrap not_inserted = new Exam_SecureWrap(testFolderPath + "/exam2.ser","PR2",28);
+        data.put("Mario","pwd",analisi_mario);
+        data.shareR("Mario","pwd","Luigi",analisi_mario);
+
+        assertThrows(NullPointerException.class,() -> data.getSnapshot(null,"pwd",analisi_mario));
+        assertThrows(NullPointerException.class,() -> data.getSnapshot("Luigi",null,analisi_mario));
+        assertThrows(NullPointerException.class,() -> data.getSnapshot("Luigi","pwd",null));
+        assertThrows(IllegalArgumentException.class,() -> data.getSnapshot("","pwd",analisi_mario));
+        assertThrows(CredentialException.class,() -> data.getSnapshot("Luigi","pwd_err",analisi_mario));
+        assertThrows(IllegalArgumentException.class,() -> data.getSnapshot("Luigi","pwd",not_inserted));
+        assertThrows(NoAccessException.class,() -> data.getSnapshot("Peach","pwd",analisi_mario));
+
+        //La copia in sola lettura è condivisa tra le letture e non coincide con il dato contenuto nel container
+        Exam_SecureWrap snapshot = data.getSnapshot("Luigi","pwd",analisi_mario);
+        assertEquals(analisi_mario, snapshot);
+        assertEquals(30, snapshot.grade);
+        assertSame(snapshot, data.getSnapshot("Luigi","pwd",analisi_mario));
+        assertSame(snapshot, data.getSnapshot("Mario","pwd",analisi_mario));
+        Session s = data.login("Luigi","pwd");
+        assertSame(snapshot, data.getSnapshot(s,analisi_mario));
+        Exam_SecureWrap stored = data.get("Mario","pwd",analisi_mario);
+        assertNotSame(stored, data.getSnapshot("Luigi","pwd",analisi_mario));
+
+        //Le modifiche sono visibili dopo la scrittura su disco
+        snapshot = data.getSnapshot("Luigi","pwd",analisi_mario);
+        stored.grade = 18;
+        assertEquals(30, data.getSnapshot("Luigi","pwd",analisi_mario).grade);
+        data.writeFileOnDisk("Mario","pwd",analisi_mario);
+        Exam_SecureWrap updated = data.getSnapshot(s,analisi_mario);
+        assertNotSame(snapshot, updated);
+        assertEquals(18, updated.grade);
+        assertEquals(30, snapshot.grade);
+
+        //Dopo la rimozione del dato la copia non è più accessibile
+        data.remove("Mario","pwd",analisi_mario);
+        assertThrows(IllegalArgumentException.class,() -> data.getSnapshot(s,analisi_mario));
+        data.logout(s);
+        assertThrows(CredentialException.class,() -> data.getSnapshot(s,analisi_mario));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void writeFileOnDisk(int p_implementation) throws IOException, ClassNotFoundException {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -448,7 +605,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void readFileFromDisk(int p_implementation) throws IOException, ClassNotFoundException {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -489,7 +646,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void writeContainerOnDisk(int p_implementation) throws IOException {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -519,7 +676,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void readContainerFromDisk(int p_implementation) throws IOException {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -547,10 +704,20 @@ class ISecureFileContainerTest {
         assertFalse(data.readContainerFromDisk("Luca","Diavolo!"));
         assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
         assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+
+        //Le sessioni degli utenti assenti dal documento letto non sono più valide
+        data.createUser("Peach", "pwd");
+        Session peach = data.login("Peach", "pwd");
+        Session mario = data.login("Mario", "pwd");
+        assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+        assertThrows(CredentialException.class,() -> data.getSize(peach));
+        assertThrows(CredentialException.class,() -> data.put(peach, new Exam_SecureWrap(testFolderPath + "/exam5.ser","Fisica",18)));
+        assertFalse(data.userExist("Peach"));
+        assertEquals(2, data.getSize(mario));
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void userExist(int p_implementation) {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -567,7 +734,7 @@ class ISecureFileContainerTest {
     }
 
     @ParameterizedTest
-    @ValueSource(ints = {1, 2})
+    @ValueSource(ints = {1, 2, 3, 4, 5})
     void userAuth(int p_implementation) {
         createContainer(p_implementation);
         data.createUser("Mario", "pwd");
@@ -583,4 +750,220 @@ class ISecureFileContainerTest {
         assertTrue(data.userAuth("Mario","pwd"));
         assertTrue(data.userAuth("Luigi","pwd"));
     }
-}
\ No newline at end of file
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void login(int p_implementation) throws IOException, ClassNotFoundException {
+        createContainer(p_implementation);
+        data.createUser("Mario", "pwd");
+        data.createUser("Luigi", "pwd");
+
+        assertThrows(NullPointerException.class,()->data.login(null,"pwd"));
+        assertThrows(NullPointerException.class,()->data.login("Mario",null));
+        assertThrows(IllegalArgumentException.class,()->data.login("","pwd"));
+        assertThrows(IllegalArgumentException.class,()->data.login("Mario",""));
+        assertThrows(CredentialException.class,()->data.login("Mario","pwd_err"));
+        assertThrows(CredentialException.class,()->data.login("Mario_err","pwd"));
+
+        Session mario = data.login("Mario","pwd");
+        Session luigi = data.login("Luigi","pwd");
+        assertFalse(mario.isExpired());
+        assertNotEquals(mario, luigi);
+
+        Exam_SecureWrap analisi = new Exam_SecureWrap(testFolderPath + "/exam1.ser","Analisi",30);
+        Exam_SecureWrap pr2 = new Exam_SecureWrap(testFolderPath + "/exam2.ser","PR2",30);
+        assertThrows(NullPointerException.class,()->data.put((Session) null, analisi));
+        assertThrows(NullPointerException.class,()->data.put(mario, null));
+        assertTrue(data.put(mario, analisi));
+        assertFalse(data.put(mario, analisi));
+        assertTrue(data.put(mario, pr2));
+        //Le operazioni con sessione e con credenziali operano sugli stessi dati
+        assertEquals(2, data.getSize(mario));
+        assertEquals(2, data.getSize("Mario","pwd"));
+        assertEquals(0, data.getSize(luigi));
+
+        assertThrows(NoAccessException.class,()->data.get(luigi, analisi));
+        assertThrows(NoAccessException.class,()->data.remove(luigi, analisi));
+        assertThrows(IllegalArgumentException.class,()->data.shareR(mario, "Mario", analisi));
+        assertThrows(UnknownUserException.class,()->data.shareR(mario, "Mario_err", analisi));
+        data.shareR(mario, "Luigi", analisi);
+        assertEquals(analisi, data.get(luigi, analisi));
+        data.shareW(mario, "Luigi", pr2);
+        assertEquals(data.get(mario, pr2), data.get(luigi, pr2));
+
+        data.copy(mario, analisi, testFolderPath + "/exam3.ser");
+        assertEquals(3, data.getSize(mario));
+        assertNotNull(data.getIterator(mario));
+        assertEquals(analisi, data.remove(mario, analisi));
+        assertEquals(2, data.getSize(mario));
+
+        //Dopo il logout la sessione non è più valida
+        data.logout(luigi);
+        assertThrows(CredentialException.class,()->data.getSize(luigi));
+        assertThrows(CredentialException.class,()->data.get(luigi, pr2));
+        //Una sessione aperta su un altro container non è valida
+        ISecureFileContainer<Exam_SecureWrap> other = new MapSecureDataContainer<>(testFolderPath + "/container_other.ser");
+        assertThrows(CredentialException.class,()->other.getSize(mario));
+        //La rimozione dell'utente invalida le sue sessioni
+        data.removeUser("Mario","pwd");
+        assertThrows(CredentialException.class,()->data.getSize(mario));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void manyShares(int p_implementation) throws IOException {
+        createContainer(p_implementation);
+        int nUsers = 6, nFiles = 4;
+        Session[] sessions = new Session[nUsers];
+        Exam_SecureWrap[][] exams = new Exam_SecureWrap[nUsers][nFiles];
+        for (int u = 0; u < nUsers; u++) {
+            data.createUser("user" + u, "pwd");
+            sessions[u] = data.login("user" + u, "pwd");
+            for (int f = 0; f < nFiles; f++) {
+                exams[u][f] = new Exam_SecureWrap(testFolderPath + "/exam" + u + "_" + f + ".ser", "Esame" + f, 18 + f);
+                assertTrue(data.put(sessions[u], exams[u][f]));
+            }
+        }
+        //Ogni utente condivide ogni suo dato con tutti gli altri utenti; una nuova condivisione sostituisce la precedente
+        for (int u = 0; u < nUsers; u++) {
+            for (int f = 0; f < nFiles; f++) {
+                for (int o = 0; o < nUsers; o++) {
+                    if (o == u) continue;
+                    data.shareR(sessions[u], "user" + o, exams[u][f]);
+                    if (f % 2 == 0) data.shareW(sessions[u], "user" + o, exams[u][f]);
+                }
+            }
+        }
+        for (int u = 0; u < nUsers; u++) assertEquals((nUsers - 1) * nFiles, countShared(sessions[u]));
+        assertEquals(18, data.getSnapshot(sessions[1], exams[0][0]).grade);
+
+        //La rimozione di un dato e di un utente rimuove i relativi accessi
+        data.remove(sessions[0], exams[0][1]);
+        assertThrows(IllegalArgumentException.class,()->data.getSnapshot(sessions[1], exams[0][1]));
+        data.removeUser("user2", "pwd");
+        for (int u = 0; u < nUsers; u++) {
+            if (u == 2) continue;
+            int expected = (nUsers - 2) * nFiles - (u == 0 ? 0 : 1);
+            assertEquals(expected, countShared(sessions[u]));
+        }
+        assertThrows(IllegalArgumentException.class,()->data.getSnapshot(sessions[1], exams[2][0]));
+
+        //Gli accessi vengono memorizzati su disco con il container
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+        data.remove(sessions[1], exams[1][1]);
+        assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+        Session user3 = data.login("user3", "pwd");
+        assertEquals((nUsers - 2) * nFiles - 1, countShared(user3));
+        assertEquals(19, data.getSnapshot(user3, exams[1][1]).grade);
+        data.createUser("user2", "pwd");
+        assertEquals(0, countShared(data.login("user2", "pwd")));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void manyRemovals(int p_implementation) throws IOException {
+        createContainer(p_implementation);
+        int nFiles = 64;
+        data.createUser("Mario", "pwd");
+        data.createUser("Luigi", "pwd");
+        Session mario = data.login("Mario", "pwd");
+        Session luigi = data.login("Luigi", "pwd");
+        Exam_SecureWrap[] exams = new Exam_SecureWrap[nFiles];
+        for (int f = 0; f < nFiles; f++) {
+            exams[f] = new Exam_SecureWrap(testFolderPath + "/exam" + f + ".ser", "Esame" + f, f % 31);
+            assertTrue(data.put(f % 4 == 0 ? luigi : mario, exams[f]));
+        }
+        data.shareR(luigi, "Mario", exams[nFiles - 4]);
+
+        //Rimozioni ripetute: i dati rimanenti restano accessibili
+        Set<String> expected = new HashSet<>();
+        for (int f = 1; f < nFiles; f++) {
+            if (f % 4 != 0 && f % 8 != 1) data.remove(mario, exams[f]);
+            else if (f % 4 != 0) expected.add("Esame" + f);
+        }
+        assertThrows(IllegalArgumentException.class,()->data.getSnapshot(mario, exams[2]));
+        assertFalse(data.put(luigi, exams[0]));
+        assertTrue(data.put(luigi, exams[2]));
+        Set<String> names = new HashSet<>();
+        for (Iterator<Exam_SecureWrap> it = data.getIterator(mario); it.hasNext(); ) names.add(it.next().name);
+        assertEquals(expected, names);
+        assertEquals((nFiles - 4) % 31, data.getSnapshot(mario, exams[nFiles - 4]).grade);
+
+        //La rimozione di un utente rimuove tutti i suoi dati; il container viene memorizzato su disco
+        data.removeUser("Luigi", "pwd");
+        assertEquals(nFiles / 8, data.getSize(mario));
+        assertEquals(0, countShared(mario));
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+        assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+        Session reread = data.login("Mario", "pwd");
+        assertEquals(nFiles / 8, data.getSize(reread));
+        assertEquals(9 % 31, data.getSnapshot(reread, exams[9]).grade);
+        assertTrue(data.put(reread, exams[0]));
+        assertEquals(nFiles / 8 + 1, data.getSize(reread));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void batchOperations(int p_implementation) throws IOException {
+        createContainer(p_implementation);
+        data.createUser("Mario", "pwd");
+        data.createUser("Luigi", "pwd");
+        Exam_SecureWrap analisi = new Exam_SecureWrap(testFolderPath + "/analisi.ser","Analisi",30);
+        Exam_SecureWrap pr2 = new Exam_SecureWrap(testFolderPath + "/pr2.ser","PR2",28);
+        Exam_SecureWrap fisica = new Exam_SecureWrap(testFolderPath + "/fisica.ser","Fisica",25);
+        Exam_SecureWrap missing = new Exam_SecureWrap(testFolderPath + "/no_folder/missing.ser","Missing",18);
+        Exam_SecureWrap luigiExam = new Exam_SecureWrap(testFolderPath + "/luigi.ser","Luigi",27);
+        assertTrue(data.put("Luigi","pwd",luigiExam));
+
+        //Controllo dei requisiti
+        assertThrows(NullPointerException.class,() -> data.putAll("Mario","pwd",null));
+        assertThrows(CredentialException.class,() -> data.putAll("Mario","pwd_err",Collections.singletonList(analisi)));
+        assertThrows(NullPointerException.class,() -> data.shareAll("Mario","pwd","Luigi",Collections.singletonList(analisi),null));
+
+        //Ogni elemento ha il proprio esito: gli errori non interrompono gli altri inserimenti
+        BatchResult<Boolean> put = data.putAll("Mario","pwd",Arrays.asList(analisi, null, pr2, analisi, missing, luigiExam, fisica));
+        assertEquals(7, put.size());
+        assertEquals(2, put.getFailureCount());
+        assertTrue(put.get(0));
+        assertTrue(put.getError(1) instanceof NullPointerException);
+        assertThrows(IllegalStateException.class,() -> put.get(1));
+        assertTrue(put.get(2));
+        assertFalse(put.get(3)); //già inserito dallo stesso batch
+        assertTrue(put.getError(4) instanceof IOException);
+        assertFalse(put.get(5)); //già presente nel container
+        assertTrue(put.get(6));
+        assertEquals(3, data.getSize("Mario","pwd"));
+        assertTrue(new File(fisica.getFilePath()).exists());
+
+        Session mario = data.login("Mario","pwd");
+        BatchResult<Exam_SecureWrap> get = data.getAll(mario, Arrays.asList(pr2, luigiExam, missing));
+        assertEquals(28, get.get(0).grade);
+        assertTrue(get.getError(1) instanceof NoAccessException);
+        assertTrue(get.getError(2) instanceof IllegalArgumentException);
+
+        BatchResult<Void> share = data.shareAll(mario, "Luigi", Arrays.asList(analisi, luigiExam, fisica), AccessLevel.R);
+        assertTrue(share.isSuccess(0));
+        assertTrue(share.getError(1) instanceof NoAccessException);
+        assertTrue(share.isSuccess(2));
+        assertEquals(2, countShared(data.login("Luigi","pwd")));
+        assertTrue(data.shareAll(mario, "Peach", Collections.singletonList(pr2), AccessLevel.W).getError(0) instanceof UnknownUserException);
+
+        BatchResult<Exam_SecureWrap> removed = data.removeAll("Mario","pwd",Arrays.asList(analisi, analisi, luigiExam));
+        assertEquals("Analisi", removed.get(0).name);
+        assertTrue(removed.getError(1) instanceof IllegalArgumentException);
+        assertTrue(removed.getError(2) instanceof NoAccessException);
+        assertEquals(2, data.getSize(mario));
+        assertEquals(1, countShared(data.login("Luigi","pwd")));
+
+        //Una sessione non valida interrompe il batch
+        data.logout(mario);
+        assertThrows(CredentialException.class,() -> data.getAll(mario, Collections.singletonList(pr2)));
+        assertThrows(CredentialException.class,() -> data.putAll(mario, Collections.emptyList()));
+    }
+
+    private static int countShared(Session s) {
+        int count = 0;
+        for (Iterator<Exam_SecureWrap> it = data.getSharedWithMe(s); it.hasNext(); it.next()) count++;
+        return count;
+    }
+}
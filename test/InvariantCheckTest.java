@@ -0,0 +1,85 @@
+import SecureContainer.ISecureFileContainer;
+import SecureContainer.InvariantCheck;
+import SecureContainer.ListSecureDataContainer;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.Session;
+import SecureContainer.Exceptions.NoAccessException;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvariantCheckTest {
+
+    @TempDir
+    Path testFolder;
+
+    /*
+    Crea un container vuoto dell'implementazione p_implementation (1 = Map, 2 = List) con modalità di verifica p_check
+     */
+    private ISecureFileContainer<Exam_SecureWrap> createContainer(int p_implementation, InvariantCheck p_check) {
+        String path = testFolder + "/container_dump.ser";
+        if (p_implementation == 1) {
+            MapSecureDataContainer<Exam_SecureWrap> data = new MapSecureDataContainer<>(path);
+            assertEquals(InvariantCheck.INCREMENTAL, data.getInvariantCheck());
+            data.setInvariantCheck(p_check);
+            assertEquals(p_check, data.getInvariantCheck());
+            return data;
+        }
+        ListSecureDataContainer<Exam_SecureWrap> data = new ListSecureDataContainer<>(path);
+        assertEquals(InvariantCheck.INCREMENTAL, data.getInvariantCheck());
+        data.setInvariantCheck(p_check);
+        assertEquals(p_check, data.getInvariantCheck());
+        return data;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2})
+    void setInvariantCheck(int p_implementation) {
+        assertThrows(NullPointerException.class,() -> createContainer(p_implementation, null));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"1, FULL", "1, INCREMENTAL", "1, SAMPLED", "2, FULL", "2, INCREMENTAL", "2, SAMPLED"})
+    void operations(int p_implementation, InvariantCheck p_check) throws IOException, ClassNotFoundException {
+        //Le operazioni rispettano IR con ogni modalità di verifica (le asserzioni sono abilitate durante i test)
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, p_check);
+        data.createUser("Mario","pwd");
+        data.createUser("Luigi","pwd");
+        data.createUser("Peach","pwd");
+        Session mario = data.login("Mario","pwd");
+        Session luigi = data.login("Luigi","pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        Exam_SecureWrap other = new Exam_SecureWrap(testFolder + "/other.ser","PR2",28);
+        assertTrue(data.put(mario, exam));
+        assertTrue(data.put(luigi, other));
+        data.copy(mario, exam, testFolder + "/exam_copy.ser");
+        data.shareR(mario, "Luigi", exam);
+        data.shareW(mario, "Luigi", exam);
+        data.shareR(luigi, "Mario", other);
+        data.shareR(luigi, "Peach", other);
+        assertEquals(30, data.get(luigi, exam).grade);
+        assertEquals(28, data.getSnapshot(mario, other).grade);
+        data.writeFileOnDisk("Luigi","pwd",exam);
+        data.readFileFromDisk("Mario","pwd",other);
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+
+        data.remove(mario, exam);
+        assertThrows(IllegalArgumentException.class,() -> data.getSnapshot(luigi, exam));
+        data.removeUser("Luigi","pwd");
+        assertThrows(NoAccessException.class,() -> data.getSnapshot("Peach","pwd", new Exam_SecureWrap(testFolder + "/exam_copy.ser","Analisi",30)));
+        assertEquals(1, data.getSize(mario));
+
+        //Dopo la lettura del container la verifica successiva è completa
+        assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+        assertEquals(2, data.getSize("Mario","pwd"));
+        assertEquals(28, data.getSnapshot("Peach","pwd",other).grade);
+        data.removeUser("Luigi","pwd");
+        assertEquals(2, data.getSize("Mario","pwd"));
+    }
+}
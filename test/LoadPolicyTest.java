@@ -0,0 +1,162 @@
+import SecureContainer.CompactSecureFileCodec;
+import SecureContainer.ConcurrentSecureDataContainer;
+import SecureContainer.ISecureFileContainer;
+import SecureContainer.ListSecureDataContainer;
+import SecureContainer.LoadPolicy;
+import SecureContainer.MapSecureDataContainer;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadPolicyTest {
+
+    @TempDir
+    Path testFolder;
+
+    /*
+    Crea un container vuoto dell'implementazione p_implementation che utilizza la politica di caricamento p_policy
+     */
+    private ISecureFileContainer<Exam_SecureWrap> createContainer(int p_implementation, LoadPolicy p_policy) {
+        String path = testFolder + "/container_dump.ser";
+        switch (p_implementation) {
+            case 1:
+                MapSecureDataContainer<Exam_SecureWrap> map = new MapSecureDataContainer<>(path);
+                assertEquals(LoadPolicy.ALWAYS, map.getLoadPolicy());
+                assertThrows(NullPointerException.class,() -> map.setLoadPolicy(null));
+                map.setLoadPolicy(p_policy);
+                return map;
+            case 2:
+                ListSecureDataContainer<Exam_SecureWrap> list = new ListSecureDataContainer<>(path);
+                assertEquals(LoadPolicy.ALWAYS, list.getLoadPolicy());
+                assertThrows(NullPointerException.class,() -> list.setLoadPolicy(null));
+                list.setLoadPolicy(p_policy);
+                return list;
+            default:
+                ConcurrentSecureDataContainer<Exam_SecureWrap> concurrent = new ConcurrentSecureDataContainer<>(path);
+                assertEquals(LoadPolicy.ALWAYS, concurrent.getLoadPolicy());
+                assertThrows(NullPointerException.class,() -> concurrent.setLoadPolicy(null));
+                concurrent.setLoadPolicy(p_policy);
+                return concurrent;
+        }
+    }
+
+    /*
+    Modifica il documento su disco di exam senza passare dal container, spostando in avanti l'istante di ultima modifica
+     */
+    private static void writeExternally(Exam_SecureWrap exam, int grade) throws IOException {
+        Path doc = Paths.get(exam.getFilePath());
+        FileTime before = Files.getLastModifiedTime(doc);
+        new CompactSecureFileCodec().write(new Exam_SecureWrap(exam.getFilePath(), exam.name, grade));
+        Files.setLastModifiedTime(doc, FileTime.fromMillis(before.toMillis() + 10000));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void always(int p_implementation) throws IOException, ClassNotFoundException {
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, LoadPolicy.ALWAYS);
+        data.createUser("Mario","pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        data.put("Mario","pwd",exam);
+
+        //Le modifiche non scritte su disco vengono perse alla get successiva
+        data.get("Mario","pwd",exam).grade = 18;
+        assertEquals(30, data.get("Mario","pwd",exam).grade);
+        writeExternally(exam, 25);
+        assertEquals(25, data.get("Mario","pwd",exam).grade);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void lazy(int p_implementation) throws IOException, ClassNotFoundException {
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, LoadPolicy.LAZY);
+        data.createUser("Mario","pwd");
+        data.createUser("Luigi","pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        data.put("Mario","pwd",exam);
+        data.shareR("Mario","pwd","Luigi",exam);
+
+        //Il dato inserito è caricato: get non legge da disco
+        Exam_SecureWrap stored = data.get("Mario","pwd",exam);
+        stored.grade = 18;
+        assertSame(stored, data.get("Mario","pwd",exam));
+        assertEquals(18, data.get("Luigi","pwd",exam).grade);
+        writeExternally(exam, 25);
+        assertEquals(18, data.get("Mario","pwd",exam).grade);
+
+        //readFileFromDisk rilegge sempre il dato
+        data.readFileFromDisk("Mario","pwd",exam);
+        assertEquals(25, data.get("Luigi","pwd",exam).grade);
+
+        //Dopo la lettura del container i dati vengono letti da disco alla prima get
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+        writeExternally(exam, 27);
+        assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+        stored = data.get("Mario","pwd",exam);
+        assertEquals(27, stored.grade);
+        writeExternally(exam, 28);
+        assertSame(stored, data.get("Mario","pwd",exam));
+        assertEquals(27, data.get("Luigi","pwd",exam).grade);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void validate(int p_implementation) throws IOException, ClassNotFoundException {
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, LoadPolicy.VALIDATE);
+        data.createUser("Mario","pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        data.put("Mario","pwd",exam);
+
+        //Il documento non è cambiato: get utilizza il contenuto in memoria
+        Exam_SecureWrap stored = data.get("Mario","pwd",exam);
+        stored.grade = 18;
+        assertSame(stored, data.get("Mario","pwd",exam));
+
+        //Il documento è stato modificato dopo l'ultimo caricamento: get lo rilegge
+        writeExternally(exam, 25);
+        Exam_SecureWrap reloaded = data.get("Mario","pwd",exam);
+        assertNotSame(stored, reloaded);
+        assertEquals(25, reloaded.grade);
+        assertSame(reloaded, data.get("Mario","pwd",exam));
+
+        //Le scritture del container aggiornano la versione del documento
+        reloaded.grade = 20;
+        data.writeFileOnDisk("Mario","pwd",exam);
+        assertSame(reloaded, data.get("Mario","pwd",exam));
+
+        //Se il documento non esiste più get non può validare il dato
+        Files.delete(Paths.get(exam.getFilePath()));
+        assertThrows(IOException.class,() -> data.get("Mario","pwd",exam));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    void eager(int p_implementation) throws IOException, ClassNotFoundException {
+        ISecureFileContainer<Exam_SecureWrap> data = createContainer(p_implementation, LoadPolicy.EAGER);
+        data.createUser("Mario","pwd");
+        Exam_SecureWrap exam = new Exam_SecureWrap(testFolder + "/exam.ser","Analisi",30);
+        Exam_SecureWrap other = new Exam_SecureWrap(testFolder + "/other.ser","PR2",28);
+        data.put("Mario","pwd",exam);
+        data.put("Mario","pwd",other);
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+
+        //readContainerFromDisk carica tutti i dati: in seguito get non accede al disco
+        writeExternally(exam, 25);
+        assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+        Files.delete(Paths.get(exam.getFilePath()));
+        assertEquals(25, data.get("Mario","pwd",exam).grade);
+
+        //I dati il cui documento non può essere letto vengono letti alla prima get
+        assertTrue(data.writeContainerOnDisk("Luca","Diavolo!"));
+        assertTrue(data.readContainerFromDisk("Luca","Diavolo!"));
+        assertThrows(IOException.class,() -> data.get("Mario","pwd",exam));
+        assertEquals(28, data.get("Mario","pwd",other).grade);
+    }
+}
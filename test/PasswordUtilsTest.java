@@ -1,6 +1,14 @@
 import SecureContainer.PasswordUtils;
+import SecureContainer.User;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class PasswordUtilsTest {
@@ -11,9 +19,11 @@ class PasswordUtilsTest {
         assertThrows(NullPointerException.class,() -> PasswordUtils.hashPassword(null));
         assertThrows(IllegalArgumentException.class,() -> PasswordUtils.hashPassword(""));
 
+        //Ogni hash utilizza un salt diverso e contiene i parametri con cui è stato calcolato
         String superSecurePassword = "password";
         String hashedPwd = PasswordUtils.hashPassword(superSecurePassword);
-        assertEquals(hashedPwd,PasswordUtils.hashPassword("password"));
+        assertNotEquals(hashedPwd,PasswordUtils.hashPassword("password"));
+        assertTrue(hashedPwd.startsWith(PasswordUtils.getIterations() + "$"));
     }
 
     @Test
@@ -29,7 +39,91 @@ class PasswordUtilsTest {
         String hashedPwd = PasswordUtils.hashPassword(superSecurePassword);
 
         assertTrue(PasswordUtils.verifyPassword("password",hashedPwd));
+        assertTrue(PasswordUtils.verifyPassword("password",PasswordUtils.hashPassword("password")));
         assertFalse(PasswordUtils.verifyPassword("Password",hashedPwd));
         assertFalse(PasswordUtils.verifyPassword(" password",hashedPwd));
+        //Hash non nel formato prodotto da hashPassword
+        assertFalse(PasswordUtils.verifyPassword("password","asd"));
+        assertFalse(PasswordUtils.verifyPassword("password","x$512$c2FsdA==$aGFzaA=="));
+    }
+
+    @Test
+    void concurrentVerify() throws InterruptedException {
+        //Ogni thread utilizza la propria istanza di SecretKeyFactory
+        int iterations = PasswordUtils.getIterations();
+        PasswordUtils.setIterations(1000);
+        try {
+            String hashedPwd = PasswordUtils.hashPassword("password");
+            List<Thread> threads = new ArrayList<>();
+            List<Boolean> results = Collections.synchronizedList(new ArrayList<>());
+            for (int i = 0; i < 8; i++) {
+                String candidate = i % 2 == 0 ? "password" : "Password";
+                threads.add(new Thread(() -> {
+                    for (int j = 0; j < 20; j++) results.add(PasswordUtils.verifyPassword(candidate,hashedPwd) == candidate.equals("password"));
+                }));
+            }
+            for (Thread t : threads) t.start();
+            for (Thread t : threads) t.join();
+            assertEquals(160, results.size());
+            assertFalse(results.contains(false));
+        } finally {
+            PasswordUtils.setIterations(iterations);
+        }
+    }
+
+    @Test
+    void iterations() {
+        int iterations = PasswordUtils.getIterations();
+        assertThrows(IllegalArgumentException.class,() -> PasswordUtils.setIterations(0));
+        String hashedPwd = PasswordUtils.hashPassword("password");
+        try {
+            //Gli hash calcolati con un numero di iterazioni diverso restano verificabili
+            PasswordUtils.setIterations(1000);
+            String cheapPwd = PasswordUtils.hashPassword("password");
+            assertTrue(cheapPwd.startsWith("1000$"));
+            assertTrue(PasswordUtils.verifyPassword("password",hashedPwd));
+            assertTrue(PasswordUtils.verifyPassword("password",cheapPwd));
+            assertTrue(new User("Mario","pwd").auth("pwd"));
+        } finally {
+            PasswordUtils.setIterations(iterations);
+        }
+        assertEquals(iterations, PasswordUtils.getIterations());
+    }
+
+    @Test
+    void verificationExecutor() throws InterruptedException {
+        assertThrows(IllegalArgumentException.class,() -> PasswordUtils.newVerificationExecutor(0,1));
+        assertThrows(IllegalArgumentException.class,() -> PasswordUtils.newVerificationExecutor(1,0));
+
+        String hashedPwd = PasswordUtils.hashPassword("password");
+        ExecutorService executor = PasswordUtils.newVerificationExecutor(1,1);
+        try {
+            PasswordUtils.setVerificationExecutor(executor);
+            assertSame(executor, PasswordUtils.getVerificationExecutor());
+            assertTrue(PasswordUtils.verifyPassword("password",hashedPwd));
+            assertFalse(PasswordUtils.verifyPassword("Password",hashedPwd));
+
+            //Executor occupato e coda piena: le verifiche ulteriori vengono rifiutate
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Runnable blocker = () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+            executor.execute(blocker);
+            started.await(); //il thread dell'executor è occupato
+            executor.execute(blocker); //la coda è piena
+            assertThrows(RejectedExecutionException.class,() -> PasswordUtils.verifyPassword("password",hashedPwd));
+            release.countDown();
+        } finally {
+            PasswordUtils.setVerificationExecutor(null);
+            executor.shutdownNow();
+        }
+        assertNull(PasswordUtils.getVerificationExecutor());
+        assertTrue(PasswordUtils.verifyPassword("password",hashedPwd));
     }
-}
\ No newline at end of file
+}
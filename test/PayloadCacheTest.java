@@ -0,0 +1,153 @@
+import SecureContainer.ISecureFileContainer;
+import SecureContainer.ListSecureDataContainer;
+import SecureContainer.LoadPolicy;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.PayloadCache;
+import SecureContainer.Session;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadCacheTest {
+
+    @TempDir
+    Path testFolder;
+
+    @Test
+    void constructor() {
+        //Controllo dei requisiti
+        assertThrows(IllegalArgumentException.class,() -> new PayloadCache<Exam_SecureWrap>(0));
+        assertThrows(IllegalArgumentException.class,() -> new PayloadCache<Exam_SecureWrap>(-1L, d -> 1));
+        assertThrows(NullPointerException.class,() -> new PayloadCache<Exam_SecureWrap>(10L, null));
+        assertEquals(Long.MAX_VALUE, new PayloadCache<Exam_SecureWrap>().getMaxWeight());
+    }
+
+    @Test
+    void eviction() {
+        PayloadCache<Exam_SecureWrap> cache = new PayloadCache<>(2);
+        assertThrows(NullPointerException.class,() -> cache.put(null));
+        assertThrows(NullPointerException.class,() -> cache.get(null));
+
+        Exam_SecureWrap a = new Exam_SecureWrap("a", "A", 18);
+        cache.put(a);
+        cache.put(new Exam_SecureWrap("b", "B", 19));
+        assertSame(a, cache.get(new Exam_SecureWrap("a"))); //a diventa il più recente
+        cache.put(new Exam_SecureWrap("c", "C", 20)); //rimuove b, il meno recente
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(new Exam_SecureWrap("z")));
+        assertEquals(1, cache.getMisses());
+
+        //Un dato rimosso dalla cache ma ancora in uso viene restituito e reinserito
+        cache.put(new Exam_SecureWrap("d", "D", 21));
+        cache.put(new Exam_SecureWrap("e", "E", 22)); //rimuove a, ancora referenziato
+        assertSame(a, cache.get(new Exam_SecureWrap("a")));
+        assertEquals(2, cache.size());
+
+        cache.remove(new Exam_SecureWrap("a"));
+        assertNull(cache.get(new Exam_SecureWrap("a")));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    void weight() {
+        PayloadCache<Exam_SecureWrap> cache = new PayloadCache<>(10L, d -> d.grade);
+        cache.put(new Exam_SecureWrap("a", "A", 4));
+        cache.put(new Exam_SecureWrap("b", "B", 4));
+        assertEquals(8, cache.getWeight());
+        cache.put(new Exam_SecureWrap("c", "C", 4)); //supera il peso massimo: rimuove a
+        assertEquals(8, cache.getWeight());
+        assertEquals(2, cache.size());
+        //Un dato più pesante del peso massimo resta l'unico nella cache
+        cache.put(new Exam_SecureWrap("d", "D", 30));
+        assertEquals(1, cache.size());
+        assertEquals(30, cache.getWeight());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2})
+    void boundedContainer(int p_implementation) throws Exception {
+        String path = testFolder + "/container_dump.ser";
+        ISecureFileContainer<Exam_SecureWrap> data;
+        PayloadCache<Exam_SecureWrap> cache = new PayloadCache<>(4);
+        if (p_implementation == 1) {
+            MapSecureDataContainer<Exam_SecureWrap> map = new MapSecureDataContainer<>(path);
+            map.setPayloadCache(cache);
+            map.setLoadPolicy(LoadPolicy.LAZY);
+            assertSame(cache, map.getPayloadCache());
+            data = map;
+        } else {
+            ListSecureDataContainer<Exam_SecureWrap> list = new ListSecureDataContainer<>(path);
+            list.setPayloadCache(cache);
+            list.setLoadPolicy(LoadPolicy.LAZY);
+            assertSame(cache, list.getPayloadCache());
+            data = list;
+        }
+        data.createUser("Mario", "pwd");
+        data.createUser("Luigi", "pwd");
+        Session s = data.login("Mario", "pwd");
+        int nFiles = 40;
+        for (int i = 0; i < nFiles; i++) {
+            assertTrue(data.put(s, new Exam_SecureWrap(testFolder + "/exam" + i + ".ser", "Esame" + i, 18 + i % 13)));
+        }
+        //Solo gli ultimi dati restano in memoria: gli altri vengono riletti da disco
+        assertTrue(cache.size() <= 4);
+        assertTrue(cache.getEvictions() > 0);
+        for (int i = 0; i < nFiles; i++) {
+            assertEquals(18 + i % 13, data.get(s, new Exam_SecureWrap(testFolder + "/exam" + i + ".ser")).grade);
+        }
+        assertTrue(cache.size() <= 4);
+
+        //Le modifiche ad un dato in uso non vengono perse anche se il dato viene rimosso dalla cache
+        Exam_SecureWrap first = data.get(s, new Exam_SecureWrap(testFolder + "/exam0.ser"));
+        first.grade = 30;
+        for (int i = 1; i < nFiles; i++) data.get(s, new Exam_SecureWrap(testFolder + "/exam" + i + ".ser"));
+        assertSame(first, data.get(s, first));
+        data.writeFileOnDisk(s, first);
+        assertEquals(30, data.getSnapshot(s, first).grade);
+
+        //Iteratori e condivisioni restituiscono il contenuto dei dati
+        data.shareR(s, "Luigi", new Exam_SecureWrap(testFolder + "/exam7.ser"));
+        Iterator<Exam_SecureWrap> shared = data.getSharedWithMe("Luigi", "pwd");
+        assertEquals("Esame7", shared.next().name);
+        int count = 0;
+        for (Iterator<Exam_SecureWrap> it = data.getIterator(s); it.hasNext(); count++) assertNotNull(it.next().name);
+        assertEquals(nFiles, count);
+
+        assertEquals("Esame3", data.remove(s, new Exam_SecureWrap(testFolder + "/exam3.ser")).name);
+        assertEquals(nFiles - 1, data.getSize(s));
+
+        //Lo snapshot del container si limita ai dati in memoria: gli altri vengono riletti da disco
+        assertTrue(data.writeContainerOnDisk("Luca", "Diavolo!"));
+        assertTrue(data.readContainerFromDisk("Luca", "Diavolo!"));
+        assertEquals(nFiles - 1, data.getSize("Mario", "pwd"));
+        assertEquals(30, data.get("Mario", "pwd", new Exam_SecureWrap(testFolder + "/exam0.ser")).grade);
+        assertEquals(18 + 25 % 13, data.get("Mario", "pwd", new Exam_SecureWrap(testFolder + "/exam25.ser")).grade);
+    }
+
+    @Test
+    void replaceCache() throws IOException {
+        MapSecureDataContainer<Exam_SecureWrap> data = new MapSecureDataContainer<>(testFolder + "/container_dump.ser");
+        assertThrows(NullPointerException.class,() -> data.setPayloadCache(null));
+        data.createUser("Mario", "pwd");
+        for (int i = 0; i < 10; i++) {
+            data.put("Mario", "pwd", new Exam_SecureWrap(testFolder + "/exam" + i + ".ser", "Esame" + i, 18 + i));
+        }
+        //Di default il contenuto di tutti i dati resta in memoria
+        assertEquals(10, data.getPayloadCache().size());
+        PayloadCache<Exam_SecureWrap> cache = new PayloadCache<>(3);
+        data.setPayloadCache(cache);
+        assertEquals(3, cache.size());
+        assertEquals(27, data.getSnapshot("Mario", "pwd", new Exam_SecureWrap(testFolder + "/exam9.ser")).grade);
+        assertEquals(18, data.getSnapshot("Mario", "pwd", new Exam_SecureWrap(testFolder + "/exam0.ser")).grade);
+    }
+}
@@ -0,0 +1,227 @@
+import SecureContainer.BatchResult;
+import SecureContainer.CompactSecureFileCodec;
+import SecureContainer.ConcurrentSecureDataContainer;
+import SecureContainer.Exceptions.CredentialException;
+import SecureContainer.Exceptions.DuplicatedUserException;
+import SecureContainer.Exceptions.NoAccessException;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.Session;
+import SecureContainer.ShardedSecureFileContainer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedSecureFileContainerTest {
+
+    @TempDir
+    Path testFolder;
+
+    @Test
+    void constructor() {
+        //Controllo dei requisiti
+        assertThrows(NullPointerException.class,() -> new ShardedSecureFileContainer<Exam_SecureWrap>(null, 2));
+        assertThrows(IllegalArgumentException.class,() -> new ShardedSecureFileContainer<Exam_SecureWrap>("", 2));
+        assertThrows(IllegalArgumentException.class,() -> new ShardedSecureFileContainer<Exam_SecureWrap>(testFolder + "/c.ser", 0));
+        assertThrows(NullPointerException.class,() -> new ShardedSecureFileContainer<Exam_SecureWrap>(testFolder + "/c.ser", 2, null, Runnable::run));
+        assertThrows(NullPointerException.class,() -> new ShardedSecureFileContainer<Exam_SecureWrap>(testFolder + "/c.ser", 2, ConcurrentSecureDataContainer::new, null));
+        assertThrows(NullPointerException.class,() -> new ShardedSecureFileContainer<Exam_SecureWrap>(testFolder + "/c.ser", 2, path -> null, Runnable::run));
+
+        ShardedSecureFileContainer<Exam_SecureWrap> data = new ShardedSecureFileContainer<>(testFolder + "/c.ser", 3);
+        assertEquals(3, data.getShardCount());
+        assertTrue(data.getShard(0) instanceof ConcurrentSecureDataContainer);
+        assertThrows(IndexOutOfBoundsException.class,() -> data.getShard(3));
+        data.close();
+    }
+
+    @Test
+    void partitioning() throws IOException, ClassNotFoundException {
+        ShardedSecureFileContainer<Exam_SecureWrap> data = new ShardedSecureFileContainer<>(testFolder + "/container_dump.ser", 4);
+        try {
+            data.createUser("Mario", "pwd");
+            data.createUser("Luigi", "pwd");
+            //Gli utenti sono presenti in tutti gli shard
+            for (int i = 0; i < data.getShardCount(); i++) assertTrue(data.getShard(i).userExist("Luigi"));
+
+            Session s = data.login("Mario", "pwd");
+            List<Exam_SecureWrap> exams = new ArrayList<>();
+            for (int i = 0; i < 40; i++) exams.add(new Exam_SecureWrap(testFolder + "/exam" + i + ".ser", "Esame" + i, 18 + i % 13));
+            BatchResult<Boolean> put = data.putAll(s, exams);
+            assertTrue(put.allSucceeded());
+            for (int i = 0; i < put.size(); i++) assertTrue(put.get(i));
+
+            //Ogni dato si trova solo nel proprio shard
+            int total = 0;
+            for (int i = 0; i < data.getShardCount(); i++) {
+                int size = data.getShard(i).getSize("Mario", "pwd");
+                assertTrue(size < exams.size(), "tutti i dati nello stesso shard");
+                total += size;
+            }
+            assertEquals(exams.size(), total);
+            assertEquals(exams.size(), data.getSize(s));
+            for (Exam_SecureWrap e : exams) {
+                assertEquals(e.grade, data.getShard(data.shardOf(e)).getSnapshot("Mario", "pwd", e).grade);
+            }
+
+            //L'iteratore genera i dati di tutti gli shard
+            Set<String> names = new HashSet<>();
+            for (Iterator<Exam_SecureWrap> it = data.getIterator(s); it.hasNext(); ) assertTrue(names.add(it.next().name));
+            assertEquals(exams.size(), names.size());
+
+            data.shareR(s, "Luigi", exams.get(3));
+            data.shareW(s, "Luigi", exams.get(4));
+            int shared = 0;
+            for (Iterator<Exam_SecureWrap> it = data.getSharedWithMe("Luigi", "pwd"); it.hasNext(); it.next()) shared++;
+            assertEquals(2, shared);
+
+            //Ogni shard viene scritto nel proprio documento su disco
+            assertTrue(data.writeContainerOnDisk("Luca", "Diavolo!"));
+            for (int i = 0; i < data.getShardCount(); i++) {
+                assertTrue(Files.exists(Path.of(testFolder + "/container_dump.ser.shard" + i)));
+            }
+            data.remove(s, exams.get(0));
+            assertTrue(data.readContainerFromDisk("Luca", "Diavolo!"));
+            assertEquals(exams.size(), data.getSize("Mario", "pwd"));
+            assertEquals("Esame4", data.get("Luigi", "pwd", exams.get(4)).name);
+
+            //removeUser rimuove l'utente da tutti gli shard e chiude le sue sessioni
+            Session luigi = data.login("Luigi", "pwd");
+            data.removeUser("Luigi", "pwd");
+            assertFalse(data.userExist("Luigi"));
+            for (int i = 0; i < data.getShardCount(); i++) assertFalse(data.getShard(i).userExist("Luigi"));
+            assertThrows(CredentialException.class,() -> data.getSize(luigi));
+        } finally {
+            data.close();
+        }
+    }
+
+    @Test
+    void crossShardCopy() throws IOException, ClassNotFoundException {
+        ShardedSecureFileContainer<Exam_SecureWrap> data = new ShardedSecureFileContainer<>(testFolder + "/container_dump.ser", 4);
+        try {
+            data.createUser("Mario", "pwd");
+            data.createUser("Luigi", "pwd");
+            Session s = data.login("Mario", "pwd");
+            Exam_SecureWrap analisi = new Exam_SecureWrap(testFolder + "/analisi.ser", "Analisi", 30);
+            assertTrue(data.put(s, analisi));
+
+            //Cerco un path in uno shard diverso e uno nello stesso shard di analisi
+            String other = null;
+            String same = null;
+            for (int i = 0; other == null || same == null; i++) {
+                String path = testFolder + "/copy" + i + ".ser";
+                if (data.shardOf(new Exam_SecureWrap(path)) != data.shardOf(analisi)) {
+                    if (other == null) other = path;
+                } else if (same == null) same = path;
+            }
+
+            data.copy(s, analisi, other);
+            data.copy("Mario", "pwd", analisi, same);
+            assertEquals(3, data.getSize(s));
+            Exam_SecureWrap copy = data.get(s, new Exam_SecureWrap(other));
+            assertEquals("Analisi", copy.name);
+            assertEquals(1, data.getShard(data.shardOf(copy)).getSize("Mario", "pwd"));
+            //La copia in un altro shard non viene mai inserita nello shard di origine
+            assertEquals(2, data.getShard(data.shardOf(analisi)).getSize("Mario", "pwd"));
+            assertEquals("Analisi", ((Exam_SecureWrap) new CompactSecureFileCodec().read(other)).name);
+
+            //newFilePath deve essere univoco, anche se il dato appartiene ad un altro utente
+            String taken = other;
+            assertThrows(IllegalArgumentException.class,() -> data.copy(s, analisi, taken));
+            Exam_SecureWrap luigiExam = new Exam_SecureWrap(testFolder + "/luigi.ser", "Luigi", 27);
+            data.put("Luigi", "pwd", luigiExam);
+            assertThrows(IllegalArgumentException.class,() -> data.copy(s, analisi, luigiExam.getFilePath()));
+            assertThrows(NoAccessException.class,() -> data.copy(s, luigiExam, testFolder + "/stolen.ser"));
+            assertEquals(3, data.getSize(s));
+        } finally {
+            data.close();
+        }
+    }
+
+    @Test
+    void sessionsAndExecutor() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ShardedSecureFileContainer<Exam_SecureWrap> data = new ShardedSecureFileContainer<>(testFolder + "/container_dump.ser", 3,
+                MapSecureDataContainer::new, executor);
+        data.createUser("Mario", "pwd");
+        assertThrows(CredentialException.class,() -> data.login("Mario", "pwd_err"));
+        Session s = data.login("Mario", "pwd");
+        assertTrue(data.put(s, new Exam_SecureWrap(testFolder + "/exam.ser", "Esame", 24)));
+        assertEquals(1, data.getSize(s));
+        data.logout(s);
+        assertThrows(CredentialException.class,() -> data.getSize(s));
+        assertThrows(NullPointerException.class,() -> data.getSize((Session) null));
+
+        //close non termina l'executor fornito dal cliente
+        data.close();
+        assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @Test
+    void userReplication() throws InterruptedException, ExecutionException {
+        ShardedSecureFileContainer<Exam_SecureWrap> data = new ShardedSecureFileContainer<>(testFolder + "/container_dump.ser", 4);
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            //La creazione concorrente dello stesso utente riesce una sola volta
+            List<Callable<Boolean>> creations = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String passw = "pwd" + i;
+                creations.add(() -> {
+                    try {
+                        data.createUser("Mario", passw);
+                        return true;
+                    } catch (DuplicatedUserException e) {
+                        return false;
+                    }
+                });
+            }
+            String winner = null;
+            List<Future<Boolean>> created = clients.invokeAll(creations);
+            for (int i = 0; i < created.size(); i++) {
+                if (created.get(i).get()) {
+                    assertNull(winner, "utente creato più di una volta");
+                    winner = "pwd" + i;
+                }
+            }
+            assertNotNull(winner);
+            String wrong = winner + "_err";
+            //Tutti gli shard hanno la password dell'unica creazione riuscita
+            for (int i = 0; i < data.getShardCount(); i++) assertTrue(data.getShard(i).userAuth("Mario", winner));
+
+            //Se la creazione non riesce su uno shard l'utente viene rimosso dagli altri shard
+            int other = (data.homeShardOf("Luigi") + 1) % data.getShardCount();
+            data.getShard(other).createUser("Luigi", "old");
+            assertThrows(DuplicatedUserException.class,() -> data.createUser("Luigi", "pwd"));
+            assertFalse(data.userExist("Luigi"));
+            for (int i = 0; i < data.getShardCount(); i++) assertEquals(i == other, data.getShard(i).userExist("Luigi"));
+
+            //Le credenziali vengono verificate prima di agire sugli shard
+            assertThrows(CredentialException.class,() -> data.login("Mario", wrong));
+            assertThrows(CredentialException.class,() -> data.removeUser("Mario", wrong));
+            assertThrows(CredentialException.class,() -> data.getSize("Mario", wrong));
+            assertThrows(IllegalArgumentException.class,() -> data.removeUser("Luca", "Diavolo!"));
+            for (int i = 0; i < data.getShardCount(); i++) assertTrue(data.getShard(i).userExist("Mario"));
+            assertEquals(0, data.getSize("Mario", winner));
+            data.removeUser("Mario", winner);
+            for (int i = 0; i < data.getShardCount(); i++) assertFalse(data.getShard(i).userExist("Mario"));
+        } finally {
+            clients.shutdown();
+            data.close();
+        }
+    }
+}
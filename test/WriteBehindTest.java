@@ -0,0 +1,198 @@
+import SecureContainer.BatchResult;
+import SecureContainer.CompactSecureFileCodec;
+import SecureContainer.Exceptions.WriteBehindException;
+import SecureContainer.LoadPolicy;
+import SecureContainer.MapSecureDataContainer;
+import SecureContainer.Session;
+import SecureContainer.WriteBehindWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindTest {
+
+    @TempDir
+    Path testFolder;
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writer() throws IOException, InterruptedException {
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindWriter(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new WriteBehindWriter(0, 0));
+
+        Path a = testFolder.resolve("a");
+        Path b = testFolder.resolve("b");
+        WriteBehindWriter writer = new WriteBehindWriter(60000, 100);
+        try {
+            assertThrows(NullPointerException.class, () -> writer.submit(null, bytes("x")));
+            assertThrows(NullPointerException.class, () -> writer.submit(a.toString(), null));
+
+            //Finestra di durabilità lunga: i documenti restano in attesa fino a flush
+            writer.submit(a.toString(), bytes("a1"));
+            writer.submit(a.toString(), bytes("a2")); //sostituisce il contenuto in attesa
+            writer.submit(b.toString(), bytes("b1"));
+            assertEquals(2, writer.pendingCount());
+            assertTrue(writer.isPending(a.toString()));
+            assertFalse(Files.exists(a));
+
+            writer.flush();
+            assertEquals(0, writer.pendingCount());
+            assertFalse(writer.isPending(a.toString()));
+            assertEquals("a2", Files.readString(a));
+            assertEquals("b1", Files.readString(b));
+
+            //Una scrittura annullata non viene eseguita
+            writer.submit(a.toString(), bytes("a3"));
+            writer.discard(a.toString());
+            assertFalse(writer.isPending(a.toString()));
+            writer.flush();
+            assertEquals("a2", Files.readString(a));
+
+            //Un errore di scrittura viene sollevato da flush e il documento resta in attesa
+            String missing = testFolder.resolve("missing/c").toString();
+            writer.submit(missing, bytes("c1"));
+            assertThrows(IOException.class, writer::flush);
+            assertTrue(writer.isPending(missing));
+            //discard non viene interrotto e mantiene lo stato di interruzione del thread
+            Thread.currentThread().interrupt();
+            writer.discard(missing);
+            assertTrue(Thread.interrupted());
+            assertFalse(writer.isPending(missing));
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+        assertThrows(IllegalStateException.class, () -> writer.submit(a.toString(), bytes("a4")));
+        writer.close(); //nessun effetto
+
+        //Finestra di durabilità breve: i documenti vengono scritti senza flush
+        WriteBehindWriter fast = new WriteBehindWriter(10, 100);
+        try {
+            fast.submit(a.toString(), bytes("a5"));
+            for (int i = 0; i < 500 && fast.isPending(a.toString()); i++) Thread.sleep(10);
+            assertFalse(fast.isPending(a.toString()));
+            assertEquals("a5", Files.readString(a));
+        } finally {
+            fast.close();
+        }
+    }
+
+    @Test
+    void retries() throws IOException, InterruptedException {
+        Path folder = testFolder.resolve("missing");
+        String c = folder.resolve("c").toString();
+        String d = folder.resolve("d").toString();
+        WriteBehindWriter writer = new WriteBehindWriter(0, 100);
+        try {
+            writer.submit(c, bytes("c1"));
+            writer.submit(d, bytes("d1"));
+            //flush riporta ogni documento non scritto con il relativo errore
+            WriteBehindException e = assertThrows(WriteBehindException.class, writer::flush);
+            assertEquals(Set.of(c, d), e.getFailures().keySet());
+            assertEquals(1, e.getSuppressed().length);
+            assertTrue(writer.isPending(c));
+            assertTrue(writer.isPending(d));
+
+            //I documenti vengono ritentati in background dopo un'attesa, senza flush
+            Files.createDirectory(folder);
+            for (int i = 0; i < 500 && writer.pendingCount() > 0; i++) Thread.sleep(10);
+            assertEquals(0, writer.pendingCount());
+            assertEquals("c1", Files.readString(Path.of(c)));
+            assertEquals("d1", Files.readString(Path.of(d)));
+            writer.flush(); //gli errori dei documenti poi scritti non vengono sollevati
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    void batches() throws IOException {
+        //Più documenti di quanti ne possano attendere: submit attende che il writer scriva i gruppi
+        WriteBehindWriter writer = new WriteBehindWriter(60000, 4);
+        try {
+            for (int i = 0; i < 50; i++) writer.submit(testFolder.resolve("doc" + i).toString(), bytes("doc" + i));
+            assertTrue(writer.pendingCount() <= 16 + 4); //capacity in attesa più un gruppo in scrittura
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+        for (int i = 0; i < 50; i++) assertEquals("doc" + i, Files.readString(testFolder.resolve("doc" + i)));
+    }
+
+    @Test
+    void container() throws IOException, ClassNotFoundException {
+        MapSecureDataContainer<Exam_SecureWrap> data = new MapSecureDataContainer<>(testFolder + "/container_dump.ser");
+        assertNull(data.getWriteBehind());
+        data.flush(); //nessun effetto
+        assertThrows(IllegalArgumentException.class, () -> data.enableWriteBehind(-1, 10));
+        data.setLoadPolicy(LoadPolicy.LAZY);
+        data.enableWriteBehind(60000, 100);
+        assertNotNull(data.getWriteBehind());
+
+        data.createUser("Mario", "pwd");
+        Session s = data.login("Mario", "pwd");
+        Exam_SecureWrap analisi = new Exam_SecureWrap(testFolder + "/exam1.ser", "Analisi", 30);
+        Exam_SecureWrap pr2 = new Exam_SecureWrap(testFolder + "/exam2.ser", "PR2", 28);
+        assertTrue(data.put(s, analisi));
+        assertTrue(data.put(s, pr2));
+        //put ritorna senza scrivere su disco; il contenuto in memoria è quello più recente
+        assertFalse(Files.exists(Path.of(analisi.getFilePath())));
+        assertEquals(30, data.get(s, analisi).grade);
+
+        //La lettura da disco attende la scrittura in attesa del dato
+        data.readFileFromDisk(s, analisi);
+        assertTrue(Files.exists(Path.of(analisi.getFilePath())));
+        assertEquals(30, data.get(s, analisi).grade);
+
+        Exam_SecureWrap loaded = data.get(s, pr2);
+        loaded.grade = 30;
+        data.writeFileOnDisk(s, loaded);
+        assertEquals(30, data.get(s, pr2).grade);
+        data.flush();
+        assertEquals(0, data.getWriteBehind().pendingCount());
+        assertEquals(30, ((Exam_SecureWrap) new CompactSecureFileCodec().read(pr2.getFilePath())).grade);
+
+        //Il documento di un dato rimosso con una scrittura in attesa non viene ricreato
+        Exam_SecureWrap temp = new Exam_SecureWrap(testFolder + "/exam3.ser", "Temp", 18);
+        data.put(s, temp);
+        data.remove(s, temp);
+        data.flush();
+        assertFalse(Files.exists(Path.of(temp.getFilePath())));
+
+        //putAll accoda tutti i dati
+        List<Exam_SecureWrap> exams = new ArrayList<>();
+        for (int i = 0; i < 20; i++) exams.add(new Exam_SecureWrap(testFolder + "/batch" + i + ".ser", "Esame" + i, 18 + i % 13));
+        BatchResult<Boolean> res = data.putAll(s, exams);
+        assertTrue(res.allSucceeded());
+        assertEquals(22, data.getSize(s));
+
+        //writeContainerOnDisk scrive anche i dati in attesa
+        assertTrue(data.writeContainerOnDisk("Luca", "Diavolo!"));
+        for (Exam_SecureWrap e : exams) assertTrue(Files.exists(Path.of(e.getFilePath())));
+        assertTrue(data.readContainerFromDisk("Luca", "Diavolo!"));
+        assertEquals(22, data.getSize("Mario", "pwd"));
+        assertEquals(25, data.get("Mario", "pwd", exams.get(7)).grade);
+
+        //close completa le scritture e torna alla scrittura sincrona
+        Exam_SecureWrap last = new Exam_SecureWrap(testFolder + "/exam4.ser", "Last", 24);
+        data.put("Mario", "pwd", last);
+        data.close();
+        assertNull(data.getWriteBehind());
+        assertTrue(Files.exists(Path.of(last.getFilePath())));
+        Exam_SecureWrap sync = new Exam_SecureWrap(testFolder + "/exam5.ser", "Sync", 24);
+        data.put("Mario", "pwd", sync);
+        assertTrue(Files.exists(Path.of(sync.getFilePath())));
+    }
+}